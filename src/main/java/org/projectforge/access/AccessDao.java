@@ -24,6 +24,7 @@
 package org.projectforge.access;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.lang.Validate;
@@ -117,6 +118,21 @@ public class AccessDao extends BaseDao<GroupTaskAccessDO>
     return list;
   }
 
+  /**
+   * Loads all GroupTaskAccessDO (including deleted ones) modified after the given time stamp without any access checking.
+   * @see org.projectforge.core.BaseDao#internalLoadModifiedSince(java.util.Date)
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<GroupTaskAccessDO> internalLoadModifiedSince(final Date date)
+  {
+    List<GroupTaskAccessDO> list = getHibernateTemplate().find(
+        "from GroupTaskAccessDO g join fetch g.accessEntries where g.lastUpdate > ? order by g.task.id, g.group.id", date);
+    list = selectUnique(list);
+    return list;
+  }
+
   @Override
   protected String[] getAdditionalSearchFields()
   {
@@ -44,7 +44,6 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
-import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseDao;
@@ -67,6 +66,9 @@ public class AddressDao extends BaseDao<AddressDO>
 
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(AddressDao.class);
 
+  /** Maximum number of ids of an in-clause (some databases limit the size of in-lists). */
+  private static final int MAX_IDS_PER_QUERY = 1000;
+
   private Configuration configuration;
 
   private TaskDao taskDao;
@@ -93,6 +95,13 @@ public class AddressDao extends BaseDao<AddressDO>
     return personalAddressDao;
   }
 
+  private BirthdayCache birthdayCache;
+
+  public void setBirthdayCache(final BirthdayCache birthdayCache)
+  {
+    this.birthdayCache = birthdayCache;
+  }
+
   public AddressDao()
   {
     super(AddressDO.class);
@@ -310,35 +319,45 @@ public class AddressDao extends BaseDao<AddressDO>
    */
   public Set<BirthdayAddress> getBirthdays(final Date fromDate, final Date toDate, final int max, final boolean all)
   {
-    final QueryFilter filter = new QueryFilter();
-    filter.add(Restrictions.isNotNull("birthday"));
-    final List<AddressDO> list = getList(filter);
-    // Uses not Collections.sort because every comparison needs Calendar.getDayOfYear().
+    checkLoggedInUserSelectAccess();
     final Set<BirthdayAddress> set = new TreeSet<BirthdayAddress>();
+    if (accessChecker.isRestrictedUser() == true) {
+      return set;
+    }
     final Set<Integer> favorites = getFavorites();
     final DateHolder from = new DateHolder(fromDate);
     final DateHolder to = new DateHolder(toDate);
-    DateHolder dh;
     final int fromMonth = from.getMonth();
     final int fromDayOfMonth = from.getDayOfMonth();
     final int toMonth = to.getMonth();
     final int toDayOfMonth = to.getDayOfMonth();
-    for (final AddressDO address : list) {
-      if (all == false && favorites.contains(address.getId()) == false) {
-        // Address is not a favorite address, so ignore it.
-        continue;
-      }
-      dh = new DateHolder(address.getBirthday());
-      final int month = dh.getMonth();
-      final int dayOfMonth = dh.getDayOfMonth();
-      if (DateHelper.dateOfYearBetween(month, dayOfMonth, fromMonth, fromDayOfMonth, toMonth, toDayOfMonth) == false) {
+    // Only the addresses of the matching days of year are loaded (the birthday cache indexes all addresses by day of year).
+    final List<Integer> ids;
+    if (all == true) {
+      ids = birthdayCache.getAddressIds(fromMonth, fromDayOfMonth, toMonth, toDayOfMonth);
+    } else {
+      ids = birthdayCache.getAddressIds(favorites, fromMonth, fromDayOfMonth, toMonth, toDayOfMonth);
+    }
+    for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+      final QueryFilter filter = new QueryFilter();
+      filter.add(Restrictions.isNotNull("birthday"));
+      filter.add(Restrictions.in("id", ids.subList(i, Math.min(i + MAX_IDS_PER_QUERY, ids.size()))));
+      final List<AddressDO> list = internalGetList(filter);
+      if (list == null || list.size() == 0) {
         continue;
       }
-      final BirthdayAddress ba = new BirthdayAddress(address);
-      if (favorites.contains(address.getId()) == true) {
-        ba.setFavorite(true);
+      for (final AddressDO address : extractEntriesWithSelectAccess(list)) {
+        final Integer dayOfYear = birthdayCache.getDayOfYear(address.getId());
+        if (dayOfYear == null) {
+          // Modified in the meantime.
+          continue;
+        }
+        final BirthdayAddress ba = new BirthdayAddress(address, BirthdayIndex.getMonth(dayOfYear), BirthdayIndex.getDayOfMonth(dayOfYear));
+        if (favorites.contains(address.getId()) == true) {
+          ba.setFavorite(true);
+        }
+        set.add(ba);
       }
-      set.add(ba);
     }
     return set;
   }
@@ -632,6 +651,26 @@ public class AddressDao extends BaseDao<AddressDO>
     pw.println(no + "\"");
   }
 
+  /**
+   * Updates the birthday cache.
+   * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterSaveOrModify(final AddressDO address)
+  {
+    birthdayCache.updateAddress(address);
+  }
+
+  /**
+   * Updates the birthday cache.
+   * @see org.projectforge.core.BaseDao#afterDelete(org.projectforge.core.ExtendedBaseDO)
+   */
+  @Override
+  protected void afterDelete(final AddressDO address)
+  {
+    birthdayCache.removeAddress(address.getId());
+  }
+
   @Override
   public AddressDO newInstance()
   {
@@ -62,6 +62,19 @@ public class BirthdayAddress implements Comparable<BirthdayAddress>, Serializabl
     compareString = dateOfYear + " " + address.getName() + ", " + address.getFirstName();
   }
 
+  /**
+   * Uses the given day of year (e. g. from the {@link BirthdayCache}) instead of calculating it from the birthday.
+   * @param month 0-based as {@link java.util.Calendar#MONTH}.
+   */
+  BirthdayAddress(final AddressDO address, final int month, final int dayOfMonth)
+  {
+    this.address = address;
+    this.month = month;
+    this.dayOfMonth = dayOfMonth;
+    dateOfYear = getDateOfYear(month, dayOfMonth);
+    compareString = dateOfYear + " " + address.getName() + ", " + address.getFirstName();
+  }
+
   @Override
   public boolean equals(final Object obj)
   {
@@ -0,0 +1,164 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.address;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectforge.common.AbstractCache;
+import org.springframework.orm.hibernate3.HibernateTemplate;
+
+/**
+ * Caches the day of year (month and day of month) of the birthdays of all non-deleted addresses, so birthday queries need only the
+ * addresses of the matching days. The cache is updated by the {@link AddressDao} after every modification.
+ */
+public class BirthdayCache extends AbstractCache
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(BirthdayCache.class);
+
+  private HibernateTemplate hibernateTemplate;
+
+  private volatile BirthdayIndex index;
+
+  /**
+   * @param fromMonth 0-based as {@link Calendar#MONTH}.
+   * @param toMonth 0-based as {@link Calendar#MONTH}. If before fromMonth, the period wraps around the end of the year.
+   * @return The ids of the addresses with birthdays in the given period (inclusive, ignoring the year).
+   */
+  public List<Integer> getAddressIds(final int fromMonth, final int fromDayOfMonth, final int toMonth, final int toDayOfMonth)
+  {
+    return getIndex().getAddressIds(fromMonth, fromDayOfMonth, toMonth, toDayOfMonth);
+  }
+
+  /**
+   * @return The given address ids with birthdays in the given period (inclusive, ignoring the year).
+   * @see #getAddressIds(int, int, int, int)
+   */
+  public List<Integer> getAddressIds(final Collection<Integer> addressIds, final int fromMonth, final int fromDayOfMonth,
+      final int toMonth, final int toDayOfMonth)
+  {
+    return getIndex().getAddressIds(addressIds, fromMonth, fromDayOfMonth, toMonth, toDayOfMonth);
+  }
+
+  /**
+   * @return The day of year of the birthday of the given address (see {@link BirthdayIndex#getDayOfYear(int, int)}) or null if the
+   *         address has no birthday or isn't known.
+   */
+  Integer getDayOfYear(final Integer addressId)
+  {
+    return getIndex().getDayOfYear(addressId);
+  }
+
+  /**
+   * Should be called after every modification of an address.
+   */
+  void updateAddress(final AddressDO address)
+  {
+    if (address.getId() == null) {
+      return;
+    }
+    final Integer dayOfYear;
+    if (address.isDeleted() == true || address.getBirthday() == null) {
+      dayOfYear = null;
+    } else {
+      final Calendar cal = Calendar.getInstance();
+      cal.setTime(address.getBirthday());
+      dayOfYear = BirthdayIndex.getDayOfYear(cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH));
+    }
+    update(address.getId(), dayOfYear);
+  }
+
+  /**
+   * Should be called after an address was deleted.
+   */
+  void removeAddress(final Integer addressId)
+  {
+    update(addressId, null);
+  }
+
+  /**
+   * @param dayOfYear null for removing the address from the index.
+   */
+  private void update(final Integer addressId, final Integer dayOfYear)
+  {
+    synchronized (this) {
+      apply(getIndex(), addressId, dayOfYear);
+      recordUpdate(new Object[] { addressId, dayOfYear});
+    }
+  }
+
+  private static void apply(final BirthdayIndex index, final Integer addressId, final Integer dayOfYear)
+  {
+    if (dayOfYear == null) {
+      index.remove(addressId);
+    } else {
+      index.put(addressId, BirthdayIndex.getMonth(dayOfYear), BirthdayIndex.getDayOfMonth(dayOfYear));
+    }
+  }
+
+  private BirthdayIndex getIndex()
+  {
+    checkRefresh();
+    return index;
+  }
+
+  /**
+   * This method will be called by CacheHelper and is synchronized via getData();
+   */
+  @SuppressWarnings("unchecked")
+  @Override
+  protected void refresh()
+  {
+    log.info("Initializing BirthdayCache ...");
+    final List<Object[]> list = hibernateTemplate
+        .find("select a.id, a.birthday from AddressDO a where a.birthday is not null and a.deleted = false");
+    final Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+    // The birthdays are dates (java.sql.Date) without time zone, so the default time zone of the JVM is used (not the user's one).
+    final Calendar cal = Calendar.getInstance();
+    for (final Object[] row : list) {
+      cal.setTime((Date) row[1]);
+      map.put((Integer) row[0], BirthdayIndex.getDayOfYear(cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH)));
+    }
+    // This method must not be synchronized because it works with a new index.
+    final BirthdayIndex newIndex = new BirthdayIndex(map);
+    synchronized (this) {
+      // Modifications done while refreshing in background (the query above may not contain them):
+      for (final Object update : getUpdatesDuringRefresh()) {
+        apply(newIndex, (Integer) ((Object[]) update)[0], (Integer) ((Object[]) update)[1]);
+      }
+      this.index = newIndex;
+    }
+    log.info("Initializing of BirthdayCache done (" + map.size() + " birthdays).");
+  }
+
+  public void setHibernateTemplate(final HibernateTemplate hibernateTemplate)
+  {
+    this.hibernateTemplate = hibernateTemplate;
+  }
+}
@@ -0,0 +1,204 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.address;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index of the address ids by day of year (month and day of month of the birthday, ignoring the year). Every day of year has its own
+ * bucket: 12 months with 31 days each, so the index of a day of year is month * 31 + dayOfMonth - 1 (month is 0-based as
+ * {@link java.util.Calendar#MONTH}). The buckets are immutable arrays and replaced on every update, so readers need no synchronization.
+ */
+class BirthdayIndex
+{
+  static final int DAYS_PER_MONTH = 31;
+
+  static final int SIZE = 12 * DAYS_PER_MONTH;
+
+  private static final int[] EMPTY = new int[0];
+
+  private final AtomicReferenceArray<int[]> buckets = new AtomicReferenceArray<int[]>(SIZE);
+
+  /** The key is the address id, the value the day of year of the birthday. */
+  private final ConcurrentMap<Integer, Integer> dayOfYearMap = new ConcurrentHashMap<Integer, Integer>();
+
+  static int getDayOfYear(final int month, final int dayOfMonth)
+  {
+    return month * DAYS_PER_MONTH + dayOfMonth - 1;
+  }
+
+  static int getMonth(final int dayOfYear)
+  {
+    return dayOfYear / DAYS_PER_MONTH;
+  }
+
+  static int getDayOfMonth(final int dayOfYear)
+  {
+    return dayOfYear % DAYS_PER_MONTH + 1;
+  }
+
+  /**
+   * Same semantics as {@link org.projectforge.common.DateHelper#dateOfYearBetween(int, int, int, int, int, int)}: if fromMonth is after
+   * toMonth, the period wraps around the end of the year.
+   */
+  static boolean isBetween(final int dayOfYear, final int fromMonth, final int fromDayOfMonth, final int toMonth, final int toDayOfMonth)
+  {
+    final int from = getDayOfYear(fromMonth, fromDayOfMonth);
+    final int to = getDayOfYear(toMonth, toDayOfMonth);
+    if (fromMonth > toMonth) {
+      return dayOfYear >= from || dayOfYear <= to;
+    }
+    return dayOfYear >= from && dayOfYear <= to;
+  }
+
+  /**
+   * @param dayOfYearMap The key is the address id, the value the day of year of the birthday (see {@link #getDayOfYear(int, int)}).
+   */
+  BirthdayIndex(final Map<Integer, Integer> dayOfYearMap)
+  {
+    final int[] counts = new int[SIZE];
+    for (final Integer dayOfYear : dayOfYearMap.values()) {
+      counts[dayOfYear]++;
+    }
+    final int[][] arrays = new int[SIZE][];
+    for (int i = 0; i < SIZE; i++) {
+      arrays[i] = counts[i] == 0 ? EMPTY : new int[counts[i]];
+      counts[i] = 0;
+    }
+    for (final Map.Entry<Integer, Integer> entry : dayOfYearMap.entrySet()) {
+      final int dayOfYear = entry.getValue();
+      arrays[dayOfYear][counts[dayOfYear]++] = entry.getKey();
+    }
+    for (int i = 0; i < SIZE; i++) {
+      buckets.set(i, arrays[i]);
+    }
+    this.dayOfYearMap.putAll(dayOfYearMap);
+  }
+
+  /**
+   * @return The day of year of the birthday of the given address or null if not indexed.
+   */
+  Integer getDayOfYear(final Integer addressId)
+  {
+    return dayOfYearMap.get(addressId);
+  }
+
+  int size()
+  {
+    return dayOfYearMap.size();
+  }
+
+  /**
+   * Visits only the buckets of the given period.
+   * @return The ids of all indexed addresses with birthdays in the given period (inclusive).
+   */
+  List<Integer> getAddressIds(final int fromMonth, final int fromDayOfMonth, final int toMonth, final int toDayOfMonth)
+  {
+    final List<Integer> result = new ArrayList<Integer>();
+    final int from = getDayOfYear(fromMonth, fromDayOfMonth);
+    final int to = getDayOfYear(toMonth, toDayOfMonth);
+    if (fromMonth > toMonth) {
+      addAll(result, from, SIZE - 1);
+      addAll(result, 0, to);
+    } else {
+      addAll(result, from, to);
+    }
+    return result;
+  }
+
+  /**
+   * @return The given address ids which are indexed with birthdays in the given period (inclusive).
+   */
+  List<Integer> getAddressIds(final Collection<Integer> addressIds, final int fromMonth, final int fromDayOfMonth, final int toMonth,
+      final int toDayOfMonth)
+  {
+    final List<Integer> result = new ArrayList<Integer>();
+    for (final Integer id : addressIds) {
+      final Integer dayOfYear = dayOfYearMap.get(id);
+      if (dayOfYear != null && isBetween(dayOfYear, fromMonth, fromDayOfMonth, toMonth, toDayOfMonth) == true) {
+        result.add(id);
+      }
+    }
+    return result;
+  }
+
+  synchronized void put(final Integer addressId, final int month, final int dayOfMonth)
+  {
+    final int dayOfYear = getDayOfYear(month, dayOfMonth);
+    final Integer old = dayOfYearMap.put(addressId, dayOfYear);
+    if (old != null) {
+      if (old == dayOfYear) {
+        return;
+      }
+      removeFromBucket(old, addressId);
+    }
+    final int[] bucket = buckets.get(dayOfYear);
+    final int[] copy = new int[bucket.length + 1];
+    System.arraycopy(bucket, 0, copy, 0, bucket.length);
+    copy[bucket.length] = addressId;
+    buckets.set(dayOfYear, copy);
+  }
+
+  synchronized void remove(final Integer addressId)
+  {
+    final Integer old = dayOfYearMap.remove(addressId);
+    if (old != null) {
+      removeFromBucket(old, addressId);
+    }
+  }
+
+  private void removeFromBucket(final int dayOfYear, final int addressId)
+  {
+    final int[] bucket = buckets.get(dayOfYear);
+    for (int i = 0; i < bucket.length; i++) {
+      if (bucket[i] == addressId) {
+        if (bucket.length == 1) {
+          buckets.set(dayOfYear, EMPTY);
+          return;
+        }
+        final int[] copy = new int[bucket.length - 1];
+        System.arraycopy(bucket, 0, copy, 0, i);
+        System.arraycopy(bucket, i + 1, copy, i, bucket.length - i - 1);
+        buckets.set(dayOfYear, copy);
+        return;
+      }
+    }
+  }
+
+  private void addAll(final List<Integer> result, final int from, final int to)
+  {
+    for (int i = from; i <= to; i++) {
+      for (final int id : buckets.get(i)) {
+        result.add(id);
+      }
+    }
+  }
+}
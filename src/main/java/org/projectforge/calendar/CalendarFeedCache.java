@@ -0,0 +1,274 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.calendar;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Caches the rendered ics files of the calendar feed (subscriptions of Outlook, Thunderbird, phones etc. poll every few minutes). The key
+ * consists of the user and the decrypted feed parameters, the value is the rendered content with its ETag and the time of rendering
+ * (Last-Modified).<br/>
+ * Entries are removed after modifications of time sheets (only entries of the time sheet user) and team events (all entries depending on
+ * team calendars). Entries expire after {@link #DEFAULT_MAX_AGE} because the feeds contain time periods relative to now and events of
+ * external subscriptions aren't modified via the daos. The number of entries is limited (least recently used entries are removed first).
+ */
+public class CalendarFeedCache
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(CalendarFeedCache.class);
+
+  private static final CalendarFeedCache instance = new CalendarFeedCache();
+
+  static final int DEFAULT_MAX_SIZE = 1000;
+
+  public static final long DEFAULT_MAX_AGE = 10 * 60 * 1000L;
+
+  private final Map<String, Entry> map;
+
+  private final int maxSize;
+
+  private final long maxAge;
+
+  private final AtomicLong hitCounter = new AtomicLong();
+
+  private final AtomicLong missCounter = new AtomicLong();
+
+  public static CalendarFeedCache instance()
+  {
+    return instance;
+  }
+
+  CalendarFeedCache()
+  {
+    this(DEFAULT_MAX_SIZE, DEFAULT_MAX_AGE);
+  }
+
+  CalendarFeedCache(final int maxSize, final long maxAge)
+  {
+    this.maxSize = maxSize;
+    this.maxAge = maxAge;
+    this.map = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+      private static final long serialVersionUID = -2873404417253460173L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest)
+      {
+        return size() > CalendarFeedCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * @param userId The owner of the feed.
+   * @param params The decrypted parameters of the feed. The order of the parameters is ignored.
+   * @return The key of the feed.
+   */
+  public static String createKey(final Integer userId, final Map<String, String> params)
+  {
+    final StringBuffer buf = new StringBuffer();
+    buf.append(userId);
+    if (params != null) {
+      final SortedMap<String, String> sorted = new TreeMap<String, String>(params);
+      for (final Map.Entry<String, String> param : sorted.entrySet()) {
+        buf.append('&').append(param.getKey()).append('=').append(param.getValue());
+      }
+    }
+    return buf.toString();
+  }
+
+  /**
+   * @param key
+   * @return The cached entry or null if not cached or expired.
+   */
+  public Entry get(final String key)
+  {
+    Entry entry;
+    synchronized (map) {
+      entry = map.get(key);
+      if (entry != null && System.currentTimeMillis() - entry.created > maxAge) {
+        map.remove(key);
+        entry = null;
+      }
+    }
+    if (entry != null) {
+      hitCounter.incrementAndGet();
+    } else {
+      missCounter.incrementAndGet();
+    }
+    return entry;
+  }
+
+  /**
+   * @param key
+   * @param content The rendered feed.
+   * @param timesheetUserId The user of the time sheets contained in the feed, or null if the feed doesn't contain any time sheets.
+   * @param dependsOnTeamEvents If true, the entry will be removed after every modification of any team event.
+   * @return The new entry.
+   */
+  public Entry put(final String key, final byte[] content, final Integer timesheetUserId, final boolean dependsOnTeamEvents)
+  {
+    final Entry entry = new Entry(content, timesheetUserId, dependsOnTeamEvents);
+    synchronized (map) {
+      map.put(key, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Removes all entries containing time sheets of the given user. Should be called after every modification of a time sheet.
+   * @param userId
+   */
+  public void invalidateTimesheets(final Integer userId)
+  {
+    if (userId == null) {
+      return;
+    }
+    synchronized (map) {
+      final Iterator<Entry> it = map.values().iterator();
+      while (it.hasNext() == true) {
+        if (userId.equals(it.next().timesheetUserId) == true) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all entries depending on team events. Should be called after every modification of a team event.
+   */
+  public void invalidateTeamEvents()
+  {
+    synchronized (map) {
+      final Iterator<Entry> it = map.values().iterator();
+      while (it.hasNext() == true) {
+        if (it.next().dependsOnTeamEvents == true) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  public void clear()
+  {
+    synchronized (map) {
+      map.clear();
+    }
+    log.info("Calendar feed cache cleared.");
+  }
+
+  public int size()
+  {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  public long getHitCounter()
+  {
+    return hitCounter.get();
+  }
+
+  public long getMissCounter()
+  {
+    return missCounter.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "size=" + size() + ", hits=" + getHitCounter() + ", misses=" + getMissCounter();
+  }
+
+  public static class Entry
+  {
+    private final byte[] content;
+
+    private final String eTag;
+
+    private final long created;
+
+    private final Integer timesheetUserId;
+
+    private final boolean dependsOnTeamEvents;
+
+    Entry(final byte[] content, final Integer timesheetUserId, final boolean dependsOnTeamEvents)
+    {
+      this.content = content;
+      this.timesheetUserId = timesheetUserId;
+      this.dependsOnTeamEvents = dependsOnTeamEvents;
+      // HTTP dates have a resolution of seconds:
+      this.created = System.currentTimeMillis() / 1000 * 1000;
+      final CRC32 crc = new CRC32();
+      crc.update(content);
+      this.eTag = "\"" + Long.toHexString(crc.getValue()) + "-" + Long.toHexString(created) + "\"";
+    }
+
+    public byte[] getContent()
+    {
+      return content;
+    }
+
+    /**
+     * @return The quoted entity tag.
+     */
+    public String getETag()
+    {
+      return eTag;
+    }
+
+    /**
+     * @return The time of rendering (without milliseconds).
+     */
+    public long getLastModified()
+    {
+      return created;
+    }
+
+    /**
+     * @param ifNoneMatch The value of the If-None-Match header, may be null.
+     * @param ifModifiedSince The value of the If-Modified-Since header, -1 if not given.
+     * @return true, if the client's copy is up to date (304 should be sent).
+     */
+    public boolean isNotModified(final String ifNoneMatch, final long ifModifiedSince)
+    {
+      if (ifNoneMatch != null) {
+        // If-None-Match takes precedence over If-Modified-Since (RFC 2616, 14.26).
+        for (final String tag : ifNoneMatch.split(",")) {
+          final String trimmed = tag.trim();
+          if ("*".equals(trimmed) == true || eTag.equals(trimmed) == true || ("W/" + eTag).equals(trimmed) == true) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return ifModifiedSince >= 0 && created <= ifModifiedSince;
+    }
+  }
+}
@@ -23,9 +23,22 @@
 
 package org.projectforge.common;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class is usefull, if the stored object of derived classes has to be cached. After reaching expireTime during a request, the method
- * refresh will be called.
+ * refresh will be called.<br/>
+ * If refreshInBackground is set, the refresh after reaching the expire time is done by a background thread and all callers continue to use
+ * the previous data until the refresh is finished (stale-while-revalidate). Derived classes using this mode have to build their data in
+ * new objects and publish them at the end of refresh via volatile fields. The first initialization and refreshs forced by
+ * {@link #setExpired()} are always done synchronously.<br/>
+ * Caches modified by daos (e. g. after saving an object) have to pass these modifications to {@link #recordUpdate(Object)} while holding
+ * the lock of the cache. A background refresh may have read its data before the modification, therefore the refresh has to apply the
+ * recorded modifications (see {@link #getUpdatesDuringRefresh()}) on its new data before publishing it.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public abstract class AbstractCache
@@ -40,11 +53,27 @@ public abstract class AbstractCache
 
   protected long expireTime = 60 * TICKS_PER_MINUTE;
 
-  private transient long timeOfLastRefresh = -1;
+  private transient volatile long timeOfLastRefresh = -1;
+
+  private transient volatile boolean isExpired = true;
+
+  private transient volatile boolean refreshInProgress = false;
+
+  private boolean refreshInBackground = false;
+
+  private transient final AtomicBoolean backgroundRefreshRunning = new AtomicBoolean();
 
-  private transient boolean isExpired = true;
+  /** The thread running the current refresh. Guarded by this. */
+  private transient Thread refreshThread;
 
-  private transient boolean refreshInProgress = false;
+  /** Modifications of the cached data received while a background refresh is running. Guarded by this. */
+  private transient List<Object> updatesDuringRefresh;
+
+  private transient volatile long lastRefreshDuration = -1;
+
+  private transient final AtomicLong hitCounter = new AtomicLong();
+
+  private transient final AtomicLong refreshCounter = new AtomicLong();
 
   protected AbstractCache()
   {
@@ -70,6 +99,20 @@ public abstract class AbstractCache
     this.expireTime = expireTime * TICKS_PER_HOUR;
   }
 
+  /**
+   * @param refreshInBackground If true, the refresh after reaching the expire time is done in background while the callers use the previous
+   *          data.
+   */
+  public void setRefreshInBackground(final boolean refreshInBackground)
+  {
+    this.refreshInBackground = refreshInBackground;
+  }
+
+  public boolean isRefreshInBackground()
+  {
+    return refreshInBackground;
+  }
+
   /**
    * Cache will be refreshed before next use.
    */
@@ -88,30 +131,175 @@ public abstract class AbstractCache
   }
 
   /**
-   * Checks the expire time and calls refresh, if cache is expired.
+   * Initializes the cache if not yet done or expired. Used on start-up for avoiding the initialization during the first user requests.
+   */
+  public void warmUp()
+  {
+    checkRefresh();
+  }
+
+  /**
+   * Checks the expire time and calls refresh, if cache is expired. In background mode an expired (but initialized and not explicitly
+   * expired) cache starts a background refresh and returns immediately.
    */
-  protected synchronized void checkRefresh()
+  protected void checkRefresh()
+  {
+    hitCounter.incrementAndGet();
+    if (refreshInBackground == true && timeOfLastRefresh > 0 && this.isExpired == false) {
+      if (System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
+        startBackgroundRefresh();
+      }
+      return;
+    }
+    synchronizedCheckRefresh();
+  }
+
+  private synchronized void synchronizedCheckRefresh()
   {
-    if (refreshInProgress == true) {
-      // Do nothing because refreshing is already in progress.
+    if (refreshInProgress == true && refreshThread == Thread.currentThread()) {
+      // Do nothing because refreshing is already in progress (called by refresh itself).
       return;
     }
+    while (refreshInProgress == true) {
+      // A background refresh is running, but the cache is expired: the background refresh may have read the data before the expiry.
+      try {
+        wait();
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
     if (this.isExpired == true || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
       try {
         refreshInProgress = true;
+        refreshThread = Thread.currentThread();
         this.timeOfLastRefresh = System.currentTimeMillis();
-        try {
-          this.refresh();
-        } catch (final Throwable ex) {
-          log.error(ex.getMessage(), ex);
-        }
+        internalRefresh();
         this.isExpired = false;
       } finally {
         refreshInProgress = false;
+        refreshThread = null;
       }
     }
   }
 
+  /**
+   * Records a modification of the cached data (e. g. the modified object) if a background refresh is running. The caller has to hold the
+   * lock of this cache and has to apply the modification on the current data itself.
+   * @param update
+   * @see #getUpdatesDuringRefresh()
+   */
+  protected synchronized void recordUpdate(final Object update)
+  {
+    if (updatesDuringRefresh != null) {
+      updatesDuringRefresh.add(update);
+    }
+  }
+
+  /**
+   * Should be called by {@link #refresh()} while holding the lock of this cache directly before publishing the new data. The returned
+   * modifications have to be applied on the new data (in the given order), because the refresh may have read its data before.
+   * @return The modifications recorded since the begin of the current background refresh or an empty list.
+   */
+  protected synchronized List<Object> getUpdatesDuringRefresh()
+  {
+    if (updatesDuringRefresh == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<Object>(updatesDuringRefresh);
+  }
+
+  private void startBackgroundRefresh()
+  {
+    if (refreshInProgress == true || backgroundRefreshRunning.compareAndSet(false, true) == false) {
+      // Refresh is already running.
+      return;
+    }
+    final Thread thread = new Thread(getClass().getSimpleName() + "-refresh") {
+      @Override
+      public void run()
+      {
+        try {
+          synchronized (AbstractCache.this) {
+            // Only one refresh at a time (explicit expiry may run a synchronous refresh concurrently):
+            if (refreshInProgress == true) {
+              return;
+            }
+            refreshInProgress = true;
+            refreshThread = this;
+            updatesDuringRefresh = new ArrayList<Object>();
+          }
+          try {
+            final long start = System.currentTimeMillis();
+            internalRefresh();
+            timeOfLastRefresh = start;
+          } finally {
+            synchronized (AbstractCache.this) {
+              refreshInProgress = false;
+              refreshThread = null;
+              updatesDuringRefresh = null;
+              AbstractCache.this.notifyAll();
+            }
+          }
+        } finally {
+          backgroundRefreshRunning.set(false);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void internalRefresh()
+  {
+    final long start = System.currentTimeMillis();
+    try {
+      this.refresh();
+    } catch (final Throwable ex) {
+      log.error(ex.getMessage(), ex);
+    }
+    lastRefreshDuration = System.currentTimeMillis() - start;
+    refreshCounter.incrementAndGet();
+    if (log.isDebugEnabled() == true) {
+      log.debug("Refresh of " + getClass().getName() + " done in " + lastRefreshDuration + "ms.");
+    }
+  }
+
+  /**
+   * @return Duration of the last refresh in ms or -1 if never refreshed.
+   */
+  public long getLastRefreshDuration()
+  {
+    return lastRefreshDuration;
+  }
+
+  /**
+   * @return Age of the cached data (time since the begin of the last refresh) in ms or -1 if never refreshed.
+   */
+  public long getAge()
+  {
+    if (timeOfLastRefresh < 0) {
+      return -1;
+    }
+    return System.currentTimeMillis() - timeOfLastRefresh;
+  }
+
+  /**
+   * @return Number of cache accesses (calls of {@link #checkRefresh()}).
+   */
+  public long getHitCounter()
+  {
+    return hitCounter.get();
+  }
+
+  /**
+   * @return Number of refreshs.
+   */
+  public long getRefreshCounter()
+  {
+    return refreshCounter.get();
+  }
+
   /**
    * @return true if currently a cache refresh is running, otherwise false.
    */
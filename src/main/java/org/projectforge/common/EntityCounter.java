@@ -0,0 +1,238 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Counts entities per key (e. g. the open to-do entries per assignee) for the counters (badges) of the menu. The counters are updated by
+ * the dao hooks (afterSaveOrModify, afterDelete) via {@link #update(Integer, boolean, Integer)} and re-synchronized from the data-base by a
+ * background thread after the resync interval. Therefore {@link #getCount(Integer)} never blocks and never runs a query: until the first
+ * synchronization is finished 0 is returned.<br/>
+ * Updates inside a transaction are applied after the commit, so rolled back modifications aren't counted.
+ */
+public abstract class EntityCounter
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(EntityCounter.class);
+
+  /** Used as key for entities counted without key (null), because ConcurrentHashMap doesn't support null keys. */
+  private static final Integer NULL_KEY = Integer.MIN_VALUE;
+
+  private final String name;
+
+  private final long resyncInterval;
+
+  /** Entity id -> key of all counted entities. Guarded by this. */
+  private Map<Integer, Integer> members = new HashMap<Integer, Integer>();
+
+  private volatile ConcurrentHashMap<Integer, AtomicInteger> counters = new ConcurrentHashMap<Integer, AtomicInteger>();
+
+  /** Updates received while the resync is running, they'll be applied after loading. Guarded by this. */
+  private List<Object[]> updatesDuringResync;
+
+  private final AtomicBoolean resyncRunning = new AtomicBoolean();
+
+  private volatile long timeOfLastResync = -1;
+
+  private volatile long lastResyncDuration = -1;
+
+  /**
+   * @param name Used for logging and as thread name.
+   * @param resyncInterval in ms.
+   */
+  protected EntityCounter(final String name, final long resyncInterval)
+  {
+    this.name = name;
+    this.resyncInterval = resyncInterval;
+  }
+
+  /**
+   * Loads all counted entities from the data-base. This method is called by the resync thread.
+   * @return Entity id -> key (null keys are allowed).
+   */
+  protected abstract Map<Integer, Integer> load();
+
+  /**
+   * @param key
+   * @return The number of counted entities of the given key or 0 if the counter isn't yet initialized.
+   */
+  public int getCount(final Integer key)
+  {
+    checkResync();
+    final AtomicInteger counter = counters.get(key != null ? key : NULL_KEY);
+    return counter != null ? counter.get() : 0;
+  }
+
+  /**
+   * Should be called after every modification of a entity (including deletion). If called inside a transaction (e. g. by the dao hooks)
+   * the update is applied after the commit and discarded on rollback.
+   * @param entityId
+   * @param counted If false, the entity isn't (no more) counted.
+   * @param key The key of the counted entity (e. g. the assignee).
+   */
+  public void update(final Integer entityId, final boolean counted, final Integer key)
+  {
+    if (entityId == null) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            applyUpdate(entityId, counted, key);
+          } else if (status == TransactionSynchronization.STATUS_UNKNOWN) {
+            // The modification may be committed or not:
+            setExpired();
+          }
+        }
+      });
+      return;
+    }
+    applyUpdate(entityId, counted, key);
+  }
+
+  private synchronized void applyUpdate(final Integer entityId, final boolean counted, final Integer key)
+  {
+    if (updatesDuringResync != null) {
+      updatesDuringResync.add(new Object[] { entityId, counted, key});
+    }
+    apply(members, counters, entityId, counted, key != null ? key : NULL_KEY);
+  }
+
+  /**
+   * Should be called after the entity was deleted from the data-base.
+   * @param entityId
+   */
+  public void remove(final Integer entityId)
+  {
+    update(entityId, false, null);
+  }
+
+  /**
+   * Forces a resync in the background on next access, e. g. after mass updates without dao hooks.
+   */
+  public void setExpired()
+  {
+    timeOfLastResync = 0;
+  }
+
+  public long getLastResyncDuration()
+  {
+    return lastResyncDuration;
+  }
+
+  private void checkResync()
+  {
+    if (timeOfLastResync >= 0 && System.currentTimeMillis() - timeOfLastResync < resyncInterval) {
+      return;
+    }
+    if (resyncRunning.compareAndSet(false, true) == false) {
+      return;
+    }
+    final Thread thread = new Thread(getClass().getSimpleName() + "-" + name + "-resync") {
+      @Override
+      public void run()
+      {
+        try {
+          resync();
+        } finally {
+          resyncRunning.set(false);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Loads the counted entities from the data-base and replaces the counters. Updates received while loading are applied afterwards.
+   */
+  void resync()
+  {
+    final long begin = System.currentTimeMillis();
+    synchronized (this) {
+      updatesDuringResync = new ArrayList<Object[]>();
+    }
+    Map<Integer, Integer> loaded = null;
+    try {
+      loaded = load();
+    } catch (final Throwable ex) {
+      log.error("Error while loading counter '" + name + "': " + ex.getMessage(), ex);
+    }
+    synchronized (this) {
+      if (loaded != null) {
+        final Map<Integer, Integer> newMembers = new HashMap<Integer, Integer>();
+        final ConcurrentHashMap<Integer, AtomicInteger> newCounters = new ConcurrentHashMap<Integer, AtomicInteger>();
+        for (final Map.Entry<Integer, Integer> entry : loaded.entrySet()) {
+          apply(newMembers, newCounters, entry.getKey(), true, entry.getValue() != null ? entry.getValue() : NULL_KEY);
+        }
+        for (final Object[] update : updatesDuringResync) {
+          final Integer key = (Integer) update[2];
+          apply(newMembers, newCounters, (Integer) update[0], (Boolean) update[1], key != null ? key : NULL_KEY);
+        }
+        members = newMembers;
+        counters = newCounters;
+      }
+      updatesDuringResync = null;
+    }
+    // On errors the next try is done after the resync interval.
+    timeOfLastResync = System.currentTimeMillis();
+    lastResyncDuration = timeOfLastResync - begin;
+    if (loaded != null) {
+      log.info("Counter '" + name + "' synchronized with data-base (" + loaded.size() + " entities) in " + lastResyncDuration + "ms.");
+    }
+  }
+
+  private static void apply(final Map<Integer, Integer> members, final ConcurrentHashMap<Integer, AtomicInteger> counters,
+      final Integer entityId, final boolean counted, final Integer key)
+  {
+    final Integer oldKey = counted == true ? members.put(entityId, key) : members.remove(entityId);
+    if (oldKey != null) {
+      final AtomicInteger counter = counters.get(oldKey);
+      if (counter != null) {
+        counter.decrementAndGet();
+      }
+    }
+    if (counted == true) {
+      AtomicInteger counter = counters.get(key);
+      if (counter == null) {
+        counter = new AtomicInteger();
+        counters.put(key, counter);
+      }
+      counter.incrementAndGet();
+    }
+  }
+}
@@ -32,6 +32,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -55,6 +56,7 @@ import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.search.FullTextQuery;
 import org.hibernate.search.FullTextSession;
 import org.hibernate.search.Search;
@@ -168,6 +170,16 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
    */
   protected boolean supportAfterUpdate = false;
 
+  /**
+   * Set this to true if neither {@link #getList(QueryFilter)} nor {@link #sort(List)} is overloaded with additional filtering. Only then list
+   * pages may fetch the visible page only with sorting done by the data base. If the select access of this dao depends on the single object
+   * (not only on the user's right for the whole entity type), {@link #addSelectAccessRestrictions(QueryFilter)} has to be overloaded too.
+   * @see #getPagedList(QueryFilter)
+   */
+  protected boolean supportPagedQueries = false;
+
+  private Set<String> sortablePropertyNames;
+
   /**
    * Get all declared hibernate search fields. These fields are defined over annotations in the database object class. The names are the
    * property names or, if defined the name declared in the annotation of a field. <br/>
@@ -327,6 +339,19 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
     return list;
   }
 
+  /**
+   * Loads all entries (including deleted ones) modified after the given time stamp without any access checking. Used by caches for
+   * incremental refreshs.
+   * @param date
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> internalLoadModifiedSince(final Date date)
+  {
+    @SuppressWarnings("unchecked")
+    final List<O> list = getHibernateTemplate().find("from " + clazz.getSimpleName() + " t where t.lastUpdate > ?", date);
+    return list;
+  }
+
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<O> internalLoad(final Collection< ? extends Serializable> idList)
   {
@@ -360,10 +385,150 @@ public abstract class BaseDao<O extends ExtendedBaseDO< ? extends Serializable>>
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<O> getList(final BaseSearchFilter filter)
   {
-    final QueryFilter queryFilter = new QueryFilter(filter);
+    final QueryFilter queryFilter = createQueryFilter(filter);
     return getList(queryFilter);
   }
 
+  /**
+   * Builds the query filter for the given search filter. Overload this method for building more complex query filters (used by
+   * {@link #getList(BaseSearchFilter)} and by the paged queries of the list pages).
+   * @param filter
+   * @return new QueryFilter(filter) at default.
+   */
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    return new QueryFilter(filter);
+  }
+
+  /**
+   * Paged queries are only supported for plain criteria queries: no full text search, no modification filter and no history search.
+   * @param filter
+   * @return true if {@link #supportPagedQueries} is set and the given filter contains no settings requiring in-memory post processing.
+   */
+  public boolean isPagedQuerySupported(final BaseSearchFilter filter)
+  {
+    if (supportPagedQueries == false || filter == null) {
+      return false;
+    }
+    return filter.isSearchNotEmpty() == false && filter.isUseModificationFilter() == false && filter.isSearchHistory() == false;
+  }
+
+  /**
+   * @param property
+   * @return true if the given property is a simple (not nested) persistent property of the DO and therefore may be used in an order by
+   *         clause.
+   */
+  public boolean isSortableInDataBase(final String property)
+  {
+    if (property == null || property.indexOf('.') >= 0) {
+      return false;
+    }
+    if (sortablePropertyNames == null) {
+      final Set<String> set = new HashSet<String>();
+      final ClassMetadata metadata = getHibernateTemplate().getSessionFactory().getClassMetadata(clazz);
+      if (metadata != null) {
+        set.add(metadata.getIdentifierPropertyName());
+        for (final String name : metadata.getPropertyNames()) {
+          set.add(name);
+        }
+      }
+      sortablePropertyNames = set;
+    }
+    return sortablePropertyNames.contains(property);
+  }
+
+  /**
+   * Gets one page of the list filtered by the given filter. First result and max results of the page are taken from the query filter,
+   * sorting is done by the data base (see {@link QueryFilter#addSortOrder(org.hibernate.criterion.Order)}).
+   * @param filter
+   * @return The page or null if the logged-in user is a restricted user.
+   * @see #isPagedQuerySupported(BaseSearchFilter)
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> getPagedList(final QueryFilter filter) throws AccessException
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return null;
+    }
+    addSelectAccessRestrictions(filter);
+    // The select access of the single objects is checked as well (e. g. for hiding fields). The restrictions above should avoid any
+    // object without select access, otherwise the page would be smaller than expected.
+    return extractEntriesWithSelectAccess(getPage(filter));
+  }
+
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<O> internalGetPagedList(final QueryFilter filter)
+  {
+    final List<O> list = getPage(filter);
+    for (final O obj : list) {
+      afterLoad(obj);
+    }
+    return list;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<O> getPage(final QueryFilter filter)
+  {
+    final Criteria criteria = filter.buildCriteria(getSession(), clazz);
+    addDefaultRestrictions(criteria, filter.getFilter());
+    setCacheRegion(criteria);
+    return criteria.list();
+  }
+
+  /**
+   * Adds the restrictions of the select access of the logged-in user to the given filter, so the paged queries return (and count) only
+   * the objects for which {@link #hasSelectAccess(PFUserDO, ExtendedBaseDO, boolean)} returns true. Does nothing at default: the select
+   * access of most daos depends only on the user's right for the whole entity type (checked by {@link #checkLoggedInUserSelectAccess()}).
+   * @param filter
+   * @see #getPagedList(QueryFilter)
+   * @see #getListSize(QueryFilter)
+   */
+  protected void addSelectAccessRestrictions(final QueryFilter filter)
+  {
+  }
+
+  /**
+   * Counts the entries matching the given filter by the data base (select count(*)) without loading any object.
+   * @param filter
+   * @return The number of matching entries or 0 if the logged-in user is a restricted user.
+   * @see #isPagedQuerySupported(BaseSearchFilter)
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public long getListSize(final QueryFilter filter) throws AccessException
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    addSelectAccessRestrictions(filter);
+    return internalGetListSize(filter);
+  }
+
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public long internalGetListSize(final QueryFilter filter)
+  {
+    final Criteria criteria = filter.buildCountCriteria(getSession(), clazz);
+    addDefaultRestrictions(criteria, filter.getFilter());
+    criteria.setProjection(Projections.rowCount());
+    final Number count = (Number) criteria.uniqueResult();
+    return count != null ? count.longValue() : 0;
+  }
+
+  /**
+   * Adds the restrictions of the deleted flag and of the modification date of the given search filter (as done by
+   * {@link #internalGetList(QueryFilter)}) to the given criteria.
+   */
+  protected void addDefaultRestrictions(final Criteria criteria, final BaseSearchFilter searchFilter)
+  {
+    if (searchFilter.isIgnoreDeleted() == false) {
+      criteria.add(Restrictions.eq("deleted", searchFilter.isDeleted()));
+    }
+    if (searchFilter.getModifiedSince() != null) {
+      criteria.add(Restrictions.ge("lastUpdate", searchFilter.getModifiedSince()));
+    }
+  }
+
   /**
    * Gets the list filtered by the given filter.
    * @param filter
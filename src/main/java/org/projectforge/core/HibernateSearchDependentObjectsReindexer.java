@@ -28,11 +28,18 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hibernate.CacheMode;
 import org.hibernate.FlushMode;
@@ -48,7 +55,10 @@ import org.springframework.orm.hibernate3.HibernateTemplate;
 import org.springframework.util.CollectionUtils;
 
 /**
- * Hotfix: Hibernate-search does not update index of dependent objects.
+ * Hotfix: Hibernate-search does not update index of dependent objects.<br/>
+ * The re-indexing is done asynchronously by a small pool of worker threads. Repeated updates of the same object are coalesced and the jobs
+ * are processed in batches (one session per batch). The queue is bounded: if it's full (e. g. on mass updates), the re-indexing is done
+ * synchronously by the calling thread.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 public class HibernateSearchDependentObjectsReindexer
@@ -62,6 +72,49 @@ public class HibernateSearchDependentObjectsReindexer
     return instance;
   }
 
+  private static final int NUMBER_OF_WORKERS = 2;
+
+  /**
+   * Maximum number of re-indexing jobs processed within one session.
+   */
+  static final int BATCH_SIZE = 50;
+
+  /**
+   * Maximum number of queued re-indexing jobs.
+   */
+  private static final int MAX_QUEUE_SIZE = 10000;
+
+  /**
+   * The statistics are logged at most once per hour (and on shutdown).
+   */
+  private static final long STATISTICS_LOG_INTERVAL = 3600 * 1000;
+
+  /**
+   * Queued jobs by re-index id of the updated object. The queue contains only the keys, so updates of an already queued object are
+   * coalesced.
+   */
+  private final ConcurrentMap<String, Job> pendingJobs = new ConcurrentHashMap<String, Job>();
+
+  private final BlockingQueue<String> queue;
+
+  private final int maxQueueSize;
+
+  private Thread[] workers;
+
+  private volatile boolean shutdown;
+
+  private final AtomicLong processedCounter = new AtomicLong();
+
+  private final AtomicLong coalescedCounter = new AtomicLong();
+
+  private final AtomicLong synchronousCounter = new AtomicLong();
+
+  private volatile long lastStatisticsLog = System.currentTimeMillis();
+
+  private volatile long lastLag;
+
+  private volatile long maxLag;
+
   /**
    * Key is the embedded class (annotated with @IndexEmbedded), value the set of all dependent objects.
    */
@@ -105,33 +158,294 @@ public class HibernateSearchDependentObjectsReindexer
     }
   }
 
+  static class Job
+  {
+    final SessionFactory sessionFactory;
+
+    final BaseDO< ? > obj;
+
+    long queuedTime = System.currentTimeMillis();
+
+    Job(final SessionFactory sessionFactory, final BaseDO< ? > obj)
+    {
+      this.sessionFactory = sessionFactory;
+      this.obj = obj;
+    }
+  }
+
   public HibernateSearchDependentObjectsReindexer()
   {
+    this(MAX_QUEUE_SIZE);
+  }
+
+  HibernateSearchDependentObjectsReindexer(final int maxQueueSize)
+  {
+    this.maxQueueSize = maxQueueSize;
+    this.queue = new LinkedBlockingQueue<String>(maxQueueSize);
     final Registry registry = Registry.instance();
     for (final RegistryEntry registryEntry : registry.getOrderedList()) {
       register(registryEntry);
     }
   }
 
+  /**
+   * Queues the re-indexing of the dependents of the given object. The work is done asynchronously by a bounded number of worker threads.
+   * Repeated updates of the same object while the re-indexing job is still queued are coalesced into one job. If the queue is full, the
+   * re-indexing is done synchronously.
+   * @param hibernateTemplate
+   * @param obj
+   */
   public void reindexDependents(final HibernateTemplate hibernateTemplate, final BaseDO< ? > obj)
   {
-    new Thread() {
-      @Override
-      public void run()
-      {
-        final SessionFactory sessionFactory = hibernateTemplate.getSessionFactory();
-        final HibernateTemplate template = new HibernateTemplate(sessionFactory);
-        final Session session = template.getSessionFactory().openSession();
-        final Set<String> alreadyReindexed = new HashSet<String>();
-        final List<Entry> entryList = map.get(obj.getClass());
-        reindexDependents(template, session, obj, entryList, alreadyReindexed);
-        session.disconnect();
-        final int size = alreadyReindexed.size();
-        if (size >= 10) {
-          log.info("Re-indexing of " + size + " objects done after updating " + obj.getClass().getName() + ":" + obj.getId());
+    if (CollectionUtils.isEmpty(map.get(obj.getClass())) == true) {
+      // Nothing to do.
+      return;
+    }
+    if (shutdown == true) {
+      log.info("Re-indexer is shut down, re-indexing of dependents of " + getReindexId(obj) + " skipped.");
+      return;
+    }
+    final String key = getReindexId(obj);
+    final Job job = new Job(hibernateTemplate.getSessionFactory(), obj);
+    while (true) {
+      final Job queuedJob = pendingJobs.putIfAbsent(key, job);
+      if (queuedJob == null) {
+        startWorkers();
+        if (queue.offer(key) == false) {
+          reindexSynchronously(key);
+        }
+        return;
+      }
+      // Job is already queued and not yet started: replace the object by the newer one, the queue position is kept.
+      job.queuedTime = queuedJob.queuedTime;
+      if (pendingJobs.replace(key, queuedJob, job) == true) {
+        coalescedCounter.incrementAndGet();
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return The number of queued re-indexing jobs.
+   */
+  public int getQueueSize()
+  {
+    return pendingJobs.size();
+  }
+
+  /**
+   * @return The time in ms between queuing and starting of the last processed job.
+   */
+  public long getLastLag()
+  {
+    return lastLag;
+  }
+
+  /**
+   * @return The maximum time in ms between queuing and starting of a job since start-up.
+   */
+  public long getMaxLag()
+  {
+    return maxLag;
+  }
+
+  /**
+   * @return Number of processed re-indexing jobs since start-up.
+   */
+  public long getProcessedCounter()
+  {
+    return processedCounter.get();
+  }
+
+  /**
+   * @return Number of re-indexing requests which were coalesced with an already queued job.
+   */
+  public long getCoalescedCounter()
+  {
+    return coalescedCounter.get();
+  }
+
+  /**
+   * @return Number of re-indexing jobs done synchronously because the queue was full.
+   */
+  public long getSynchronousCounter()
+  {
+    return synchronousCounter.get();
+  }
+
+  /**
+   * Stops the worker threads. Queued jobs are processed before (waits maximum 10 seconds). Should be called at the shutdown of the
+   * application.
+   */
+  public void shutdown()
+  {
+    shutdown = true;
+    final Thread[] threads;
+    synchronized (this) {
+      threads = workers;
+      workers = null;
+    }
+    if (threads != null) {
+      // The workers terminate after the queue is processed:
+      final long timeout = System.currentTimeMillis() + 10000;
+      for (final Thread thread : threads) {
+        try {
+          thread.join(Math.max(1, timeout - System.currentTimeMillis()));
+        } catch (final InterruptedException ex) {
+          break;
         }
       }
-    }.start();
+    }
+    if (pendingJobs.isEmpty() == false) {
+      log.warn("Shutdown: " + pendingJobs.size() + " re-indexing jobs discarded.");
+    }
+    logStatistics();
+  }
+
+  synchronized void startWorkers()
+  {
+    if (workers != null || shutdown == true) {
+      return;
+    }
+    workers = new Thread[NUMBER_OF_WORKERS];
+    for (int i = 0; i < NUMBER_OF_WORKERS; i++) {
+      final Thread thread = new Thread("HibernateSearchDependentObjectsReindexer-" + i) {
+        @Override
+        public void run()
+        {
+          processQueue();
+        }
+      };
+      thread.setDaemon(true);
+      workers[i] = thread;
+      thread.start();
+    }
+  }
+
+  private void processQueue()
+  {
+    try {
+      while (processNextBatch() == true || shutdown == false) {
+        if (System.currentTimeMillis() - lastStatisticsLog > STATISTICS_LOG_INTERVAL) {
+          logStatistics();
+        }
+      }
+    } catch (final InterruptedException ex) {
+      log.info("Re-indexing worker interrupted: " + Thread.currentThread().getName());
+    }
+  }
+
+  /**
+   * Processes the next batch of queued jobs (waits maximum one second for the first job).
+   * @return false if no job was queued.
+   */
+  boolean processNextBatch() throws InterruptedException
+  {
+    final String firstKey = queue.poll(1, TimeUnit.SECONDS);
+    if (firstKey == null) {
+      return false;
+    }
+    final List<String> keys = new ArrayList<String>(BATCH_SIZE);
+    keys.add(firstKey);
+    queue.drainTo(keys, BATCH_SIZE - 1);
+    final List<Job> jobs = new ArrayList<Job>(keys.size());
+    final long now = System.currentTimeMillis();
+    for (final String key : keys) {
+      final Job job = pendingJobs.remove(key);
+      if (job != null) {
+        jobs.add(job);
+        lastLag = now - job.queuedTime;
+        if (lastLag > maxLag) {
+          maxLag = lastLag;
+        }
+      }
+    }
+    if (jobs.isEmpty() == false) {
+      try {
+        processJobs(jobs);
+      } catch (final Exception ex) {
+        // Don't stop the worker if any exception while re-indexing occurs.
+        log.error("Exception encountered while re-indexing dependent objects: " + ex.getMessage(), ex);
+      }
+      processedCounter.addAndGet(jobs.size());
+    }
+    return true;
+  }
+
+  /**
+   * The queue is full: re-indexes the (newest) pending job of the given key by the calling thread.
+   */
+  private void reindexSynchronously(final String key)
+  {
+    final Job job = pendingJobs.remove(key);
+    if (job == null) {
+      return;
+    }
+    final long counter = synchronousCounter.incrementAndGet();
+    if (counter == 1 || counter % 1000 == 0) {
+      log.warn("Re-indexing queue is full (" + maxQueueSize + " jobs), re-indexing synchronously (" + counter + " times since start-up).");
+    }
+    try {
+      processJobs(Collections.singletonList(job));
+    } catch (final Exception ex) {
+      log.error("Exception encountered while re-indexing dependent objects: " + ex.getMessage(), ex);
+    }
+    processedCounter.incrementAndGet();
+  }
+
+  private void logStatistics()
+  {
+    lastStatisticsLog = System.currentTimeMillis();
+    log.info("Re-indexing statistics: processed="
+        + processedCounter.get()
+        + ", coalesced="
+        + coalescedCounter.get()
+        + ", synchronous="
+        + synchronousCounter.get()
+        + ", queue size="
+        + getQueueSize()
+        + ", last lag="
+        + lastLag
+        + "ms, max lag="
+        + maxLag
+        + "ms.");
+  }
+
+  /**
+   * All jobs of one batch share one session and one set of already re-indexed objects.
+   */
+  void processJobs(final List<Job> jobs)
+  {
+    final long begin = System.currentTimeMillis();
+    final SessionFactory sessionFactory = jobs.get(0).sessionFactory;
+    final HibernateTemplate template = new HibernateTemplate(sessionFactory);
+    final Session session = sessionFactory.openSession();
+    final Set<String> alreadyReindexed = new HashSet<String>();
+    try {
+      for (final Job job : jobs) {
+        final List<Entry> entryList = map.get(job.obj.getClass());
+        reindexDependents(template, session, job.obj, entryList, alreadyReindexed);
+      }
+      Search.getFullTextSession(session).flushToIndexes();
+    } finally {
+      session.close();
+    }
+    final int size = alreadyReindexed.size();
+    if (size >= 10) {
+      log.info("Re-indexing of "
+          + size
+          + " objects done after updating "
+          + jobs.size()
+          + " object(s) in "
+          + (System.currentTimeMillis() - begin)
+          + "ms (queue size: "
+          + getQueueSize()
+          + ", lag: "
+          + lastLag
+          + "ms): "
+          + getReindexId(jobs.get(0).obj)
+          + (jobs.size() > 1 ? ", ..." : ""));
+    }
   }
 
   private void reindexDependents(final HibernateTemplate hibernateTemplate, final Session session, final BaseDO< ? > obj,
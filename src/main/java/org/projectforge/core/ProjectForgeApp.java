@@ -23,11 +23,21 @@
 
 package org.projectforge.core;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import net.fortuna.ical4j.util.CompatibilityHints;
 
 import org.projectforge.AppVersion;
+import org.projectforge.common.AbstractCache;
 import org.projectforge.common.Logger;
 import org.projectforge.common.LoggerBridgeLog4j;
 import org.projectforge.continuousdb.DatabaseSupport;
@@ -38,11 +48,16 @@ import org.projectforge.database.InitDatabaseDao;
 import org.projectforge.database.MyDatabaseUpdateDao;
 import org.projectforge.database.MyDatabaseUpdater;
 import org.projectforge.export.MyXlsExportContext;
+import org.projectforge.fibu.KontoCache;
+import org.projectforge.fibu.RechnungCache;
+import org.projectforge.fibu.kost.KostCache;
 import org.projectforge.plugins.core.AbstractPlugin;
 import org.projectforge.plugins.core.PluginsRegistry;
 import org.projectforge.registry.DaoRegistry;
 import org.projectforge.storage.StorageClient;
+import org.projectforge.task.TaskTree;
 import org.projectforge.user.PFUserContext;
+import org.projectforge.user.UserGroupCache;
 import org.projectforge.user.UserXmlPreferencesCache;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
@@ -58,10 +73,26 @@ public class ProjectForgeApp
 
   private static ProjectForgeApp instance;
 
-  private boolean upAndRunning;
+  static final String WARM_UP_THREAD_NAME_PREFIX = "ProjectForgeApp-warmUp-";
+
+  /**
+   * While waiting for the warm-up, the caches not yet finished are logged after this time.
+   */
+  private static final long WARM_UP_WARNING_INTERVAL = 60 * 1000; // 60 s
+
+  private volatile boolean upAndRunning;
 
   private final long startTime = System.currentTimeMillis();
 
+  private final StartupTimer startupTimer = new StartupTimer(startTime);
+
+  /**
+   * Name of the warm-up thread -> future of the warm-up.
+   */
+  private Map<String, Future< ? >> cacheWarmUpFutures;
+
+  private long cacheWarmUpStartTime;
+
   private Configuration configuration;
 
   private ConfigurationDao configurationDao;
@@ -78,6 +109,16 @@ public class ProjectForgeApp
 
   private UserXmlPreferencesCache userXmlPreferencesCache;
 
+  private TaskTree taskTree;
+
+  private UserGroupCache userGroupCache;
+
+  private KostCache kostCache;
+
+  private KontoCache kontoCache;
+
+  private RechnungCache rechnungCache;
+
   private SystemInfoCache systemInfoCache;
 
   private PluginsRegistry pluginsRegistry;
@@ -113,10 +154,12 @@ public class ProjectForgeApp
   /**
    * Should be called on start-up (e. g. by WicketApplication) if all start-up stuff is done and all the services and login should be
    * started. <br>
-   * Flag upAndRunning will be set to true.
+   * Flag upAndRunning will be set to true after the warm-up of the caches is finished.
+   * @see #startCacheWarmUp()
    */
   public void finalizeInitialization()
   {
+    final long start = System.currentTimeMillis();
     cronSetup.initialize();
     log.info("system cronJobs are initialized.");
     pluginsRegistry.registerCronJobs(cronSetup);
@@ -131,8 +174,110 @@ public class ProjectForgeApp
     CompatibilityHints.setHintEnabled(CompatibilityHints.KEY_RELAXED_PARSING, true);
     CompatibilityHints.setHintEnabled(CompatibilityHints.KEY_RELAXED_UNFOLDING, true);
     CompatibilityHints.setHintEnabled(CompatibilityHints.KEY_RELAXED_VALIDATION, true);
+    startupTimer.addPhase("finalizeInitialization", start);
+    setUpAndRunningAfterWarmUp();
+  }
+
+  /**
+   * Waits for the warm-up of the caches and sets the flag upAndRunning. Caches failing to warm up don't block this method.
+   */
+  void setUpAndRunningAfterWarmUp()
+  {
+    awaitCacheWarmUp();
     this.upAndRunning = true;
     log.info("ProjectForge is now available (up and running).");
+    log.info(startupTimer.getReport());
+  }
+
+  /**
+   * Refreshes the independent caches concurrently, so the first users after start-up don't have to wait for the initialization of the
+   * caches. Should be called after the data-base is up-to-date. Calling this method more than once has no effect.<br/>
+   * Every cache is warmed up by its own daemon thread named {@link #WARM_UP_THREAD_NAME_PREFIX} + the class name of the cache.
+   * @see #finalizeInitialization()
+   */
+  public synchronized void startCacheWarmUp()
+  {
+    if (cacheWarmUpFutures != null) {
+      return;
+    }
+    cacheWarmUpStartTime = System.currentTimeMillis();
+    cacheWarmUpFutures = new LinkedHashMap<String, Future< ? >>();
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (final AbstractCache cache : getCachesToWarmUp()) {
+      if (cache == null) {
+        continue;
+      }
+      final String name = cache.getClass().getSimpleName();
+      final FutureTask<Object> task = new FutureTask<Object>(new Runnable() {
+        @Override
+        public void run()
+        {
+          final long start = System.currentTimeMillis();
+          try {
+            cache.warmUp();
+          } catch (final Throwable ex) {
+            log.error("Error while warming up " + name + ": " + ex.getMessage(), ex);
+          }
+          startupTimer.addPhase("warmUp." + name, start);
+        }
+      }, null);
+      final Thread thread = new Thread(task, WARM_UP_THREAD_NAME_PREFIX + name);
+      thread.setDaemon(true);
+      cacheWarmUpFutures.put(thread.getName(), task);
+      threads.add(thread);
+    }
+    if (threads.isEmpty() == true) {
+      return;
+    }
+    log.info("Warming up " + threads.size() + " caches...");
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+  }
+
+  /**
+   * @return The caches to warm up on start-up, entries may be null.
+   */
+  AbstractCache[] getCachesToWarmUp()
+  {
+    return new AbstractCache[] { taskTree, userGroupCache, kostCache, kontoCache, rechnungCache};
+  }
+
+  private void awaitCacheWarmUp()
+  {
+    startCacheWarmUp();
+    final Map<String, Future< ? >> futures;
+    synchronized (this) {
+      futures = cacheWarmUpFutures;
+    }
+    for (final Map.Entry<String, Future< ? >> entry : futures.entrySet()) {
+      while (true) {
+        try {
+          entry.getValue().get(WARM_UP_WARNING_INTERVAL, TimeUnit.MILLISECONDS);
+          break;
+        } catch (final TimeoutException ex) {
+          log.warn("Still waiting for the warm-up of the caches, thread '" + entry.getKey() + "' isn't finished yet.");
+        } catch (final InterruptedException ex) {
+          log.warn("Interrupted while waiting for the warm-up of the caches.");
+          Thread.currentThread().interrupt();
+          startupTimer.addPhase("cacheWarmUp", cacheWarmUpStartTime);
+          return;
+        } catch (final ExecutionException ex) {
+          // Shouldn't occur, exceptions are caught by the warm-up tasks.
+          log.error("Error in thread '" + entry.getKey() + "': " + ex.getMessage(), ex);
+          break;
+        }
+      }
+    }
+    startupTimer.addPhase("cacheWarmUp", cacheWarmUpStartTime);
+  }
+
+  /**
+   * @return The timer for registering and reporting the durations of the start-up phases.
+   */
+  public StartupTimer getStartupTimer()
+  {
+    return startupTimer;
   }
 
   private void internalInit(final ConfigurableListableBeanFactory beanFactory, final org.hibernate.cfg.Configuration hibernateConfiguration)
@@ -201,6 +346,7 @@ public class ProjectForgeApp
 
     configuration.setConfigurationDao(configurationDao);
     SystemInfoCache.internalInitialize(systemInfoCache);
+    startupTimer.addPhase("ProjectForgeApp.init", startTime);
 
   }
 
@@ -209,8 +355,10 @@ public class ProjectForgeApp
     log.info("Shutdown...");
     upAndRunning = false;
     log.info("Syncing all user preferences to database.");
-    userXmlPreferencesCache.forceReload();
+    userXmlPreferencesCache.shutdown();
+    taskTree.shutdown();
     cronSetup.shutdown();
+    HibernateSearchDependentObjectsReindexer.getSingleton().shutdown();
     try {
       PFUserContext.setUser(MyDatabaseUpdateDao.__internalGetSystemAdminPseudoUser());
       myDatabaseUpdater.getDatabaseUpdateDao().shutdownDatabase();
@@ -284,6 +432,31 @@ public class ProjectForgeApp
     this.systemInfoCache = systemInfoCache;
   }
 
+  public void setTaskTree(final TaskTree taskTree)
+  {
+    this.taskTree = taskTree;
+  }
+
+  public void setUserGroupCache(final UserGroupCache userGroupCache)
+  {
+    this.userGroupCache = userGroupCache;
+  }
+
+  public void setKostCache(final KostCache kostCache)
+  {
+    this.kostCache = kostCache;
+  }
+
+  public void setKontoCache(final KontoCache kontoCache)
+  {
+    this.kontoCache = kontoCache;
+  }
+
+  public void setRechnungCache(final RechnungCache rechnungCache)
+  {
+    this.rechnungCache = rechnungCache;
+  }
+
   /**
    * @return the startTime
    */
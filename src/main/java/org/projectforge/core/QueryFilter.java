@@ -49,6 +49,10 @@ public class QueryFilter
 
   private int maxResults = -1;
 
+  private int firstResult = -1;
+
+  private List<Order> sortOrders;
+
   private String name;
 
   private String alias;
@@ -157,6 +161,21 @@ public class QueryFilter
     return this;
   }
 
+  /**
+   * Sort orders added by this method are applied before all orders added by {@link #addOrder(Order)}. This is use-full for data base
+   * side sorting of list pages: the column sort order chosen by the user dominates the default order of the dao.
+   * @param order
+   * @return
+   */
+  public QueryFilter addSortOrder(final Order order)
+  {
+    if (sortOrders == null) {
+      sortOrders = new ArrayList<Order>();
+    }
+    sortOrders.add(order);
+    return this;
+  }
+
   public void setFetchMode(final String associationPath, final FetchMode mode)
   {
     this.associationPath = associationPath;
@@ -201,13 +220,38 @@ public class QueryFilter
     return criteria;
   }
 
+  /**
+   * Builds a criteria object without any order and result limits. Use this for projections such as row counts.
+   * @param session
+   * @param clazz
+   * @return
+   */
+  public Criteria buildCountCriteria(final Session session, final Class< ? > clazz)
+  {
+    final Criteria criteria = session.createCriteria(clazz);
+    buildCriteria(criteria, true);
+    return criteria;
+  }
+
   private void buildCriteria(final Criteria criteria)
   {
+    buildCriteria(criteria, false);
+  }
+
+  private void buildCriteria(final Criteria criteria, final boolean countOnly)
+  {
+    if (countOnly == false && sortOrders != null) {
+      for (final Order order : sortOrders) {
+        criteria.addOrder(order);
+      }
+    }
     for (final Object obj : filterSettings) {
       if (obj instanceof Criterion) {
         criteria.add((Criterion) obj);
       } else if (obj instanceof Order) {
-        criteria.addOrder((Order) obj);
+        if (countOnly == false) {
+          criteria.addOrder((Order) obj);
+        }
       } else if (obj instanceof Alias) {
         final Alias alias = (Alias) obj;
         criteria.createAlias(alias.arg0, alias.arg1, alias.joinType);
@@ -219,12 +263,18 @@ public class QueryFilter
         } else {
           subCriteria = criteria.createCriteria(filter.getName(), filter.getAlias());
         }
-        filter.buildCriteria(subCriteria);
+        filter.buildCriteria(subCriteria, countOnly);
       }
     }
+    if (countOnly == true) {
+      return;
+    }
     if (associationPath != null) {
       criteria.setFetchMode(associationPath, fetchMode);
     }
+    if (firstResult > 0) {
+      criteria.setFirstResult(firstResult);
+    }
     if (maxResults > 0) {
       criteria.setMaxResults(maxResults);
     }
@@ -279,6 +329,22 @@ public class QueryFilter
     return maxResults;
   }
 
+  /**
+   * @see org.hibernate.Criteria#setFirstResult(int)
+   * @param value
+   * @return
+   */
+  public QueryFilter setFirstResult(final int value)
+  {
+    this.firstResult = value;
+    return this;
+  }
+
+  public int getFirstResult()
+  {
+    return firstResult;
+  }
+
   class Alias
   {
     String arg0;
@@ -0,0 +1,237 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.HibernateException;
+import org.hibernate.LockOptions;
+import org.hibernate.NonUniqueObjectException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+import org.springframework.orm.hibernate3.SessionFactoryUtils;
+import org.springframework.orm.hibernate3.SessionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs the searches of the different areas (e. g. of the SearchPage) concurrently by a bounded thread pool. Every search runs in its own
+ * Hibernate session with the user of the caller. The results should be get by {@link #getResult(Future)}, the data objects are re-attached
+ * to the session of the caller (needed for lazy loading while rendering the results).
+ */
+public class SearchService
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(SearchService.class);
+
+  private static final int DEFAULT_NUMBER_OF_THREADS = 4;
+
+  private static final int MAX_QUEUE_SIZE = 200;
+
+  private static final long DEFAULT_AREA_TIMEOUT = 30 * 1000; // 30 s
+
+  private SearchDao searchDao;
+
+  private SessionFactory sessionFactory;
+
+  private int numberOfThreads = DEFAULT_NUMBER_OF_THREADS;
+
+  private long areaTimeout = DEFAULT_AREA_TIMEOUT;
+
+  private int maxQueueSize = MAX_QUEUE_SIZE;
+
+  private ThreadPoolExecutor executor;
+
+  /**
+   * Starts the search of the given area. If the queue of the thread pool is full, the search is done synchronously.
+   * @see SearchDao#getEntries(BaseSearchFilter, Class, BaseDao)
+   */
+  @SuppressWarnings("rawtypes")
+  public Future<List<SearchResultData>> submit(final BaseSearchFilter filter, final Class< ? > clazz, final BaseDao baseDao)
+  {
+    final PFUserDO user = PFUserContext.getUser();
+    return getExecutor().submit(new Callable<List<SearchResultData>>() {
+      @Override
+      public List<SearchResultData> call() throws Exception
+      {
+        return search(user, filter, clazz, baseDao);
+      }
+    });
+  }
+
+  /**
+   * Waits for the result of the given search (maximum areaTimeout) and re-attaches the found objects to the session of the current thread.
+   * @param future
+   * @return The search result or null if an error occured.
+   * @throws TimeoutException if the search didn't finish in time (the search will be cancelled).
+   */
+  public List<SearchResultData> getResult(final Future<List<SearchResultData>> future) throws TimeoutException
+  {
+    final List<SearchResultData> result;
+    try {
+      result = future.get(areaTimeout, TimeUnit.MILLISECONDS);
+    } catch (final TimeoutException ex) {
+      future.cancel(true);
+      log.warn("Search cancelled after " + areaTimeout + "ms.");
+      throw ex;
+    } catch (final InterruptedException ex) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (final ExecutionException ex) {
+      log.error("Exception encountered while searching: " + ex.getCause(), ex.getCause());
+      return null;
+    }
+    if (result != null && TransactionSynchronizationManager.hasResource(sessionFactory) == true) {
+      final Session session = SessionFactoryUtils.getSession(sessionFactory, false);
+      for (final SearchResultData data : result) {
+        if (data.dataObject != null) {
+          data.dataObject = reattach(session, data.dataObject);
+        }
+      }
+    }
+    return result;
+  }
+
+  @SuppressWarnings("rawtypes")
+  private List<SearchResultData> search(final PFUserDO user, final BaseSearchFilter filter, final Class< ? > clazz, final BaseDao baseDao)
+  {
+    if (TransactionSynchronizationManager.hasResource(sessionFactory) == true) {
+      // Executed by the caller thread (pool is exhausted), the session of the caller is already bound:
+      return searchDao.getEntries(filter, clazz, baseDao);
+    }
+    // The caller thread (pool is exhausted) without bound session keeps its user:
+    final PFUserDO previousUser = PFUserContext.getUser();
+    final Session session = SessionFactoryUtils.getSession(sessionFactory, true);
+    TransactionSynchronizationManager.bindResource(sessionFactory, new SessionHolder(session));
+    try {
+      PFUserContext.setUser(user);
+      return searchDao.getEntries(filter, clazz, baseDao);
+    } finally {
+      PFUserContext.setUser(previousUser);
+      TransactionSynchronizationManager.unbindResource(sessionFactory);
+      SessionFactoryUtils.closeSession(session);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private ExtendedBaseDO<Integer> reattach(final Session session, final ExtendedBaseDO<Integer> obj)
+  {
+    try {
+      session.buildLockRequest(LockOptions.NONE).lock(obj);
+    } catch (final NonUniqueObjectException ex) {
+      // Object is already part of the caller's session:
+      final Object persistentObj = session.get(obj.getClass(), obj.getId());
+      if (persistentObj != null) {
+        return (ExtendedBaseDO<Integer>) persistentObj;
+      }
+    } catch (final HibernateException ex) {
+      log.warn("Can't re-attach object " + obj.getClass().getName() + " #" + obj.getId() + ": " + ex.getMessage());
+    }
+    return obj;
+  }
+
+  private synchronized ThreadPoolExecutor getExecutor()
+  {
+    if (executor == null) {
+      final AtomicInteger counter = new AtomicInteger();
+      executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+          maxQueueSize), new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "SearchService-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      }, new ThreadPoolExecutor.CallerRunsPolicy());
+      executor.allowCoreThreadTimeOut(true);
+    }
+    return executor;
+  }
+
+  /**
+   * Stops the thread pool. Running searches are interrupted.
+   */
+  public synchronized void shutdown()
+  {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * @return the number of searches currently running or waiting.
+   */
+  public int getNumberOfPendingSearches()
+  {
+    final ThreadPoolExecutor ex = executor;
+    return ex != null ? ex.getActiveCount() + ex.getQueue().size() : 0;
+  }
+
+  /**
+   * Only for tests: must be set before the first search.
+   * @param maxQueueSize Maximum number of waiting searches, further searches are done by the caller.
+   */
+  void setMaxQueueSize(final int maxQueueSize)
+  {
+    this.maxQueueSize = maxQueueSize;
+  }
+
+  public void setSearchDao(final SearchDao searchDao)
+  {
+    this.searchDao = searchDao;
+  }
+
+  public void setSessionFactory(final SessionFactory sessionFactory)
+  {
+    this.sessionFactory = sessionFactory;
+  }
+
+  /**
+   * @param numberOfThreads Maximum number of concurrent searches (default is 4).
+   */
+  public void setNumberOfThreads(final int numberOfThreads)
+  {
+    this.numberOfThreads = numberOfThreads;
+  }
+
+  /**
+   * @param areaTimeout Maximum duration of the search of one area in milliseconds (default is 30s).
+   */
+  public void setAreaTimeout(final long areaTimeout)
+  {
+    this.areaTimeout = areaTimeout;
+  }
+}
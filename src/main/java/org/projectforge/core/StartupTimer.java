@@ -0,0 +1,80 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the durations of the start-up phases (also of phases running concurrently) for a timing report, so regressions of the cold start
+ * can be tracked in the log files.
+ */
+public class StartupTimer
+{
+  private final long startTime;
+
+  private final Map<String, Long> durations = new LinkedHashMap<String, Long>();
+
+  /**
+   * @param startTime Start of the start-up (used for the total duration of the report).
+   */
+  public StartupTimer(final long startTime)
+  {
+    this.startTime = startTime;
+  }
+
+  /**
+   * Registers the phase as finished now.
+   * @param phase Name of the phase.
+   * @param phaseStartTime Start time of the phase in ms.
+   * @return this for chaining.
+   */
+  public synchronized StartupTimer addPhase(final String phase, final long phaseStartTime)
+  {
+    durations.put(phase, System.currentTimeMillis() - phaseStartTime);
+    return this;
+  }
+
+  /**
+   * @return The duration of the given phase in ms or null if not (yet) finished.
+   */
+  public synchronized Long getDuration(final String phase)
+  {
+    return durations.get(phase);
+  }
+
+  /**
+   * @return The durations of all finished phases in the order of their completion and the total time since start.
+   */
+  public synchronized String getReport()
+  {
+    final StringBuffer buf = new StringBuffer();
+    buf.append("Start-up timing:");
+    for (final Map.Entry<String, Long> entry : durations.entrySet()) {
+      buf.append(" ").append(entry.getKey()).append("=").append(entry.getValue()).append("ms,");
+    }
+    buf.append(" total=").append(System.currentTimeMillis() - startTime).append("ms.");
+    return buf.toString();
+  }
+}
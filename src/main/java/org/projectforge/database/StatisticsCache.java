@@ -44,7 +44,7 @@ public class StatisticsCache extends AbstractCache
   private static Logger log = Logger.getLogger(StatisticsCache.class);
 
   /** The key is the entity class and the value the number of entries in the table. */
-  private Map<Class< ? extends BaseDO< ? >>, Integer> numberOfEntitiesMap;
+  private volatile Map<Class< ? extends BaseDO< ? >>, Integer> numberOfEntitiesMap;
 
   private DataSource dataSource;
 
@@ -65,17 +65,19 @@ public class StatisticsCache extends AbstractCache
   protected void refresh()
   {
     log.info("Initializing StatisticsCache ...");
-    numberOfEntitiesMap = new HashMap<Class< ? extends BaseDO< ? >>, Integer>();
+    // This method must not be synchronized because it works with a new copy of maps.
+    final Map<Class< ? extends BaseDO< ? >>, Integer> map = new HashMap<Class< ? extends BaseDO< ? >>, Integer>();
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
     for (final RegistryEntry registryEntry : Registry.instance().getOrderedList()) {
       try {
         final int number = jdbc.queryForInt("SELECT COUNT(*) FROM " + HibernateUtils.getDBTableName(registryEntry.getDOClass()));
-        numberOfEntitiesMap.put(registryEntry.getDOClass(), number);
+        map.put(registryEntry.getDOClass(), number);
       } catch (final Exception ex) {
         log.error(ex.getMessage(), ex);
         continue;
       }
     }
+    this.numberOfEntitiesMap = map;
     log.info("Initializing of StatisticsCache done.");
   }
 }
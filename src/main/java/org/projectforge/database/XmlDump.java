@@ -62,12 +62,16 @@ import org.hibernate.Hibernate;
 import org.hibernate.LockOptions;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.HibernateProxyHelper;
 import org.projectforge.access.AccessEntryDO;
 import org.projectforge.access.GroupTaskAccessDO;
 import org.projectforge.common.BeanHelper;
 import org.projectforge.common.XStreamHelper;
 import org.projectforge.core.AbstractBaseDO;
 import org.projectforge.core.ConfigurationDO;
+import org.projectforge.database.xstream.EntityIdReferenceUnmarshaller;
 import org.projectforge.database.xstream.HibernateXmlConverter;
 import org.projectforge.database.xstream.XStreamSavingConverter;
 import org.projectforge.fibu.AbstractRechnungDO;
@@ -98,6 +102,8 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.orm.hibernate3.HibernateTemplate;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.xml.XppDriver;
 
 import de.micromata.hibernate.history.HistoryEntry;
 
@@ -112,6 +118,16 @@ public class XmlDump
 
   private static final String XML_DUMP_FILENAME = System.getProperty("user.home") + "/tmp/database-dump.xml.gz";
 
+  /**
+   * The session used for dumping the data-base is cleared after this number of objects.
+   */
+  private static final int DUMP_BATCH_SIZE = 500;
+
+  /**
+   * The restored objects are saved and the session is flushed and cleared after this number of top level elements.
+   */
+  private static final int RESTORE_BATCH_SIZE = 500;
+
   private HibernateTemplate hibernate;
 
   private final List<XmlDumpHook> xmlDumpHooks = new LinkedList<XmlDumpHook>();
@@ -161,10 +177,25 @@ public class XmlDump
   }
 
   /**
+   * The restored objects aren't retained (bounded memory), therefore {@link #verifyDump(XStreamSavingConverter)} verifies the numbers of
+   * restored objects.
    * @param reader
-   * @return Only for test cases.
+   * @return The converter for {@link #verifyDump(XStreamSavingConverter)}.
    */
   public XStreamSavingConverter restoreDatabase(final Reader reader)
+  {
+    return restoreDatabase(reader, RESTORE_BATCH_SIZE, false);
+  }
+
+  /**
+   * The dump is read element by element with a pull parser and the objects are saved in batches.
+   * @param reader
+   * @param batchSize The objects are saved and the session is flushed and cleared after this number of top level elements.
+   * @param retainObjects If true, all restored objects are kept by the returned converter for {@link #verifyDump(XStreamSavingConverter)}.
+   *          Should be false for large data-bases.
+   * @return Only for test cases.
+   */
+  public XStreamSavingConverter restoreDatabase(final Reader reader, final int batchSize, final boolean retainObjects)
   {
     final List<AbstractPlugin> plugins = PluginsRegistry.instance().getPlugins();
     final XStreamSavingConverter xstreamSavingConverter = new XStreamSavingConverter() {
@@ -178,7 +209,9 @@ public class XmlDump
       @Override
       public Serializable onBeforeSave(final Session session, final Object obj)
       {
-        log.info("Object " + obj);
+        if (log.isDebugEnabled() == true) {
+          log.debug("Object " + obj);
+        }
         if (obj instanceof PFUserDO) {
           final PFUserDO user = (PFUserDO) obj;
           return save(user, user.getRights());
@@ -252,6 +285,7 @@ public class XmlDump
         }
       }
     };
+    xstreamSavingConverter.setRetainObjects(retainObjects);
     // UserRightDO is inserted on cascade while inserting PFUserDO.
     xstreamSavingConverter.appendIgnoredObjects(embeddedClasses);
     xstreamSavingConverter.appendOrderedType(PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class, ProjektDO.class, Kost1DO.class,
@@ -270,15 +304,27 @@ public class XmlDump
       session = sessionFactory.openSession(EmptyInterceptor.INSTANCE);
       session.setFlushMode(FlushMode.AUTO);
       final XStream xstream = XStreamHelper.createXStream();
-      xstream.setMode(XStream.ID_REFERENCES);
       xstreamSavingConverter.setSession(session);
       xstream.registerConverter(xstreamSavingConverter, 10);
       xstream.registerConverter(new UserRightIdSingleValueConverter(), 20);
       xstream.registerConverter(new UserPrefAreaSingleValueConverter(), 19);
+      final HierarchicalStreamReader xmlReader = new XppDriver().createReader(reader);
+      final EntityIdReferenceUnmarshaller unmarshaller = new EntityIdReferenceUnmarshaller(xmlReader, xstream.getConverterLookup(),
+          xstream.getMapper());
+      unmarshaller.setSession(session);
+      final long begin = System.currentTimeMillis();
+      int counter = 0;
       // alle Objekte Laden und speichern
-      xstream.fromXML(reader);
-
-      xstreamSavingConverter.saveObjects();
+      while (unmarshaller.hasNextListElement() == true) {
+        unmarshaller.nextListElement();
+        if (++counter % batchSize == 0) {
+          saveBatch(session, xstreamSavingConverter, unmarshaller);
+          logRestoreProgress(counter, xstreamSavingConverter, unmarshaller, begin);
+        }
+      }
+      saveBatch(session, xstreamSavingConverter, unmarshaller);
+      logRestoreProgress(counter, xstreamSavingConverter, unmarshaller, begin);
+      xmlReader.close();
     } catch (final Exception ex) {
       log.error(ex.getMessage(), ex);
       throw new RuntimeException(ex);
@@ -291,6 +337,34 @@ public class XmlDump
     return xstreamSavingConverter;
   }
 
+  private void saveBatch(final Session session, final XStreamSavingConverter xstreamSavingConverter,
+      final EntityIdReferenceUnmarshaller unmarshaller)
+  {
+    xstreamSavingConverter.saveObjects();
+    session.flush();
+    // The saved objects are referenced by the following elements only by their ids:
+    unmarshaller.compact(session);
+    session.clear();
+  }
+
+  private void logRestoreProgress(final int counter, final XStreamSavingConverter xstreamSavingConverter,
+      final EntityIdReferenceUnmarshaller unmarshaller, final long begin)
+  {
+    final long duration = System.currentTimeMillis() - begin;
+    final int saved = xstreamSavingConverter.getSavedObjectsCounter();
+    log.info("Restored "
+        + counter
+        + " elements, "
+        + saved
+        + " objects saved in "
+        + duration
+        + "ms ("
+        + (duration > 0 ? saved * 1000L / duration : saved)
+        + " objects/s, "
+        + unmarshaller.getSize()
+        + " ids registered).");
+  }
+
   /**
    * @return Only for test cases.
    */
@@ -319,7 +393,7 @@ public class XmlDump
   }
 
   /**
-   * 
+   * The objects are streamed entity by entity, so the dump doesn't need to hold the whole data-base in memory.
    * @param filename virtual filename: If the filename suffix is "gz" then the dump will be compressed.
    * @param out
    */
@@ -346,7 +420,7 @@ public class XmlDump
       } else {
         writer = new OutputStreamWriter(out, "utf-8");
       }
-      converter.dumpDatabaseToXml(writer, true); // history=false, preserveIds=true
+      converter.streamDatabaseToXml(writer, true, DUMP_BATCH_SIZE); // history=true, preserveIds=true
     } catch (final IOException ex) {
       log.error(ex.getMessage(), ex);
     } finally {
@@ -369,11 +443,15 @@ public class XmlDump
   }
 
   /**
-   * Verify the imported dump.
+   * Verify the imported dump. If the converter retained the restored objects, every object is compared with the data-base entry, otherwise
+   * the number of data-base entries of every restored type is checked.
    * @return Number of checked objects. This number is negative if any error occurs (at least one object wasn't imported successfully).
    */
   public int verifyDump(final XStreamSavingConverter xstreamSavingConverter)
   {
+    if (xstreamSavingConverter.isRetainObjects() == false) {
+      return verifyDumpByCounts(xstreamSavingConverter);
+    }
     final SessionFactory sessionFactory = hibernate.getSessionFactory();
     Session session = null;
     boolean hasError = false;
@@ -437,6 +515,55 @@ public class XmlDump
     }
   }
 
+  /**
+   * The dump is restored into an empty data-base, so every restored type must have at least as many data-base entries as objects of this
+   * type (and of its sub types) were restored.
+   * @return Number of checked objects. This number is negative if any object wasn't imported successfully.
+   */
+  private int verifyDumpByCounts(final XStreamSavingConverter xstreamSavingConverter)
+  {
+    final SessionFactory sessionFactory = hibernate.getSessionFactory();
+    Session session = null;
+    boolean hasError = false;
+    if (xstreamSavingConverter.getFailedObjectsCounter() > 0) {
+      log.error(xstreamSavingConverter.getFailedObjectsCounter() + " objects couldn't be imported.");
+      hasError = true;
+    }
+    try {
+      session = sessionFactory.openSession(EmptyInterceptor.INSTANCE);
+      session.setDefaultReadOnly(true);
+      final Map<Class< ? >, Integer> counters = xstreamSavingConverter.getRegisteredObjectsCounters();
+      int counter = 0;
+      for (final Class< ? > entityClass : counters.keySet()) {
+        int expected = 0;
+        for (final Map.Entry<Class< ? >, Integer> entry : counters.entrySet()) {
+          if (entityClass.isAssignableFrom(entry.getKey()) == true) {
+            expected += entry.getValue();
+          }
+        }
+        final Number found = (Number) session.createCriteria(entityClass).setProjection(Projections.rowCount()).uniqueResult();
+        if (found == null || found.intValue() < expected) {
+          log.error("Objects not sucessfully imported! " + expected + " objects of type " + entityClass.getName() + " expected, but only "
+              + found + " found in the data base.");
+          hasError = true;
+        }
+        counter += counters.get(entityClass);
+      }
+      if (hasError == true) {
+        log.fatal("*********** A inconsistency in the import was found! This may result in a data loss or corrupted data! Please retry the import. "
+            + counter
+            + " entries checked.");
+        return -counter;
+      }
+      log.info("Data-base import successfully verified: " + counter + " entries checked.");
+      return counter;
+    } finally {
+      if (session != null) {
+        session.close();
+      }
+    }
+  }
+
   /**
    * @param o1
    * @param o2
@@ -457,6 +584,10 @@ public class XmlDump
       }
       return false;
     }
+    if (o1 instanceof HibernateProxy && Hibernate.isInitialized(o1) == false) {
+      // Entity restored in a previous batch (only referenced by its id):
+      return ObjectUtils.equals(HibernateUtils.getIdentifier(o1), HibernateUtils.getIdentifier(o2));
+    }
     final Class< ? > cls1 = o1.getClass();
     final Field[] fields = cls1.getDeclaredFields();
     AccessibleObject.setAccessible(fields, true);
@@ -513,7 +644,7 @@ public class XmlDump
           if (equals(field, col1, col2, logDifference) == false || equals(field, col2, col1, logDifference) == false) {
             return false;
           }
-        } else if (HibernateUtils.isEntity(fieldValue1.getClass()) == true) {
+        } else if (HibernateUtils.isEntity(HibernateProxyHelper.getClassWithoutInitializingProxy(fieldValue1)) == true) {
           if (fieldValue2 == null
               || ObjectUtils.equals(HibernateUtils.getIdentifier(fieldValue1), HibernateUtils.getIdentifier(fieldValue2)) == false) {
             if (logDifference == true) {
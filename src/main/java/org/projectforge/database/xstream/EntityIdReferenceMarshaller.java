@@ -0,0 +1,298 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.xstream;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.EntityMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.ConverterLookup;
+import com.thoughtworks.xstream.core.TreeMarshaller;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Marshals a list of objects element by element in the format of XStream's id references (XStream.ID_REFERENCES). In contrast to
+ * XStream's reference marshallers the Hibernate entities are referenced by their entity name and primary key and not by their object
+ * identity. So the marshalled objects don't need to be held in memory and the session may be cleared between the elements. The XStream id
+ * of an entity is derived from its entity name and primary key (e. g. "e3-42"), so only the primary keys of the written entities are held
+ * (as bit set for integer keys). Non entity objects are referenced by identity inside one top level element only.<br/>
+ * The primary keys of the entities are needed, therefore this marshaller doesn't support the nullifying of the ids.
+ */
+public class EntityIdReferenceMarshaller extends TreeMarshaller
+{
+  private static final String ATTRIBUTE_ID = "id";
+
+  private static final String ATTRIBUTE_REFERENCE = "reference";
+
+  /**
+   * Attribute of the root element: the value {@link #REFERENCE_SCOPE_ELEMENT} marks lists with non entity objects referenced inside their
+   * top level element only.
+   */
+  static final String ATTRIBUTE_REFERENCE_SCOPE = "referenceScope";
+
+  static final String REFERENCE_SCOPE_ELEMENT = "element";
+
+  private static final String ENTITY_ID_PREFIX = "e";
+
+  private final SessionFactory sessionFactory;
+
+  /**
+   * Root entity name -> primary keys of the written entities.
+   */
+  private final Map<String, WrittenIds> writtenIds = new HashMap<String, WrittenIds>();
+
+  /**
+   * Root entity name -> prefix of the XStream ids of its entities.
+   */
+  private final Map<String, String> entityIdPrefixes = new HashMap<String, String>();
+
+  /**
+   * Contains the root entity names of the classes or null for non entity classes.
+   */
+  private final Map<Class< ? >, String> rootEntityNames = new HashMap<Class< ? >, String>();
+
+  /**
+   * References of non entity objects of the current top level element.
+   */
+  private final Map<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+
+  private int nextId = 1;
+
+  private int numberOfEntities;
+
+  private boolean listStarted;
+
+  public EntityIdReferenceMarshaller(final HierarchicalStreamWriter writer, final ConverterLookup converterLookup, final Mapper mapper,
+      final SessionFactory sessionFactory)
+  {
+    super(writer, converterLookup, mapper);
+    this.sessionFactory = sessionFactory;
+  }
+
+  /**
+   * Writes the start node of the list (the root element).
+   */
+  public void startList()
+  {
+    writer.startNode(getMapper().serializedClass(ArrayList.class));
+    writer.addAttribute(ATTRIBUTE_ID, String.valueOf(nextId++));
+    writer.addAttribute(ATTRIBUTE_REFERENCE_SCOPE, REFERENCE_SCOPE_ELEMENT);
+    listStarted = true;
+  }
+
+  /**
+   * Marshals the given object as element of the list. Objects already written (e. g. as part of a previous element) are skipped.
+   * @param item
+   * @return true if the item was written, false if skipped.
+   */
+  public boolean marshalListElement(final Object item)
+  {
+    if (listStarted == false) {
+      throw new IllegalStateException("Please call startList() first.");
+    }
+    final Object obj = getImplementation(item);
+    final String entityName = getRootEntityName(obj.getClass());
+    if (entityName != null && isWritten(entityName, getIdentifier(obj.getClass(), obj)) == true) {
+      return false;
+    }
+    references.clear();
+    start(obj, null);
+    references.clear();
+    return true;
+  }
+
+  public void endList()
+  {
+    writer.endNode();
+    writer.flush();
+    listStarted = false;
+  }
+
+  /**
+   * @return The number of entities written.
+   */
+  public int getNumberOfEntities()
+  {
+    return numberOfEntities;
+  }
+
+  @Override
+  public void convertAnother(final Object item, final Converter converter)
+  {
+    if (item instanceof HibernateProxy) {
+      // Don't initialize the proxy if the entity is already written:
+      final LazyInitializer initializer = ((HibernateProxy) item).getHibernateLazyInitializer();
+      final String entityName = getRootEntityName(initializer.getEntityName());
+      final Serializable pk = initializer.getIdentifier();
+      if (isWritten(entityName, pk) == true) {
+        writer.addAttribute(ATTRIBUTE_REFERENCE, getEntityId(entityName, pk));
+        return;
+      }
+    }
+    super.convertAnother(getImplementation(item), converter);
+  }
+
+  @Override
+  protected void convert(final Object item, final Converter converter)
+  {
+    if (getMapper().isImmutableValueType(item.getClass()) == true) {
+      // Strings, numbers, dates etc. are written without references.
+      converter.marshal(item, writer, this);
+      return;
+    }
+    final String entityName = getRootEntityName(item.getClass());
+    final Serializable pk = entityName != null ? getIdentifier(item.getClass(), item) : null;
+    if (pk != null) {
+      final String id = getEntityId(entityName, pk);
+      if (isWritten(entityName, pk) == true) {
+        writer.addAttribute(ATTRIBUTE_REFERENCE, id);
+        return;
+      }
+      writer.addAttribute(ATTRIBUTE_ID, id);
+      WrittenIds ids = writtenIds.get(entityName);
+      if (ids == null) {
+        ids = new WrittenIds();
+        writtenIds.put(entityName, ids);
+      }
+      ids.add(pk);
+      ++numberOfEntities;
+    } else {
+      final Integer existingId = references.get(item);
+      if (existingId != null) {
+        writer.addAttribute(ATTRIBUTE_REFERENCE, String.valueOf(existingId));
+        return;
+      }
+      final Integer id = nextId++;
+      writer.addAttribute(ATTRIBUTE_ID, String.valueOf(id));
+      references.put(item, id);
+    }
+    super.convert(item, converter);
+  }
+
+  private boolean isWritten(final String entityName, final Serializable pk)
+  {
+    if (entityName == null || pk == null) {
+      return false;
+    }
+    final WrittenIds ids = writtenIds.get(entityName);
+    return ids != null && ids.contains(pk) == true;
+  }
+
+  /**
+   * @return The XStream id of the given entity, unique over all entities and distinct from the numeric ids of the non entity objects.
+   */
+  private String getEntityId(final String entityName, final Serializable pk)
+  {
+    String prefix = entityIdPrefixes.get(entityName);
+    if (prefix == null) {
+      prefix = ENTITY_ID_PREFIX + (entityIdPrefixes.size() + 1) + "-";
+      entityIdPrefixes.put(entityName, prefix);
+    }
+    return prefix + pk;
+  }
+
+  private Object getImplementation(final Object item)
+  {
+    if (item instanceof HibernateProxy) {
+      return ((HibernateProxy) item).getHibernateLazyInitializer().getImplementation();
+    }
+    return item;
+  }
+
+  private Serializable getIdentifier(final Class< ? > cls, final Object obj)
+  {
+    return sessionFactory.getClassMetadata(cls).getIdentifier(obj, EntityMode.POJO);
+  }
+
+  private String getRootEntityName(final Class< ? > cls)
+  {
+    if (rootEntityNames.containsKey(cls) == true) {
+      return rootEntityNames.get(cls);
+    }
+    final String rootEntityName = getRootEntityName(sessionFactory.getClassMetadata(cls));
+    rootEntityNames.put(cls, rootEntityName);
+    return rootEntityName;
+  }
+
+  private String getRootEntityName(final String entityName)
+  {
+    return getRootEntityName(sessionFactory.getClassMetadata(entityName));
+  }
+
+  private String getRootEntityName(final ClassMetadata classMetadata)
+  {
+    if (classMetadata == null) {
+      return null;
+    }
+    if (classMetadata instanceof EntityPersister) {
+      // Sub classes and their super classes share the same primary keys.
+      return ((EntityPersister) classMetadata).getRootEntityName();
+    }
+    return classMetadata.getEntityName();
+  }
+
+  /**
+   * The primary keys of the written entities of one root entity. Non negative integer keys (the usual case) are held as bits.
+   */
+  private static class WrittenIds
+  {
+    private final BitSet intIds = new BitSet();
+
+    private Set<Serializable> otherIds;
+
+    boolean contains(final Serializable pk)
+    {
+      if (pk instanceof Integer && (Integer) pk >= 0) {
+        return intIds.get((Integer) pk);
+      }
+      return otherIds != null && otherIds.contains(pk) == true;
+    }
+
+    void add(final Serializable pk)
+    {
+      if (pk instanceof Integer && (Integer) pk >= 0) {
+        intIds.set((Integer) pk);
+        return;
+      }
+      if (otherIds == null) {
+        otherIds = new HashSet<Serializable>();
+      }
+      otherIds.add(pk);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.database.xstream;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.projectforge.database.HibernateUtils;
+
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.ConverterLookup;
+import com.thoughtworks.xstream.core.TreeUnmarshaller;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Unmarshals a list written with XStream's id references (XStream.ID_REFERENCES) element by element, so the list doesn't need to be read
+ * completely into memory. The references are resolved over all elements. Entities already saved (see {@link #compact(Session)}) are only
+ * held by their class and primary key in the id map and resolved as Hibernate proxies of the current session.<br/>
+ * Lists written by the {@link EntityIdReferenceMarshaller} reference non entity objects only inside their top level element, so these
+ * objects are removed from the id map after each element. Other lists (written by XStream itself) may reference them over all elements,
+ * therefore only collections and maps are removed by {@link #compact(Session)}: they hold the graphs of the restored entities.
+ */
+public class EntityIdReferenceUnmarshaller extends TreeUnmarshaller
+{
+  private static final String ATTRIBUTE_ID = "id";
+
+  private static final String ATTRIBUTE_REFERENCE = "reference";
+
+  private static final Object NULL = new Object();
+
+  private static class EntityReference
+  {
+    private final Class< ? > entityClass;
+
+    private final Serializable id;
+
+    private EntityReference(final Class< ? > entityClass, final Serializable id)
+    {
+      this.entityClass = entityClass;
+      this.id = id;
+    }
+  }
+
+  private final Map<String, Object> values = new HashMap<String, Object>();
+
+  // The reference keys of the values of the current top level element.
+  private final List<String> elementKeys = new ArrayList<String>();
+
+  // The reference keys of the values unmarshalled since the last call of compact.
+  private final List<String> recentKeys = new ArrayList<String>();
+
+  private final boolean elementScopedReferences;
+
+  private final LinkedList<String> parentStack = new LinkedList<String>();
+
+  private Session session;
+
+  /**
+   * @param reader The reader positioned at the root element (list).
+   * @param converterLookup
+   * @param mapper
+   */
+  public EntityIdReferenceUnmarshaller(final HierarchicalStreamReader reader, final ConverterLookup converterLookup, final Mapper mapper)
+  {
+    super(null, reader, converterLookup, mapper);
+    elementScopedReferences = EntityIdReferenceMarshaller.REFERENCE_SCOPE_ELEMENT.equals(reader
+        .getAttribute(EntityIdReferenceMarshaller.ATTRIBUTE_REFERENCE_SCOPE));
+  }
+
+  /**
+   * @param session Needed for resolving the references of already saved entities.
+   */
+  public void setSession(final Session session)
+  {
+    this.session = session;
+  }
+
+  /**
+   * @return true, if a further element of the list is available.
+   */
+  public boolean hasNextListElement()
+  {
+    return reader.hasMoreChildren();
+  }
+
+  public Object nextListElement()
+  {
+    reader.moveDown();
+    try {
+      return start(null);
+    } finally {
+      reader.moveUp();
+      endListElement();
+    }
+  }
+
+  /**
+   * Replaces all entities unmarshalled since the last call, which are already saved by the given session, by their class and primary key.
+   * Must be called before the session is cleared.
+   * @param session
+   */
+  public void compact(final Session session)
+  {
+    for (final String key : recentKeys) {
+      final Object value = values.get(key);
+      if (value == null || value == NULL || value instanceof EntityReference) {
+        continue;
+      }
+      if (HibernateUtils.isEntity(value.getClass()) == false) {
+        if (value instanceof Collection< ? > || value instanceof Map< ? , ? >) {
+          values.remove(key);
+        }
+        continue;
+      }
+      if (session.contains(value) == false) {
+        continue;
+      }
+      values.put(key, new EntityReference(HibernateProxyHelper.getClassWithoutInitializingProxy(value), session.getIdentifier(value)));
+    }
+    recentKeys.clear();
+  }
+
+  /**
+   * @return The number of entries of the id map.
+   */
+  public int getSize()
+  {
+    return values.size();
+  }
+
+  @Override
+  protected Object convert(final Object parent, @SuppressWarnings("rawtypes") final Class type, final Converter converter)
+  {
+    if (parentStack.isEmpty() == false) {
+      // Circular references: the parent may be referenced by its children.
+      final String parentKey = parentStack.getFirst();
+      if (parentKey != null && values.containsKey(parentKey) == false) {
+        putValue(parentKey, parent);
+      }
+    }
+    final String reference = reader.getAttribute(ATTRIBUTE_REFERENCE);
+    if (reference != null) {
+      final Object value = values.get(reference);
+      if (value == null) {
+        throw new ConversionException("Invalid reference: " + reference);
+      }
+      if (value == NULL) {
+        return null;
+      }
+      if (value instanceof EntityReference) {
+        final EntityReference ref = (EntityReference) value;
+        return session.load(ref.entityClass, ref.id);
+      }
+      return value;
+    }
+    final String key = reader.getAttribute(ATTRIBUTE_ID);
+    parentStack.addFirst(key);
+    final Object result;
+    try {
+      result = super.convert(parent, type, converter);
+    } finally {
+      parentStack.removeFirst();
+    }
+    if (key != null) {
+      putValue(key, result);
+    }
+    return result;
+  }
+
+  private void putValue(final String key, final Object value)
+  {
+    values.put(key, value == null ? NULL : value);
+    elementKeys.add(key);
+  }
+
+  private void endListElement()
+  {
+    if (elementScopedReferences == false) {
+      recentKeys.addAll(elementKeys);
+      elementKeys.clear();
+      return;
+    }
+    for (final String key : elementKeys) {
+      final Object value = values.get(key);
+      if (value == null) {
+        // Key registered twice (circular reference) and already removed.
+        continue;
+      }
+      if (value != NULL && HibernateUtils.isEntity(value.getClass()) == true) {
+        recentKeys.add(key);
+      } else {
+        // Not referenced by any following element.
+        values.remove(key);
+      }
+    }
+    elementKeys.clear();
+  }
+}
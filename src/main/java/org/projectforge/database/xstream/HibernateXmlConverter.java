@@ -33,11 +33,15 @@ import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.PredicateUtils;
+import org.hibernate.CacheMode;
 import org.hibernate.EntityMode;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxy;
 import org.hibernate.proxy.HibernateProxyHelper;
 import org.projectforge.database.HibernateEntities;
 import org.springframework.dao.DataAccessException;
@@ -135,6 +139,34 @@ public class HibernateXmlConverter
     });
   }
 
+  /**
+   * Writes all objects of the data-base to the given writer without holding them in memory: the objects of every entity type are scrolled
+   * and written element by element and the session is cleared after every batch. The entities are referenced by their ids (see
+   * {@link EntityIdReferenceMarshaller}), so the ids are always preserved. The format is the same as of
+   * {@link #dumpDatabaseToXml(Writer, boolean)}.
+   * @param writer Ziel für die XML-Datei.
+   * @param includeHistory bei false werden die History Einträge nicht geschrieben
+   * @param batchSize The session is cleared after this number of read objects.
+   */
+  public void streamDatabaseToXml(final Writer writer, final boolean includeHistory, final int batchSize)
+  {
+    final TransactionTemplate tx = new TransactionTemplate(new HibernateTransactionManager(hibernate.getSessionFactory()));
+    tx.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        hibernate.execute(new HibernateCallback() {
+          public Object doInHibernate(final Session session) throws HibernateException
+          {
+            streamObjects(writer, includeHistory, session, batchSize);
+            status.setRollbackOnly();
+            return null;
+          }
+        });
+        return null;
+      }
+    });
+  }
+
   public HibernateXmlConverter appendIgnoredTopLevelObjects(final Class< ? >... types)
   {
     if (types != null) {
@@ -215,6 +247,72 @@ public class HibernateXmlConverter
     stream.marshal(all, new PrettyPrintWriter(writer));
       }
 
+  private void streamObjects(final Writer writer, final boolean includeHistory, final Session session, final int batchSize)
+      throws HibernateException
+  {
+    final long begin = System.currentTimeMillis();
+    final XStream stream = initXStream(session, true);
+    session.flush();
+    session.clear();
+    session.setCacheMode(CacheMode.IGNORE);
+    try {
+      writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+    } catch (final IOException ex) {
+      throw new RuntimeException(ex);
+    }
+    final PrettyPrintWriter xmlWriter = new PrettyPrintWriter(writer);
+    final EntityIdReferenceMarshaller marshaller = new EntityIdReferenceMarshaller(xmlWriter, stream.getConverterLookup(),
+        stream.getMapper(), session.getSessionFactory());
+    marshaller.startList();
+    final List<Class< ? >> entities = new ArrayList<Class< ? >>();
+    entities.addAll(HibernateEntities.instance().getOrderedEntities());
+    entities.addAll(HibernateEntities.instance().getOrderedHistoryEntities());
+    int total = 0;
+    for (final Class< ? > entityClass : entities) {
+      final String entityType = entityClass.getName();
+      if (includeHistory == false && entityType.startsWith("de.micromata.hibernate.history.") == true) {
+        // Skip history entries.
+        continue;
+      }
+      if (this.ignoreFromTopLevelListing.contains(entityClass) == true) {
+        // Written as part of their parent objects.
+        continue;
+      }
+      final ScrollableResults results = session.createQuery("select o from " + entityType + " o").setReadOnly(true)
+          .setFetchSize(batchSize).setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
+      int read = 0, written = 0;
+      try {
+        while (results.next() == true) {
+          Object obj = results.get(0);
+          if (obj instanceof HibernateProxy) {
+            obj = ((HibernateProxy) obj).getHibernateLazyInitializer().getImplementation();
+          }
+          if (this.ignoreFromTopLevelListing.contains(obj.getClass()) == false && marshaller.marshalListElement(obj) == true) {
+            ++written;
+          }
+          if (++read % batchSize == 0) {
+            // Objects already written are referenced by their ids, so they aren't needed anymore:
+            xmlWriter.flush();
+            session.clear();
+          }
+        }
+      } finally {
+        results.close();
+      }
+      session.clear();
+      total += written;
+      log.info("Wrote " + written + " objects of type " + entityType);
+    }
+    marshaller.endList();
+    log.info("Wrote "
+        + total
+        + " top level objects ("
+        + marshaller.getNumberOfEntities()
+        + " entities) in "
+        + (System.currentTimeMillis() - begin)
+        + "ms.");
+  }
+
   /**
    * Overload this method if you need further initializations before reading xml stream. Does nothing at default.
    * @param xstream
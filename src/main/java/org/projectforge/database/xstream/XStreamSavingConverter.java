@@ -71,6 +71,18 @@ public class XStreamSavingConverter implements Converter
 
   private final Map<Class< ? >, List<Object>> allObjects = new HashMap<Class< ? >, List<Object>>();
 
+  // The objects registered since the last call of saveObjects().
+  private final Map<Class< ? >, List<Object>> pendingObjects = new HashMap<Class< ? >, List<Object>>();
+
+  private boolean retainObjects = true;
+
+  private int savedObjectsCounter;
+
+  /** Number of registered top level objects per type (also counted if retainObjects is false). */
+  private final Map<Class< ? >, Integer> registeredObjectsCounters = new HashMap<Class< ? >, Integer>();
+
+  private int failedObjectsCounter;
+
   private final Set<Class< ? >> writtenObjectTypes = new HashSet<Class< ? >>();
 
   // Objekte dürfen nur einmal geschrieben werden, daher merken, was bereits gespeichert wurde
@@ -107,16 +119,61 @@ public class XStreamSavingConverter implements Converter
     this.session = session;
   }
 
+  /**
+   * @return All registered objects (only if retainObjects is true, otherwise an empty map).
+   * @see #setRetainObjects(boolean)
+   */
   public Map<Class< ? >, List<Object>> getAllObjects()
   {
     return allObjects;
   }
 
+  /**
+   * If true (default) all registered objects and history entries are kept after saving (e. g. for verifying the import). For large
+   * imports saved in batches this should be false, so the saved objects may be garbage collected.
+   * @param retainObjects
+   * @return this for chaining.
+   */
+  public XStreamSavingConverter setRetainObjects(final boolean retainObjects)
+  {
+    this.retainObjects = retainObjects;
+    return this;
+  }
+
+  public boolean isRetainObjects()
+  {
+    return retainObjects;
+  }
+
+  /**
+   * @return The number of top level objects saved so far (objects saved as part of their parent objects aren't counted).
+   */
+  public int getSavedObjectsCounter()
+  {
+    return savedObjectsCounter;
+  }
+
   public List<HistoryEntry> getHistoryEntries()
   {
     return historyEntries;
   }
 
+  /**
+   * @return The number of registered top level objects per type (objects saved as part of their parent objects aren't counted).
+   */
+  public Map<Class< ? >, Integer> getRegisteredObjectsCounters()
+  {
+    return registeredObjectsCounters;
+  }
+
+  /**
+   * @return The number of objects which couldn't be saved.
+   */
+  public int getFailedObjectsCounter()
+  {
+    return failedObjectsCounter;
+  }
+
   @SuppressWarnings("rawtypes")
   @Override
   public boolean canConvert(final Class arg0)
@@ -144,13 +201,17 @@ public class XStreamSavingConverter implements Converter
     return this;
   }
 
+  /**
+   * Saves all objects registered since the last call in the configured order. May be called multiple times for saving the objects in
+   * batches: objects of later batches may only refer to objects of the same or of previous batches.
+   */
   public void saveObjects()
   {
     for (final Class< ? > type : orderOfSaving) {
       this.historyClassMapping.put(getClassname4History(type), type);
       save(type);
     }
-    for (final Map.Entry<Class< ? >, List<Object>> entry : allObjects.entrySet()) {
+    for (final Map.Entry<Class< ? >, List<Object>> entry : pendingObjects.entrySet()) {
       if (entry.getKey().equals(HistoryEntry.class) == true) {
         continue;
       }
@@ -162,6 +223,9 @@ public class XStreamSavingConverter implements Converter
       this.historyClassMapping.put(getClassname4History(type), type);
     }
     save(HistoryEntry.class);
+    pendingObjects.clear();
+    writtenObjectTypes.clear();
+    writtenObjects.clear();
   }
 
   /**
@@ -192,7 +256,9 @@ public class XStreamSavingConverter implements Converter
         list.add(deltaEntry);
         save(deltaEntry);
       }
-      this.historyEntries.add(entry);
+      if (retainObjects == true) {
+        this.historyEntries.add(entry);
+      }
       return id;
     }
     return null;
@@ -295,7 +361,7 @@ public class XStreamSavingConverter implements Converter
     if (log.isDebugEnabled() == true) {
       log.debug("Writing objects from type: " + type);
     }
-    final List<Object> list = allObjects.get(type);
+    final List<Object> list = pendingObjects.get(type);
     if (list == null) {
       return;
     }
@@ -316,12 +382,15 @@ public class XStreamSavingConverter implements Converter
           id = save(obj);
         }
         onAfterSave(obj, id);
+        ++savedObjectsCounter;
         if (log.isDebugEnabled() == true) {
           log.debug("wrote object " + obj + " under id " + id);
         }
       } catch (final HibernateException ex) {
+        ++failedObjectsCounter;
         log.fatal("Failed to write " + obj + " ex=" + ex, ex);
       } catch (final NullPointerException ex) {
+        ++failedObjectsCounter;
         log.fatal("Failed to write " + obj + " ex=" + ex, ex);
       }
     }
@@ -464,10 +533,20 @@ public class XStreamSavingConverter implements Converter
       // Don't need this objects as "top level" objects in list. They're usually encapsulated.
       return;
     }
-    List<Object> list = this.allObjects.get(obj.getClass());
+    register(this.pendingObjects, obj);
+    final Integer counter = registeredObjectsCounters.get(obj.getClass());
+    registeredObjectsCounters.put(obj.getClass(), counter != null ? counter + 1 : 1);
+    if (retainObjects == true) {
+      register(this.allObjects, obj);
+    }
+  }
+
+  private void register(final Map<Class< ? >, List<Object>> map, final Object obj)
+  {
+    List<Object> list = map.get(obj.getClass());
     if (list == null) {
       list = new ArrayList<Object>();
-      this.allObjects.put(obj.getClass(), list);
+      map.put(obj.getClass(), list);
     }
     list.add(obj);
   }
@@ -0,0 +1,42 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an export object (e. g. a workbook created on demand) directly to the given stream, used for streaming large zip archives
+ * without holding all objects in memory.
+ * @see ExportZipArchive#add(String, ExportWriter)
+ */
+public interface ExportWriter
+{
+  /**
+   * @param out Don't close this stream.
+   * @throws IOException
+   */
+  public void write(OutputStream out) throws IOException;
+}
@@ -23,6 +23,7 @@
 
 package org.projectforge.export;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
@@ -31,12 +32,21 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
 import org.apache.wicket.util.resource.IResourceStream;
 import org.projectforge.excel.ExportWorkbook;
 
 /**
- * For exporting multiple objects by one script you may collect all objects within this zip archive.
+ * For exporting multiple objects by one script you may collect all objects within this zip archive. Large files should be added as
+ * {@link ExportWriter}, e. g. in Groovy scripts:
+ * 
+ * <pre>
+ * zip.add('timesheets.xls', { out -&gt; createWorkbook(list).write(out) } as ExportWriter)
+ * </pre>
+ * 
+ * so the workbook is built while the archive is written and may be garbage collected after its entry is written.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -44,6 +54,8 @@ public class ExportZipArchive
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(ExportZipArchive.class);
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   private final Collection<ExportZipFile> zipFiles = new LinkedList<ExportZipFile>();
 
   private final String filename;
@@ -61,27 +73,35 @@ public class ExportZipArchive
     this.filename = filename;
   }
 
+  /**
+   * Writes every file directly into its zip entry (no byte array per file). The files added via {@link #add(String, ExportWriter)} are
+   * created on demand, so only one of them has to be held in memory. The stream is flushed after every entry, so the client receives the
+   * data while the next entries are created.
+   * @param out
+   */
   public void write(final OutputStream out)
   {
-    final ZipOutputStream zipOut = new ZipOutputStream(out);
+    final ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
     try {
       zipOut.putNextEntry(new ZipEntry(filename + "/"));
       for (final ExportZipFile file : zipFiles) {
         final ZipEntry zipEntry = new ZipEntry(filename + "/" + file.getFilename());
         zipOut.putNextEntry(zipEntry);
-        if (file.getExportObject() instanceof ExportWorkbook) {
-          final ExportWorkbook workbook = (ExportWorkbook) file.getExportObject();
-          final byte[] xls = workbook.getAsByteArray();
-          if (xls == null || xls.length == 0) {
-            log.error("Oups, xls has zero size. Filename: " + filename);
-            continue;
-          }
-          zipOut.write(xls);
-        } else if (file.getExportObject() instanceof ExportJFreeChart) {
-          final ExportJFreeChart exportJFreeChart = (ExportJFreeChart) file.getExportObject();
-          exportJFreeChart.write(zipOut);
+        // The zip stream must not be closed by the writers:
+        final CountingOutputStream entryOut = new CountingOutputStream(new CloseShieldOutputStream(zipOut));
+        final Object exportObject = file.getExportObject();
+        if (exportObject instanceof ExportWorkbook) {
+          ((ExportWorkbook) exportObject).write(entryOut);
+        } else if (exportObject instanceof ExportJFreeChart) {
+          ((ExportJFreeChart) exportObject).write(entryOut);
+        } else if (exportObject instanceof ExportWriter) {
+          ((ExportWriter) exportObject).write(entryOut);
+        }
+        if (entryOut.getByteCount() == 0) {
+          log.error("Oups, file has zero size. Filename: " + file.getFilename());
         }
         zipOut.closeEntry();
+        zipOut.flush();
       }
     } catch (final IOException ex) {
       log.error(ex.getMessage(), ex);
@@ -111,6 +131,17 @@ public class ExportZipArchive
     return iResourceStream;
   }
 
+  /**
+   * @param filename
+   * @param exportWriter Called while writing the archive, useful for creating large files (e. g. workbooks) on demand.
+   * @return this for chaining.
+   */
+  public ExportZipArchive add(final String filename, final ExportWriter exportWriter)
+  {
+    zipFiles.add(new ExportZipFile(filename, exportWriter));
+    return this;
+  }
+
   public ExportZipArchive add(final String filename, final ExportWorkbook exportWorkbook)
   {
     zipFiles.add(new ExportZipFile(filename, exportWorkbook));
@@ -42,8 +42,10 @@ import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.OperationType;
+import org.projectforge.common.AbstractCache;
 import org.projectforge.common.DatabaseDialect;
 import org.projectforge.common.DateHelper;
+import org.projectforge.common.EntityCounter;
 import org.projectforge.common.NumberHelper;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
@@ -90,7 +92,17 @@ public class AuftragDao extends BaseDao<AuftragDO>
 
   private SendMail sendMail;
 
-  private Integer abgeschlossenNichtFakturiert;
+  /**
+   * Counts the closed and not invoiced orders (for the menu).
+   */
+  private final EntityCounter abgeschlossenNichtFakturiertCounter = new EntityCounter("closedNotInvoicedOrders",
+      AbstractCache.TICKS_PER_HOUR) {
+    @Override
+    protected Map<Integer, Integer> load()
+    {
+      return internalGetAbgeschlossenNichtFakturiert();
+    }
+  };
 
   private RechnungCache rechnungCache;
 
@@ -312,22 +324,97 @@ public class AuftragDao extends BaseDao<AuftragDO>
     return list.get(0).getPosition(positionNummer);
   }
 
-  public synchronized int getAbgeschlossenNichtFakturiertAnzahl()
+  /**
+   * The number is updated after every modification of orders and doesn't need any data-base access (therefore you can call this method very
+   * often).
+   * @return The number of orders of the list type {@link AuftragFilter#FILTER_ABGESCHLOSSEN_NF}.
+   */
+  public int getAbgeschlossenNichtFakturiertAnzahl()
   {
-    if (abgeschlossenNichtFakturiert != null) {
-      return abgeschlossenNichtFakturiert;
+    return abgeschlossenNichtFakturiertCounter.getCount(null);
+  }
+
+  /**
+   * Called by the counter of the closed and not invoiced orders.
+   * @return The ids of all closed and not invoiced orders (values are null).
+   */
+  private Map<Integer, Integer> internalGetAbgeschlossenNichtFakturiert()
+  {
+    @SuppressWarnings("unchecked")
+    final List<AuftragDO> list = getHibernateTemplate().find(
+        "select distinct a from AuftragDO a left join a.positionen p left join a.paymentSchedules s where a.deleted = false"
+            + " and (a.auftragsStatus = ? or p.status = ? or s.reached = true)",
+            new Object[] { AuftragsStatus.ABGESCHLOSSEN, AuftragsPositionsStatus.ABGESCHLOSSEN});
+    final Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+    for (final AuftragDO auftrag : list) {
+      if (isCountedAsAbgeschlossenNichtFakturiert(auftrag) == true) {
+        result.put(auftrag.getId(), null);
+      }
     }
-    final AuftragFilter filter = new AuftragFilter();
-    filter.setListType(AuftragFilter.FILTER_ABGESCHLOSSEN_NF);
-    try {
-      final List<AuftragDO> list = getList(filter, false);
-      abgeschlossenNichtFakturiert = list != null ? list.size() : 0;
-      return abgeschlossenNichtFakturiert;
-    } catch (final Exception ex) {
-      log.error("Exception ocurred while getting number of closed and not invoiced orders: " + ex.getMessage(), ex);
-      // Exception e. g. if data-base update is needed.
-      return 0;
+    return result;
+  }
+
+  /**
+   * Same result as the filter of the list type {@link AuftragFilter#FILTER_ABGESCHLOSSEN_NF}.
+   */
+  private boolean isCountedAsAbgeschlossenNichtFakturiert(final AuftragDO auftrag)
+  {
+    if (auftrag.isDeleted() == true) {
+      return false;
+    }
+    if (HibernateUtils.getDialect() != DatabaseDialect.HSQL) {
+      return isAbgeschlossenNichtFakturiert(auftrag);
+    }
+    if (auftrag.isVollstaendigFakturiert() == true) {
+      return false;
+    }
+    // Restrictions of the data-base query:
+    if (auftrag.getAuftragsStatus() == AuftragsStatus.ABGESCHLOSSEN) {
+      return true;
     }
+    if (auftrag.getPositionen() != null) {
+      for (final AuftragsPositionDO pos : auftrag.getPositionen()) {
+        if (pos.getStatus() == AuftragsPositionsStatus.ABGESCHLOSSEN) {
+          return true;
+        }
+      }
+    }
+    if (auftrag.getPaymentSchedules() != null) {
+      for (final PaymentScheduleDO schedule : auftrag.getPaymentSchedules()) {
+        if (schedule.isReached() == true) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the order is completed and not completely invoiced, or if any position is completed and not completely invoiced or if
+   *         any reached payment schedule isn't completely invoiced.
+   */
+  private static boolean isAbgeschlossenNichtFakturiert(final AuftragDO auftrag)
+  {
+    // if order is completed and not all positions are completely invoiced
+    if (auftrag.getAuftragsStatus() == AuftragsStatus.ABGESCHLOSSEN && auftrag.isVollstaendigFakturiert() == false) {
+      return true;
+    }
+    // if order is completed and not completely invoiced
+    if (auftrag.getPositionen() != null) {
+      for (final AuftragsPositionDO pos : auftrag.getPositionen()) {
+        if (pos.isAbgeschlossenUndNichtVollstaendigFakturiert() == true) {
+          return true;
+        }
+      }
+    }
+    if (auftrag.getPaymentSchedules() != null) {
+      for (final PaymentScheduleDO schedule : auftrag.getPaymentSchedules()) {
+        if (schedule.isReached() == true && schedule.isVollstaendigFakturiert() == false) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
   @Override
@@ -419,26 +506,7 @@ public class AuftragDao extends BaseDao<AuftragDO>
           }
           final boolean orderIsCompletelyInvoiced = auftrag.isVollstaendigFakturiert();
           if (HibernateUtils.getDialect() != DatabaseDialect.HSQL && myFilter.isShowAbgeschlossenNichtFakturiert() == true) {
-            // if order is completed and not all positions are completely invoiced
-            if (auftrag.getAuftragsStatus() == AuftragsStatus.ABGESCHLOSSEN && orderIsCompletelyInvoiced == false) {
-              return true;
-            }
-            // if order is completed and not completely invoiced
-            if (auftrag.getPositionen() != null) {
-              for (final AuftragsPositionDO pos : auftrag.getPositionen()) {
-                if (pos.isAbgeschlossenUndNichtVollstaendigFakturiert() == true) {
-                  return true;
-                }
-              }
-            }
-            if (auftrag.getPaymentSchedules() != null) {
-              for (final PaymentScheduleDO schedule : auftrag.getPaymentSchedules()) {
-                if (schedule.isReached() == true && schedule.isVollstaendigFakturiert() == false) {
-                  return true;
-                }
-              }
-            }
-            return false;
+            return isAbgeschlossenNichtFakturiert(auftrag);
           }
           return orderIsCompletelyInvoiced == invoiced;
         }
@@ -485,7 +553,6 @@ public class AuftragDao extends BaseDao<AuftragDO>
         position.checkVollstaendigFakturiert();
       }
     }
-    abgeschlossenNichtFakturiert = null;
     final String uiStatusAsXml = XmlObjectWriter.writeAsXml(obj.getUiStatus());
     obj.setUiStatusAsXml(uiStatusAsXml);
     final List<PaymentScheduleDO> paymentSchedules = obj.getPaymentSchedules();
@@ -510,6 +577,13 @@ public class AuftragDao extends BaseDao<AuftragDO>
     if (taskTree != null) {
       taskTree.refreshOrderPositionReferences();
     }
+    abgeschlossenNichtFakturiertCounter.update(obj.getId(), isCountedAsAbgeschlossenNichtFakturiert(obj), null);
+  }
+
+  @Override
+  protected void afterDelete(final AuftragDO obj)
+  {
+    abgeschlossenNichtFakturiertCounter.remove(obj.getId());
   }
 
   @Override
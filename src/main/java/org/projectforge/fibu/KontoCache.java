@@ -44,7 +44,7 @@ public class KontoCache extends AbstractCache
   private HibernateTemplate hibernateTemplate;
 
   /** The key is the order id. */
-  private Map<Integer, KontoDO> accountMapById;
+  private volatile Map<Integer, KontoDO> accountMapById;
 
   public boolean isEmpty()
   {
@@ -128,6 +128,31 @@ public class KontoCache extends AbstractCache
     return konto;
   }
 
+  /**
+   * Should be called after user modifications.
+   * @param konto
+   */
+  void updateKonto(final KontoDO konto)
+  {
+    synchronized (this) {
+      checkRefresh();
+      // Copy on write: the map is read without synchronization.
+      final Map<Integer, KontoDO> map = new HashMap<Integer, KontoDO>(accountMapById);
+      put(map, konto);
+      this.accountMapById = map;
+      recordUpdate(konto);
+    }
+  }
+
+  private static void put(final Map<Integer, KontoDO> map, final KontoDO konto)
+  {
+    if (konto.isDeleted() == true) {
+      map.remove(konto.getId());
+    } else {
+      map.put(konto.getId(), konto);
+    }
+  }
+
   /**
    * This method will be called by CacheHelper and is synchronized via getData();
    */
@@ -142,7 +167,13 @@ public class KontoCache extends AbstractCache
     for (final KontoDO konto : list) {
       map.put(konto.getId(), konto);
     }
-    this.accountMapById = map;
+    synchronized (this) {
+      // Modifications done while refreshing in background (the query above may not contain them):
+      for (final Object update : getUpdatesDuringRefresh()) {
+        put(map, (KontoDO) update);
+      }
+      this.accountMapById = map;
+    }
     log.info("Initializing of KontoCache done.");
   }
 
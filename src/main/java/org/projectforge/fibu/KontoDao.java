@@ -39,6 +39,7 @@ public class KontoDao extends BaseDao<KontoDO>
   {
     super(KontoDO.class);
     userRightId = USER_RIGHT_ID;
+    supportPagedQueries = true;
   }
 
   /**
@@ -47,7 +48,7 @@ public class KontoDao extends BaseDao<KontoDO>
   @Override
   protected void afterSaveOrModify(final KontoDO obj)
   {
-    kontoCache.refresh();
+    kontoCache.updateKonto(obj);
   }
 
   @SuppressWarnings("unchecked")
@@ -215,6 +215,16 @@ public class OrderExport
    * @param params
    */
   public byte[] export(final List<AuftragDO> list, final Object... params)
+  {
+    final ExportWorkbook xls = exportWorkbook(list, params);
+    return xls != null ? xls.getAsByteArray() : null;
+  }
+
+  /**
+   * Same as {@link #export(List, Object...)} but returns the workbook, e. g. for writing it directly to an output stream.
+   * @return The workbook or null if the list is empty.
+   */
+  public ExportWorkbook exportWorkbook(final List<AuftragDO> list, final Object... params)
   {
     if (CollectionUtils.isEmpty(list) == true) {
       return null;
@@ -261,7 +271,7 @@ public class OrderExport
       }
     }
     sheet.setAutoFilter();
-    return xls.getAsByteArray();
+    return xls;
   }
 
   public void setAccessChecker(final AccessChecker accessChecker)
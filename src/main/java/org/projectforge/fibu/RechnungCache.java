@@ -23,6 +23,7 @@
 
 package org.projectforge.fibu;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,22 +45,19 @@ public class RechnungCache extends AbstractCache
 
   private HibernateTemplate hibernateTemplate;
 
-  /** The key is the order id. */
-  private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragId;
-
-  /** The key is the order position id. */
-  private Map<Integer, Set<RechnungsPositionVO>> invoicePositionMapByAuftragsPositionId;
+  /** Both maps are published together, so readers never see maps of different refreshs. */
+  private volatile InvoicePositionMaps invoicePositionMaps;
 
   public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragId(final Integer auftragId)
   {
     checkRefresh();
-    return invoicePositionMapByAuftragId.get(auftragId);
+    return invoicePositionMaps.mapByAuftragId.get(auftragId);
   }
 
   public Set<RechnungsPositionVO> getRechnungsPositionVOSetByAuftragsPositionId(final Integer auftragsPositionId)
   {
     checkRefresh();
-    return invoicePositionMapByAuftragsPositionId.get(auftragsPositionId);
+    return invoicePositionMaps.mapByAuftragsPositionId.get(auftragsPositionId);
   }
 
   /**
@@ -102,8 +100,7 @@ public class RechnungCache extends AbstractCache
         setByAuftragsPositionId.add(vo);
       }
     }
-    this.invoicePositionMapByAuftragId = mapByAuftragId;
-    this.invoicePositionMapByAuftragsPositionId = mapByAuftragsPositionId;
+    this.invoicePositionMaps = new InvoicePositionMaps(mapByAuftragId, mapByAuftragsPositionId);
     log.info("Initializing of RechnungCache done.");
   }
 
@@ -111,4 +108,23 @@ public class RechnungCache extends AbstractCache
   {
     this.hibernateTemplate = hibernateTemplate;
   }
+
+  /**
+   * Immutable holder of the maps of one refresh.
+   */
+  private static class InvoicePositionMaps
+  {
+    /** The key is the order id. */
+    private final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId;
+
+    /** The key is the order position id. */
+    private final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId;
+
+    private InvoicePositionMaps(final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragId,
+        final Map<Integer, Set<RechnungsPositionVO>> mapByAuftragsPositionId)
+    {
+      this.mapByAuftragId = Collections.unmodifiableMap(mapByAuftragId);
+      this.mapByAuftragsPositionId = Collections.unmodifiableMap(mapByAuftragsPositionId);
+    }
+  }
 }
@@ -0,0 +1,140 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.kost;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.projectforge.common.IntRanges;
+import org.projectforge.common.Range;
+
+/**
+ * Precompiled lookup of the business assessment row matching an account number. The account number ranges and values of all rows are
+ * split into disjoint intervals, each interval refers to the first matching row (same result as testing the rows in their order with
+ * {@link BusinessAssessmentRow#doesMatch(int)}). A lookup is a binary search over the interval starts.
+ */
+class AccountNumberIndex implements Serializable
+{
+  private static final long serialVersionUID = 3204868290743407528L;
+
+  /**
+   * Start of every interval (inclusive), sorted.
+   */
+  private final int[] starts;
+
+  /**
+   * End of every interval (inclusive).
+   */
+  private final int[] ends;
+
+  /**
+   * Index of the row of every interval.
+   */
+  private final int[] rowIndexes;
+
+  AccountNumberIndex(final List<BusinessAssessmentRowConfig> rows)
+  {
+    final int size = rows != null ? rows.size() : 0;
+    final IntRanges[] ranges = new IntRanges[size];
+    // All borders of the intervals (start of each range and the value after the end of each range):
+    final TreeSet<Long> borders = new TreeSet<Long>();
+    for (int i = 0; i < size; i++) {
+      ranges[i] = rows.get(i).getAccountNumberRanges();
+      if (ranges[i] == null) {
+        continue;
+      }
+      for (final Range<Integer> range : ranges[i].getRanges()) {
+        borders.add((long) range.getMinValue());
+        borders.add((long) range.getMaxValue() + 1);
+      }
+      for (final Integer value : ranges[i].getValues()) {
+        borders.add((long) value);
+        borders.add((long) value + 1);
+      }
+    }
+    final int[] tmpStarts = new int[borders.size()];
+    final int[] tmpEnds = new int[borders.size()];
+    final int[] tmpRowIndexes = new int[borders.size()];
+    int count = 0;
+    Long start = null;
+    for (final Long border : borders) {
+      if (start != null) {
+        final int rowIndex = getFirstMatchingRow(ranges, start.intValue());
+        if (rowIndex >= 0) {
+          if (count > 0 && tmpRowIndexes[count - 1] == rowIndex && tmpEnds[count - 1] + 1L == start) {
+            // Merge with the previous interval of the same row.
+            tmpEnds[count - 1] = (int) (border - 1);
+          } else {
+            tmpStarts[count] = start.intValue();
+            tmpEnds[count] = (int) (border - 1);
+            tmpRowIndexes[count] = rowIndex;
+            count++;
+          }
+        }
+      }
+      start = border;
+    }
+    starts = Arrays.copyOf(tmpStarts, count);
+    ends = Arrays.copyOf(tmpEnds, count);
+    rowIndexes = Arrays.copyOf(tmpRowIndexes, count);
+  }
+
+  private static int getFirstMatchingRow(final IntRanges[] ranges, final int accountNumber)
+  {
+    for (int i = 0; i < ranges.length; i++) {
+      if (ranges[i] != null && ranges[i].doesMatch(accountNumber) == true) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param accountNumber
+   * @return The index of the first row matching the given account number or -1 if no row matches.
+   */
+  int getRowIndex(final int accountNumber)
+  {
+    int pos = Arrays.binarySearch(starts, accountNumber);
+    if (pos < 0) {
+      // Interval starting before the account number:
+      pos = -pos - 2;
+      if (pos < 0) {
+        return -1;
+      }
+    }
+    return accountNumber <= ends[pos] ? rowIndexes[pos] : -1;
+  }
+
+  /**
+   * @return The number of disjoint intervals.
+   */
+  int size()
+  {
+    return starts.length;
+  }
+}
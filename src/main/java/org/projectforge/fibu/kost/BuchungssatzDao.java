@@ -24,9 +24,16 @@
 package org.projectforge.fibu.kost;
 
 import java.util.Calendar;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.OperationType;
@@ -119,6 +126,68 @@ public class BuchungssatzDao extends BaseDao<BuchungssatzDO>
   public List<BuchungssatzDO> getList(BaseSearchFilter filter)
   {
     accessChecker.checkIsLoggedInUserMemberOfGroup(ProjectForgeGroup.FINANCE_GROUP, ProjectForgeGroup.CONTROLLING_GROUP);
+    final QueryFilter queryFilter = buildQueryFilter(filter);
+    final List<BuchungssatzDO> list = getList(queryFilter);
+    return list;
+  }
+
+  /**
+   * Calculates the business assessments (e. g. per month or per cost unit) of all account records matching the given filter in one pass.
+   * The records are scrolled (not loaded at once) and assigned to the business assessments in parallel.
+   * @param filter
+   * @param calculator
+   * @return The business assessments by key.
+   * @see BusinessAssessmentCalculator
+   */
+  public <K> Map<K, BusinessAssessment> calculateBusinessAssessments(final BuchungssatzFilter filter,
+      final BusinessAssessmentCalculator<K> calculator)
+  {
+    accessChecker.checkIsLoggedInUserMemberOfGroup(ProjectForgeGroup.FINANCE_GROUP, ProjectForgeGroup.CONTROLLING_GROUP);
+    final QueryFilter queryFilter = buildQueryFilter(filter);
+    final Session session = getSession();
+    final ScrollableResults results = queryFilter.buildCriteria(session, clazz).setReadOnly(true)
+        .setFetchSize(BusinessAssessmentCalculator.CHUNK_SIZE).setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
+    try {
+      return calculator.calculate(new Iterator<BuchungssatzDO>() {
+        private BuchungssatzDO next, last;
+
+        @Override
+        public boolean hasNext()
+        {
+          if (next == null && results.next() == true) {
+            next = (BuchungssatzDO) results.get(0);
+          }
+          return next != null;
+        }
+
+        @Override
+        public BuchungssatzDO next()
+        {
+          if (hasNext() == false) {
+            throw new NoSuchElementException();
+          }
+          if (last != null) {
+            // The records are detached after classification (all needed associations are fetched eagerly).
+            session.evict(last);
+          }
+          last = next;
+          next = null;
+          return last;
+        }
+
+        @Override
+        public void remove()
+        {
+          throw new UnsupportedOperationException();
+        }
+      });
+    } finally {
+      results.close();
+    }
+  }
+
+  private QueryFilter buildQueryFilter(final BaseSearchFilter filter)
+  {
     final BuchungssatzFilter myFilter;
     if (filter instanceof BuchungssatzFilter) {
       myFilter = (BuchungssatzFilter) filter;
@@ -150,8 +219,7 @@ public class BuchungssatzDao extends BaseDao<BuchungssatzDO>
       queryFilter.add(Restrictions.eq("month", myFilter.getFromMonth()));
     }
     queryFilter.addOrder(Order.asc("year")).addOrder(Order.asc("month")).addOrder(Order.asc("satznr"));
-    final List<BuchungssatzDO> list = getList(queryFilter);
-    return list;
+    return queryFilter;
   }
 
   /**
@@ -127,33 +127,49 @@ public class BusinessAssessment implements Serializable
     }
     if (CollectionUtils.isNotEmpty(records) == true) {
       for (final BuchungssatzDO record : records) {
-        counter++;
-        // Diese Berechnungen werden anhand des Wertenachweises einer Bwa geführt:
-        if (record.isIgnore() == true) {
-          continue;
-        }
-        final KontoDO account = record.getKonto();
-        if (account == null || account.getNummer() == null) {
-          continue;
-        }
-        final int accountNumber = account.getNummer();
-        boolean found = false;
-        for (final BusinessAssessmentRow row : rows) {
-          if (row.doesMatch(accountNumber) == true) {
-            row.addAccountRecord(record);
-            found = true;
-            break;
-          }
-        }
-        if (found == false) {
-          log.warn("Ignoring Satz: " + record);
-          record.setIgnore(true);
-        }
+        addAccountRecord(record);
       }
       recalculate();
     }
   }
 
+  /**
+   * Adds the given record to the row matching the record's account. {@link #recalculate()} has to be called after adding all records.
+   * @param record
+   */
+  void addAccountRecord(final BuchungssatzDO record)
+  {
+    counter++;
+    // Diese Berechnungen werden anhand des Wertenachweises einer Bwa geführt:
+    if (record.isIgnore() == true) {
+      return;
+    }
+    final KontoDO account = record.getKonto();
+    if (account == null || account.getNummer() == null) {
+      return;
+    }
+    final int rowIndex = config.getAccountNumberIndex().getRowIndex(account.getNummer());
+    if (rowIndex >= 0) {
+      rows.get(rowIndex).addAccountRecord(record);
+    } else {
+      log.warn("Ignoring Satz: " + record);
+      record.setIgnore(true);
+    }
+  }
+
+  /**
+   * Adds the amounts, account records and counter of the given business assessment (of the same config). {@link #recalculate()} has to
+   * be called after adding.
+   * @param other
+   */
+  void add(final BusinessAssessment other)
+  {
+    counter += other.counter;
+    for (int i = 0; i < rows.size(); i++) {
+      rows.get(i).add(other.rows.get(i));
+    }
+  }
+
   public void recalculate()
   {
     if (rows == null) {
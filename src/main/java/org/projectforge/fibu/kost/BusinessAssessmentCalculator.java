@@ -0,0 +1,258 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.fibu.kost;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates the business assessments of many periods or cost units in one pass over the account records. The records are read in chunks
+ * by the calling thread (the classifier is called here, so it may access the session) and the chunks are assigned to the rows in parallel.
+ * The partial results are merged and recalculated afterwards in the calling thread (the Groovy scripts of the rows are shared and not
+ * thread safe).
+ * @see BuchungssatzDao#calculateBusinessAssessments(BuchungssatzFilter, BusinessAssessmentCalculator)
+ */
+public class BusinessAssessmentCalculator<K>
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(BusinessAssessmentCalculator.class);
+
+  static final int CHUNK_SIZE = 1000;
+
+  /**
+   * Defines the business assessment an account record belongs to.
+   */
+  public static abstract class Classifier<K>
+  {
+    /**
+     * @param record
+     * @return The key of the business assessment or null if the record should be ignored.
+     */
+    public abstract K getKey(BuchungssatzDO record);
+
+    /**
+     * Override this for setting e. g. the period of the business assessment.
+     * @param config
+     * @param key
+     */
+    public BusinessAssessment createBusinessAssessment(final BusinessAssessmentConfig config, final K key)
+    {
+      return new BusinessAssessment(config);
+    }
+  }
+
+  /**
+   * One business assessment per month, the key is year * 100 + month.
+   */
+  public static final Classifier<Integer> BY_MONTH = new Classifier<Integer>() {
+    @Override
+    public Integer getKey(final BuchungssatzDO record)
+    {
+      if (record.getYear() == null || record.getMonth() == null) {
+        return null;
+      }
+      return record.getYear() * 100 + record.getMonth();
+    }
+
+    @Override
+    public BusinessAssessment createBusinessAssessment(final BusinessAssessmentConfig config, final Integer key)
+    {
+      return new BusinessAssessment(config, key / 100, key % 100);
+    }
+  };
+
+  /**
+   * One business assessment per Kost1, the key is the id of the Kost1DO.
+   */
+  public static final Classifier<Integer> BY_KOST1 = new Classifier<Integer>() {
+    @Override
+    public Integer getKey(final BuchungssatzDO record)
+    {
+      return record.getKost1Id();
+    }
+  };
+
+  /**
+   * One business assessment per Kost2, the key is the id of the Kost2DO.
+   */
+  public static final Classifier<Integer> BY_KOST2 = new Classifier<Integer>() {
+    @Override
+    public Integer getKey(final BuchungssatzDO record)
+    {
+      return record.getKost2Id();
+    }
+  };
+
+  private final BusinessAssessmentConfig config;
+
+  private final Classifier<K> classifier;
+
+  private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+  private boolean storeAccountRecordsInRows;
+
+  public BusinessAssessmentCalculator(final BusinessAssessmentConfig config, final Classifier<K> classifier)
+  {
+    this.config = config;
+    this.classifier = classifier;
+  }
+
+  /**
+   * @param records
+   * @return The business assessments by key in the order of the first occurrence of the keys.
+   */
+  public Map<K, BusinessAssessment> calculate(final Iterator<BuchungssatzDO> records)
+  {
+    final long start = System.currentTimeMillis();
+    final Map<K, BusinessAssessment> result = new LinkedHashMap<K, BusinessAssessment>();
+    if (numberOfThreads <= 1) {
+      final Chunk chunk = new Chunk();
+      while (records.hasNext() == true) {
+        chunk.add(records.next());
+      }
+      merge(result, chunk.call());
+    } else {
+      // The queue is bounded, so the reading thread calculates itself if all threads are busy (the records aren't read faster than
+      // processed).
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(numberOfThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+      try {
+        final List<Future<Map<K, BusinessAssessment>>> futures = new ArrayList<Future<Map<K, BusinessAssessment>>>();
+        Chunk chunk = new Chunk();
+        while (records.hasNext() == true) {
+          chunk.add(records.next());
+          if (chunk.size() >= CHUNK_SIZE) {
+            futures.add(executor.submit(chunk));
+            chunk = new Chunk();
+          }
+        }
+        futures.add(executor.submit(chunk));
+        for (final Future<Map<K, BusinessAssessment>> future : futures) {
+          merge(result, future.get());
+        }
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ex);
+      } catch (final ExecutionException ex) {
+        throw new RuntimeException(ex.getCause());
+      } finally {
+        executor.shutdown();
+      }
+    }
+    int counter = 0;
+    for (final BusinessAssessment businessAssessment : result.values()) {
+      businessAssessment.recalculate();
+      counter += businessAssessment.getCounter();
+    }
+    log.info(result.size() + " business assessments of " + counter + " account records calculated in " + (System.currentTimeMillis() - start)
+        + "ms.");
+    return result;
+  }
+
+  private void merge(final Map<K, BusinessAssessment> result, final Map<K, BusinessAssessment> partialResult)
+  {
+    for (final Map.Entry<K, BusinessAssessment> entry : partialResult.entrySet()) {
+      final BusinessAssessment businessAssessment = result.get(entry.getKey());
+      if (businessAssessment == null) {
+        result.put(entry.getKey(), entry.getValue());
+      } else {
+        businessAssessment.add(entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Default is the number of available processors. If less than 2, the business assessments are calculated by the calling thread.
+   * @param numberOfThreads the numberOfThreads to set
+   * @return this for chaining.
+   */
+  public BusinessAssessmentCalculator<K> setNumberOfThreads(final int numberOfThreads)
+  {
+    this.numberOfThreads = numberOfThreads;
+    return this;
+  }
+
+  /**
+   * @param storeAccountRecordsInRows the storeAccountRecordsInRows to set
+   * @return this for chaining.
+   * @see BusinessAssessment#setStoreAccountRecordsInRows(boolean)
+   */
+  public BusinessAssessmentCalculator<K> setStoreAccountRecordsInRows(final boolean storeAccountRecordsInRows)
+  {
+    this.storeAccountRecordsInRows = storeAccountRecordsInRows;
+    return this;
+  }
+
+  /**
+   * Account records with their keys (the keys are determined by the reading thread).
+   */
+  private class Chunk implements Callable<Map<K, BusinessAssessment>>
+  {
+    private final List<K> keys = new ArrayList<K>();
+
+    private final List<BuchungssatzDO> records = new ArrayList<BuchungssatzDO>();
+
+    void add(final BuchungssatzDO record)
+    {
+      final K key = classifier.getKey(record);
+      if (key != null) {
+        keys.add(key);
+        records.add(record);
+      }
+    }
+
+    int size()
+    {
+      return records.size();
+    }
+
+    @Override
+    public Map<K, BusinessAssessment> call()
+    {
+      final Map<K, BusinessAssessment> result = new LinkedHashMap<K, BusinessAssessment>();
+      for (int i = 0; i < records.size(); i++) {
+        final K key = keys.get(i);
+        BusinessAssessment businessAssessment = result.get(key);
+        if (businessAssessment == null) {
+          businessAssessment = classifier.createBusinessAssessment(config, key);
+          if (storeAccountRecordsInRows == true) {
+            businessAssessment.setStoreAccountRecordsInRows(true);
+          }
+          result.put(key, businessAssessment);
+        }
+        businessAssessment.addAccountRecord(records.get(i));
+      }
+      return result;
+    }
+  }
+}
@@ -49,6 +49,8 @@ public class BusinessAssessmentConfig implements Serializable
 
   private String overallPerformance, merchandisePurchase, preliminaryResult;
 
+  private transient AccountNumberIndex accountNumberIndex;
+
   public BusinessAssessmentConfig()
   {
   }
@@ -75,6 +77,17 @@ public class BusinessAssessmentConfig implements Serializable
     return null;
   }
 
+  /**
+   * @return The precompiled lookup of the row for an account number (built on first usage).
+   */
+  synchronized AccountNumberIndex getAccountNumberIndex()
+  {
+    if (accountNumberIndex == null) {
+      accountNumberIndex = new AccountNumberIndex(rows);
+    }
+    return accountNumberIndex;
+  }
+
   /**
    * @return the heading to be displayed first.
    */
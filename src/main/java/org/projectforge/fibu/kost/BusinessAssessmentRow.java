@@ -108,6 +108,25 @@ public class BusinessAssessmentRow implements Serializable
     }
   }
 
+  /**
+   * Adds the amount and the stored account records of the given row (of the same row of another business assessment).
+   * @param other
+   */
+  void add(final BusinessAssessmentRow other)
+  {
+    if (other.accountRecordsExist == false) {
+      return;
+    }
+    accountRecordsExist = true;
+    if (amount == null) {
+      amount = BigDecimal.ZERO;
+    }
+    amount = amount.add(other.amount);
+    if (this.accountRecords != null && other.accountRecords != null) {
+      this.accountRecords.addAll(other.accountRecords);
+    }
+  }
+
   /**
    * @return the amount
    */
@@ -59,6 +59,7 @@ public class Kost1Dao extends BaseDao<Kost1DO>
   {
     super(Kost1DO.class);
     userRightId = USER_RIGHT_ID;
+    supportPagedQueries = true;
   }
 
   /**
@@ -117,8 +118,7 @@ public class Kost1Dao extends BaseDao<Kost1DO>
   }
 
   @Override
-  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
-  public List<Kost1DO> getList(final BaseSearchFilter filter)
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
   {
     final KostFilter myFilter;
     if (filter instanceof KostFilter) {
@@ -137,7 +137,7 @@ public class Kost1Dao extends BaseDao<Kost1DO>
       queryFilter.add(Restrictions.or(Restrictions.ne("kostentraegerStatus", ProjektStatus.ENDED), Restrictions.isNull("kostentraegerStatus")));
     }
     queryFilter.addOrder(Order.asc("nummernkreis")).addOrder(Order.asc("bereich")).addOrder(Order.asc("teilbereich")).addOrder(Order.asc("endziffer"));
-    return getList(queryFilter);
+    return queryFilter;
   }
 
   @SuppressWarnings("unchecked")
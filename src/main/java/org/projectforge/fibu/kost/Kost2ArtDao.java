@@ -23,8 +23,6 @@
 
 package org.projectforge.fibu.kost;
 
-import java.util.List;
-
 import org.hibernate.criterion.Order;
 import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
@@ -43,6 +41,7 @@ public class Kost2ArtDao extends BaseDao<Kost2ArtDO>
     super(Kost2ArtDO.class);
     avoidNullIdCheckBeforeSave = true;
     userRightId = USER_RIGHT_ID;
+    supportPagedQueries = true;
   }
   
   @Override
@@ -53,11 +52,11 @@ public class Kost2ArtDao extends BaseDao<Kost2ArtDO>
   }
 
   @Override
-  public List<Kost2ArtDO> getList(BaseSearchFilter filter)
+  public QueryFilter createQueryFilter(BaseSearchFilter filter)
   {
     QueryFilter queryFilter = new QueryFilter(filter);
     queryFilter.addOrder(Order.asc("id"));
-    return getList(queryFilter);
+    return queryFilter;
   }
 
   /**
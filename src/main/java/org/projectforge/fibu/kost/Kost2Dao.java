@@ -58,6 +58,7 @@ public class Kost2Dao extends BaseDao<Kost2DO>
   {
     super(Kost2DO.class);
     userRightId = USER_RIGHT_ID;
+    supportPagedQueries = true;
   }
 
   public void setProjektDao(final ProjektDao projektDao)
@@ -160,8 +161,7 @@ public class Kost2Dao extends BaseDao<Kost2DO>
   }
 
   @Override
-  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
-  public List<Kost2DO> getList(final BaseSearchFilter filter)
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
   {
     final KostFilter myFilter;
     if (filter instanceof KostFilter) {
@@ -182,7 +182,7 @@ public class Kost2Dao extends BaseDao<Kost2DO>
     }
     queryFilter.addOrder(Order.asc("nummernkreis")).addOrder(Order.asc("bereich")).addOrder(Order.asc("teilbereich")).addOrder(
         Order.asc("art.id"));
-    return getList(queryFilter);
+    return queryFilter;
   }
 
   @SuppressWarnings("unchecked")
@@ -0,0 +1,253 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.fibu.kost;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Secondary indexes of the cached kost2 entries by number (nummernkreis, bereich, teilbereich and kost2 art), by the first three parts of
+ * the number and by projekt. The lists of the indexes are immutable and replaced on every update, so readers need no synchronization. A
+ * new index is built by every refresh of the {@link KostCache}.
+ */
+class Kost2Index
+{
+  private static final Comparator<Kost2DO> ID_COMPARATOR = new Comparator<Kost2DO>() {
+    @Override
+    public int compare(final Kost2DO o1, final Kost2DO o2)
+    {
+      return o1.getId().compareTo(o2.getId());
+    }
+  };
+
+  private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+  private final ConcurrentMap<Key, Kost2DO> byNumber = new ConcurrentHashMap<Key, Kost2DO>();
+
+  private final ConcurrentMap<Key, List<Kost2DO>> byPrefix = new ConcurrentHashMap<Key, List<Kost2DO>>();
+
+  private final ConcurrentMap<Integer, List<Kost2DO>> byProjekt = new ConcurrentHashMap<Integer, List<Kost2DO>>();
+
+  Kost2Index(final Collection<Kost2DO> list)
+  {
+    final Map<Key, List<Kost2DO>> prefixMap = new HashMap<Key, List<Kost2DO>>();
+    final Map<Integer, List<Kost2DO>> projektMap = new HashMap<Integer, List<Kost2DO>>();
+    for (final Kost2DO kost2 : list) {
+      final Entry entry = new Entry(kost2);
+      entries.put(kost2.getId(), entry);
+      if (entry.number != null) {
+        byNumber.put(entry.number, kost2);
+      }
+      getOrCreateList(prefixMap, entry.prefix).add(kost2);
+      if (entry.projektId != null) {
+        getOrCreateList(projektMap, entry.projektId).add(kost2);
+      }
+    }
+    publish(prefixMap, byPrefix);
+    publish(projektMap, byProjekt);
+  }
+
+  Kost2DO get(final Integer id)
+  {
+    final Entry entry = entries.get(id);
+    return entry != null ? entry.kost2 : null;
+  }
+
+  Kost2DO get(final int nummernkreis, final int bereich, final int teilbereich, final int kost2art)
+  {
+    return byNumber.get(new Key(nummernkreis, bereich, teilbereich, kost2art));
+  }
+
+  /**
+   * @return All entries with the given number prefix ordered by id (immutable list).
+   */
+  List<Kost2DO> getByPrefix(final int nummernkreis, final int bereich, final int teilbereich)
+  {
+    return get(byPrefix, new Key(nummernkreis, bereich, teilbereich, -1));
+  }
+
+  /**
+   * @return All entries of the given projekt ordered by id (immutable list).
+   */
+  List<Kost2DO> getByProjekt(final Integer projektId)
+  {
+    if (projektId == null) {
+      return Collections.emptyList();
+    }
+    return get(byProjekt, projektId);
+  }
+
+  int size()
+  {
+    return entries.size();
+  }
+
+  /**
+   * Inserts or replaces the given entry (by id) in all indexes.
+   */
+  synchronized void update(final Kost2DO kost2)
+  {
+    final Integer id = kost2.getId();
+    final Entry entry = new Entry(kost2);
+    final Entry oldEntry = entries.put(id, entry);
+    if (oldEntry != null) {
+      if (oldEntry.number != null) {
+        final Kost2DO current = byNumber.get(oldEntry.number);
+        if (current != null && id.equals(current.getId()) == true) {
+          byNumber.remove(oldEntry.number);
+        }
+      }
+      remove(byPrefix, oldEntry.prefix, id);
+      if (oldEntry.projektId != null) {
+        remove(byProjekt, oldEntry.projektId, id);
+      }
+    }
+    if (entry.number != null) {
+      byNumber.put(entry.number, kost2);
+    }
+    add(byPrefix, entry.prefix, kost2);
+    if (entry.projektId != null) {
+      add(byProjekt, entry.projektId, kost2);
+    }
+  }
+
+  private static <K> List<Kost2DO> get(final Map<K, List<Kost2DO>> map, final K key)
+  {
+    final List<Kost2DO> list = map.get(key);
+    if (list == null) {
+      return Collections.emptyList();
+    }
+    return list;
+  }
+
+  private static <K> List<Kost2DO> getOrCreateList(final Map<K, List<Kost2DO>> map, final K key)
+  {
+    List<Kost2DO> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<Kost2DO>();
+      map.put(key, list);
+    }
+    return list;
+  }
+
+  private static <K> void publish(final Map<K, List<Kost2DO>> source, final Map<K, List<Kost2DO>> dest)
+  {
+    for (final Map.Entry<K, List<Kost2DO>> entry : source.entrySet()) {
+      final List<Kost2DO> list = entry.getValue();
+      Collections.sort(list, ID_COMPARATOR);
+      dest.put(entry.getKey(), Collections.unmodifiableList(list));
+    }
+  }
+
+  /**
+   * Replaces the list of the given key by a new list (ordered by id) with the given entry.
+   */
+  private static <K> void add(final Map<K, List<Kost2DO>> map, final K key, final Kost2DO kost2)
+  {
+    final List<Kost2DO> list = new ArrayList<Kost2DO>(get(map, key));
+    list.add(kost2);
+    Collections.sort(list, ID_COMPARATOR);
+    map.put(key, Collections.unmodifiableList(list));
+  }
+
+  /**
+   * Replaces the list of the given key by a new list without the entry with the given id.
+   */
+  private static <K> void remove(final Map<K, List<Kost2DO>> map, final K key, final Integer id)
+  {
+    final List<Kost2DO> list = new ArrayList<Kost2DO>();
+    for (final Kost2DO kost2 : get(map, key)) {
+      if (id.equals(kost2.getId()) == false) {
+        list.add(kost2);
+      }
+    }
+    if (list.isEmpty() == true) {
+      map.remove(key);
+    } else {
+      map.put(key, Collections.unmodifiableList(list));
+    }
+  }
+
+  /**
+   * The keys of the entry at the time of indexing (the data object itself may be modified later).
+   */
+  private static class Entry
+  {
+    final Kost2DO kost2;
+
+    final Key number;
+
+    final Key prefix;
+
+    final Integer projektId;
+
+    Entry(final Kost2DO kost2)
+    {
+      this.kost2 = kost2;
+      final Integer kost2ArtId = kost2.getKost2ArtId();
+      this.number = kost2ArtId != null ? new Key(kost2.getNummernkreis(), kost2.getBereich(), kost2.getTeilbereich(), kost2ArtId) : null;
+      this.prefix = new Key(kost2.getNummernkreis(), kost2.getBereich(), kost2.getTeilbereich(), -1);
+      this.projektId = kost2.getProjektId();
+    }
+  }
+
+  private static class Key
+  {
+    private final int nummernkreis, bereich, teilbereich, kost2art;
+
+    Key(final int nummernkreis, final int bereich, final int teilbereich, final int kost2art)
+    {
+      this.nummernkreis = nummernkreis;
+      this.bereich = bereich;
+      this.teilbereich = teilbereich;
+      this.kost2art = kost2art;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return nummernkreis == other.nummernkreis
+          && bereich == other.bereich
+          && teilbereich == other.teilbereich
+          && kost2art == other.kost2art;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return ((nummernkreis * 31 + bereich) * 31 + teilbereich) * 31 + kost2art;
+    }
+  }
+}
@@ -24,14 +24,13 @@
 package org.projectforge.fibu.kost;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.lang.ObjectUtils;
 import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
 import org.projectforge.common.NumberHelper;
@@ -50,22 +49,23 @@ public class KostCache extends AbstractCache
 
   private HibernateTemplate hibernateTemplate;
 
-  /** The key is the kost2-id. */
-  private Map<Integer, Kost2DO> kost2Map;
+  /** The kost2 entries indexed by id, number and projekt. */
+  private volatile Kost2Index kost2Index;
 
   /** The key is the kost2-id. */
-  private Map<Integer, Kost1DO> kost1Map;
+  private volatile Map<Integer, Kost1DO> kost1Map;
 
-  private List<Kost2Art> allKost2Arts;
+  /** Written by the refresh and by {@link #updateKost2Arts()}, replaced as a whole. */
+  private volatile List<Kost2Art> allKost2Arts;
   
-  private boolean kost2EntriesExists = false;
+  private volatile boolean kost2EntriesExists = false;
 
   public Kost2DO getKost2(final Integer kost2Id)
   {
     if (NumberHelper.greaterZero(kost2Id) == false) {
       return null;
     }
-    return getKost2Map().get(kost2Id);
+    return getKost2Index().get(kost2Id);
   }
 
   /**
@@ -83,25 +83,14 @@ public class KostCache extends AbstractCache
 
   public Kost2DO getKost2(final int nummernkreis, final int bereich, final int teilbereich, final int kost2art)
   {
-    for (final Kost2DO kost : getKost2Map().values()) {
-      if (kost.getNummernkreis() == nummernkreis
-          && kost.getBereich() == bereich
-          && kost.getTeilbereich() == teilbereich
-          && kost.getKost2ArtId() == kost2art) {
-        return kost;
-      }
-    }
-    return null;
+    return getKost2Index().get(nummernkreis, bereich, teilbereich, kost2art);
   }
 
   public List<Kost2DO> getActiveKost2(int nummernkreis, int bereich, int teilbereich)
   {
     final List<Kost2DO> list = new ArrayList<Kost2DO>();
-    for (final Kost2DO kost : getKost2Map().values()) {
-      if (kost.getNummernkreis() == nummernkreis
-          && kost.getBereich() == bereich
-          && kost.getTeilbereich() == teilbereich
-          && (kost.getKostentraegerStatus() == KostentraegerStatus.ACTIVE || kost.getKostentraegerStatus() == null)) {
+    for (final Kost2DO kost : getKost2Index().getByPrefix(nummernkreis, bereich, teilbereich)) {
+      if (kost.getKostentraegerStatus() == KostentraegerStatus.ACTIVE || kost.getKostentraegerStatus() == null) {
         list.add(kost);
       }
     }
@@ -130,15 +119,13 @@ public class KostCache extends AbstractCache
     if (projektId == null) {
       return set;
     }
-    for (Kost2DO kost : getKost2Map().values()) {
+    for (Kost2DO kost : getKost2Index().getByProjekt(projektId)) {
       if (kost.isDeleted() == true) {
         continue;
       }
-      if (ObjectUtils.equals(projektId, kost.getProjektId()) == true) {
-        Kost2ArtDO kost2Art = kost.getKost2Art();
-        if (kost2Art != null) {
-          set.add(kost2Art);
-        }
+      Kost2ArtDO kost2Art = kost.getKost2Art();
+      if (kost2Art != null) {
+        set.add(kost2Art);
       }
     }
     return set;
@@ -153,6 +140,10 @@ public class KostCache extends AbstractCache
     checkRefresh();
     final Set<Kost2ArtDO> set = getKost2Arts(projektId);
     final List<Kost2Art> result = new ArrayList<Kost2Art>();
+    final List<Kost2Art> allKost2Arts = this.allKost2Arts;
+    if (allKost2Arts == null) {
+      return result;
+    }
     for (Kost2Art kost2Art : allKost2Arts) {
       if (kost2Art.isDeleted() == true) {
         continue;
@@ -172,6 +163,7 @@ public class KostCache extends AbstractCache
   {
     checkRefresh();
     final List<Kost2Art> list = new ArrayList<Kost2Art>();
+    final List<Kost2Art> allKost2Arts = this.allKost2Arts;
     if (allKost2Arts != null) {
       for (final Kost2Art kost2Art : allKost2Arts) {
         final Kost2ArtDO kost2ArtDO = ((Kost2ArtImpl) kost2Art).getKost2ArtDO();
@@ -195,7 +187,10 @@ public class KostCache extends AbstractCache
    */
   void updateKost2(final Kost2DO kost2)
   {
-    getKost2Map().put(kost2.getId(), kost2);
+    synchronized (this) {
+      getKost2Index().update(kost2);
+      recordUpdate(kost2);
+    }
   }
 
   /**
@@ -204,7 +199,10 @@ public class KostCache extends AbstractCache
    */
   void updateKost1(final Kost1DO kost1)
   {
-    getKost1Map().put(kost1.getId(), kost1);
+    synchronized (this) {
+      getKost1Map().put(kost1.getId(), kost1);
+      recordUpdate(kost1);
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -220,10 +218,10 @@ public class KostCache extends AbstractCache
     this.allKost2Arts = list;
   }
 
-  private Map<Integer, Kost2DO> getKost2Map()
+  private Kost2Index getKost2Index()
   {
     checkRefresh();
-    return kost2Map;
+    return kost2Index;
   }
 
   private Map<Integer, Kost1DO> getKost1Map()
@@ -240,22 +238,32 @@ public class KostCache extends AbstractCache
   {
     log.info("Initializing KostCache ...");
     // This method must not be synchronized because it works with a new copy of maps.
-    final Map<Integer, Kost1DO> map1 = new HashMap<Integer, Kost1DO>();
+    final Map<Integer, Kost1DO> map1 = new ConcurrentHashMap<Integer, Kost1DO>();
     final List<Kost1DO> list1 = hibernateTemplate.find("from Kost1DO t");
     for (Kost1DO kost1 : list1) {
       map1.put(kost1.getId(), kost1);
     }
-    this.kost1Map = map1;
-    final Map<Integer, Kost2DO> map2 = new HashMap<Integer, Kost2DO>();
     final List<Kost2DO> list2 = hibernateTemplate.find("from Kost2DO t");
-    kost2EntriesExists = false;
+    boolean kost2Exists = false;
     for (Kost2DO kost2 : list2) {
-      if (kost2EntriesExists == false && kost2.isDeleted() == false) {
-        kost2EntriesExists = true;
+      if (kost2Exists == false && kost2.isDeleted() == false) {
+        kost2Exists = true;
+      }
+    }
+    final Kost2Index index = new Kost2Index(list2);
+    synchronized (this) {
+      // Modifications done while refreshing in background (the queries above may not contain them):
+      for (final Object update : getUpdatesDuringRefresh()) {
+        if (update instanceof Kost1DO) {
+          map1.put(((Kost1DO) update).getId(), (Kost1DO) update);
+        } else {
+          index.update((Kost2DO) update);
+        }
       }
-      map2.put(kost2.getId(), kost2);
+      this.kost1Map = map1;
+      this.kost2Index = index;
     }
-    this.kost2Map = map2;
+    this.kost2EntriesExists = kost2Exists;
     updateKost2Arts();
     log.info("Initializing of KostCache done.");
   }
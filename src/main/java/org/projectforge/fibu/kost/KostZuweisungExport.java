@@ -107,7 +107,7 @@ public class KostZuweisungExport
    * @param list
    * @return
    */
-  public byte[] exportRechnungen(final List< ? extends AbstractRechnungDO< ? extends AbstractRechnungsPositionDO>> list,
+  public ExportWorkbook exportRechnungen(final List< ? extends AbstractRechnungDO< ? extends AbstractRechnungsPositionDO>> list,
       final String sheetTitle, final KontoCache kontoCache)
   {
     final List<KostZuweisungDO> zuweisungen = new ArrayList<KostZuweisungDO>();
@@ -134,13 +134,21 @@ public class KostZuweisungExport
         }
       }
     }
-    return export(zuweisungen, sheetTitle, kontoCache);
+    return exportWorkbook(zuweisungen, sheetTitle, kontoCache);
   }
 
   /**
    * Exports the filtered list as table.
    */
   public byte[] export(final List<KostZuweisungDO> list, final String sheetTitle, final KontoCache kontoCache)
+  {
+    return exportWorkbook(list, sheetTitle, kontoCache).getAsByteArray();
+  }
+
+  /**
+   * Same as {@link #export(List, String, KontoCache)} but returns the workbook, e. g. for writing it directly to an output stream.
+   */
+  public ExportWorkbook exportWorkbook(final List<KostZuweisungDO> list, final String sheetTitle, final KontoCache kontoCache)
   {
     log.info("Exporting kost zuweisung list.");
     final ExportWorkbook xls = new ExportWorkbook();
@@ -223,7 +231,7 @@ public class KostZuweisungExport
       sheet.addRow(mapping.getMapping(), 0);
     }
     addAccounts(xls, contentProvider);
-    return xls.getAsByteArray();
+    return xls;
   }
 
   private enum AccountsCol
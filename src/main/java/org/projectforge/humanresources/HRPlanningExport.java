@@ -112,6 +112,14 @@ public class HRPlanningExport
    * Projects to Users
    */
   public byte[] export(final List<HRPlanningDO> list, final Locale locale)
+  {
+    return exportWorkbook(list, locale).getAsByteArray();
+  }
+
+  /**
+   * Same as {@link #export(List, Locale)} but returns the workbook, e. g. for writing it directly to an output stream.
+   */
+  public ExportWorkbook exportWorkbook(final List<HRPlanningDO> list, final Locale locale)
   {
     log.info("Exporting resourceplanning list.");
     ExportWorkbook xls = new ExportWorkbook();
@@ -120,7 +128,7 @@ public class HRPlanningExport
     xls = exportKWProjects(list, xls, locale);
     xls = exportProjectUserView(list, xls);
 
-    return xls.getAsByteArray();
+    return xls;
   }
 
   public ExportWorkbook exportCompleteList(final List<HRPlanningDO> list, final ExportWorkbook xls, final Locale locale)
@@ -53,6 +53,12 @@ public class LdapConfig
 
   private boolean storePasswords = true;
 
+  @XmlField(defaultIntValue = 10)
+  private int connectionPoolSize = 10;
+
+  @XmlField(defaultIntValue = 300)
+  private int connectionIdleTimeout = 300;
+
   @XmlField(alias = "posixAccounts")
   private LdapPosixAccountsConfig posixAccountsConfig;
 
@@ -301,6 +307,44 @@ public class LdapConfig
     return this;
   }
 
+  /**
+   * Maximum number of (manager bound) connections to the LDAP server used concurrently. Default is 10. Connections are pooled and re-used.
+   * @return the connectionPoolSize
+   */
+  public int getConnectionPoolSize()
+  {
+    return connectionPoolSize;
+  }
+
+  /**
+   * @param connectionPoolSize the connectionPoolSize to set
+   * @return this for chaining.
+   */
+  public LdapConfig setConnectionPoolSize(final int connectionPoolSize)
+  {
+    this.connectionPoolSize = connectionPoolSize;
+    return this;
+  }
+
+  /**
+   * Idle pooled connections are closed after this time in seconds. Default is 300 (5 minutes).
+   * @return the connectionIdleTimeout
+   */
+  public int getConnectionIdleTimeout()
+  {
+    return connectionIdleTimeout;
+  }
+
+  /**
+   * @param connectionIdleTimeout the connectionIdleTimeout to set
+   * @return this for chaining.
+   */
+  public LdapConfig setConnectionIdleTimeout(final int connectionIdleTimeout)
+  {
+    this.connectionIdleTimeout = connectionIdleTimeout;
+    return this;
+  }
+
   /**
    * @see ConfigXml#toString(Object)
    */
@@ -48,6 +48,8 @@ public class LdapConnector implements ConfigurationListener
 
   private boolean initialized;
 
+  private volatile LdapContextPool contextPool;
+
   /** Don't call this constructor unless you really know what you're doing. This LdapHelper is a singleton and is available via IOC. */
   public LdapConnector()
   {
@@ -120,6 +122,39 @@ public class LdapConnector implements ConfigurationListener
     }
   }
 
+  /**
+   * @return The pool of the manager bound contexts (contexts have to be released after usage).
+   * @see LdapTemplate
+   */
+  LdapContextPool getContextPool()
+  {
+    init();
+    LdapContextPool pool = contextPool;
+    if (pool == null) {
+      synchronized (this) {
+        pool = contextPool;
+        if (pool == null) {
+          pool = new LdapContextPool(ldapConfig.getConnectionPoolSize(), ldapConfig.getConnectionIdleTimeout() * 1000L) {
+            @Override
+            protected LdapContext create()
+            {
+              return createContext();
+            }
+          };
+          contextPool = pool;
+        }
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Creates a new context which isn't pooled. The caller has to close the context.
+   * @param username
+   * @param password
+   * @return
+   * @throws NamingException
+   */
   public LdapContext createContext(final String username, final String password) throws NamingException
   {
     init();
@@ -149,12 +184,24 @@ public class LdapConnector implements ConfigurationListener
   public void afterRead()
   {
     this.ldapConfig = ConfigXml.getInstance().getLdapConfig();
+    closeContextPool();
     if (this.ldapConfig != null && StringUtils.isNotBlank(this.ldapConfig.getSslCertificateFile()) == true) {
       // Try to load SSL certificate.
       MyTrustManager.getInstance().addCertificate("ldap", new File(this.ldapConfig.getSslCertificateFile()));
     }
   }
 
+  /**
+   * Closes the pooled contexts. Should be called on shutdown.
+   */
+  public synchronized void closeContextPool()
+  {
+    if (contextPool != null) {
+      contextPool.close();
+      contextPool = null;
+    }
+  }
+
   /**
    * @return the ldapConfig
    */
@@ -0,0 +1,235 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.LdapContext;
+
+/**
+ * Bounded pool of (manager bound) LDAP contexts. The contexts are re-used, so the connection setup (TCP, TLS handshake and bind) is done
+ * only once per connection. Idle contexts are closed after the idle timeout. Contexts idle for more than {@link #VALIDATION_INTERVAL} are
+ * validated before re-use (by reading the base entry).
+ */
+abstract class LdapContextPool
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(LdapContextPool.class);
+
+  static final long VALIDATION_INTERVAL = 30 * 1000;
+
+  private static final long MAX_WAIT = 30 * 1000;
+
+  private final LinkedList<PooledContext> idleContexts = new LinkedList<PooledContext>();
+
+  private final Semaphore permits;
+
+  private final int maxSize;
+
+  private final long idleTimeout;
+
+  private volatile boolean closed;
+
+  private final AtomicLong createdCounter = new AtomicLong();
+
+  private final AtomicLong reusedCounter = new AtomicLong();
+
+  private final AtomicLong discardedCounter = new AtomicLong();
+
+  /**
+   * @param maxSize Maximum number of contexts in use and idle.
+   * @param idleTimeout in ms.
+   */
+  LdapContextPool(final int maxSize, final long idleTimeout)
+  {
+    this.maxSize = maxSize > 0 ? maxSize : 1;
+    this.idleTimeout = idleTimeout;
+    this.permits = new Semaphore(this.maxSize, true);
+  }
+
+  /**
+   * Creates a new bound context.
+   */
+  protected abstract LdapContext create() throws NamingException;
+
+  /**
+   * Checks the connection of the given context.
+   * @return true if the context is usable.
+   */
+  protected boolean validate(final LdapContext ctx)
+  {
+    try {
+      ctx.getAttributes("", new String[] { "objectClass"});
+      return true;
+    } catch (final NamingException ex) {
+      log.info("Pooled LDAP connection is broken, discarding: " + ex.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Blocks if all contexts are in use (maximum 30 seconds).
+   * @return A pooled context which has to be given back by {@link #release(LdapContext, boolean)}.
+   */
+  LdapContext borrow() throws NamingException
+  {
+    try {
+      if (permits.tryAcquire(MAX_WAIT, TimeUnit.MILLISECONDS) == false) {
+        throw new RuntimeException("No LDAP connection available, all " + maxSize + " pooled connections are in use.");
+      }
+    } catch (final InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ex);
+    }
+    try {
+      final long now = System.currentTimeMillis();
+      while (true) {
+        final PooledContext pooled;
+        synchronized (idleContexts) {
+          pooled = idleContexts.pollFirst();
+        }
+        if (pooled == null) {
+          break;
+        }
+        if (now - pooled.lastUsed > idleTimeout) {
+          destroy(pooled.ctx);
+          continue;
+        }
+        if (now - pooled.lastUsed > VALIDATION_INTERVAL && validate(pooled.ctx) == false) {
+          destroy(pooled.ctx);
+          continue;
+        }
+        reusedCounter.incrementAndGet();
+        return pooled.ctx;
+      }
+      final LdapContext ctx = create();
+      createdCounter.incrementAndGet();
+      return ctx;
+    } catch (final NamingException ex) {
+      permits.release();
+      throw ex;
+    } catch (final RuntimeException ex) {
+      permits.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * @param ctx The context got by {@link #borrow()}.
+   * @param broken If true, the context will be closed and not re-used (e. g. after communication errors).
+   */
+  void release(final LdapContext ctx, final boolean broken)
+  {
+    try {
+      if (broken == true || closed == true) {
+        destroy(ctx);
+        return;
+      }
+      synchronized (idleContexts) {
+        // LIFO: the most recently used contexts are re-used first, so the others may reach the idle timeout.
+        idleContexts.addFirst(new PooledContext(ctx));
+      }
+    } finally {
+      permits.release();
+    }
+    evictIdleContexts();
+  }
+
+  /**
+   * Closes all idle contexts (e. g. after the configuration was changed). Contexts in use are closed on release.
+   */
+  void close()
+  {
+    closed = true;
+    synchronized (idleContexts) {
+      for (final PooledContext pooled : idleContexts) {
+        destroy(pooled.ctx);
+      }
+      idleContexts.clear();
+    }
+  }
+
+  private void evictIdleContexts()
+  {
+    final long now = System.currentTimeMillis();
+    synchronized (idleContexts) {
+      while (idleContexts.isEmpty() == false && now - idleContexts.getLast().lastUsed > idleTimeout) {
+        destroy(idleContexts.removeLast().ctx);
+      }
+    }
+  }
+
+  private void destroy(final LdapContext ctx)
+  {
+    discardedCounter.incrementAndGet();
+    try {
+      ctx.close();
+    } catch (final NamingException ex) {
+      log.debug("Error while closing LDAP connection: " + ex.getMessage(), ex);
+    }
+  }
+
+  int getNumberOfIdleContexts()
+  {
+    synchronized (idleContexts) {
+      return idleContexts.size();
+    }
+  }
+
+  int getNumberOfActiveContexts()
+  {
+    return maxSize - permits.availablePermits();
+  }
+
+  long getCreatedCounter()
+  {
+    return createdCounter.get();
+  }
+
+  long getReusedCounter()
+  {
+    return reusedCounter.get();
+  }
+
+  long getDiscardedCounter()
+  {
+    return discardedCounter.get();
+  }
+
+  private static class PooledContext
+  {
+    final LdapContext ctx;
+
+    final long lastUsed;
+
+    PooledContext(final LdapContext ctx)
+    {
+      this.ctx = ctx;
+      this.lastUsed = System.currentTimeMillis();
+    }
+  }
+}
@@ -25,15 +25,20 @@ package org.projectforge.ldap;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.NameNotFoundException;
 
 import org.apache.commons.lang.StringUtils;
+import org.projectforge.common.DateHelper;
 import org.projectforge.registry.Registry;
 import org.projectforge.user.GroupDO;
 import org.projectforge.user.LoginDefaultHandler;
@@ -70,12 +75,38 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
    * For users of this list, the stay-logged-in mechanism interrupts, the user has to re-login via LoginForm to update the correct password
    * in the LDAP system.
    */
-  private Set<Integer> usersWithoutLdapPasswords = new HashSet<Integer>();
+  private volatile Set<Integer> usersWithoutLdapPasswords = createConcurrentSet();
 
   // Caches all Samba NT password of the LDAP users by user id.
-  private Map<Integer, String> sambaNTPasswords = new HashMap<Integer, String>();
+  private volatile Map<Integer, String> sambaNTPasswords = new ConcurrentHashMap<Integer, String>();
 
-  private boolean refreshInProgress;
+  /**
+   * A full synchronization is done at least once a day (modifications of the LDAP entries done by other systems are overwritten).
+   */
+  private static final long FULL_SYNC_INTERVAL = DateHelper.MILLIS_DAY;
+
+  private volatile boolean refreshInProgress;
+
+  // Users and groups of the last UserGroupCache refresh, which are not yet synchronized:
+  private Collection<PFUserDO> pendingUsers;
+
+  private Collection<GroupDO> pendingGroups;
+
+  /**
+   * Maximum last update of all users and groups of the last successful synchronization. Users and groups modified after are synchronized
+   * next time. Null forces a full synchronization.
+   */
+  private Date lastSyncModificationTime;
+
+  private long timeOfLastFullSync;
+
+  private volatile long lastSyncDuration = -1;
+
+  private volatile boolean lastSyncFull;
+
+  private volatile int lastSyncNumberOfUsers, lastSyncNumberOfGroups, lastSyncNumberOfErrors;
+
+  private final AtomicInteger syncCounter = new AtomicInteger();
 
   /**
    * @see org.projectforge.ldap.LdapLoginHandler#initialize()
@@ -112,6 +143,9 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
         log.info("User's credentials in LDAP not up-to-date: " + username + ". Updating LDAP entry...");
         ldapUserDao.createOrUpdate(userBase, ldapUser);
         ldapUserDao.changePassword(ldapUser, null, password);
+        // The LDAP password is now given (the synchronization of unmodified users is skipped, so update the state here):
+        usersWithoutLdapPasswords.remove(user.getId());
+        sambaNTPasswords.remove(user.getId());
       } else {
         final String sambaNTPassword = sambaNTPasswords.get(loginResult.getUser().getId());
         if (sambaNTPassword != null) {
@@ -124,6 +158,8 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
               ldapUserDao.changePassword(ldapUser, null, password);
             }
           }
+          sambaNTPasswords.remove(user.getId());
+          usersWithoutLdapPasswords.remove(user.getId());
         }
       }
     } catch (final Exception ex) {
@@ -153,26 +189,56 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
   }
 
   /**
-   * Refreshes the LDAP.
+   * Refreshes the LDAP. The synchronization runs asynchronously. If a synchronization is already running, the given users and groups are
+   * synchronized afterwards (only the users and groups of the last call are synchronized, older pending calls are skipped).
    * @see org.projectforge.user.LoginHandler#afterUserGroupCacheRefresh(java.util.List, java.util.List)
    */
   @Override
   public void afterUserGroupCacheRefresh(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
   {
-    new Thread() {
+    synchronized (this) {
+      pendingUsers = users;
+      pendingGroups = groups;
+      if (refreshInProgress == true) {
+        log.info("LDAP synchronization is already running, the new synchronization will be started afterwards.");
+        return;
+      }
+      refreshInProgress = true;
+    }
+    final Thread thread = new Thread("LdapMasterLoginHandler-Sync") {
       @Override
       public void run()
       {
-        synchronized (LdapMasterLoginHandler.this) {
-          try {
-            refreshInProgress = true;
-            updateLdap(users, groups);
-          } finally {
+        try {
+          while (true) {
+            final Collection<PFUserDO> users;
+            final Collection<GroupDO> groups;
+            synchronized (LdapMasterLoginHandler.this) {
+              if (pendingUsers == null) {
+                return;
+              }
+              users = pendingUsers;
+              groups = pendingGroups;
+              pendingUsers = null;
+              pendingGroups = null;
+            }
+            try {
+              updateLdap(users, groups);
+            } catch (final RuntimeException ex) {
+              // The next synchronization will be a full synchronization, continue with the users and groups pending meanwhile:
+              log.error("LDAP synchronization failed: " + ex.getMessage(), ex);
+            }
+          }
+        } finally {
+          // Otherwise an Error would block any further synchronization. Users and groups still pending are synchronized by the next call.
+          synchronized (LdapMasterLoginHandler.this) {
             refreshInProgress = false;
           }
         }
       }
-    }.start();
+    };
+    thread.setDaemon(true);
+    thread.start();
   }
 
   /**
@@ -183,177 +249,346 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     return refreshInProgress;
   }
 
-  private void updateLdap(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
+  /**
+   * @return The duration of the last synchronization in ms or -1 if no synchronization was done.
+   */
+  public long getLastSyncDuration()
   {
-    new LdapTemplate(ldapConnector) {
-      @Override
-      protected Object call() throws NameNotFoundException, Exception
-      {
-        log.info("Updating LDAP...");
-        // First, get set of all ldap entries:
-        final List<LdapUser> ldapUsers = getAllLdapUsers(ctx);
-        final List<LdapUser> updatedLdapUsers = new ArrayList<LdapUser>();
-        int error = 0, unmodified = 0, created = 0, updated = 0, deleted = 0, renamed = 0;
-        final Set<Integer> shadowUsersWithoutLdapPasswords = new HashSet<Integer>();
-        final Map<Integer, String> shadowSambaNTPasswords = new HashMap<Integer, String>();
-        final boolean sambaConfigured = ldapConfig.getSambaAccountsConfig() != null;
-        for (final PFUserDO user : users) {
-          final LdapUser updatedLdapUser = PFUserDOConverter.convert(user);
-          try {
-            final LdapUser ldapUser = getLdapUser(ldapUsers, user);
-            if (ldapUser == null) {
-              updatedLdapUser.setOrganizationalUnit(userBase);
-              if (user.isDeleted() == false && user.isLocalUser() == false) {
-                // Do not add deleted or local users.
-                // TODO: if (ldapConfig.isSupportPosixAccounts() == true &&) {
-                // updatedLdapUser.addObjectClass(LdapUserDao.OBJECT_CLASS_POSIX_ACCOUNT);
-                // }
-                ldapUserDao.create(ctx, userBase, updatedLdapUser);
-                shadowUsersWithoutLdapPasswords.add(user.getId()); // User can't be valid for created users.
-                created++;
-              }
-            } else {
-              // Need to set organizational unit for detecting the change of deactivated flag. The updateLdapUser needs the organizational
-              // unit of the original ldap object:
-              updatedLdapUser.setOrganizationalUnit(ldapUser.getOrganizationalUnit());
-              // Otherwise the NT password will be deleted in copy function below:
-              updatedLdapUser.setSambaNTPassword(ldapUser.getSambaNTPassword());
-              if (user.isDeleted() == true || user.isLocalUser() == true) {
-                // Deleted and local users shouldn't be synchronized with LDAP:
-                ldapUserDao.delete(ctx, updatedLdapUser);
-                shadowUsersWithoutLdapPasswords.add(user.getId()); // Paranoia code, stay-logged-in shouldn't work with deleted users.
-                deleted++;
-              } else {
-                final boolean modified = PFUserDOConverter.copyUserFields(updatedLdapUser, ldapUser);
-                if (StringUtils.equals(updatedLdapUser.getUid(), ldapUser.getUid()) == false) {
-                  // uid (dn) changed.
-                  ldapUserDao.rename(ctx, updatedLdapUser, ldapUser);
-                  renamed++;
+    return lastSyncDuration;
+  }
+
+  /**
+   * @return true, if the last synchronization was a full synchronization, false if only modified users and groups were synchronized.
+   */
+  public boolean isLastSyncFull()
+  {
+    return lastSyncFull;
+  }
+
+  /**
+   * @return The number of users processed by the last synchronization.
+   */
+  public int getLastSyncNumberOfUsers()
+  {
+    return lastSyncNumberOfUsers;
+  }
+
+  /**
+   * @return The number of groups processed by the last synchronization.
+   */
+  public int getLastSyncNumberOfGroups()
+  {
+    return lastSyncNumberOfGroups;
+  }
+
+  public int getLastSyncNumberOfErrors()
+  {
+    return lastSyncNumberOfErrors;
+  }
+
+  /**
+   * @return The number of synchronizations since start-up.
+   */
+  public int getSyncCounter()
+  {
+    return syncCounter.get();
+  }
+
+  private void updateLdap(final Collection<PFUserDO> allUsers, final Collection<GroupDO> allGroups)
+  {
+    final long start = System.currentTimeMillis();
+    final boolean fullSync = lastSyncModificationTime == null || start - timeOfLastFullSync > FULL_SYNC_INTERVAL;
+    final Date modifiedSince = fullSync == true ? null : lastSyncModificationTime;
+    final Date maxLastUpdate = getMaxLastUpdate(allUsers, allGroups);
+    // Only users and groups modified since last synchronization (all users and groups if full sync):
+    final List<PFUserDO> users = new ArrayList<PFUserDO>();
+    final Set<Integer> userIds = new HashSet<Integer>();
+    for (final PFUserDO user : allUsers) {
+      if (isModifiedSince(user.getLastUpdate(), modifiedSince) == true) {
+        users.add(user);
+        userIds.add(user.getId());
+      }
+    }
+    final List<GroupDO> groups = new ArrayList<GroupDO>();
+    for (final GroupDO group : allGroups) {
+      if (isModifiedSince(group.getLastUpdate(), modifiedSince) == true || containsUser(group, userIds) == true) {
+        // The members of groups containing modified users may be changed (dn or deactivation of users):
+        groups.add(group);
+      }
+    }
+    if (fullSync == false && users.isEmpty() == true && groups.isEmpty() == true) {
+      log.info("Updating LDAP: no users or groups modified since " + DateHelper.formatAsUTC(modifiedSince) + ", nothing to do.");
+      lastSyncModificationTime = maxLastUpdate;
+      return;
+    }
+    final Integer errors;
+    try {
+      errors = (Integer) new LdapTemplate(ldapConnector) {
+        @Override
+        protected Object call() throws NameNotFoundException, Exception
+        {
+          log.info("Updating LDAP ("
+              + (fullSync == true ? "full synchronization" : "users and groups modified since " + DateHelper.formatAsUTC(modifiedSince))
+              + ")...");
+          // First, get set of all ldap entries:
+          final List<LdapUser> ldapUsers = getAllLdapUsers(ctx);
+          // Indexes (positions in ldapUsers) of the ldap users by uid and employee number:
+          final Map<String, Integer> ldapUsersByUid = new HashMap<String, Integer>();
+          final Map<String, Integer> ldapUsersByEmployeeNumber = new HashMap<String, Integer>();
+          buildLdapUserIndexes(ldapUsers, ldapUsersByUid, ldapUsersByEmployeeNumber);
+          final List<LdapUser> updatedLdapUsers = new ArrayList<LdapUser>();
+          int error = 0, unmodified = 0, created = 0, updated = 0, deleted = 0, renamed = 0, totalErrors = 0;
+          // On full synchronization the password states of all users are re-calculated, otherwise only of the modified users:
+          final Set<Integer> shadowUsersWithoutLdapPasswords = createConcurrentSet();
+          final Map<Integer, String> shadowSambaNTPasswords = new ConcurrentHashMap<Integer, String>();
+          if (fullSync == false) {
+            shadowUsersWithoutLdapPasswords.addAll(usersWithoutLdapPasswords);
+            shadowUsersWithoutLdapPasswords.removeAll(userIds);
+            shadowSambaNTPasswords.putAll(sambaNTPasswords);
+            for (final Integer userId : userIds) {
+              shadowSambaNTPasswords.remove(userId);
+            }
+          }
+          final boolean sambaConfigured = ldapConfig.getSambaAccountsConfig() != null;
+          for (final PFUserDO user : users) {
+            final LdapUser updatedLdapUser = PFUserDOConverter.convert(user);
+            try {
+              final LdapUser ldapUser = getLdapUser(ldapUsers, ldapUsersByUid, ldapUsersByEmployeeNumber, user);
+              if (ldapUser == null) {
+                updatedLdapUser.setOrganizationalUnit(userBase);
+                if (user.isDeleted() == false && user.isLocalUser() == false) {
+                  // Do not add deleted or local users.
+                  // TODO: if (ldapConfig.isSupportPosixAccounts() == true &&) {
+                  // updatedLdapUser.addObjectClass(LdapUserDao.OBJECT_CLASS_POSIX_ACCOUNT);
+                  // }
+                  ldapUserDao.create(ctx, userBase, updatedLdapUser);
+                  shadowUsersWithoutLdapPasswords.add(user.getId()); // User can't be valid for created users.
+                  created++;
                 }
-                if (modified == true) {
-                  updatedLdapUser.setObjectClasses(ldapUser.getObjectClasses());
-                  ldapUserDao.update(ctx, userBase, updatedLdapUser);
-                  updated++;
+              } else {
+                // Need to set organizational unit for detecting the change of deactivated flag. The updateLdapUser needs the organizational
+                // unit of the original ldap object:
+                updatedLdapUser.setOrganizationalUnit(ldapUser.getOrganizationalUnit());
+                // Otherwise the NT password will be deleted in copy function below:
+                updatedLdapUser.setSambaNTPassword(ldapUser.getSambaNTPassword());
+                if (user.isDeleted() == true || user.isLocalUser() == true) {
+                  // Deleted and local users shouldn't be synchronized with LDAP:
+                  ldapUserDao.delete(ctx, updatedLdapUser);
+                  shadowUsersWithoutLdapPasswords.add(user.getId()); // Paranoia code, stay-logged-in shouldn't work with deleted users.
+                  deleted++;
                 } else {
-                  unmodified++;
-                }
-                boolean passwordsGiven = false;
-                if (ldapUser.isPasswordGiven() == true) {
-                  // If the user has a Samba SID then the Samba NT password mustn't be blank:
-                  if (sambaConfigured == false
-                      || ldapUser.getSambaSIDNumber() == null
-                      || StringUtils.isNotBlank(ldapUser.getSambaNTPassword()) == true) {
-                    passwordsGiven = true;
+                  final boolean modified = PFUserDOConverter.copyUserFields(updatedLdapUser, ldapUser);
+                  if (StringUtils.equals(updatedLdapUser.getUid(), ldapUser.getUid()) == false) {
+                    // uid (dn) changed.
+                    ldapUserDao.rename(ctx, updatedLdapUser, ldapUser);
+                    renamed++;
                   }
-                }
-                if (passwordsGiven == true) {
-                  if (updatedLdapUser.isDeactivated()) {
-                    log.warn("User password for deactivated user is set: " + ldapUser);
-                    ldapUserDao.deactivateUser(ctx, updatedLdapUser);
-                    shadowUsersWithoutLdapPasswords.add(user.getId()); // Paranoia code, stay-logged-in shouldn't work with deleted or
-                    // deactivated users.
+                  if (modified == true) {
+                    updatedLdapUser.setObjectClasses(ldapUser.getObjectClasses());
+                    ldapUserDao.update(ctx, userBase, updatedLdapUser);
+                    updated++;
                   } else {
-                    shadowUsersWithoutLdapPasswords.remove(user.getId()); // Remove if exists because password is given.
+                    unmodified++;
                   }
-                } else {
-                  shadowUsersWithoutLdapPasswords.add(user.getId()); // Password isn't given for the current user.
-                  if (ldapUser.getSambaSIDNumber() != null) {
-                    final String sambaNTPassword = ldapUser.getSambaNTPassword();
-                    if (StringUtils.isNotBlank(sambaNTPassword) == true) {
-                      shadowSambaNTPasswords.put(user.getId(), sambaNTPassword);
+                  boolean passwordsGiven = false;
+                  if (ldapUser.isPasswordGiven() == true) {
+                    // If the user has a Samba SID then the Samba NT password mustn't be blank:
+                    if (sambaConfigured == false
+                        || ldapUser.getSambaSIDNumber() == null
+                        || StringUtils.isNotBlank(ldapUser.getSambaNTPassword()) == true) {
+                      passwordsGiven = true;
+                    }
+                  }
+                  if (passwordsGiven == true) {
+                    if (updatedLdapUser.isDeactivated()) {
+                      log.warn("User password for deactivated user is set: " + ldapUser);
+                      ldapUserDao.deactivateUser(ctx, updatedLdapUser);
+                      shadowUsersWithoutLdapPasswords.add(user.getId()); // Paranoia code, stay-logged-in shouldn't work with deleted or
+                      // deactivated users.
                     } else {
-                      shadowSambaNTPasswords.put(user.getId(), ""); // Empty password
+                      shadowUsersWithoutLdapPasswords.remove(user.getId()); // Remove if exists because password is given.
+                    }
+                  } else {
+                    shadowUsersWithoutLdapPasswords.add(user.getId()); // Password isn't given for the current user.
+                    if (ldapUser.getSambaSIDNumber() != null) {
+                      final String sambaNTPassword = ldapUser.getSambaNTPassword();
+                      if (StringUtils.isNotBlank(sambaNTPassword) == true) {
+                        shadowSambaNTPasswords.put(user.getId(), sambaNTPassword);
+                      } else {
+                        shadowSambaNTPasswords.put(user.getId(), ""); // Empty password
+                      }
                     }
                   }
                 }
               }
+              ldapUserDao.buildDn(userBase, updatedLdapUser);
+              updatedLdapUsers.add(updatedLdapUser);
+            } catch (final Exception ex) {
+              ldapUserDao.buildDn(userBase, updatedLdapUser);
+              updatedLdapUsers.add(updatedLdapUser);
+              log.error("Error while proceeding user '" + user.getUsername() + "'. Continuing with next user.", ex);
+              error++;
             }
-            ldapUserDao.buildDn(userBase, updatedLdapUser);
-            updatedLdapUsers.add(updatedLdapUser);
-          } catch (final Exception ex) {
-            ldapUserDao.buildDn(userBase, updatedLdapUser);
-            updatedLdapUsers.add(updatedLdapUser);
-            log.error("Error while proceeding user '" + user.getUsername() + "'. Continuing with next user.", ex);
-            error++;
           }
-        }
-        usersWithoutLdapPasswords = shadowUsersWithoutLdapPasswords;
-        sambaNTPasswords = shadowSambaNTPasswords;
-        log.info(""
-            + shadowUsersWithoutLdapPasswords.size()
-            + " users without password in the LDAP system (login required for these users for updating the LDAP password).");
-        log.info("Update of LDAP users: "
-            + (error > 0 ? "*** " + error + " errors ***, " : "")
-            + unmodified
-            + " unmodified, "
-            + created
-            + " created, "
-            + updated
-            + " updated, "
-            + renamed
-            + " renamed, "
-            + deleted
-            + " deleted.");
-        // Now get all groups:
-        final List<LdapGroup> ldapGroups = getAllLdapGroups(ctx);
-        final Map<Integer, LdapUser> ldapUserMap = getUserMap(updatedLdapUsers);
-        error = unmodified = created = updated = renamed = deleted = 0;
-        for (final GroupDO group : groups) {
-          try {
-            final LdapGroup updatedLdapGroup = GroupDOConverter.convert(group, baseDN, ldapUserMap);
-            final LdapGroup ldapGroup = getLdapGroup(ldapGroups, group);
-            if (ldapGroup == null) {
-              updatedLdapGroup.setOrganizationalUnit(groupBase);
-              if (group.isDeleted() == false && group.isLocalGroup() == false) {
-                // Do not add deleted or local groups.
-                setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
-                ldapGroupDao.create(ctx, groupBase, updatedLdapGroup);
-                created++;
-              }
-            } else {
-              updatedLdapGroup.setOrganizationalUnit(ldapGroup.getOrganizationalUnit());
-              if (group.isDeleted() == true || group.isLocalGroup() == true) {
-                // Deleted and local users shouldn't be synchronized with LDAP:
-                ldapGroupDao.delete(ctx, updatedLdapGroup);
-                deleted++;
-              } else {
-                final boolean modified = GroupDOConverter.copyGroupFields(updatedLdapGroup, ldapGroup);
-                if (modified == true) {
-                  updatedLdapGroup.setObjectClasses(ldapGroup.getObjectClasses());
+          totalErrors += error;
+          usersWithoutLdapPasswords = shadowUsersWithoutLdapPasswords;
+          sambaNTPasswords = shadowSambaNTPasswords;
+          log.info(""
+              + shadowUsersWithoutLdapPasswords.size()
+              + " users without password in the LDAP system (login required for these users for updating the LDAP password).");
+          log.info("Update of LDAP users: "
+              + (error > 0 ? "*** " + error + " errors ***, " : "")
+              + unmodified
+              + " unmodified, "
+              + created
+              + " created, "
+              + updated
+              + " updated, "
+              + renamed
+              + " renamed, "
+              + deleted
+              + " deleted.");
+          // Now get all groups:
+          final List<LdapGroup> ldapGroups = getAllLdapGroups(ctx);
+          final Map<String, LdapGroup> ldapGroupsByBusinessCategory = new HashMap<String, LdapGroup>();
+          for (final LdapGroup ldapGroup : ldapGroups) {
+            final String businessCategory = ldapGroup.getBusinessCategory();
+            if (businessCategory != null && ldapGroupsByBusinessCategory.containsKey(businessCategory) == false) {
+              ldapGroupsByBusinessCategory.put(businessCategory, ldapGroup);
+            }
+          }
+          // The unmodified users are taken from the LDAP (only needed on delta synchronization), the modified users are overwritten:
+          final Map<Integer, LdapUser> ldapUserMap = fullSync == true ? getUserMap(updatedLdapUsers) : getUserMap(ldapUsers);
+          if (fullSync == false) {
+            ldapUserMap.putAll(getUserMap(updatedLdapUsers));
+          }
+          error = unmodified = created = updated = renamed = deleted = 0;
+          for (final GroupDO group : groups) {
+            try {
+              final LdapGroup updatedLdapGroup = GroupDOConverter.convert(group, baseDN, ldapUserMap);
+              final LdapGroup ldapGroup = ldapGroupsByBusinessCategory.get(GroupDOConverter.buildBusinessCategory(group));
+              if (ldapGroup == null) {
+                updatedLdapGroup.setOrganizationalUnit(groupBase);
+                if (group.isDeleted() == false && group.isLocalGroup() == false) {
+                  // Do not add deleted or local groups.
                   setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
-                  ldapGroupDao.update(ctx, groupBase, updatedLdapGroup);
-                  updated++;
-                } else {
-                  unmodified++;
+                  ldapGroupDao.create(ctx, groupBase, updatedLdapGroup);
+                  created++;
                 }
-                if (StringUtils.equals(updatedLdapGroup.getCommonName(), ldapGroup.getCommonName()) == false) {
-                  // CommonName (cn) and therefor dn changed.
-                  ldapGroupDao.rename(ctx, updatedLdapGroup, ldapGroup);
-                  renamed++;
+              } else {
+                updatedLdapGroup.setOrganizationalUnit(ldapGroup.getOrganizationalUnit());
+                if (group.isDeleted() == true || group.isLocalGroup() == true) {
+                  // Deleted and local users shouldn't be synchronized with LDAP:
+                  ldapGroupDao.delete(ctx, updatedLdapGroup);
+                  deleted++;
+                } else {
+                  final boolean modified = GroupDOConverter.copyGroupFields(updatedLdapGroup, ldapGroup);
+                  if (modified == true) {
+                    updatedLdapGroup.setObjectClasses(ldapGroup.getObjectClasses());
+                    setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
+                    ldapGroupDao.update(ctx, groupBase, updatedLdapGroup);
+                    updated++;
+                  } else {
+                    unmodified++;
+                  }
+                  if (StringUtils.equals(updatedLdapGroup.getCommonName(), ldapGroup.getCommonName()) == false) {
+                    // CommonName (cn) and therefor dn changed.
+                    ldapGroupDao.rename(ctx, updatedLdapGroup, ldapGroup);
+                    renamed++;
+                  }
                 }
               }
+            } catch (final Exception ex) {
+              log.error("Error while proceeding group '" + group.getName() + "'. Continuing with next group.", ex);
+              error++;
             }
-          } catch (final Exception ex) {
-            log.error("Error while proceeding group '" + group.getName() + "'. Continuing with next group.", ex);
-            error++;
           }
+          log.info("Update of LDAP groups: "
+              + (error > 0 ? "*** " + error + " errors ***, " : "")
+              + unmodified
+              + " unmodified, "
+              + created
+              + " created, "
+              + updated
+              + " updated, "
+              + renamed
+              + " renamed, "
+              + deleted
+              + " deleted.");
+          totalErrors += error;
+          log.info("LDAP update done.");
+          return totalErrors;
         }
-        log.info("Update of LDAP groups: "
-            + (error > 0 ? "*** " + error + " errors ***, " : "")
-            + unmodified
-            + " unmodified, "
-            + created
-            + " created, "
-            + updated
-            + " updated, "
-            + renamed
-            + " renamed, "
-            + deleted
-            + " deleted.");
-        log.info("LDAP update done.");
-        return null;
+      }.excecute();
+    } catch (final RuntimeException ex) {
+      // Force full synchronization next time:
+      lastSyncModificationTime = null;
+      throw ex;
+    }
+    lastSyncDuration = System.currentTimeMillis() - start;
+    lastSyncFull = fullSync;
+    lastSyncNumberOfUsers = users.size();
+    lastSyncNumberOfGroups = groups.size();
+    lastSyncNumberOfErrors = errors != null ? errors : 0;
+    syncCounter.incrementAndGet();
+    if (errors != null && errors == 0) {
+      // Otherwise the next synchronization will be a full synchronization:
+      lastSyncModificationTime = maxLastUpdate;
+      if (fullSync == true) {
+        timeOfLastFullSync = start;
       }
-    }.excecute();
+    } else {
+      lastSyncModificationTime = null;
+    }
+    log.info("LDAP synchronization ("
+        + (fullSync == true ? "full" : "delta")
+        + ") of "
+        + lastSyncNumberOfUsers
+        + " users and "
+        + lastSyncNumberOfGroups
+        + " groups took "
+        + lastSyncDuration
+        + "ms.");
+  }
+
+  static boolean isModifiedSince(final Date lastUpdate, final Date modifiedSince)
+  {
+    // Objects with same time stamp are synchronized again (objects modified in the same millisecond aren't lost):
+    return modifiedSince == null || lastUpdate == null || lastUpdate.before(modifiedSince) == false;
+  }
+
+  static boolean containsUser(final GroupDO group, final Set<Integer> userIds)
+  {
+    if (userIds.isEmpty() == true || group.getAssignedUsers() == null) {
+      return false;
+    }
+    for (final PFUserDO user : group.getAssignedUsers()) {
+      if (userIds.contains(user.getId()) == true) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static Date getMaxLastUpdate(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
+  {
+    long max = 0;
+    for (final PFUserDO user : users) {
+      if (user.getLastUpdate() != null && user.getLastUpdate().getTime() > max) {
+        max = user.getLastUpdate().getTime();
+      }
+    }
+    for (final GroupDO group : groups) {
+      if (group.getLastUpdate() != null && group.getLastUpdate().getTime() > max) {
+        max = group.getLastUpdate().getTime();
+      }
+    }
+    return new Date(max);
+  }
+
+  private static <T> Set<T> createConcurrentSet()
+  {
+    return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
   }
 
   /**
@@ -451,24 +686,35 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     return map;
   }
 
-  private LdapUser getLdapUser(final List<LdapUser> ldapUsers, final PFUserDO user)
+  static void buildLdapUserIndexes(final List<LdapUser> ldapUsers, final Map<String, Integer> ldapUsersByUid,
+      final Map<String, Integer> ldapUsersByEmployeeNumber)
   {
-    for (final LdapUser ldapUser : ldapUsers) {
-      if (StringUtils.equals(ldapUser.getUid(), user.getUsername()) == true
-          || StringUtils.equals(ldapUser.getEmployeeNumber(), PFUserDOConverter.buildEmployeeNumber(user)) == true) {
-        return ldapUser;
+    for (int i = 0; i < ldapUsers.size(); i++) {
+      final LdapUser ldapUser = ldapUsers.get(i);
+      if (ldapUser.getUid() != null && ldapUsersByUid.containsKey(ldapUser.getUid()) == false) {
+        ldapUsersByUid.put(ldapUser.getUid(), i);
+      }
+      if (ldapUser.getEmployeeNumber() != null && ldapUsersByEmployeeNumber.containsKey(ldapUser.getEmployeeNumber()) == false) {
+        ldapUsersByEmployeeNumber.put(ldapUser.getEmployeeNumber(), i);
       }
     }
-    return null;
   }
 
-  private LdapGroup getLdapGroup(final List<LdapGroup> ldapGroups, final GroupDO group)
+  /**
+   * @return The first ldap user of the given list with the user's uid or employee number (a uid match doesn't take precedence over a
+   *         preceding employee number match).
+   */
+  static LdapUser getLdapUser(final List<LdapUser> ldapUsers, final Map<String, Integer> ldapUsersByUid,
+      final Map<String, Integer> ldapUsersByEmployeeNumber, final PFUserDO user)
   {
-    for (final LdapGroup ldapGroup : ldapGroups) {
-      if (StringUtils.equals(ldapGroup.getBusinessCategory(), GroupDOConverter.buildBusinessCategory(group)) == true) {
-        return ldapGroup;
-      }
+    final Integer uidIndex = user.getUsername() != null ? ldapUsersByUid.get(user.getUsername()) : null;
+    final Integer employeeNumberIndex = ldapUsersByEmployeeNumber.get(PFUserDOConverter.buildEmployeeNumber(user));
+    if (uidIndex == null) {
+      return employeeNumberIndex != null ? ldapUsers.get(employeeNumberIndex) : null;
+    }
+    if (employeeNumberIndex == null || uidIndex < employeeNumberIndex) {
+      return ldapUsers.get(uidIndex);
     }
-    return null;
+    return ldapUsers.get(employeeNumberIndex);
   }
 }
@@ -23,11 +23,14 @@
 
 package org.projectforge.ldap;
 
+import javax.naming.CommunicationException;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
 
 /**
  * Template for closing contexts and result properly.
@@ -47,16 +50,27 @@ public abstract class LdapTemplate
 
   protected DirContext ctx;
 
+  // Pool of the context if borrowed from the pool:
+  private LdapContextPool contextPool;
+
+  private boolean broken;
+
   public LdapTemplate(final LdapConnector ldapConnector)
   {
     this.ldapConnector = ldapConnector;
   }
 
+  /**
+   * Executes {@link #call()} with a pooled (manager bound) context.
+   */
   public Object excecute()
   {
-    ctx = ldapConnector.createContext();
-    if (ctx != null) {
-      ++openConnections;
+    contextPool = ldapConnector.getContextPool();
+    try {
+      ctx = contextPool.borrow();
+    } catch (final NamingException ex) {
+      log.error("While trying to connect LDAP initally: " + ex.getMessage(), ex);
+      throw new RuntimeException(ex);
     }
     return internalExcecute();
   }
@@ -65,6 +79,7 @@ public abstract class LdapTemplate
   {
     try {
       ctx = ldapConnector.createContext(username, password);
+      ++openConnections;
     } catch (final NamingException ex) {
       log.error("While trying to connect LDAP initally: " + ex.getMessage(), ex);
       throw new RuntimeException(ex);
@@ -82,6 +97,15 @@ public abstract class LdapTemplate
       // Just clean up and exit.
       log.error(e.getMessage(), e);
       return null;
+    } catch (final CommunicationException e) {
+      // Connection is broken, don't re-use it:
+      broken = true;
+      log.error(e.getMessage(), e);
+      throw new RuntimeException(e);
+    } catch (final ServiceUnavailableException e) {
+      broken = true;
+      log.error(e.getMessage(), e);
+      throw new RuntimeException(e);
     } catch (final Exception e) {
       log.error(e.getMessage(), e);
       throw new RuntimeException(e);
@@ -94,7 +118,9 @@ public abstract class LdapTemplate
           // Never mind this.
         }
       }
-      if (ctx != null) {
+      if (ctx != null && contextPool != null) {
+        contextPool.release((LdapContext) ctx, broken);
+      } else if (ctx != null) {
         try {
           log.info("Closing LDAP connection (" + openConnections + " connections opened).");
           ctx.close();
@@ -37,6 +37,7 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapContext;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
@@ -486,13 +487,23 @@ public class LdapUserDao extends LdapDao<String, LdapUser>
     } else {
       dn = "uid=" + username + "," + searchBase + "," + ldapConnector.getBase();
     }
+    // The user lookup above uses a pooled connection, only the bind with the user's credentials needs an own connection:
+    LdapContext ctx = null;
     try {
-      ldapConnector.createContext(dn, userPassword);
+      ctx = ldapConnector.createContext(dn, userPassword);
       log.info("User '" + username + "' (" + dn + ") successfully authenticated.");
       return user;
     } catch (final Exception ex) {
       log.error("User '" + username + "' (" + dn + ") with invalid credentials.");
       return null;
+    } finally {
+      if (ctx != null) {
+        try {
+          ctx.close();
+        } catch (final NamingException ex) {
+          log.error(ex.getMessage(), ex);
+        }
+      }
     }
   }
 
@@ -23,54 +23,51 @@
 
 package org.projectforge.meb;
 
-import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
+import org.projectforge.common.EntityCounter;
 
 /**
- * The number of recent MEB entries is cached. Accessible via MebDao.
+ * The number of recent MEB entries per owner and the number of unassigned entries (owner not set). Accessible via MebDao. The counters are
+ * updated by MebDao after every modification.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class MebCache extends AbstractCache
+public class MebCache extends EntityCounter
 {
-  private static Logger log = Logger.getLogger(MebCache.class);
-
-  /** The key is the user id and the value is the number of recent MEB entries. */
-  private Map<Integer, Integer> recentEntriesMap;
-
-  private MebDao mebDao;
+  private final MebDao mebDao;
 
   /**
-   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed.
+   * Re-synchronizes every 30 minutes with the data-base.
    */
   public MebCache(final MebDao mebDao)
   {
-    super(30 * TICKS_PER_MINUTE);
+    super("recentMebEntries", 30 * AbstractCache.TICKS_PER_MINUTE);
     this.mebDao = mebDao;
   }
 
-  int getRecentMEBEntries(final Integer userId)
+  /**
+   * @param userId
+   * @param includeUnassigned If true, the number of unassigned entries is added.
+   */
+  int getRecentMEBEntries(final Integer userId, final boolean includeUnassigned)
   {
-    checkRefresh();
-    final Integer result = recentEntriesMap.get(userId);
-    if (result != null) {
-      return result;
-    }
-    final int counter = mebDao.internalGetRecentMEBEntries(userId);
-    synchronized (recentEntriesMap) {
-      recentEntriesMap.put(userId, counter);
+    int counter = getCount(userId);
+    if (includeUnassigned == true) {
+      counter += getCount(null);
     }
     return counter;
   }
 
-  /**
-   * This method will be called by CacheHelper and is synchronized via getData();
-   */
-  protected void refresh()
+  void update(final MebEntryDO entry)
+  {
+    final Integer ownerId = entry.getOwnerId();
+    update(entry.getId(), entry.isDeleted() == false && (ownerId == null || entry.getStatus() == MebEntryStatus.RECENT), ownerId);
+  }
+
+  @Override
+  protected Map<Integer, Integer> load()
   {
-    log.info("Clearing MebCache.");
-    recentEntriesMap = new HashMap<Integer, Integer>();
+    return mebDao.internalGetRecentMEBEntries();
   }
 }
@@ -27,9 +27,13 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -41,6 +45,7 @@ import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
 import org.projectforge.user.UserRightId;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -138,28 +143,26 @@ public class MebDao extends BaseDao<MebEntryDO>
     if (userId == null) {
       userId = PFUserContext.getUserId();
     }
-    return mebCache.getRecentMEBEntries(userId);
+    return mebCache.getRecentMEBEntries(userId, accessChecker.isLoggedInUserMemberOfAdminGroup());
   }
 
   /**
-   * Called by MebCache to get the number of recent entries for the given users. For administrative users the number of unassigned entries
-   * (without owner) is added.
-   * @param userId
-   * @return Number of recent (and unassigned) MEB entries.
+   * Called by MebCache to get the recent entries of all users and the unassigned entries (without owner).
+   * @return Map of the ids of all recent and unassigned MEB entries to the ids of their owners (null for unassigned entries).
    */
-  int internalGetRecentMEBEntries(final Integer userId)
+  Map<Integer, Integer> internalGetRecentMEBEntries()
   {
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
-    try {
-      int counter = jdbc.queryForInt("SELECT COUNT(*) FROM t_meb_entry where owner_fk=" + userId + " and status='RECENT'");
-      if (accessChecker.isLoggedInUserMemberOfAdminGroup() == true) {
-        counter += jdbc.queryForInt("SELECT COUNT(*) FROM t_meb_entry where owner_fk is null");
+    final Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+    jdbc.query("SELECT pk, owner_fk FROM t_meb_entry where deleted=false and (owner_fk is null or status='RECENT')", new RowCallbackHandler() {
+      @Override
+      public void processRow(final ResultSet rs) throws SQLException
+      {
+        final int ownerId = rs.getInt(2);
+        result.put(rs.getInt(1), rs.wasNull() == true ? null : ownerId);
       }
-      return counter;
-    } catch (final Exception ex) {
-      log.error(ex.getMessage(), ex);
-      return 0;
-    }
+    });
+    return result;
   }
 
   /**
@@ -236,9 +239,15 @@ public class MebDao extends BaseDao<MebEntryDO>
   }
 
   @Override
-  protected void afterSaveOrModify(MebEntryDO obj)
+  protected void afterSaveOrModify(final MebEntryDO obj)
+  {
+    mebCache.update(obj);
+  }
+
+  @Override
+  protected void afterDelete(final MebEntryDO obj)
   {
-    mebCache.setExpired();
+    mebCache.remove(obj.getId());
   }
 
   @Override
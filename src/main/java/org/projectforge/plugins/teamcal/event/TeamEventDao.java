@@ -41,6 +41,7 @@ import org.apache.log4j.Logger;
 import org.hibernate.Query;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.projectforge.calendar.CalendarFeedCache;
 import org.projectforge.calendar.CalendarUtils;
 import org.projectforge.calendar.ICal4JUtils;
 import org.projectforge.common.DateHelper;
@@ -170,6 +171,19 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
     event.setRecurrenceUntil(recurrenceUntil);
   }
 
+  /**
+   * Removes the calculated recurrence events of the modified event and the rendered calendar feeds from the caches.
+   * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
+   * @see TeamEventRecurrenceCache#invalidate(Integer)
+   */
+  @Override
+  protected void afterSaveOrModify(final TeamEventDO event)
+  {
+    super.afterSaveOrModify(event);
+    TeamEventRecurrenceCache.instance().invalidate(event.getId());
+    CalendarFeedCache.instance().invalidateTeamEvents();
+  }
+
   /**
    * This method also returns recurrence events outside the time period of the given filter but affecting the time-period (e. g. older
    * recurrence events without end date or end date inside or after the given time period). If calculateRecurrenceEvents is true, only the
@@ -215,7 +229,7 @@ public class TeamEventDao extends BaseDao<TeamEventDO>
           result.add(eventDO);
           continue;
         }
-        final Collection<TeamEvent> events = TeamEventUtils.getRecurrenceEvents(teamEventFilter.getStartDate(),
+        final Collection<TeamEvent> events = TeamEventRecurrenceCache.instance().getRecurrenceEvents(teamEventFilter.getStartDate(),
             teamEventFilter.getEndDate(), eventDO, timeZone);
         if (events == null) {
           continue;
@@ -0,0 +1,322 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ObjectUtils;
+
+/**
+ * Caches the calculated occurrences of recurring events (expanding the recurrence rules by ical4j is expensive and is done for every
+ * calendar refresh and every calendar feed poll). The key consists of the event id, the time of the event's last update, the requested time
+ * period and the user's time zone. Events of external subscriptions have no last update, therefore all fields used for the calculation are
+ * part of the key.<br/>
+ * Only the start times of the occurrences are cached, the {@link TeamRecurrenceEvent}s are re-created for the given event for every call.
+ * The number of entries is limited (least recently used entries are removed first). The keys are additionally indexed by event id, so
+ * invalidating the entries of a modified event doesn't need to scan the whole cache.
+ */
+public class TeamEventRecurrenceCache
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(TeamEventRecurrenceCache.class);
+
+  private static final TeamEventRecurrenceCache instance = new TeamEventRecurrenceCache();
+
+  static final int DEFAULT_MAX_SIZE = 10000;
+
+  private final Map<Key, Entry> map;
+
+  /**
+   * The keys of {@link #map} by event id. Guarded by the lock of {@link #map}.
+   */
+  private final Map<Integer, Set<Key>> keysByEventId = new HashMap<Integer, Set<Key>>();
+
+  private final int maxSize;
+
+  private final AtomicLong hitCounter = new AtomicLong();
+
+  private final AtomicLong missCounter = new AtomicLong();
+
+  public static TeamEventRecurrenceCache instance()
+  {
+    return instance;
+  }
+
+  TeamEventRecurrenceCache()
+  {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  TeamEventRecurrenceCache(final int maxSize)
+  {
+    this.maxSize = maxSize;
+    this.map = new LinkedHashMap<Key, Entry>(256, 0.75f, true) {
+      private static final long serialVersionUID = 4281606378930498723L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest)
+      {
+        if (size() <= TeamEventRecurrenceCache.this.maxSize) {
+          return false;
+        }
+        removeFromIndex(eldest.getKey());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * Same as {@link TeamEventUtils#getRecurrenceEvents(Date, Date, TeamEventDO, TimeZone)} but uses the cached occurrences if available.
+   */
+  public Collection<TeamEvent> getRecurrenceEvents(final Date startDate, final Date endDate, final TeamEventDO event,
+      final TimeZone timeZone)
+  {
+    if (event.hasRecurrence() == false || startDate == null || endDate == null || event.getStartDate() == null) {
+      return TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    }
+    final Key key = new Key(startDate, endDate, event, timeZone);
+    Entry entry;
+    synchronized (map) {
+      entry = map.get(key);
+    }
+    if (entry != null) {
+      hitCounter.incrementAndGet();
+      return entry.createEvents(event, timeZone);
+    }
+    missCounter.incrementAndGet();
+    final Collection<TeamEvent> events = TeamEventUtils.getRecurrenceEvents(startDate, endDate, event, timeZone);
+    entry = new Entry(events, event);
+    synchronized (map) {
+      if (map.put(key, entry) == null) {
+        Set<Key> keys = keysByEventId.get(key.eventId);
+        if (keys == null) {
+          keys = new HashSet<Key>();
+          keysByEventId.put(key.eventId, keys);
+        }
+        keys.add(key);
+      }
+    }
+    return events;
+  }
+
+  /**
+   * Removes all entries of the given event. Should be called after every modification of the event.
+   * @param eventId
+   */
+  public void invalidate(final Integer eventId)
+  {
+    if (eventId == null) {
+      return;
+    }
+    synchronized (map) {
+      final Set<Key> keys = keysByEventId.remove(eventId);
+      if (keys == null) {
+        return;
+      }
+      for (final Key key : keys) {
+        map.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Must be called inside the lock of {@link #map}.
+   */
+  private void removeFromIndex(final Key key)
+  {
+    final Set<Key> keys = keysByEventId.get(key.eventId);
+    if (keys != null && keys.remove(key) == true && keys.isEmpty() == true) {
+      keysByEventId.remove(key.eventId);
+    }
+  }
+
+  public void clear()
+  {
+    synchronized (map) {
+      map.clear();
+      keysByEventId.clear();
+    }
+    log.info("Recurrence cache cleared.");
+  }
+
+  public int size()
+  {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  /**
+   * @return The number of event ids having at least one entry.
+   */
+  int getIndexedEventCount()
+  {
+    synchronized (map) {
+      return keysByEventId.size();
+    }
+  }
+
+  public long getHitCounter()
+  {
+    return hitCounter.get();
+  }
+
+  public long getMissCounter()
+  {
+    return missCounter.get();
+  }
+
+  /**
+   * @return Number of hits divided by the number of all requests, 0 if no request was done yet.
+   */
+  public double getHitRatio()
+  {
+    final long hits = hitCounter.get();
+    final long total = hits + missCounter.get();
+    return total > 0 ? (double) hits / total : 0.0;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "size=" + size() + ", hits=" + getHitCounter() + ", misses=" + getMissCounter() + ", hitRatio=" + getHitRatio();
+  }
+
+  private static class Entry
+  {
+    /**
+     * Null, if no occurrences were calculated.
+     */
+    private final long[] startTimes;
+
+    /**
+     * Index of the event itself inside the occurrences or -1.
+     */
+    private final int masterIndex;
+
+    Entry(final Collection<TeamEvent> events, final TeamEventDO master)
+    {
+      if (events == null) {
+        startTimes = null;
+        masterIndex = -1;
+        return;
+      }
+      startTimes = new long[events.size()];
+      int i = 0, idx = -1;
+      for (final TeamEvent event : events) {
+        if (event == master) {
+          idx = i;
+        }
+        startTimes[i++] = event.getStartDate().getTime();
+      }
+      masterIndex = idx;
+    }
+
+    Collection<TeamEvent> createEvents(final TeamEventDO master, final TimeZone timeZone)
+    {
+      if (startTimes == null) {
+        return null;
+      }
+      final Collection<TeamEvent> col = new ArrayList<TeamEvent>(startTimes.length);
+      for (int i = 0; i < startTimes.length; i++) {
+        if (i == masterIndex) {
+          col.add(master);
+        } else {
+          final Calendar userCal = Calendar.getInstance(timeZone);
+          userCal.setTimeInMillis(startTimes[i]);
+          col.add(new TeamRecurrenceEvent(master, userCal));
+        }
+      }
+      return col;
+    }
+  }
+
+  private static class Key
+  {
+    private final Integer eventId;
+
+    private final long lastUpdate, startTime, endTime, eventStartTime;
+
+    private final String timeZoneId, recurrenceRule, recurrenceExDate;
+
+    private final boolean allDay;
+
+    private final int hashCode;
+
+    Key(final Date startDate, final Date endDate, final TeamEventDO event, final TimeZone timeZone)
+    {
+      this.eventId = event.getId();
+      this.lastUpdate = event.getLastUpdate() != null ? event.getLastUpdate().getTime() : 0;
+      this.startTime = startDate.getTime();
+      this.endTime = endDate.getTime();
+      this.eventStartTime = event.getStartDate().getTime();
+      this.timeZoneId = timeZone != null ? timeZone.getID() : null;
+      this.recurrenceRule = event.getRecurrenceRule();
+      this.recurrenceExDate = event.getRecurrenceExDate();
+      this.allDay = event.isAllDay();
+      int result = ObjectUtils.hashCode(eventId);
+      result = 31 * result + (int) (lastUpdate ^ (lastUpdate >>> 32));
+      result = 31 * result + (int) (startTime ^ (startTime >>> 32));
+      result = 31 * result + (int) (endTime ^ (endTime >>> 32));
+      result = 31 * result + (int) (eventStartTime ^ (eventStartTime >>> 32));
+      result = 31 * result + ObjectUtils.hashCode(timeZoneId);
+      result = 31 * result + ObjectUtils.hashCode(recurrenceRule);
+      this.hashCode = result;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object obj)
+    {
+      if (obj instanceof Key == false) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return hashCode == other.hashCode
+          && lastUpdate == other.lastUpdate
+          && startTime == other.startTime
+          && endTime == other.endTime
+          && eventStartTime == other.eventStartTime
+          && allDay == other.allDay
+          && ObjectUtils.equals(eventId, other.eventId)
+          && ObjectUtils.equals(timeZoneId, other.timeZoneId)
+          && ObjectUtils.equals(recurrenceRule, other.recurrenceRule)
+          && ObjectUtils.equals(recurrenceExDate, other.recurrenceExDate);
+    }
+  }
+}
@@ -33,7 +33,9 @@ import org.projectforge.plugins.teamcal.event.TeamEventDO;
 import org.projectforge.plugins.teamcal.event.TeamEventDao;
 
 /**
- * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date.
+ * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date.<br/>
+ * The events are indexed by an interval tree (implicit balanced tree over the events sorted by start date, each node holds the maximum end
+ * date of its sub tree), so queries take O(log n + k) time. The index is immutable, so concurrent readers don't need any lock.
  * 
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
@@ -48,65 +50,131 @@ public class SubscriptionHolder implements Serializable
 
   private final List<TeamEventDO> eventList;
 
-  private boolean sorted;
+  private transient volatile Index index;
 
   public SubscriptionHolder()
   {
     eventList = new ArrayList<TeamEventDO>();
-    sorted = false;
   }
 
-  public void clear()
+  public synchronized void clear()
   {
     eventList.clear();
-    sorted = false;
+    index = null;
   }
 
-  public void add(final TeamEventDO value)
+  public synchronized void add(final TeamEventDO value)
   {
     eventList.add(value);
-    sorted = false;
+    index = null;
   }
 
-  public void sort()
+  /**
+   * Builds the index. Will be called automatically by the first query after any modification, but should be called after adding all
+   * events and before publishing this holder to readers.
+   */
+  public synchronized void sort()
   {
-    // the following comparator compares by startDate
-    final Comparator<TeamEventDO> comparator = new Comparator<TeamEventDO>() {
-      @Override
-      public int compare(final TeamEventDO o1, final TeamEventDO o2)
-      {
-        if ((o1 == null || o1.getStartDate() == null) && (o2 == null || o2.getStartDate() == null)) {
-          return 0;
-        }
-        if (o1 == null || o1.getStartDate() == null) {
-          return -1;
-        }
-        if (o2 == null || o2.getStartDate() == null) {
-          return 1;
-        }
-        // at this point, no NPE could occur
-        return o1.getStartDate().compareTo(o2.getStartDate());
-      }
-    };
-    Collections.sort(eventList, comparator);
-    sorted = true;
+    if (index == null) {
+      index = new Index(eventList);
+    }
   }
 
   public List<TeamEventDO> getResultList(final Long startTime, final Long endTime, final boolean minimalAccess)
   {
-    // sorting should by synchronized
-    synchronized (this) {
-      if (sorted == false) {
-        sort();
-      }
+    Index idx = index;
+    if (idx == null) {
+      sort();
+      idx = index;
     }
     final List<TeamEventDO> result = new ArrayList<TeamEventDO>();
-    for (final TeamEventDO teamEventDo : eventList) {
-      // all our events are sorted, if we find a event which starts
-      // after the end date, we can break this iteration
-      if (teamEventDo.getStartDate().getTime() > endTime) {
-        break;
+    // Following period extension is needed due to all day events which are stored in UTC. The additional events in the result list not
+    // matching the time period have to be removed by caller!
+    idx.query(0, idx.size, startTime - ONE_DAY, endTime + ONE_DAY, minimalAccess, result);
+    // and return
+    return result;
+  }
+
+  public int size()
+  {
+    return eventList.size();
+  }
+
+  private static class Index
+  {
+    final int size;
+
+    final TeamEventDO[] events;
+
+    final long[] starts;
+
+    /**
+     * The end times, but at least the start times (so events with start time in the query period are never skipped).
+     */
+    final long[] ends;
+
+    /**
+     * Maximum end time of the sub tree with root mid = (lo + hi) / 2.
+     */
+    final long[] maxEnds;
+
+    Index(final List<TeamEventDO> eventList)
+    {
+      final List<TeamEventDO> list = new ArrayList<TeamEventDO>(eventList.size());
+      for (final TeamEventDO event : eventList) {
+        if (event != null) {
+          list.add(event);
+        }
+      }
+      Collections.sort(list, new Comparator<TeamEventDO>() {
+        @Override
+        public int compare(final TeamEventDO o1, final TeamEventDO o2)
+        {
+          final long t1 = getStartTime(o1);
+          final long t2 = getStartTime(o2);
+          return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+        }
+      });
+      size = list.size();
+      events = list.toArray(new TeamEventDO[size]);
+      starts = new long[size];
+      ends = new long[size];
+      maxEnds = new long[size];
+      for (int i = 0; i < size; i++) {
+        starts[i] = getStartTime(events[i]);
+        ends[i] = Math.max(starts[i], getEndTime(events[i]));
+      }
+      build(0, size);
+    }
+
+    private long build(final int lo, final int hi)
+    {
+      if (lo >= hi) {
+        return Long.MIN_VALUE;
+      }
+      final int mid = (lo + hi) >>> 1;
+      final long max = Math.max(ends[mid], Math.max(build(lo, mid), build(mid + 1, hi)));
+      maxEnds[mid] = max;
+      return max;
+    }
+
+    void query(final int lo, final int hi, final long startTime, final long endTime, final boolean minimalAccess,
+        final List<TeamEventDO> result)
+    {
+      if (lo >= hi) {
+        return;
       }
+      final int mid = (lo + hi) >>> 1;
+      if (maxEnds[mid] < startTime) {
+        // No event of this sub tree ends after the start of the query period.
+        return;
+      }
+      query(lo, mid, startTime, endTime, minimalAccess, result);
+      if (starts[mid] > endTime) {
+        // This event and all events of the right sub tree start after the end of the query period.
+        return;
+      }
+      final TeamEventDO teamEventDo = events[mid];
       if (matches(teamEventDo, startTime, endTime) == true) {
         if (minimalAccess == true) {
           result.add(teamEventDo.createMinimalCopy());
@@ -114,23 +182,22 @@ public class SubscriptionHolder implements Serializable
           result.add(teamEventDo);
         }
       }
+      query(mid + 1, hi, startTime, endTime, minimalAccess, result);
     }
-    // and return
-    return result;
   }
 
-  public int size()
+  private static long getStartTime(final TeamEventDO teamEventDo)
   {
-    return eventList.size();
+    return teamEventDo.getStartDate() != null ? teamEventDo.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
   }
 
-  private boolean matches(final TeamEventDO teamEventDo, Long startTime, Long endTime)
+  private static long getEndTime(final TeamEventDO teamEventDo)
   {
-    // Following period extension is needed due to all day events which are stored in UTC. The additional events in the result list not
-    // matching the time period have to be removed by caller!
-    startTime = startTime - ONE_DAY;
-    endTime = endTime + ONE_DAY;
+    return teamEventDo.getEndDate() != null ? teamEventDo.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
+  }
 
+  private static boolean matches(final TeamEventDO teamEventDo, final long startTime, final long endTime)
+  {
     // the following implementation is inspired by TeamEventDao with the following lines:
 
     // queryFilter.add(Restrictions.or(
@@ -138,8 +205,8 @@ public class SubscriptionHolder implements Serializable
     // // get events whose duration overlap with chosen duration.
     // (Restrictions.and(Restrictions.le("startDate", startDate), Restrictions.ge("endDate", endDate)))));
 
-    final Long eventStartTime = teamEventDo.getStartDate() != null ? teamEventDo.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
-    final Long eventEndTime = teamEventDo.getEndDate() != null ? teamEventDo.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
+    final long eventStartTime = getStartTime(teamEventDo);
+    final long eventEndTime = getEndTime(teamEventDo);
     if (between(eventStartTime, startTime, endTime) || between(eventEndTime, startTime, endTime)) {
       return true;
     }
@@ -149,7 +216,7 @@ public class SubscriptionHolder implements Serializable
     return false;
   }
 
-  private boolean between(final Long searchTime, final Long startTime, final Long endTime)
+  private static boolean between(final long searchTime, final long startTime, final long endTime)
   {
     return searchTime >= startTime && searchTime <= endTime;
   }
@@ -62,9 +62,9 @@ public class TeamEventSubscription implements Serializable
 
   private Integer teamCalId;
 
-  private SubscriptionHolder subscription;
+  private volatile SubscriptionHolder subscription;
 
-  private List<TeamEventDO> recurrenceEvents;
+  private volatile List<TeamEventDO> recurrenceEvents;
 
   private String currentInitializedHash;
 
@@ -212,6 +212,8 @@ public class TeamEventSubscription implements Serializable
 
         startId--;
       }
+      // Build the index before publishing the new subscription to the readers:
+      newSubscription.sort();
       // OK, update the subscription:
       recurrenceEvents = newRecurrenceEvents;
       subscription = newSubscription;
@@ -270,11 +272,12 @@ public class TeamEventSubscription implements Serializable
 
   public List<TeamEventDO> getEvents(final Long startTime, final Long endTime, final boolean minimalAccess)
   {
-    if (subscription == null) {
+    final SubscriptionHolder holder = subscription;
+    if (holder == null) {
       return new ArrayList<TeamEventDO>();
     }
     // final Long perfStart = System.currentTimeMillis();
-    final List<TeamEventDO> result = subscription.getResultList(startTime, endTime, minimalAccess);
+    final List<TeamEventDO> result = holder.getResultList(startTime, endTime, minimalAccess);
     // final Long perfDuration = System.currentTimeMillis() - perfStart;
     // log.info("calculation of team events took "
     // + perfDuration
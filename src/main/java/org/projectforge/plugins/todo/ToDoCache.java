@@ -23,54 +23,41 @@
 
 package org.projectforge.plugins.todo;
 
-import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.log4j.Logger;
 import org.projectforge.common.AbstractCache;
+import org.projectforge.common.EntityCounter;
 
 /**
- * The number of open to-do entries is cached. Accessible via ToDoDao.
+ * The number of open to-do entries per assignee. Accessible via ToDoDao. The counters are updated by ToDoDao after every modification.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-public class ToDoCache extends AbstractCache
+public class ToDoCache extends EntityCounter
 {
-  private static Logger log = Logger.getLogger(ToDoCache.class);
-
-  /** The key is the user id and the value is the number of open to-do entries. */
-  private Map<Integer, Integer> openEntriesMap;
-
-  private ToDoDao toDoDao;
+  private final ToDoDao toDoDao;
 
   /**
-   * Refreshes every 30 minutes. After any modifications via MebDao this cache will be refreshed.
+   * Re-synchronizes every 30 minutes with the data-base.
    */
   public ToDoCache(final ToDoDao toDoDao)
   {
-    super(30 * TICKS_PER_MINUTE);
+    super("openToDos", 30 * AbstractCache.TICKS_PER_MINUTE);
     this.toDoDao = toDoDao;
   }
 
   int getOpenToDoEntries(final Integer userId)
   {
-    checkRefresh();
-    final Integer result = openEntriesMap.get(userId);
-    if (result != null) {
-      return result;
-    }
-    final int counter = toDoDao.internalGetOpenEntries(userId);
-    synchronized (openEntriesMap) {
-      openEntriesMap.put(userId, counter);
-    }
-    return counter;
+    return getCount(userId);
   }
 
-  /**
-   * This method will be called by CacheHelper and is synchronized via getData();
-   */
-  protected void refresh()
+  void update(final ToDoDO toDo)
+  {
+    update(toDo.getId(), toDo.isRecent() == true && toDo.isDeleted() == false && toDo.getAssigneeId() != null, toDo.getAssigneeId());
+  }
+
+  @Override
+  protected Map<Integer, Integer> load()
   {
-    log.info("Clearing cache with open to-do entries.");
-    openEntriesMap = new HashMap<Integer, Integer>();
+    return toDoDao.internalGetOpenEntries();
   }
 }
@@ -23,6 +23,8 @@
 
 package org.projectforge.plugins.todo;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -55,6 +57,7 @@ import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserDao;
 import org.projectforge.user.UserRightId;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 /**
  * 
@@ -252,7 +255,13 @@ public class ToDoDao extends BaseDao<ToDoDO>
   @Override
   protected void afterSaveOrModify(final ToDoDO obj)
   {
-    toDoCache.setExpired(); // Force reload of the menu item counters for open to-do entrie.
+    toDoCache.update(obj); // Updates the menu item counters for open to-do entries.
+  }
+
+  @Override
+  protected void afterDelete(final ToDoDO obj)
+  {
+    toDoCache.remove(obj.getId());
   }
 
   public void setAssignee(final ToDoDO todo, final Integer userId)
@@ -299,23 +308,22 @@ public class ToDoDao extends BaseDao<ToDoDO>
   }
 
   /**
-   * Called by ToDoCache to get the number of open entries for the given users.
-   * @param userId
-   * @return Number of open to-do entries.
+   * Called by ToDoCache to get the open entries of all users.
+   * @return Map of the ids of all open to-do entries to the ids of their assignees.
    */
-  int internalGetOpenEntries(final Integer userId)
+  Map<Integer, Integer> internalGetOpenEntries()
   {
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
-    try {
-      return jdbc.queryForInt("SELECT COUNT(*) FROM "
-          + table.getName()
-          + " where assignee_fk="
-          + userId
-          + " and recent=true and deleted=false");
-    } catch (final Exception ex) {
-      log.error(ex.getMessage(), ex);
-      return 0;
-    }
+    final Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+    jdbc.query("SELECT pk, assignee_fk FROM " + table.getName() + " where assignee_fk is not null and recent=true and deleted=false",
+        new RowCallbackHandler() {
+      @Override
+      public void processRow(final ResultSet rs) throws SQLException
+      {
+        result.put(rs.getInt(1), rs.getInt(2));
+      }
+    });
+    return result;
   }
 
   @Override
@@ -23,16 +23,22 @@
 
 package org.projectforge.renderer;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -48,6 +54,9 @@ import org.apache.fop.apps.Fop;
 import org.apache.fop.apps.FopFactory;
 import org.apache.fop.apps.MimeConstants;
 import org.apache.log4j.Logger;
+import org.apache.wicket.util.lang.Bytes;
+import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
+import org.apache.wicket.util.resource.IResourceStream;
 import org.projectforge.AppVersion;
 import org.projectforge.core.ConfigXml;
 import org.projectforge.core.Configuration;
@@ -76,6 +85,12 @@ public class PdfRenderer
 
   private String fontResourcePath;
 
+  private FopFactory fopFactory;
+
+  private TransformerFactory transformerFactory;
+
+  private final Map<String, Templates> templatesCache = new ConcurrentHashMap<String, Templates>();
+
   // private FontMap fontMap;
 
   /**
@@ -109,9 +124,166 @@ public class PdfRenderer
    * loading fonts.'"); return; } fontMap.loadFonts(fontDir); return; }
    */
 
+  /**
+   * @return the FopFactory (created once with configured font base url). FopFactory is thread safe.
+   */
+  private synchronized FopFactory getFopFactory()
+  {
+    if (fopFactory == null) {
+      final FopFactory factory = FopFactory.newInstance();
+      try {
+        factory.getFontManager().setFontBaseURL(getFontResourcePath());
+      } catch (final MalformedURLException ex) {
+        log.error(ex.getMessage(), ex);
+      }
+      /*
+       * try { fopFactory.setUserConfig(baseDir + "/fop.config"); } catch (SAXException ex) { log.error(ex.getMessage(), ex); throw new
+       * RuntimeException(ex); } catch (IOException ex) { log.error(ex.getMessage(), ex); throw new RuntimeException(ex); }
+       */
+      fopFactory = factory;
+    }
+    return fopFactory;
+  }
+
+  /**
+   * @param stylesheet
+   * @return The compiled stylesheet (cached). Templates objects are thread safe, only the transformers have to be created for every
+   *         rendering.
+   * @throws TransformerConfigurationException
+   */
+  private Templates getTemplates(final String stylesheet) throws TransformerConfigurationException
+  {
+    Templates templates = templatesCache.get(stylesheet);
+    if (templates != null) {
+      return templates;
+    }
+    InputStream xsltInputStream = null;
+    try {
+      final Object[] result = configXml.getInputStream(stylesheet);
+      xsltInputStream = (InputStream) result[0];
+      final StreamSource xltStreamSource = new StreamSource(xsltInputStream);
+      final String url = (String) result[1];
+      if (url == null) {
+        log.error("Url of xsl resource is null.");
+        throw new InternalErrorException();
+      }
+      xltStreamSource.setSystemId(url);
+      synchronized (this) {
+        if (transformerFactory == null) {
+          transformerFactory = TransformerFactory.newInstance();
+        }
+        templates = transformerFactory.newTemplates(xltStreamSource);
+      }
+    } finally {
+      IOUtils.closeQuietly(xsltInputStream);
+    }
+    templatesCache.put(stylesheet, templates);
+    return templates;
+  }
+
+  /**
+   * Clears the cache of the compiled stylesheets (needed if stylesheets in the application's resource dir were modified).
+   */
+  public void clearTemplatesCache()
+  {
+    templatesCache.clear();
+  }
+
+  /**
+   * Renders the pdf into a byte array. Please prefer {@link #createResourceStreamWriter(String, String, Map)} or
+   * {@link #render(String, String, Map, OutputStream)} for large pdfs.
+   */
   public byte[] render(final String stylesheet, final String groovyXml, final Map<String, Object> data)
   {
-    // initialize();
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    render(stylesheet, groovyXml, data, baos);
+    return baos.toByteArray();
+  }
+
+  /**
+   * Renders the pdf into a temporary file before the response is committed, so any rendering error results in an error page instead of
+   * a truncated download. The temporary file is streamed to the response and deleted afterwards.
+   * @return A resource stream which writes the rendered pdf into the output stream of the response (for downloading).
+   * @see org.projectforge.web.wicket.DownloadUtils#setDownloadTarget(String, IResourceStream)
+   */
+  public IResourceStream createResourceStreamWriter(final String stylesheet, final String groovyXml, final Map<String, Object> data)
+  {
+    final File file = renderToTempFile(stylesheet, groovyXml, data);
+    final IResourceStream iResourceStream = new AbstractResourceStreamWriter() {
+      private static final long serialVersionUID = -3598637218392549458L;
+
+      @Override
+      public String getContentType()
+      {
+        return MimeConstants.MIME_PDF;
+      }
+
+      @Override
+      public Bytes length()
+      {
+        return Bytes.bytes(file.length());
+      }
+
+      @Override
+      public void write(final OutputStream output)
+      {
+        InputStream in = null;
+        try {
+          in = new FileInputStream(file);
+          IOUtils.copy(in, output);
+        } catch (final IOException ex) {
+          log.error(ex.getMessage(), ex);
+          throw new RuntimeException(ex);
+        } finally {
+          IOUtils.closeQuietly(in);
+          deleteTempFile(file);
+        }
+      }
+
+      @Override
+      public void close()
+      {
+        deleteTempFile(file);
+      }
+    };
+    return iResourceStream;
+  }
+
+  private File renderToTempFile(final String stylesheet, final String groovyXml, final Map<String, Object> data)
+  {
+    File file = null;
+    OutputStream out = null;
+    boolean success = false;
+    try {
+      file = File.createTempFile("projectforge-pdf", ".pdf");
+      out = new FileOutputStream(file);
+      render(stylesheet, groovyXml, data, out);
+      success = true;
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      IOUtils.closeQuietly(out);
+      if (success == false && file != null) {
+        deleteTempFile(file);
+      }
+    }
+    return file;
+  }
+
+  private static void deleteTempFile(final File file)
+  {
+    if (file.exists() == true && file.delete() == false) {
+      log.warn("Can't delete temporary pdf file: " + file.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Renders the pdf and writes it into the given output stream (the stream isn't closed).
+   */
+  public void render(final String stylesheet, final String groovyXml, final Map<String, Object> data, final OutputStream out)
+  {
+    final long start = System.currentTimeMillis();
     final PFUserDO user = PFUserContext.getUser();
     data.put("createdLabel", PFUserContext.getLocalizedString("created"));
     data.put("loggedInUser", user);
@@ -120,7 +292,6 @@ public class PdfRenderer
     data.put("appVersion", AppVersion.NUMBER);
     data.put("organization",
         StringUtils.defaultString(Configuration.getInstance().getStringValue(ConfigurationParam.ORGANIZATION), AppVersion.APP_ID));
-    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
     log.info("stylesheet="
         + stylesheet
         + ", jellyXml="
@@ -129,48 +300,18 @@ public class PdfRenderer
         + configXml.getResourcePath()
         + ", fontBaseDir="
         + getFontResourcePath());
-    // fopRenderer.processFo(styleSheet, xmlData, data, new PdfFopOutput(baos));
-    // return baos.toByteArray();
-
-    // configure fopFactory as desired
-    final FopFactory fopFactory = FopFactory.newInstance();
-    // Configuration cfg = fopFactory.getUserConfig();
 
-    try {
-      fopFactory.getFontManager().setFontBaseURL(getFontResourcePath());
-    } catch (final MalformedURLException ex) {
-      log.error(ex.getMessage(), ex);
-    }
-    /*
-     * try { fopFactory.setUserConfig(baseDir + "/fop.config"); } catch (SAXException ex) { log.error(ex.getMessage(), ex); throw new
-     * RuntimeException(ex); } catch (IOException ex) { log.error(ex.getMessage(), ex); throw new RuntimeException(ex); }
-     */
+    final FopFactory fopFactory = getFopFactory();
     final FOUserAgent foUserAgent = fopFactory.newFOUserAgent();
-    try {
-      foUserAgent.getFactory().getFontManager().setFontBaseURL(getFontResourcePath());
-    } catch (final MalformedURLException ex) {
-      log.error(ex.getMessage(), ex);
-    }
     // configure foUserAgent as desired
 
-    InputStream xsltInputStream = null;
+    final BufferedOutputStream bos = new BufferedOutputStream(out);
     try {
       // Construct fop with desired output format
-      final Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, foUserAgent, baos);
+      final Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, foUserAgent, bos);
 
       // Setup XSLT
-      final TransformerFactory factory = TransformerFactory.newInstance();
-      Object[] result = configXml.getInputStream(stylesheet);
-      xsltInputStream = (InputStream) result[0];
-      final StreamSource xltStreamSource = new StreamSource(xsltInputStream);
-      final String url = (String) result[1];
-      if (url == null) {
-        log.error("Url of xsl resource is null.");
-        throw new InternalErrorException();
-      }
-      xltStreamSource.setSystemId(url);
-
-      final Transformer transformer = factory.newTransformer(xltStreamSource);
+      final Transformer transformer = getTemplates(stylesheet).newTransformer();
 
       // Set the value of a <param> in the stylesheet
       for (final Map.Entry<String, Object> entry : data.entrySet()) {
@@ -178,7 +319,7 @@ public class PdfRenderer
       }
 
       // First run jelly through xmlData:
-      result = configXml.getContent(groovyXml);
+      final Object[] result = configXml.getContent(groovyXml);
       final GroovyEngine groovyEngine = new GroovyEngine(data, PFUserContext.getLocale(), PFUserContext.getTimeZone());
       final String groovyXmlInput = groovyEngine.preprocessGroovyXml((String) result[0]);
       final String xmlData = groovyEngine.executeTemplate(groovyXmlInput);
@@ -192,6 +333,7 @@ public class PdfRenderer
 
       // Start XSLT transformation and FOP processing
       transformer.transform(src, res);
+      bos.flush();
     } catch (final FOPException ex) {
       log.error(ex.getMessage(), ex);
       throw new RuntimeException(ex);
@@ -201,15 +343,10 @@ public class PdfRenderer
     } catch (final TransformerException ex) {
       log.error(ex.getMessage(), ex);
       throw new RuntimeException(ex);
-    } finally {
-      try {
-        baos.close();
-      } catch (final IOException ex) {
-        log.error(ex.getMessage(), ex);
-        throw new RuntimeException(ex);
-      }
-      IOUtils.closeQuietly(xsltInputStream);
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
     }
-    return baos.toByteArray();
+    log.info("Rendering of pdf (stylesheet=" + stylesheet + ") took " + (System.currentTimeMillis() - start) + "ms.");
   }
 }
@@ -24,7 +24,7 @@
 package org.projectforge.scripting;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 import groovy.lang.Writable;
 import groovy.text.SimpleTemplateEngine;
@@ -73,10 +73,28 @@ public class GroovyExecutor
     return execute(result, groovyObject, variables);
   }
 
+  /**
+   * The compiled templates are cached.
+   * @see GroovyScriptCache
+   */
   public String executeTemplate(final String template, final Map<String, Object> variables)
   {
     securityChecks(template);
-    return executeTemplate(new SimpleTemplateEngine(), template, variables);
+    if (template == null) {
+      return null;
+    }
+    final GroovyScriptCache cache = GroovyScriptCache.instance();
+    Template templateObject = cache.getTemplate(template);
+    if (templateObject == null) {
+      final GroovyShell shell = cache.createTemplateShell();
+      templateObject = createTemplate(new SimpleTemplateEngine(shell), template);
+      if (templateObject == null) {
+        shell.getClassLoader().clearCache();
+        return null;
+      }
+      cache.putTemplate(template, templateObject, shell);
+    }
+    return executeTemplate(templateObject, template, variables);
   }
 
   public String executeTemplate(final TemplateEngine templateEngine, final String template, final Map<String, Object> variables)
@@ -85,8 +103,36 @@ public class GroovyExecutor
     if (template == null) {
       return null;
     }
+    final Template templateObject = createTemplate(templateEngine, template);
+    if (templateObject == null) {
+      return null;
+    }
+    return executeTemplate(templateObject, template, variables);
+  }
+
+  private Template createTemplate(final TemplateEngine templateEngine, final String template)
+  {
+    final long start = System.currentTimeMillis();
+    try {
+      return templateEngine.createTemplate(template);
+    } catch (final CompilationFailedException ex) {
+      log.error(ex.getMessage() + " while executing template: " + template, ex);
+    } catch (final FileNotFoundException ex) {
+      log.error(ex.getMessage() + " while executing template: " + template, ex);
+    } catch (final ClassNotFoundException ex) {
+      log.error(ex.getMessage() + " while executing template: " + template, ex);
+    } catch (final IOException ex) {
+      log.error(ex.getMessage() + " while executing template: " + template, ex);
+    } finally {
+      GroovyScriptCache.instance().addCompileTime(start);
+    }
+    return null;
+  }
+
+  private String executeTemplate(final Template templateObject, final String template, final Map<String, Object> variables)
+  {
+    final long start = System.currentTimeMillis();
     try {
-      final Template templateObject = templateEngine.createTemplate(template);
       final Writable writable = templateObject.make(variables);
       final StringWriter writer = new StringWriter();
       writable.writeTo(writer);
@@ -95,14 +141,10 @@ public class GroovyExecutor
         log.debug(writer.toString());
       }
       return writer.toString();
-    } catch (final CompilationFailedException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
-    } catch (final FileNotFoundException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
-    } catch (final ClassNotFoundException ex) {
-      log.error(ex.getMessage() + " while executing template: " + template, ex);
     } catch (final IOException ex) {
       log.error(ex.getMessage() + " while executing template: " + template, ex);
+    } finally {
+      GroovyScriptCache.instance().addExecuteTime(start);
     }
     return null;
   }
@@ -118,17 +160,18 @@ public class GroovyExecutor
   }
 
   /**
+   * The compiled script classes are cached, but every call returns a new script object.
    * @param script
    * @param bindScriptResult If true then "scriptResult" from type GroovyResult is binded.
    * @return
+   * @see GroovyScriptCache
    */
   public Script compileGroovy(final GroovyResult result, final String script, final boolean bindScriptResult)
   {
     securityChecks(script);
-    final GroovyClassLoader gcl = new GroovyClassLoader();
     Class< ? > groovyClass = null;
     try {
-      groovyClass = gcl.parseClass(script);
+      groovyClass = GroovyScriptCache.instance().getScriptClass(script);
     } catch (final CompilationFailedException ex) {
       log.info("Groovy-CompilationFailedException: " + ex.getMessage());
       if (result != null) {
@@ -182,11 +225,14 @@ public class GroovyExecutor
       result = new GroovyResult();
     }
     Object res = null;
+    final long start = System.currentTimeMillis();
     try {
       res = groovyScript.run();
     } catch (final Exception ex) {
       log.info("Groovy-Execution-Exception: " + ex.getMessage(), ex);
       return new GroovyResult(ex);
+    } finally {
+      GroovyScriptCache.instance().addExecuteTime(start);
     }
     result.setResult(res);
     return result;
@@ -0,0 +1,305 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.scripting;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.text.Template;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.projectforge.common.Crypt;
+
+/**
+ * Bounded cache of the compiled Groovy scripts and templates (least recently used entries are evicted first), so scripts and templates
+ * executed again and again (reports, e-mail templates, rights etc.) are compiled only once. The keys are digests (SHA-256) of the scripts
+ * and templates, so the sources aren't held twice.<br/>
+ * Every compiled script and template has its own class loader (child of one shared GroovyClassLoader), which is cleared on eviction, so the
+ * classes of evicted scripts and templates may be unloaded.
+ */
+public class GroovyScriptCache
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(GroovyScriptCache.class);
+
+  private static final GroovyScriptCache instance = new GroovyScriptCache();
+
+  static final int MAX_SIZE = 200;
+
+  private final GroovyClassLoader sharedClassLoader = new GroovyClassLoader(GroovyScriptCache.class.getClassLoader());
+
+  private final Map<String, ScriptEntry> scripts = new LinkedHashMap<String, ScriptEntry>(16, 0.75f, true) {
+    private static final long serialVersionUID = -2396462930829049536L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, ScriptEntry> eldest)
+    {
+      if (size() <= MAX_SIZE) {
+        return false;
+      }
+      eldest.getValue().classLoader.clearCache();
+      evictionCounter.incrementAndGet();
+      return true;
+    }
+  };
+
+  private final Map<String, TemplateEntry> templates = new LinkedHashMap<String, TemplateEntry>(16, 0.75f, true) {
+    private static final long serialVersionUID = 6207553567187218421L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, TemplateEntry> eldest)
+    {
+      if (size() <= MAX_SIZE) {
+        return false;
+      }
+      eldest.getValue().classLoader.clearCache();
+      evictionCounter.incrementAndGet();
+      return true;
+    }
+  };
+
+  private final AtomicLong hitCounter = new AtomicLong();
+
+  private final AtomicLong compileCounter = new AtomicLong();
+
+  private final AtomicLong compileTime = new AtomicLong();
+
+  private final AtomicLong evictionCounter = new AtomicLong();
+
+  private final AtomicLong executeCounter = new AtomicLong();
+
+  private final AtomicLong executeTime = new AtomicLong();
+
+  public static GroovyScriptCache instance()
+  {
+    return instance;
+  }
+
+  /**
+   * @param script
+   * @return The compiled script class (from the cache if already compiled).
+   * @throws CompilationFailedException
+   */
+  public Class< ? > getScriptClass(final String script) throws CompilationFailedException
+  {
+    final String key = getKey(script);
+    synchronized (scripts) {
+      final ScriptEntry entry = scripts.get(key);
+      if (entry != null) {
+        hitCounter.incrementAndGet();
+        return entry.scriptClass;
+      }
+    }
+    final long start = System.currentTimeMillis();
+    final GroovyClassLoader classLoader = new GroovyClassLoader(sharedClassLoader);
+    final Class< ? > scriptClass;
+    try {
+      scriptClass = classLoader.parseClass(script);
+    } finally {
+      addCompileTime(start);
+    }
+    synchronized (scripts) {
+      final ScriptEntry entry = scripts.get(key);
+      if (entry != null) {
+        // Compiled concurrently by another thread:
+        classLoader.clearCache();
+        return entry.scriptClass;
+      }
+      scripts.put(key, new ScriptEntry(scriptClass, classLoader));
+    }
+    return scriptClass;
+  }
+
+  /**
+   * @param template
+   * @return The cached template or null, if not yet cached.
+   */
+  public Template getTemplate(final String template)
+  {
+    synchronized (templates) {
+      final TemplateEntry entry = templates.get(getKey(template));
+      if (entry == null) {
+        return null;
+      }
+      hitCounter.incrementAndGet();
+      return entry.template;
+    }
+  }
+
+  /**
+   * @return A new shell with its own class loader for compiling a template, see {@link #putTemplate(String, Template, GroovyShell)}.
+   */
+  GroovyShell createTemplateShell()
+  {
+    return new GroovyShell(sharedClassLoader);
+  }
+
+  /**
+   * @param template
+   * @param templateObject
+   * @param shell The shell used for compiling the template (its class loader is cleared on eviction).
+   */
+  public void putTemplate(final String template, final Template templateObject, final GroovyShell shell)
+  {
+    synchronized (templates) {
+      final TemplateEntry entry = templates.put(getKey(template), new TemplateEntry(templateObject, shell.getClassLoader()));
+      if (entry != null) {
+        // Compiled concurrently by another thread:
+        entry.classLoader.clearCache();
+      }
+    }
+  }
+
+  private static String getKey(final String source)
+  {
+    return Crypt.digest(source, "SHA-256");
+  }
+
+  void addCompileTime(final long start)
+  {
+    compileCounter.incrementAndGet();
+    compileTime.addAndGet(System.currentTimeMillis() - start);
+  }
+
+  void addExecuteTime(final long start)
+  {
+    executeCounter.incrementAndGet();
+    executeTime.addAndGet(System.currentTimeMillis() - start);
+  }
+
+  public void clear()
+  {
+    synchronized (scripts) {
+      for (final ScriptEntry entry : scripts.values()) {
+        entry.classLoader.clearCache();
+      }
+      scripts.clear();
+    }
+    synchronized (templates) {
+      for (final TemplateEntry entry : templates.values()) {
+        entry.classLoader.clearCache();
+      }
+      templates.clear();
+    }
+    log.info("Cache of compiled groovy scripts and templates cleared.");
+  }
+
+  public int size()
+  {
+    synchronized (scripts) {
+      synchronized (templates) {
+        return scripts.size() + templates.size();
+      }
+    }
+  }
+
+  /**
+   * @return Number of compilations of scripts and templates (cache misses).
+   */
+  public long getCompileCounter()
+  {
+    return compileCounter.get();
+  }
+
+  /**
+   * @return Total duration of all compilations in ms.
+   */
+  public long getCompileTime()
+  {
+    return compileTime.get();
+  }
+
+  public long getHitCounter()
+  {
+    return hitCounter.get();
+  }
+
+  public long getEvictionCounter()
+  {
+    return evictionCounter.get();
+  }
+
+  /**
+   * @return Number of executions of scripts and templates.
+   */
+  public long getExecuteCounter()
+  {
+    return executeCounter.get();
+  }
+
+  /**
+   * @return Total duration of all executions in ms.
+   */
+  public long getExecuteTime()
+  {
+    return executeTime.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "size="
+        + size()
+        + ", hits="
+        + getHitCounter()
+        + ", compilations="
+        + getCompileCounter()
+        + " ("
+        + getCompileTime()
+        + "ms), executions="
+        + getExecuteCounter()
+        + " ("
+        + getExecuteTime()
+        + "ms), evictions="
+        + getEvictionCounter();
+  }
+
+  private static class ScriptEntry
+  {
+    final Class< ? > scriptClass;
+
+    final GroovyClassLoader classLoader;
+
+    ScriptEntry(final Class< ? > scriptClass, final GroovyClassLoader classLoader)
+    {
+      this.scriptClass = scriptClass;
+      this.classLoader = classLoader;
+    }
+  }
+
+  private static class TemplateEntry
+  {
+    final Template template;
+
+    final GroovyClassLoader classLoader;
+
+    TemplateEntry(final Template template, final GroovyClassLoader classLoader)
+    {
+      this.template = template;
+      this.classLoader = classLoader;
+    }
+  }
+}
@@ -26,6 +26,7 @@ package org.projectforge.task;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.commons.collections.CollectionUtils;
@@ -192,6 +193,18 @@ public class TaskDao extends BaseDao<TaskDO>
     return list;
   }
 
+  /**
+   * @param date
+   * @return The ids of all tasks with time sheets modified (also deleted) after the given time stamp.
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<Integer> readTaskIdsOfTimesheetsModifiedSince(final Date date)
+  {
+    @SuppressWarnings("unchecked")
+    final List<Integer> list = getHibernateTemplate().find("select distinct task.id from TimesheetDO where lastUpdate > ?", date);
+    return list;
+  }
+
   /**
    * Gets the total duration of all time sheets of the given task (excluding the child tasks).
    * @param node
@@ -26,8 +26,10 @@ package org.projectforge.task;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
@@ -54,8 +56,10 @@ public class TaskNode implements IdObject<Integer>, Serializable
   /** For log messages. */
   private static final Logger log = Logger.getLogger(TaskNode.class);
 
+  private static final int NUMBER_OF_OPERATION_TYPES = OperationType.values().length;
+
   /** Reference to the parent task node with the parentTaskID. */
-  TaskNode parent = null;
+  volatile TaskNode parent = null;
 
   ProjektDO projekt;
 
@@ -69,9 +73,10 @@ public class TaskNode implements IdObject<Integer>, Serializable
   BigDecimal orderedPersonDays;
 
   /**
-   * References to all child nodes in an ArrayList from element typ TaskNode.
+   * References to all child nodes. Copy-on-write list, because the childs are modified by the task tree while other threads iterate over
+   * them.
    */
-  List<TaskNode> childs = null;
+  volatile List<TaskNode> childs = null;
 
   /** The data of this TaskNode. */
   TaskDO task = null;
@@ -79,9 +84,16 @@ public class TaskNode implements IdObject<Integer>, Serializable
   boolean bookableForTimesheets;
 
   /**
-   * For every group with access to this node the permissions will be stored here.
+   * For every group with access to this node the permissions will be stored here (copy-on-write for readers without lock).
+   */
+  private final List<GroupTaskAccessDO> groupTaskAccessList = new CopyOnWriteArrayList<GroupTaskAccessDO>();
+
+  /**
+   * Effective permissions of every group with any permission on this node (including the inherited ones). The value is a bit mask, one bit
+   * per access type and operation type (see {@link #getPermissionBit(AccessType, OperationType)}). Null if not yet calculated. Will be
+   * replaced as a whole (immutable) by {@link #updatePermissionIndex()}.
    */
-  private final List<GroupTaskAccessDO> groupTaskAccessList = new ArrayList<GroupTaskAccessDO>();
+  private transient volatile Map<Integer, Integer> effectivePermissions;
 
   public TaskNode()
   {
@@ -325,10 +337,12 @@ public class TaskNode implements IdObject<Integer>, Serializable
         log.error("Oups, cyclic reference detection: taskId = " + getId() + ", parentTaskId = " + parent.getId());
         return;
       }
-      if (this.childs == null) {
-        this.childs = new ArrayList<TaskNode>();
+      synchronized (this) {
+        if (this.childs == null) {
+          this.childs = new CopyOnWriteArrayList<TaskNode>();
+        }
+        this.childs.add(child);
       }
-      this.childs.add(child);
     }
   }
 
@@ -360,11 +374,21 @@ public class TaskNode implements IdObject<Integer>, Serializable
    * @see OperationType
    */
   public boolean hasPermission(final Integer groupId, final AccessType accessType, final OperationType opType)
+  {
+    final Map<Integer, Integer> permissions = this.effectivePermissions;
+    if (permissions != null) {
+      final Integer mask = permissions.get(groupId);
+      return mask != null && (mask & getPermissionBit(accessType, opType)) != 0;
+    }
+    return hasPermissionRecursive(groupId, accessType, opType);
+  }
+
+  private boolean hasPermissionRecursive(final Integer groupId, final AccessType accessType, final OperationType opType)
   {
     final GroupTaskAccessDO groupAccess = getGroupTaskAccess(groupId);
     if (groupAccess == null) {
       if (parent != null) {
-        return parent.isPermissionRecursive(groupId) && parent.hasPermission(groupId, accessType, opType);
+        return parent.isPermissionRecursive(groupId) && parent.hasPermissionRecursive(groupId, accessType, opType);
       }
       // This is the root node.
       return false;
@@ -372,6 +396,59 @@ public class TaskNode implements IdObject<Integer>, Serializable
     return groupAccess.hasPermission(accessType, opType);
   }
 
+  /**
+   * Calculates the effective permissions of this node and of all descendant nodes. The permissions of the parent node must be up-to-date.
+   * Should be called by the TaskTree after building the tree, after changing any group task access of this node and after moving this node.
+   */
+  void updatePermissionIndex()
+  {
+    final Map<Integer, Integer> parentPermissions = parent != null ? parent.effectivePermissions : null;
+    final Map<Integer, Integer> permissions = new HashMap<Integer, Integer>();
+    if (parentPermissions != null) {
+      // Inherit all permissions of the parent node if the parent node's access is recursive:
+      for (final Map.Entry<Integer, Integer> entry : parentPermissions.entrySet()) {
+        if (parent.isPermissionRecursive(entry.getKey()) == true) {
+          permissions.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    synchronized (groupTaskAccessList) {
+      for (final GroupTaskAccessDO access : groupTaskAccessList) {
+        // Explicit access overrides inherited permissions:
+        final int mask = getPermissionMask(access);
+        if (mask != 0) {
+          permissions.put(access.getGroupId(), mask);
+        } else {
+          permissions.remove(access.getGroupId());
+        }
+      }
+    }
+    this.effectivePermissions = permissions;
+    if (childs != null) {
+      for (final TaskNode child : childs) {
+        child.updatePermissionIndex();
+      }
+    }
+  }
+
+  private static int getPermissionMask(final GroupTaskAccessDO access)
+  {
+    int mask = 0;
+    for (final AccessType accessType : AccessType.values()) {
+      for (final OperationType opType : OperationType.values()) {
+        if (access.hasPermission(accessType, opType) == true) {
+          mask |= getPermissionBit(accessType, opType);
+        }
+      }
+    }
+    return mask;
+  }
+
+  private static int getPermissionBit(final AccessType accessType, final OperationType opType)
+  {
+    return 1 << (accessType.ordinal() * NUMBER_OF_OPERATION_TYPES + opType.ordinal());
+  }
+
   public boolean isPermissionRecursive(final Integer groupId)
   {
     final GroupTaskAccessDO groupAccess = getGroupTaskAccess(groupId);
@@ -423,11 +500,9 @@ public class TaskNode implements IdObject<Integer>, Serializable
     Validate.notNull(groupId);
     boolean result = false;
     synchronized (groupTaskAccessList) {
-      final Iterator<GroupTaskAccessDO> it = groupTaskAccessList.iterator();
-      while (it.hasNext() == true) {
-        final GroupTaskAccessDO access = it.next();
+      for (final GroupTaskAccessDO access : groupTaskAccessList) {
         if (groupId.equals(access.getGroupId()) == true) {
-          it.remove();
+          groupTaskAccessList.remove(access); // Copy-on-write list, so the loop isn't affected.
           result = true;
         }
       }
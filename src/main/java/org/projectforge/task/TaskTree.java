@@ -28,13 +28,20 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
@@ -97,11 +104,49 @@ public class TaskTree extends AbstractCache implements Serializable
   /** Time of last modification in milliseconds from 1970-01-01. */
   private long timeOfLastModification = 0;
 
-  /** For faster searching of entries. */
-  private Map<Integer, TaskNode> taskMap;
+  /**
+   * Incremented on every modification of the hierarchy or of the access entries (time stamps may be equal for fast modifications).
+   */
+  private final AtomicLong modificationCounter = new AtomicLong();
+
+  /**
+   * A full rebuild of the tree is done at least once a day (by normal expiry only incremental refreshs are done).
+   */
+  private static final long FULL_REBUILD_INTERVAL = 24 * TICKS_PER_HOUR;
+
+  /**
+   * Incremental refreshs read all modifications since the last refresh minus this overlap (patching is idempotent).
+   */
+  private static final long DELTA_OVERLAP = TICKS_PER_MINUTE;
+
+  /**
+   * For faster searching of entries. Concurrent map, because it's modified by the daos and by incremental refreshs while readers use it
+   * without lock. A full rebuild replaces it as a whole.
+   */
+  private volatile Map<Integer, TaskNode> taskMap;
 
   /** The root node of all tasks. The only node with parent null. */
-  private TaskNode root = null;
+  private volatile TaskNode root = null;
+
+  /** Modifications since this time stamp will be read by the next incremental refresh. */
+  private Date lastRefreshTimestamp;
+
+  private long timeOfLastFullRebuild;
+
+  private volatile boolean fullRebuildRequested = true;
+
+  private volatile boolean backgroundRebuildRunning;
+
+  /** Single thread for background rebuilds, created on demand. Guarded by this. */
+  private transient ExecutorService rebuildExecutor;
+
+  private volatile long lastFullRefreshDuration = -1;
+
+  private volatile long lastDeltaRefreshDuration = -1;
+
+  private volatile int fullRefreshCounter;
+
+  private volatile int deltaRefreshCounter;
 
   private Map<Integer, Set<AuftragsPositionVO>> orderPositionReferences;
 
@@ -129,7 +174,7 @@ public class TaskTree extends AbstractCache implements Serializable
    * Adds a new node with the given data. The given Task holds all data and the information (id) of the parent node of the node to add. Will
    * be called by TaskDAO after inserting a new task.
    */
-  TaskNode addTaskNode(final TaskDO task)
+  synchronized TaskNode addTaskNode(final TaskDO task)
   {
     checkRefresh();
     final TaskNode node = new TaskNode();
@@ -149,7 +194,9 @@ public class TaskTree extends AbstractCache implements Serializable
     final TimesheetDO timesheet = new TimesheetDO().setTask(task);
     final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
     node.bookableForTimesheets = bookable;
-    return addTaskNode(node, parent);
+    addTaskNode(node, parent);
+    node.updatePermissionIndex();
+    return node;
   }
 
   /**
@@ -359,7 +406,7 @@ public class TaskTree extends AbstractCache implements Serializable
    * After changing a task this method will be called by TaskDao for updating the task and the task tree.
    * @param task Updating the existing task in the taskTree. If not exist, a new task will be added.
    */
-  TaskNode addOrUpdateTaskNode(final TaskDO task)
+  synchronized TaskNode addOrUpdateTaskNode(final TaskDO task)
   {
     checkRefresh();
     Validate.notNull(task);
@@ -379,6 +426,7 @@ public class TaskTree extends AbstractCache implements Serializable
       final TaskNode newParent = getTaskNodeById(task.getParentTaskId());
       node.setParent(newParent);
       newParent.addChild(node);
+      node.updatePermissionIndex(); // Inherited permissions may have changed.
     }
     updateTimeOfLastModification();
     return node;
@@ -389,12 +437,14 @@ public class TaskTree extends AbstractCache implements Serializable
    * after inserting or updating GroupTaskAccess to the database.
    * @see GroupTaskAccess
    */
-  public void setGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
+  public synchronized void setGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
   {
     checkRefresh();
     final Integer taskId = groupTaskAccess.getTaskId();
     final TaskNode node = taskMap.get(taskId);
     node.setGroupTaskAccess(groupTaskAccess);
+    node.updatePermissionIndex();
+    updateTimeOfLastModification();
   }
 
   /**
@@ -402,12 +452,14 @@ public class TaskTree extends AbstractCache implements Serializable
    * after deleting GroupTaskAccess from the database.
    * @see GroupTaskAccess
    */
-  public void removeGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
+  public synchronized void removeGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
   {
     checkRefresh();
     final Integer taskId = groupTaskAccess.getTaskId();
     final TaskNode node = taskMap.get(taskId);
     node.removeGroupTaskAccess(groupTaskAccess.getGroupId());
+    node.updatePermissionIndex();
+    updateTimeOfLastModification();
   }
 
   public long getTimeOfLastModification()
@@ -415,6 +467,15 @@ public class TaskTree extends AbstractCache implements Serializable
     return this.timeOfLastModification;
   }
 
+  /**
+   * @return A counter incremented on every modification of the hierarchy or of the access entries of this tree. Caches of data derived
+   *         from the tree (e. g. the task ids with select access) are up-to-date as long as this counter is unchanged.
+   */
+  public long getModificationCounter()
+  {
+    return modificationCounter.get();
+  }
+
   @Override
   public String toString()
   {
@@ -738,12 +799,12 @@ public class TaskTree extends AbstractCache implements Serializable
   /**
    * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes.
    */
-  private void readTotalDurations()
+  private void readTotalDurations(final Map<Integer, TaskNode> map)
   {
     final List<Object[]> list = taskDao.readTotalDurations();
     for (final Object[] res : list) {
       final Integer taskId = (Integer) res[1];
-      final TaskNode node = getTaskNodeById(taskId);
+      final TaskNode node = map.get(taskId);
       if (node == null) {
         log.warn("Task not found: " + taskId);
       } else {
@@ -780,8 +841,48 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * All tasks from database will be read and cached into this TaskTree. Also all explicit group task access' will be read from database and
-   * will be cached in this tree (implicit access' will be created too).<br/>
+   * The next refresh will rebuild the whole tree (synchronously).
+   * @see org.projectforge.common.AbstractCache#setExpired()
+   */
+  @Override
+  public void setExpired()
+  {
+    this.fullRebuildRequested = true;
+    super.setExpired();
+  }
+
+  /**
+   * @return Duration of the last full rebuild of the tree in ms.
+   */
+  public long getLastFullRefreshDuration()
+  {
+    return lastFullRefreshDuration;
+  }
+
+  /**
+   * @return Duration of the last incremental refresh of the tree in ms.
+   */
+  public long getLastDeltaRefreshDuration()
+  {
+    return lastDeltaRefreshDuration;
+  }
+
+  public int getFullRefreshCounter()
+  {
+    return fullRefreshCounter;
+  }
+
+  public int getDeltaRefreshCounter()
+  {
+    return deltaRefreshCounter;
+  }
+
+  /**
+   * If the tree isn't yet built or {@link #setExpired()} was called, all tasks from database will be read and cached into this TaskTree.
+   * Also all explicit group task access' will be read from database and will be cached in this tree (implicit access' will be created too).<br/>
+   * Otherwise (normal expiry) only the tasks, access entries and projects modified since the last refresh are read from the data base and
+   * patched into the existing tree. If the modifications can't be applied consistently (or the last full rebuild is older than one day) a
+   * full rebuild is started in background, the current tree is used until the new one is built.<br/>
    * The generation of the task tree will be done manually, not by hibernate because the task hierarchy is very sensible. Manipulations of
    * the task tree should be done carefully for single task nodes.
    * 
@@ -790,7 +891,6 @@ public class TaskTree extends AbstractCache implements Serializable
   @Override
   protected void refresh()
   {
-    log.info("Initializing task tree ...");
     if (taskDao == null) {
       log.info("Can't initialize task tree, taskDao isn't set yet (shouldn't occur):");
       // Stack trace for debugging refresh() call without TaskDao (does only occur in productive mode):
@@ -798,15 +898,124 @@ public class TaskTree extends AbstractCache implements Serializable
       log.info(sth);
       return;
     }
-    TaskNode newRoot = null;
-    taskMap = new HashMap<Integer, TaskNode>();
+    if (root == null || taskMap == null || lastRefreshTimestamp == null || fullRebuildRequested == true) {
+      fullRebuildRequested = false;
+      rebuild();
+      return;
+    }
+    final boolean consistent = refreshDelta();
+    if (consistent == false || System.currentTimeMillis() - timeOfLastFullRebuild > FULL_REBUILD_INTERVAL) {
+      rebuildInBackground();
+    }
+  }
+
+  /**
+   * Builds a new tree in a separate thread. The current tree will be used until the new tree is built and swapped. Modifications done
+   * while building are patched into the new tree before swapping. Does nothing if a background rebuild is already running.
+   */
+  public void rebuildInBackground()
+  {
+    synchronized (this) {
+      if (backgroundRebuildRunning == true) {
+        return;
+      }
+      backgroundRebuildRunning = true;
+      getRebuildExecutor().execute(new Runnable() {
+        @Override
+        public void run()
+        {
+          try {
+            rebuild();
+          } catch (final Throwable ex) {
+            log.error("Exception encountered while rebuilding task tree in background: " + ex.getMessage(), ex);
+          } finally {
+            backgroundRebuildRunning = false;
+          }
+        }
+      });
+    }
+  }
+
+  private synchronized ExecutorService getRebuildExecutor()
+  {
+    if (rebuildExecutor == null) {
+      rebuildExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "TaskTree-rebuild");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return rebuildExecutor;
+  }
+
+  /**
+   * Stops the background rebuild thread. Should be called on shutdown.
+   */
+  public synchronized void shutdown()
+  {
+    if (rebuildExecutor != null) {
+      rebuildExecutor.shutdownNow();
+      rebuildExecutor = null;
+    }
+  }
+
+  /**
+   * Builds the new tree without touching the current one and swaps the new tree in.
+   */
+  private void rebuild()
+  {
+    log.info("Initializing task tree ...");
+    final long begin = System.currentTimeMillis();
+    final Date timestamp = new Date(begin - DELTA_OVERLAP);
+    final Map<Integer, TaskNode> newTaskMap = new ConcurrentHashMap<Integer, TaskNode>();
     final List<TaskDO> taskList = taskDao.internalLoadAll();
+    final TaskNode newRoot = buildTree(taskList, newTaskMap);
+    final Map<Integer, TaskNode> oldTaskMap;
+    synchronized (this) {
+      oldTaskMap = this.taskMap;
+      if (oldTaskMap != null) {
+        // Use the old bookable flags until they're recalculated (readers shouldn't see unbookable tasks in the meantime):
+        for (final TaskNode node : newTaskMap.values()) {
+          final TaskNode oldNode = oldTaskMap.get(node.getId());
+          if (oldNode != null) {
+            node.bookableForTimesheets = oldNode.bookableForTimesheets;
+          }
+        }
+      }
+      this.taskMap = newTaskMap;
+      this.root = newRoot;
+      if (oldTaskMap != null && lastRefreshTimestamp != null) {
+        // Patch modifications done while building the new tree:
+        applyDelta(timestamp);
+      }
+      this.lastRefreshTimestamp = timestamp;
+      this.timeOfLastFullRebuild = begin;
+      updateTimeOfLastModification();
+    }
+    refreshOrderPositionReferences();
+    // Now update the status: bookable for time sheets (needs the new tree):
+    updateBookableStatus(taskList, newTaskMap);
+    lastFullRefreshDuration = System.currentTimeMillis() - begin;
+    ++fullRefreshCounter;
+    log.info("Initializing task tree done (" + taskList.size() + " tasks in " + lastFullRefreshDuration + "ms).");
+  }
+
+  /**
+   * @return The new root node.
+   */
+  private TaskNode buildTree(final List<TaskDO> taskList, final Map<Integer, TaskNode> map)
+  {
+    TaskNode newRoot = null;
     TaskNode node;
     log.debug("Loading list of tasks ...");
     for (final TaskDO task : taskList) {
       node = new TaskNode();
       node.setTask(task);
-      taskMap.put(node.getTaskId(), node);
+      map.put(node.getTaskId(), node);
       if (node.isRootNode() == true) {
         if (newRoot != null) {
           log.error("Duplicate root node found: " + newRoot.getId() + " and " + node.getId());
@@ -828,37 +1037,32 @@ public class TaskTree extends AbstractCache implements Serializable
       taskDao.internalSave(rootTask);
       newRoot = new TaskNode();
       newRoot.setTask(rootTask);
-      taskMap.put(newRoot.getTaskId(), newRoot);
+      map.put(newRoot.getTaskId(), newRoot);
+      taskList.add(rootTask);
     }
-    this.root = newRoot;
     if (log.isDebugEnabled() == true) {
       log.debug("Creating tree for " + taskList.size() + " tasks ...");
     }
     for (final TaskDO task : taskList) {
       TaskNode parentNode = null;
-      node = taskMap.get(task.getId());
+      node = map.get(task.getId());
       final Integer parentId = task.getParentTaskId();
       if (parentId != null) {
-        parentNode = taskMap.get(parentId);
+        parentNode = map.get(parentId);
       }
       // log.debug("Processing node: " + node.getId() + ", parent: " + parentId);
       if (parentNode != null) {
         node.setParent(parentNode);
         parentNode.addChild(node);
-        updateTimeOfLastModification();
       } else {
         log.debug("Processing root node:" + node);
       }
     }
 
-    if (log.isDebugEnabled() == true) {
-      log.debug(this.root);
-    }
-
     // Now read all explicit group task access' from the database:
     final List<GroupTaskAccessDO> accessList = accessDao.internalLoadAll();
     for (final GroupTaskAccessDO access : accessList) {
-      node = taskMap.get(access.getTaskId());
+      node = map.get(access.getTaskId());
       node.setGroupTaskAccess(access);
       if (log.isDebugEnabled() == true) {
         log.debug(access.toString());
@@ -871,7 +1075,7 @@ public class TaskTree extends AbstractCache implements Serializable
         if (project.isDeleted() == true || project.getTaskId() == null) {
           continue;
         }
-        node = taskMap.get(project.getTaskId());
+        node = map.get(project.getTaskId());
         if (node == null) {
           log.error("Oups, should not occur: project references a non existing task: " + project);
         } else {
@@ -879,25 +1083,192 @@ public class TaskTree extends AbstractCache implements Serializable
         }
       }
     }
-    if (log.isDebugEnabled() == true) {
-      log.debug(this.toString());
-    }
-    readTotalDurations();
-    refreshOrderPositionReferences();
-    // Now update the status: bookable for time sheets:
+    // Precalculate the effective permissions of all groups:
+    newRoot.updatePermissionIndex();
+    readTotalDurations(map);
+    return newRoot;
+  }
+
+  private void updateBookableStatus(final Collection<TaskDO> taskList, final Map<Integer, TaskNode> map)
+  {
     final TimesheetDao timesheetDao = Registry.instance().getDao(TimesheetDao.class);
     final TimesheetDO timesheet = new TimesheetDO();
     for (final TaskDO task : taskList) {
-      node = taskMap.get(task.getId());
+      final TaskNode node = map.get(task.getId());
+      if (node == null) {
+        continue;
+      }
       timesheet.setTask(task);
       final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
       node.bookableForTimesheets = bookable;
     }
-    log.info("Initializing task tree done.");
+  }
+
+  /**
+   * Patches all modifications since the last refresh into the current tree.
+   * @return false, if the modifications couldn't be applied consistently and a full rebuild is needed.
+   */
+  private synchronized boolean refreshDelta()
+  {
+    final long begin = System.currentTimeMillis();
+    final Date timestamp = new Date(begin - DELTA_OVERLAP);
+    final boolean consistent = applyDelta(lastRefreshTimestamp);
+    if (consistent == true) {
+      lastRefreshTimestamp = timestamp;
+    }
+    lastDeltaRefreshDuration = System.currentTimeMillis() - begin;
+    ++deltaRefreshCounter;
+    log.info("Incremental refresh of task tree done in "
+        + lastDeltaRefreshDuration
+        + "ms"
+        + (consistent == false ? " (inconsistent, full rebuild needed)." : "."));
+    return consistent;
+  }
+
+  /**
+   * Reads all tasks, group task access entries, projects and time sheets modified since the given time stamp and updates the affected
+   * nodes. Must be called with the lock of this tree (readers don't lock, they rely on the concurrent task map and the copy-on-write child
+   * lists of the nodes).
+   * @return false, if the modifications couldn't be applied consistently.
+   */
+  private boolean applyDelta(final Date since)
+  {
+    boolean consistent = true;
+    final List<TaskDO> tasks = taskDao.internalLoadModifiedSince(since);
+    // First create all new nodes, so the hierarchy of new sub trees can be built in any order. They're added to the task map after they
+    // are linked:
+    final Map<Integer, TaskNode> newNodes = new HashMap<Integer, TaskNode>();
+    // Nodes with modified inherited or explicit permissions (new and moved nodes and nodes with modified access entries):
+    final Map<Integer, TaskNode> permissionModifiedNodes = new HashMap<Integer, TaskNode>();
+    for (final TaskDO task : tasks) {
+      if (taskMap.containsKey(task.getId()) == false) {
+        final TaskNode node = new TaskNode();
+        node.setTask(task);
+        newNodes.put(task.getId(), node);
+      }
+    }
+    for (final TaskDO task : tasks) {
+      final TaskNode node = getTaskNode(newNodes, task.getId());
+      node.setTask(task);
+      final Integer parentId = task.getParentTaskId();
+      final TaskNode oldParent = node.getParent();
+      if (parentId == null || (oldParent != null && parentId.equals(oldParent.getId()) == true)) {
+        continue;
+      }
+      final TaskNode newParent = getTaskNode(newNodes, parentId);
+      if (newParent == null) {
+        log.warn("Parent task " + parentId + " of modified task " + task.getId() + " not found.");
+        consistent = false;
+        continue;
+      }
+      try {
+        if (oldParent != null) {
+          oldParent.removeChild(node);
+        }
+        node.setParent(newParent);
+        newParent.addChild(node);
+        permissionModifiedNodes.put(node.getId(), node);
+      } catch (final Exception ex) {
+        log.warn("Can't move modified task " + task.getId() + ": " + ex.getMessage());
+        consistent = false;
+      }
+    }
+    taskMap.putAll(newNodes);
+    final List<GroupTaskAccessDO> accessList = accessDao.internalLoadModifiedSince(since);
+    for (final GroupTaskAccessDO access : accessList) {
+      final TaskNode node = taskMap.get(access.getTaskId());
+      if (node == null) {
+        consistent = false;
+      } else {
+        if (access.isDeleted() == true) {
+          node.removeGroupTaskAccess(access.getGroupId());
+        } else {
+          node.setGroupTaskAccess(access);
+        }
+        permissionModifiedNodes.put(node.getId(), node);
+      }
+    }
+    if (permissionModifiedNodes.isEmpty() == false) {
+      // Only the sub trees of the modified nodes inherit modified permissions:
+      updatePermissionIndex(permissionModifiedNodes);
+      updateTimeOfLastModification();
+    }
+    final List<ProjektDO> projects = projektDao.internalLoadModifiedSince(since);
+    for (final ProjektDO project : projects) {
+      for (final TaskNode node : taskMap.values()) {
+        if (node.projekt != null && project.getId().equals(node.projekt.getId()) == true) {
+          node.projekt = null;
+        }
+      }
+      if (project.isDeleted() == true || project.getTaskId() == null) {
+        continue;
+      }
+      final TaskNode node = taskMap.get(project.getTaskId());
+      if (node == null) {
+        log.error("Oups, should not occur: project references a non existing task: " + project);
+      } else {
+        node.projekt = project;
+      }
+    }
+    for (final Integer taskId : taskDao.readTaskIdsOfTimesheetsModifiedSince(since)) {
+      final TaskNode node = taskMap.get(taskId);
+      if (node != null) {
+        node.totalDuration = -1; // Will be read on demand.
+      }
+    }
+    if (tasks.isEmpty() == false) {
+      // Tasks and their descendants may have changed their bookable status:
+      final Set<TaskDO> set = new HashSet<TaskDO>();
+      for (final TaskDO task : tasks) {
+        addWithDescendants(set, taskMap.get(task.getId()));
+      }
+      updateBookableStatus(set, taskMap);
+      updateTimeOfLastModification();
+    }
+    return consistent;
+  }
+
+  private TaskNode getTaskNode(final Map<Integer, TaskNode> newNodes, final Integer taskId)
+  {
+    final TaskNode node = newNodes.get(taskId);
+    return node != null ? node : taskMap.get(taskId);
+  }
+
+  /**
+   * Updates the effective permissions of the sub trees of the given nodes (by task id). A node with an ancestor in the given map is updated
+   * together with the sub tree of the ancestor.
+   */
+  private void updatePermissionIndex(final Map<Integer, TaskNode> nodes)
+  {
+    for (final TaskNode node : nodes.values()) {
+      boolean updatedByAncestor = false;
+      for (TaskNode ancestor = node.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+        if (nodes.containsKey(ancestor.getId()) == true) {
+          updatedByAncestor = true;
+          break;
+        }
+      }
+      if (updatedByAncestor == false) {
+        node.updatePermissionIndex();
+      }
+    }
+  }
+
+  private void addWithDescendants(final Set<TaskDO> set, final TaskNode node)
+  {
+    if (node == null || set.add(node.getTask()) == false) {
+      return;
+    }
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        addWithDescendants(set, child);
+      }
+    }
   }
 
   private void updateTimeOfLastModification()
   {
     this.timeOfLastModification = new Date().getTime();
+    modificationCounter.incrementAndGet();
   }
 }
@@ -33,6 +33,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.ObjectUtils;
@@ -40,13 +42,21 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.projectforge.access.AccessException;
 import org.projectforge.access.AccessType;
 import org.projectforge.access.OperationType;
+import org.projectforge.calendar.CalendarFeedCache;
+import org.projectforge.calendar.TimePeriod;
 import org.projectforge.common.DateHelper;
 import org.projectforge.common.DateHolder;
 import org.projectforge.common.NumberHelper;
@@ -71,6 +81,9 @@ import org.projectforge.user.UserDao;
 import org.projectforge.web.timesheet.TimesheetListFilter;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * 
@@ -99,13 +112,24 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
 
   private static final Logger log = Logger.getLogger(TimesheetDao.class);
 
+  /**
+   * Some data bases limit the number of values of an in expression.
+   */
+  private static final int MAX_IDS_PER_IN_RESTRICTION = 1000;
+
   private TaskTree taskTree;
 
   private UserDao userDao;
 
   private Kost2Dao kost2Dao;
 
-  private final Map<Integer, Set<Integer>> timesheetsWithOverlapByUser = new HashMap<Integer, Set<Integer>>();
+  private final ConcurrentMap<Integer, TimesheetOverlapIndex> overlapIndexByUser = new ConcurrentHashMap<Integer, TimesheetOverlapIndex>();
+
+  /**
+   * The task ids with select access for foreign time sheets by user id. An entry is re-calculated if the task tree or the groups of the
+   * user were modified.
+   */
+  private final ConcurrentMap<Integer, TaskIdsWithSelectAccess> selectAccessCache = new ConcurrentHashMap<Integer, TaskIdsWithSelectAccess>();
 
   public void setTaskTree(final TaskTree taskTree)
   {
@@ -229,6 +253,237 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   public TimesheetDao()
   {
     super(TimesheetDO.class);
+    supportPagedQueries = true;
+  }
+
+  /**
+   * @see org.projectforge.core.BaseDao#createQueryFilter(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  public QueryFilter createQueryFilter(final BaseSearchFilter filter)
+  {
+    final TimesheetFilter myFilter;
+    if (filter instanceof TimesheetFilter) {
+      myFilter = (TimesheetFilter) filter;
+    } else {
+      myFilter = new TimesheetFilter(filter);
+    }
+    if (myFilter.getStopTime() != null) {
+      final DateHolder date = new DateHolder(myFilter.getStopTime());
+      date.setEndOfDay();
+      myFilter.setStopTime(date.getDate());
+    }
+    return buildQueryFilter(myFilter);
+  }
+
+  /**
+   * The filter of time sheets with time period overlaps (marked) is done in memory, so paged queries aren't supported for this filter
+   * setting.
+   * @see org.projectforge.core.BaseDao#isPagedQuerySupported(org.projectforge.core.BaseSearchFilter)
+   */
+  @Override
+  public boolean isPagedQuerySupported(final BaseSearchFilter filter)
+  {
+    if (filter instanceof TimesheetFilter && ((TimesheetFilter) filter).isMarked() == true) {
+      return false;
+    }
+    return super.isPagedQuerySupported(filter);
+  }
+
+  /**
+   * Marks the time sheets of the page with time period overlaps.
+   * @see org.projectforge.core.BaseDao#getPagedList(org.projectforge.core.QueryFilter)
+   */
+  @Override
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public List<TimesheetDO> getPagedList(final QueryFilter filter) throws AccessException
+  {
+    final List<TimesheetDO> list = super.getPagedList(filter);
+    if (list != null) {
+      markTimeOverlaps(list);
+    }
+    return list;
+  }
+
+  /**
+   * Sums the durations of all time sheets matching the given filter (used by the list page in paged mode). Only the start and stop times
+   * are queried, no time sheet is loaded.
+   * @param filter
+   * @return The total duration in millis or 0 if the logged-in user is a restricted user.
+   */
+  @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+  public long getTotalDuration(final QueryFilter filter) throws AccessException
+  {
+    checkLoggedInUserSelectAccess();
+    if (accessChecker.isRestrictedUser() == true) {
+      return 0;
+    }
+    addSelectAccessRestrictions(filter);
+    final Criteria criteria = filter.buildCountCriteria(getSession(), clazz);
+    addDefaultRestrictions(criteria, filter.getFilter());
+    criteria.setProjection(Projections.projectionList().add(Projections.property("startTime")).add(Projections.property("stopTime")));
+    long duration = 0;
+    final ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+    try {
+      while (results.next() == true) {
+        duration += TimePeriod.getDuration((Date) results.get(0), (Date) results.get(1));
+      }
+    } finally {
+      results.close();
+    }
+    return duration;
+  }
+
+  /**
+   * Same rules as {@link #hasSelectAccess(PFUserDO, TimesheetDO, boolean)}: the own time sheets are always selected (the values are hidden
+   * without access). Foreign time sheets are selected for members of the finance group, with select access to the time sheets of the task
+   * or for project managers if no task of the path has protection of privacy.
+   * @see org.projectforge.core.BaseDao#addSelectAccessRestrictions(org.projectforge.core.QueryFilter)
+   */
+  @Override
+  protected void addSelectAccessRestrictions(final QueryFilter filter)
+  {
+    final PFUserDO user = PFUserContext.getUser();
+    if (accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.FINANCE_GROUP) == true) {
+      return;
+    }
+    final TaskIdsWithSelectAccess taskIdsWithSelectAccess = getTaskIdsWithSelectAccess(user);
+    if (taskIdsWithSelectAccess.allTasks == true) {
+      return;
+    }
+    final PFUserDO owner = new PFUserDO();
+    owner.setId(user.getId());
+    final List<Integer> taskIds = taskIdsWithSelectAccess.taskIds;
+    final Disjunction disjunction = Restrictions.disjunction();
+    disjunction.add(Restrictions.eq("user", owner));
+    if (taskIdsWithSelectAccess.negated == true) {
+      // Less tasks without than with access:
+      final Conjunction conjunction = Restrictions.conjunction();
+      for (int i = 0; i < taskIds.size(); i += MAX_IDS_PER_IN_RESTRICTION) {
+        conjunction.add(Restrictions.not(Restrictions.in("task.id",
+            taskIds.subList(i, Math.min(i + MAX_IDS_PER_IN_RESTRICTION, taskIds.size())))));
+      }
+      disjunction.add(conjunction);
+    } else {
+      for (int i = 0; i < taskIds.size(); i += MAX_IDS_PER_IN_RESTRICTION) {
+        disjunction.add(Restrictions.in("task.id", taskIds.subList(i, Math.min(i + MAX_IDS_PER_IN_RESTRICTION, taskIds.size()))));
+      }
+    }
+    filter.add(disjunction);
+  }
+
+  /**
+   * The paged list page calls {@link #addSelectAccessRestrictions(QueryFilter)} several times per request (count, page and total
+   * duration), so the task ids are cached per user until the task tree or the groups of the user are modified.
+   */
+  private TaskIdsWithSelectAccess getTaskIdsWithSelectAccess(final PFUserDO user)
+  {
+    // Read the counter first: a modification during the calculation forces a re-calculation next time.
+    final long treeModificationCounter = taskTree.getModificationCounter();
+    final Collection<Integer> userGroups = userGroupCache.getUserGroups(user);
+    final Set<Integer> groupIds = userGroups != null ? new HashSet<Integer>(userGroups) : new HashSet<Integer>();
+    TaskIdsWithSelectAccess result = selectAccessCache.get(user.getId());
+    if (result != null && result.treeModificationCounter == treeModificationCounter && result.groupIds.equals(groupIds) == true) {
+      return result;
+    }
+    final boolean projectManager = accessChecker.isUserMemberOfGroup(user, ProjectForgeGroup.PROJECT_MANAGER);
+    final List<Integer> taskIds = new ArrayList<Integer>();
+    final List<Integer> deniedTaskIds = new ArrayList<Integer>();
+    final TaskNode root = taskTree.getRootTaskNode();
+    addTaskIdsWithSelectAccess(user, projectManager, root, false, taskIds, deniedTaskIds);
+    if (hasForeignTimesheetSelectAccess(user, projectManager, root, false) == true) {
+      taskIds.add(root.getId());
+    } else {
+      deniedTaskIds.add(root.getId());
+    }
+    if (deniedTaskIds.isEmpty() == true) {
+      result = new TaskIdsWithSelectAccess(treeModificationCounter, groupIds, true, false, null);
+    } else if (deniedTaskIds.size() < taskIds.size()) {
+      result = new TaskIdsWithSelectAccess(treeModificationCounter, groupIds, false, true, deniedTaskIds);
+    } else {
+      result = new TaskIdsWithSelectAccess(treeModificationCounter, groupIds, false, false, taskIds);
+    }
+    selectAccessCache.put(user.getId(), result);
+    return result;
+  }
+
+  private static class TaskIdsWithSelectAccess
+  {
+    final long treeModificationCounter;
+
+    final Set<Integer> groupIds;
+
+    final boolean allTasks;
+
+    /**
+     * If true, the task ids are the ids of the tasks without select access (the list is shorter).
+     */
+    final boolean negated;
+
+    final List<Integer> taskIds;
+
+    TaskIdsWithSelectAccess(final long treeModificationCounter, final Set<Integer> groupIds, final boolean allTasks,
+        final boolean negated, final List<Integer> taskIds)
+    {
+      this.treeModificationCounter = treeModificationCounter;
+      this.groupIds = groupIds;
+      this.allTasks = allTasks;
+      this.negated = negated;
+      this.taskIds = taskIds;
+    }
+  }
+
+  /**
+   * Adds the ids of all descendant tasks with and without select access for foreign time sheets.
+   * @param protectionOfPrivacy true, if any task of the path of the given node (excluding the root node) has protection of privacy.
+   */
+  private void addTaskIdsWithSelectAccess(final PFUserDO user, final boolean projectManager, final TaskNode node,
+      final boolean protectionOfPrivacy, final List<Integer> taskIds, final List<Integer> deniedTaskIds)
+  {
+    if (node.hasChilds() == true) {
+      for (final TaskNode child : node.getChilds()) {
+        final boolean childProtectionOfPrivacy = protectionOfPrivacy == true || child.getTask().isProtectionOfPrivacy() == true;
+        if (hasForeignTimesheetSelectAccess(user, projectManager, child, childProtectionOfPrivacy) == true) {
+          taskIds.add(child.getId());
+        } else {
+          deniedTaskIds.add(child.getId());
+        }
+        addTaskIdsWithSelectAccess(user, projectManager, child, childProtectionOfPrivacy, taskIds, deniedTaskIds);
+      }
+    }
+  }
+
+  private boolean hasForeignTimesheetSelectAccess(final PFUserDO user, final boolean projectManager, final TaskNode node,
+      final boolean protectionOfPrivacy)
+  {
+    if (accessChecker.hasPermission(user, node.getId(), AccessType.TIMESHEETS, OperationType.SELECT, false) == true) {
+      return true;
+    }
+    // Project managers see the foreign time sheets with hidden values:
+    return projectManager == true && protectionOfPrivacy == false;
+  }
+
+  /**
+   * Marks all time sheets of the given list with time period overlaps.
+   */
+  private void markTimeOverlaps(final List<TimesheetDO> list)
+  {
+    final Map<Integer, Set<Integer>> overlapSetsByUser = new HashMap<Integer, Set<Integer>>();
+    for (final TimesheetDO entry : list) {
+      Validate.notNull(entry.getUserId());
+      if (entry.isMarked() == true) {
+        continue; // Is already marked.
+      }
+      Set<Integer> overlapSet = overlapSetsByUser.get(entry.getUserId());
+      if (overlapSet == null) {
+        overlapSet = getTimesheetsWithTimeoverlap(entry.getUserId());
+        overlapSetsByUser.put(entry.getUserId(), overlapSet);
+      }
+      if (overlapSet.contains(entry.getId()) == true) {
+        log.info("Overlap of time sheet decteced: " + entry);
+        entry.setMarked(true);
+      }
+    }
   }
 
   /**
@@ -253,34 +508,13 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
   public List<TimesheetDO> getList(final BaseSearchFilter filter) throws AccessException
   {
-    final TimesheetFilter myFilter;
-    if (filter instanceof TimesheetFilter) {
-      myFilter = (TimesheetFilter) filter;
-    } else {
-      myFilter = new TimesheetFilter(filter);
-    }
-    if (myFilter.getStopTime() != null) {
-      final DateHolder date = new DateHolder(myFilter.getStopTime());
-      date.setEndOfDay();
-      myFilter.setStopTime(date.getDate());
-    }
-    final QueryFilter queryFilter = buildQueryFilter(myFilter);
+    final QueryFilter queryFilter = createQueryFilter(filter);
+    final TimesheetFilter myFilter = (TimesheetFilter) queryFilter.getFilter();
     List<TimesheetDO> result = getList(queryFilter);
     if (result == null) {
       return null;
     }
-    // Check time period overlaps:
-    for (final TimesheetDO entry : result) {
-      Validate.notNull(entry.getUserId());
-      if (entry.isMarked() == true) {
-        continue; // Is already marked.
-      }
-      final Set<Integer> overlapSet = getTimesheetsWithTimeoverlap(entry.getUserId());
-      if (overlapSet.contains(entry.getId()) == true) {
-        log.info("Overlap of time sheet decteced: " + entry);
-        entry.setMarked(true);
-      }
-    }
+    markTimeOverlaps(result);
     if (myFilter.isMarked() == true) {
       // Show only time sheets with time period violation (overlap):
       final List<TimesheetDO> list = result;
@@ -315,17 +549,21 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Rechecks the time sheet overlaps.
+   * Updates the time sheet overlap index of the user (after the commit of the transaction).
    * @see org.projectforge.core.BaseDao#afterSaveOrModify(org.projectforge.core.ExtendedBaseDO)
    */
   @Override
   protected void afterSaveOrModify(final TimesheetDO obj)
   {
     super.afterSaveOrModify(obj);
-    if (obj.getUser() != null) {
-      // Force re-analysis of time sheet overlaps after any modification of time sheets.
-      recheckTimesheetOverlap(obj.getUserId());
+    if (obj.getUserId() != null) {
+      if (obj.isDeleted() == true || obj.getStartTime() == null || obj.getStopTime() == null) {
+        updateOverlapIndex(obj.getUserId(), obj.getId(), null, null);
+      } else {
+        updateOverlapIndex(obj.getUserId(), obj.getId(), obj.getStartTime().getTime(), obj.getStopTime().getTime());
+      }
     }
+    CalendarFeedCache.instance().invalidateTimesheets(obj.getUserId());
     taskTree.resetTotalDuration(obj.getTaskId());
   }
 
@@ -364,6 +602,13 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
     if (obj.getTaskId().compareTo(dbObj.getTaskId()) != 0) {
       taskTree.resetTotalDuration(dbObj.getTaskId());
     }
+    if (ObjectUtils.equals(obj.getUserId(), dbObj.getUserId()) == false) {
+      CalendarFeedCache.instance().invalidateTimesheets(dbObj.getUserId());
+      if (dbObj.getUserId() != null) {
+        // Time sheet was moved to another user:
+        updateOverlapIndex(dbObj.getUserId(), dbObj.getId(), null, null);
+      }
+    }
   }
 
   /**
@@ -396,45 +641,18 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   }
 
   /**
-   * Analyses all time sheets of the user and detects any collision (overlap) of the user's time sheets. The result will be cached and the
-   * duration of a new analysis is only a few milliseconds!
+   * Analyses all time sheets of the user and detects any collision (overlap) of the user's time sheets. The time periods of the user's time
+   * sheets are read only once and the index is updated after every modification of the user's time sheets.
    * @param user
    * @return
    */
   public Set<Integer> getTimesheetsWithTimeoverlap(final Integer userId)
   {
-    Validate.notNull(userId);
-    final PFUserDO user = userGroupCache.getUser(userId);
-    Validate.notNull(user);
-    synchronized (timesheetsWithOverlapByUser) {
-      if (timesheetsWithOverlapByUser.get(userId) != null) {
-        return timesheetsWithOverlapByUser.get((userId));
-      }
-      // log.info("Getting time sheet overlaps for user: " + user.getUsername());
-      final Set<Integer> result = new HashSet<Integer>();
-      final QueryFilter queryFilter = new QueryFilter();
-      queryFilter.add(Restrictions.eq("user", user));
-      queryFilter.addOrder(Order.asc("startTime"));
-      final List<TimesheetDO> list = getList(queryFilter);
-      long endTime = 0;
-      TimesheetDO lastEntry = null;
-      for (final TimesheetDO entry : list) {
-        if (entry.getStartTime().getTime() < endTime) {
-          // Time collision!
-          result.add(entry.getId());
-          if (lastEntry != null) { // Only for first iteration
-            result.add(lastEntry.getId()); // Also collision for last entry.
-          }
-        }
-        endTime = entry.getStopTime().getTime();
-        lastEntry = entry;
-      }
-      timesheetsWithOverlapByUser.put(user.getId(), result);
-      if (CollectionUtils.isNotEmpty(result) == true) {
-        log.info("Time sheet overlaps for user '" + user.getUsername() + "': " + result);
-      }
-      return result;
+    final Set<Integer> result = getOverlapIndex(userId).getOverlaps();
+    if (log.isDebugEnabled() == true && CollectionUtils.isNotEmpty(result) == true) {
+      log.debug("Time sheet overlaps for user '" + userId + "': " + result);
     }
+    return result;
   }
 
   /**
@@ -445,18 +663,28 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
   public void recheckTimesheetOverlap(final Integer userId)
   {
     Validate.notNull(userId);
-    timesheetsWithOverlapByUser.remove(userId);
+    overlapIndexByUser.remove(userId);
   }
 
   /**
    * Checks if the time sheet overlaps with another time sheet of the same user. Should be checked on every insert or update (also
-   * undelete). For time collision detection deleted time sheets are ignored.
+   * undelete). For time collision detection deleted time sheets are ignored.<br/>
+   * The overlap index of the user is used, only in case of a detected collision the colliding time sheet is read from the data base. The
+   * index contains only committed modifications.
    * @return The existing time sheet with the time period collision.
    */
   public boolean hasTimeOverlap(final TimesheetDO timesheet, final boolean throwException)
   {
     Validate.notNull(timesheet);
     Validate.notNull(timesheet.getUser());
+    if (timesheet.getStartTime() == null || timesheet.getStopTime() == null) {
+      return false;
+    }
+    final Integer overlappingId = getOverlapIndex(timesheet.getUserId()).getOverlappingTimesheetId(timesheet.getStartTime().getTime(),
+        timesheet.getStopTime().getTime(), timesheet.getId());
+    if (overlappingId == null) {
+      return false;
+    }
     final QueryFilter queryFilter = new QueryFilter();
     queryFilter.add(Restrictions.eq("user", timesheet.getUser()));
     queryFilter.add(Restrictions.lt("startTime", timesheet.getStopTime()));
@@ -477,9 +705,97 @@ public class TimesheetDao extends BaseDao<TimesheetDO>
       }
       return true;
     }
+    // The index isn't up-to-date (e. g. the data base was modified without this dao), it will be rebuilt on next usage.
+    log.warn("Time sheet overlap index of user " + timesheet.getUserId() + " is out-dated (time sheet #" + overlappingId + "), rebuilding.");
+    recheckTimesheetOverlap(timesheet.getUserId());
     return false;
   }
 
+  /**
+   * Puts the period of the given time sheet into the overlap index of the user or removes the time sheet from the index if startTime is
+   * null. Inside a transaction the index is updated after the commit, so rolled back modifications aren't part of the index (the index is
+   * discarded if the outcome of the transaction is unknown).
+   */
+  private void updateOverlapIndex(final Integer userId, final Integer timesheetId, final Long startTime, final Long stopTime)
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status)
+        {
+          if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            internalUpdateOverlapIndex(userId, timesheetId, startTime, stopTime);
+          } else if (status == TransactionSynchronization.STATUS_UNKNOWN) {
+            recheckTimesheetOverlap(userId);
+          }
+        }
+      });
+      return;
+    }
+    internalUpdateOverlapIndex(userId, timesheetId, startTime, stopTime);
+  }
+
+  private void internalUpdateOverlapIndex(final Integer userId, final Integer timesheetId, final Long startTime, final Long stopTime)
+  {
+    final TimesheetOverlapIndex index = overlapIndexByUser.get(userId);
+    if (index == null) {
+      return;
+    }
+    if (startTime == null) {
+      index.remove(timesheetId);
+    } else {
+      index.put(timesheetId, startTime, stopTime);
+    }
+  }
+
+  /**
+   * If the index is built inside a transaction, it contains the uncommitted modifications of this transaction. Therefore such an index is
+   * discarded if the transaction isn't committed.
+   * @param userId
+   * @return The overlap index of the user, the time periods are read from the data base only once.
+   */
+  private TimesheetOverlapIndex getOverlapIndex(final Integer userId)
+  {
+    Validate.notNull(userId);
+    TimesheetOverlapIndex index = overlapIndexByUser.get(userId);
+    if (index == null) {
+      index = new TimesheetOverlapIndex();
+      final TimesheetOverlapIndex other = overlapIndexByUser.putIfAbsent(userId, index);
+      if (other != null) {
+        index = other;
+      }
+    }
+    synchronized (index) {
+      if (index.isLoaded() == false) {
+        final long start = System.currentTimeMillis();
+        @SuppressWarnings("unchecked")
+        final List<Object[]> list = getHibernateTemplate().find(
+            "select t.id, t.startTime, t.stopTime from TimesheetDO t where t.user.id = ? and t.deleted = false", userId);
+        for (final Object[] row : list) {
+          if (row[1] != null && row[2] != null) {
+            index.put((Integer) row[0], ((Date) row[1]).getTime(), ((Date) row[2]).getTime());
+          }
+        }
+        index.setLoaded();
+        if (TransactionSynchronizationManager.isSynchronizationActive() == true) {
+          final TimesheetOverlapIndex loadedIndex = index;
+          TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(final int status)
+            {
+              if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                overlapIndexByUser.remove(userId, loadedIndex);
+              }
+            }
+          });
+        }
+        log.info("Time sheet overlap index of user " + userId + " built (" + index.size() + " time sheets) in "
+            + (System.currentTimeMillis() - start) + "ms.");
+      }
+    }
+    return index;
+  }
+
   /**
    * return Always true, no generic select access needed for address objects.
    * @see org.projectforge.core.BaseDao#hasSelectAccess()
@@ -118,6 +118,14 @@ public class TimesheetExport
    * Exports the filtered list as table with almost all fields.
    */
   public byte[] export(final List<TimesheetDO> list)
+  {
+    return exportWorkbook(list).getAsByteArray();
+  }
+
+  /**
+   * Same as {@link #export(List)} but returns the workbook, e. g. for writing it directly to an output stream.
+   */
+  public ExportWorkbook exportWorkbook(final List<TimesheetDO> list)
   {
     log.info("Exporting timesheet list.");
     final ExportWorkbook xls = new ExportWorkbook();
@@ -205,7 +213,7 @@ public class TimesheetExport
     }
     sheet.setZoom(3, 4); // 75%
 
-    return xls.getAsByteArray();
+    return xls;
   }
 
   public void setTaskTree(final TaskTree taskTree)
@@ -0,0 +1,183 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.timesheet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Index of the time periods of all (not deleted) time sheets of one user. The index is updated incrementally after every modification and
+ * answers time period collision requests and the set of the user's overlapping time sheets without reading the user's time sheets from the
+ * data base.<br/>
+ * The periods are sorted by start time. Every period overlapping [start, stop) starts before stop and after start minus the longest duration
+ * of all periods, therefore only this range has to be scanned.<br/>
+ * All methods are synchronized on the index of the user, so users don't block each other.
+ */
+class TimesheetOverlapIndex
+{
+  private final TreeSet<Period> periods = new TreeSet<Period>();
+
+  private final Map<Integer, Period> periodsById = new HashMap<Integer, Period>();
+
+  private final Set<Integer> overlaps = new HashSet<Integer>();
+
+  private long maxDuration;
+
+  private boolean loaded;
+
+  synchronized boolean isLoaded()
+  {
+    return loaded;
+  }
+
+  synchronized void setLoaded()
+  {
+    this.loaded = true;
+  }
+
+  /**
+   * Adds or updates the period of the given time sheet.
+   * @param id
+   * @param startTime
+   * @param stopTime
+   */
+  synchronized void put(final Integer id, final long startTime, final long stopTime)
+  {
+    final Period old = periodsById.get(id);
+    if (old != null && old.startTime == startTime && old.stopTime == stopTime) {
+      return;
+    }
+    remove(id);
+    final Period period = new Period(id, startTime, stopTime);
+    final List<Period> list = getOverlappingPeriods(startTime, stopTime, id, false);
+    if (list.isEmpty() == false) {
+      overlaps.add(id);
+      for (final Period other : list) {
+        overlaps.add(other.id);
+      }
+    }
+    periods.add(period);
+    periodsById.put(id, period);
+    if (stopTime - startTime > maxDuration) {
+      maxDuration = stopTime - startTime;
+    }
+  }
+
+  /**
+   * Removes the time sheet (if indexed). Time sheets overlapping only with the removed one are removed from the overlap set.
+   * @param id
+   */
+  synchronized void remove(final Integer id)
+  {
+    final Period period = periodsById.remove(id);
+    if (period == null) {
+      return;
+    }
+    periods.remove(period);
+    if (overlaps.remove(id) == true) {
+      for (final Period other : getOverlappingPeriods(period.startTime, period.stopTime, id, false)) {
+        if (getOverlappingPeriods(other.startTime, other.stopTime, other.id, true).isEmpty() == true) {
+          overlaps.remove(other.id);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param startTime
+   * @param stopTime
+   * @param excludeId The time sheet itself (on update), may be null.
+   * @return The id of any time sheet overlapping the given period or null if no collision exists.
+   */
+  synchronized Integer getOverlappingTimesheetId(final long startTime, final long stopTime, final Integer excludeId)
+  {
+    final List<Period> list = getOverlappingPeriods(startTime, stopTime, excludeId, true);
+    return list.isEmpty() == true ? null : list.get(0).id;
+  }
+
+  /**
+   * @return A copy of the ids of all time sheets overlapping with at least one other time sheet.
+   */
+  synchronized Set<Integer> getOverlaps()
+  {
+    if (overlaps.isEmpty() == true) {
+      return Collections.emptySet();
+    }
+    return new HashSet<Integer>(overlaps);
+  }
+
+  synchronized int size()
+  {
+    return periodsById.size();
+  }
+
+  private List<Period> getOverlappingPeriods(final long startTime, final long stopTime, final Integer excludeId, final boolean firstOnly)
+  {
+    final List<Period> result = new ArrayList<Period>();
+    if (periods.isEmpty() == true || stopTime <= startTime - maxDuration) {
+      return result;
+    }
+    final Period from = new Period(Integer.MIN_VALUE, startTime - maxDuration, startTime - maxDuration);
+    final Period to = new Period(Integer.MIN_VALUE, stopTime, stopTime);
+    for (final Period period : periods.subSet(from, true, to, false)) {
+      if (period.stopTime > startTime && period.id.equals(excludeId) == false) {
+        result.add(period);
+        if (firstOnly == true) {
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static class Period implements Comparable<Period>
+  {
+    private final Integer id;
+
+    private final long startTime, stopTime;
+
+    Period(final Integer id, final long startTime, final long stopTime)
+    {
+      this.id = id;
+      this.startTime = startTime;
+      this.stopTime = stopTime;
+    }
+
+    @Override
+    public int compareTo(final Period o)
+    {
+      if (startTime != o.startTime) {
+        return startTime < o.startTime ? -1 : 1;
+      }
+      return id.compareTo(o.id);
+    }
+  }
+}
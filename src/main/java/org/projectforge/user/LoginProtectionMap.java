@@ -23,22 +23,39 @@
 
 package org.projectforge.user;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Class used by {@link LoginProtection} for handling maps, time offsets etc.
+ * Class used by {@link LoginProtection} for handling maps, time offsets etc.<br/>
+ * The entries are held in a concurrent map without any global lock, an entry is replaced atomically on every failed login. Every entry is
+ * registered in a time bucket of its last failed login (the expire time is divided into {@link #NUMBER_OF_BUCKETS} buckets). Buckets older
+ * than the expire time are dropped as a whole, so no sweeps over all entries are needed. The number of entries is limited by
+ * {@link #getMaxSize()}: if exceeded, entries of the oldest buckets are evicted first.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
 public class LoginProtectionMap
 {
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(LoginProtectionMap.class);
+
+  static final int DEFAULT_MAX_SIZE = 100000;
+
+  private static final int NUMBER_OF_BUCKETS = 24;
+
   /**
    * Login offset time after failed login attempts expires after 24h.
    */
   private long loginOffsetExpiresAfterMs = 24 * 60 * 60 * 1000;
 
+  private long bucketWidthMs = loginOffsetExpiresAfterMs / NUMBER_OF_BUCKETS;
+
   /**
    * Login time offset will be number of failed logins multiplied by this value (in ms).
    */
@@ -46,16 +63,23 @@ public class LoginProtectionMap
 
   private int numberOfFailedLoginsBeforeIncrementing;
 
+  private int maxSize = DEFAULT_MAX_SIZE;
+
   /**
-   * Number of failed logins per IP address/user id.
+   * Number of failed logins and time stamp of last failed login per IP address/user id.
    */
-  private final Map<String, Integer> loginFailedAttemptsMap = new HashMap<String, Integer>();
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
 
   /**
-   * Time stamp of last failed login per IP address/user Id in ms since 01/01/1970.
-   * @see System#currentTimeMillis()
+   * Ids per time bucket of the last failed login. An id may be registered in older buckets too (if further failed logins occurred).
    */
-  private final Map<String, Long> lastFailedLoginMap = new HashMap<String, Long>();
+  private final ConcurrentSkipListMap<Long, Set<String>> buckets = new ConcurrentSkipListMap<Long, Set<String>>();
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicLong expiredCounter = new AtomicLong();
+
+  private final AtomicLong evictionCounter = new AtomicLong();
 
   /**
    * Call this before checking the login credentials. If a long > 0 is returned please don't proceed the login-procedure. Please display a
@@ -65,16 +89,16 @@ public class LoginProtectionMap
    */
   public long getFailedLoginTimeOffsetIfExists(final String id)
   {
-    final Long lastFailedLoginInMs = this.lastFailedLoginMap.get(id);
-    if (lastFailedLoginInMs == null) {
+    final long currentTimeInMs = System.currentTimeMillis();
+    final Entry entry = getEntry(id, currentTimeInMs);
+    if (entry == null) {
       return 0;
     }
-    final long offset = getFailedLoginTimeOffset(id, false);
-    final long currentTimeInMs = System.currentTimeMillis();
-    if (lastFailedLoginInMs + offset < currentTimeInMs) {
+    final long offset = getTimeOffset(entry);
+    if (entry.lastFailedLoginInMs + offset < currentTimeInMs) {
       return 0;
     }
-    return lastFailedLoginInMs + offset - currentTimeInMs;
+    return entry.lastFailedLoginInMs + offset - currentTimeInMs;
   }
 
   /**
@@ -84,42 +108,139 @@ public class LoginProtectionMap
    */
   public long incrementFailedLoginTimeOffset(final String id)
   {
-    return getFailedLoginTimeOffset(id, true);
+    final long currentTimeInMillis = System.currentTimeMillis();
+    expireBuckets(currentTimeInMillis);
+    for (;;) {
+      final Entry entry = entries.get(id);
+      if (entry == null) {
+        final Entry newEntry = new Entry(1, currentTimeInMillis);
+        if (entries.putIfAbsent(id, newEntry) == null) {
+          size.incrementAndGet();
+          register(id, currentTimeInMillis);
+          evictIfNeeded();
+          return getTimeOffset(newEntry);
+        }
+      } else {
+        // Last failed login entry is to old, so we'll ignore it and start from scratch:
+        final int numberOfFailedLogins = isExpired(entry, currentTimeInMillis) == true ? 1 : entry.numberOfFailedLogins + 1;
+        final Entry newEntry = new Entry(numberOfFailedLogins, currentTimeInMillis);
+        if (entries.replace(id, entry, newEntry) == true) {
+          if (getBucket(entry.lastFailedLoginInMs) != getBucket(currentTimeInMillis)) {
+            register(id, currentTimeInMillis);
+          }
+          return getTimeOffset(newEntry);
+        }
+      }
+      // Concurrent modification of this entry, try again.
+    }
+  }
+
+  private long getTimeOffset(final Entry entry)
+  {
+    return (entry.numberOfFailedLogins / numberOfFailedLoginsBeforeIncrementing) * loginTimeOffsetScale;
   }
 
   /**
-   * @param id This could be the client's ip address, the login name etc.
-   * @param increment If true the login fail counter will be incremented.
-   * @return
+   * @return The not expired entry or null.
    */
-  private long getFailedLoginTimeOffset(final String id, final boolean increment)
+  private Entry getEntry(final String id, final long currentTimeInMillis)
   {
-    clearExpiredEntries();
-    final long currentTimeInMillis = System.currentTimeMillis();
-    Integer numberOfFailedLogins = this.loginFailedAttemptsMap.get(id);
-    if (numberOfFailedLogins == null) {
-      if (increment == false) {
-        return 0;
+    expireBuckets(currentTimeInMillis);
+    final Entry entry = entries.get(id);
+    if (entry == null) {
+      return null;
+    }
+    if (isExpired(entry, currentTimeInMillis) == true) {
+      if (entries.remove(id, entry) == true) {
+        size.decrementAndGet();
+        expiredCounter.incrementAndGet();
       }
-      numberOfFailedLogins = 0;
-    } else {
-      final Long lastFailedLoginInMs = this.lastFailedLoginMap.get(id);
-      if (lastFailedLoginInMs != null && currentTimeInMillis - lastFailedLoginInMs > loginOffsetExpiresAfterMs) {
-        // Last failed login entry is to old, so we'll ignore and clear it:
-        clearLoginTimeOffset(id);
-        if (increment == false) {
-          return 0;
+      return null;
+    }
+    return entry;
+  }
+
+  private boolean isExpired(final Entry entry, final long currentTimeInMillis)
+  {
+    return currentTimeInMillis - entry.lastFailedLoginInMs > loginOffsetExpiresAfterMs;
+  }
+
+  private long getBucket(final long timeInMillis)
+  {
+    return timeInMillis / bucketWidthMs;
+  }
+
+  private void register(final String id, final long timeInMillis)
+  {
+    final Long bucket = getBucket(timeInMillis);
+    Set<String> ids = buckets.get(bucket);
+    if (ids == null) {
+      ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      final Set<String> other = buckets.putIfAbsent(bucket, ids);
+      if (other != null) {
+        ids = other;
+      }
+    }
+    ids.add(id);
+  }
+
+  /**
+   * Drops all buckets older than the expire time and removes their expired entries. Only the first bucket is checked if nothing is to do.
+   */
+  private void expireBuckets(final long currentTimeInMillis)
+  {
+    for (;;) {
+      final Map.Entry<Long, Set<String>> first = buckets.firstEntry();
+      if (first == null || currentTimeInMillis < (first.getKey() + 1) * bucketWidthMs + loginOffsetExpiresAfterMs) {
+        return;
+      }
+      if (buckets.remove(first.getKey(), first.getValue()) == false) {
+        continue;
+      }
+      for (final String id : first.getValue()) {
+        final Entry entry = entries.get(id);
+        if (entry != null && isExpired(entry, currentTimeInMillis) == true && entries.remove(id, entry) == true) {
+          size.decrementAndGet();
+          expiredCounter.incrementAndGet();
         }
-        numberOfFailedLogins = 0;
       }
     }
-    if (increment == true) {
-      synchronized (this) {
-        this.loginFailedAttemptsMap.put(id, ++numberOfFailedLogins);
-        this.lastFailedLoginMap.put(id, currentTimeInMillis);
+  }
+
+  /**
+   * Evicts entries of the oldest buckets until the number of entries doesn't exceed {@link #getMaxSize()}.
+   */
+  private void evictIfNeeded()
+  {
+    if (size.get() <= maxSize) {
+      return;
+    }
+    final long evictionsBefore = evictionCounter.get();
+    while (size.get() > maxSize) {
+      final Map.Entry<Long, Set<String>> first = buckets.firstEntry();
+      if (first == null) {
+        break;
+      }
+      final Set<String> ids = first.getValue();
+      for (final String id : ids) {
+        if (size.get() <= maxSize) {
+          break;
+        }
+        ids.remove(id);
+        final Entry entry = entries.get(id);
+        // Entries registered in a newer bucket are skipped (further failed logins occurred):
+        if (entry != null && getBucket(entry.lastFailedLoginInMs) <= first.getKey() && entries.remove(id, entry) == true) {
+          size.decrementAndGet();
+          evictionCounter.incrementAndGet();
+        }
       }
+      if (ids.isEmpty() == true) {
+        buckets.remove(first.getKey(), ids);
+      }
+    }
+    if (log.isDebugEnabled() == true) {
+      log.debug("Max size of " + maxSize + " exceeded, " + (evictionCounter.get() - evictionsBefore) + " entries evicted: " + this);
     }
-    return (numberOfFailedLogins / numberOfFailedLoginsBeforeIncrementing) * loginTimeOffsetScale;
   }
 
   /**
@@ -128,30 +249,18 @@ public class LoginProtectionMap
    */
   public void clearLoginTimeOffset(final String id)
   {
-    synchronized (this) {
-      this.loginFailedAttemptsMap.remove(id);
-      this.lastFailedLoginMap.remove(id);
+    if (entries.remove(id) != null) {
+      size.decrementAndGet();
     }
   }
 
   /**
-   * Clears (removes) all entries for id's (user id's, ip addresses) older than {@link #DEFAULT_LOGIN_OFFSET_EXPIRES_AFTER_MS}.
+   * Clears (removes) all entries for id's (user id's, ip addresses) older than {@link #getLoginOffsetExpiresAfterMs()}. Expired entries are
+   * removed automatically by dropping old time buckets, so there is no need to call this method.
    */
   public void clearExpiredEntries()
   {
-    final long currentTimeInMillis = System.currentTimeMillis();
-    synchronized (this) {
-      final Iterator<String> it = this.lastFailedLoginMap.keySet().iterator();
-      while (it.hasNext() == true) {
-        final String key = it.next();
-        final Long lastFailedLoginInMs = this.lastFailedLoginMap.get(key);
-        if (lastFailedLoginInMs != null && currentTimeInMillis - lastFailedLoginInMs > loginOffsetExpiresAfterMs) {
-          // Last failed login entry is to old, so we'll ignore and clear it:
-          this.loginFailedAttemptsMap.remove(key);
-          it.remove();
-        }
-      }
-    }
+    expireBuckets(System.currentTimeMillis());
   }
 
   /**
@@ -160,8 +269,10 @@ public class LoginProtectionMap
   public void clearAll()
   {
     synchronized (this) {
-      this.loginFailedAttemptsMap.clear();
-      this.lastFailedLoginMap.clear();
+      for (final String id : entries.keySet()) {
+        clearLoginTimeOffset(id);
+      }
+      buckets.clear();
     }
   }
 
@@ -170,7 +281,7 @@ public class LoginProtectionMap
    */
   int getSizeOfLastFailedLoginMap()
   {
-    return this.lastFailedLoginMap.size();
+    return this.entries.size();
   }
 
   /**
@@ -178,7 +289,7 @@ public class LoginProtectionMap
    */
   int getSizeOfLoginFailedAttemptsMap()
   {
-    return this.loginFailedAttemptsMap.size();
+    return this.entries.size();
   }
 
   /**
@@ -186,10 +297,10 @@ public class LoginProtectionMap
    */
   void setEntry(final String id, final int numberOfFailedLoginAttempts, final long lastFailedAttemptTimestamp)
   {
-    synchronized (this) {
-      this.loginFailedAttemptsMap.put(id, numberOfFailedLoginAttempts);
-      this.lastFailedLoginMap.put(id, lastFailedAttemptTimestamp);
+    if (entries.put(id, new Entry(numberOfFailedLoginAttempts, lastFailedAttemptTimestamp)) == null) {
+      size.incrementAndGet();
     }
+    register(id, lastFailedAttemptTimestamp);
   }
 
   /**
@@ -198,8 +309,58 @@ public class LoginProtectionMap
    */
   public int getNumberOfFailedLoginAttempts(final String id)
   {
-    final Integer result = this.loginFailedAttemptsMap.get(id);
-    return result != null ? result : 0;
+    final Entry entry = getEntry(id, System.currentTimeMillis());
+    return entry != null ? entry.numberOfFailedLogins : 0;
+  }
+
+  /**
+   * @return The current number of entries (ip addresses or user ids).
+   */
+  public int getSize()
+  {
+    return size.get();
+  }
+
+  /**
+   * @return The number of entries removed since start-up because their time offset was expired.
+   */
+  public long getExpiredCounter()
+  {
+    return expiredCounter.get();
+  }
+
+  /**
+   * @return The number of entries removed since start-up because the max size was exceeded.
+   */
+  public long getEvictionCounter()
+  {
+    return evictionCounter.get();
+  }
+
+  /**
+   * If the number of entries exceeds this value, the entries of the oldest failed logins are removed (default is 100,000).
+   * @return the maxSize
+   */
+  public int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /**
+   * @param maxSize the maxSize to set
+   * @return this for chaining.
+   * @see #getMaxSize()
+   */
+  public LoginProtectionMap setMaxSize(final int maxSize)
+  {
+    this.maxSize = maxSize;
+    return this;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "size=" + getSize() + ", buckets=" + buckets.size() + ", expired=" + getExpiredCounter() + ", evicted=" + getEvictionCounter();
   }
 
   /**
@@ -219,7 +380,15 @@ public class LoginProtectionMap
    */
   public LoginProtectionMap setLoginOffsetExpiresAfterMs(final long loginOffsetExpiresAfterMs)
   {
-    this.loginOffsetExpiresAfterMs = loginOffsetExpiresAfterMs;
+    synchronized (this) {
+      this.loginOffsetExpiresAfterMs = loginOffsetExpiresAfterMs;
+      this.bucketWidthMs = Math.max(1, loginOffsetExpiresAfterMs / NUMBER_OF_BUCKETS);
+      // Re-register all entries in the buckets of the new width:
+      buckets.clear();
+      for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+        register(entry.getKey(), entry.getValue().lastFailedLoginInMs);
+      }
+    }
     return this;
   }
 
@@ -262,4 +431,21 @@ public class LoginProtectionMap
     this.numberOfFailedLoginsBeforeIncrementing = numberOfFailedLoginsBeforeIncrementing;
     return this;
   }
+
+  private static class Entry
+  {
+    private final int numberOfFailedLogins;
+
+    /**
+     * Time stamp of last failed login in ms since 01/01/1970.
+     * @see System#currentTimeMillis()
+     */
+    private final long lastFailedLoginInMs;
+
+    Entry(final int numberOfFailedLogins, final long lastFailedLoginInMs)
+    {
+      this.numberOfFailedLogins = numberOfFailedLogins;
+      this.lastFailedLoginInMs = lastFailedLoginInMs;
+    }
+  }
 }
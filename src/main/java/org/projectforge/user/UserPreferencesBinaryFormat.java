@@ -0,0 +1,679 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.user;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.projectforge.core.BaseDO;
+import org.projectforge.core.BaseDao;
+import org.projectforge.registry.Registry;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.reflection.ReflectionConverter;
+
+/**
+ * Compact binary format for persisting user preferences (search filters, favorites, recent lists etc.) as alternative to the xml of XStream.
+ * The format is versioned and schema aware: the field names of a class are written once per value and are mapped by name on reading, so
+ * added and removed fields of newer releases are tolerated. The serialized string starts with {@link #PREFIX} followed by the base64 encoded
+ * bytes (deflated for larger values), so it can't be mixed up with the legacy format (xml or '!' followed by gzipped xml).<br/>
+ * Supported are the types the format represents exactly: primitive wrappers, strings, dates, enums, BaseDOs with registered dao (stored by
+ * id), standard collections and maps, arrays and all classes XStream handles by its ReflectionConverter. For any other type or objects
+ * referenced twice {@link #serialize(Object)} returns null and the caller has to use the legacy format.
+ */
+final class UserPreferencesBinaryFormat
+{
+  private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(UserPreferencesBinaryFormat.class);
+
+  static final char PREFIX = '~';
+
+  static final int VERSION = 1;
+
+  private static final int FLAG_DEFLATED = 1;
+
+  /**
+   * Larger values are deflated (if the result is smaller).
+   */
+  private static final int DEFLATE_THRESHOLD = 256;
+
+  /**
+   * Upper bound of string lengths for detecting corrupted data.
+   */
+  private static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+  private static final int NULL = 0, STRING = 1, INTEGER = 2, LONG = 3, TRUE = 4, FALSE = 5, SHORT = 6, BYTE = 7, CHARACTER = 8,
+      FLOAT = 9, DOUBLE = 10, BIG_DECIMAL = 11, DATE = 12, TIMESTAMP = 13, SQL_DATE = 14, ENUM = 15, BASE_DO = 16, ARRAY = 17,
+      COLLECTION = 18, MAP = 19, OBJECT = 20;
+
+  private static final Set<Class< ? >> COLLECTION_CLASSES = new HashSet<Class< ? >>(Arrays.<Class< ? >> asList(ArrayList.class,
+      LinkedList.class, HashSet.class, LinkedHashSet.class, TreeSet.class));
+
+  private static final Set<Class< ? >> MAP_CLASSES = new HashSet<Class< ? >>(Arrays.<Class< ? >> asList(HashMap.class,
+      LinkedHashMap.class, TreeMap.class));
+
+  private static final Map<String, Class< ? >> PRIMITIVE_CLASSES = new HashMap<String, Class< ? >>();
+
+  static {
+    for (final Class< ? > clazz : new Class< ? >[] { boolean.class, byte.class, char.class, short.class, int.class, long.class,
+        float.class, double.class}) {
+      PRIMITIVE_CLASSES.put(clazz.getName(), clazz);
+    }
+  }
+
+  private final XStream xstream;
+
+  private final Map<Class< ? >, Class< ? extends BaseDao< ? >>> daoClasses = new ConcurrentHashMap<Class< ? >, Class< ? extends BaseDao< ? >>>();
+
+  private final ConcurrentMap<Class< ? >, ClassSchema> schemas = new ConcurrentHashMap<Class< ? >, ClassSchema>();
+
+  /**
+   * @param xstream Used for detecting the classes serializable by reflection, the omitted fields and for instantiating objects in the same
+   *          way as the legacy format.
+   */
+  UserPreferencesBinaryFormat(final XStream xstream)
+  {
+    this.xstream = xstream;
+  }
+
+  /**
+   * Objects of the given class are stored by id and loaded by the given dao.
+   * @see UserXmlPreferencesBaseDOSingleValueConverter
+   */
+  void registerBaseDO(final Class< ? extends BaseDao< ? >> daoClass, final Class< ? extends BaseDO< ? >> doClass)
+  {
+    daoClasses.put(doClass, daoClass);
+  }
+
+  /**
+   * @return true if the given serialized settings are written in this format, false for the legacy xml format.
+   */
+  static boolean isBinary(final String serialized)
+  {
+    return serialized != null && serialized.length() > 0 && serialized.charAt(0) == PREFIX;
+  }
+
+  /**
+   * @return The serialized value or null if the value contains unsupported types.
+   */
+  String serialize(final Object value)
+  {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try {
+      final DataOutputStream out = new DataOutputStream(bos);
+      new Writer(out).writeValue(value);
+      out.flush();
+    } catch (final UnsupportedTypeException ex) {
+      if (log.isDebugEnabled() == true) {
+        log.debug("Binary format not usable for " + value.getClass().getName() + ": " + ex.getMessage());
+      }
+      return null;
+    } catch (final IOException ex) {
+      log.error("Error while serializing user preferences: " + ex.getMessage(), ex);
+      return null;
+    } catch (final IllegalAccessException ex) {
+      log.error("Error while serializing user preferences: " + ex.getMessage(), ex);
+      return null;
+    }
+    byte[] payload = bos.toByteArray();
+    int flags = 0;
+    if (payload.length > DEFLATE_THRESHOLD) {
+      final byte[] deflated = deflate(payload);
+      if (deflated.length < payload.length) {
+        payload = deflated;
+        flags |= FLAG_DEFLATED;
+      }
+    }
+    final byte[] bytes = new byte[payload.length + 2];
+    bytes[0] = VERSION;
+    bytes[1] = (byte) flags;
+    System.arraycopy(payload, 0, bytes, 2, payload.length);
+    return PREFIX + new String(Base64.encodeBase64(bytes));
+  }
+
+  /**
+   * @param serialized Must be in this format (see {@link #isBinary(String)}).
+   * @throws IOException If the serialized value is corrupted, of an unsupported version or contains unknown classes.
+   */
+  Object deserialize(final String serialized) throws IOException
+  {
+    final byte[] bytes = Base64.decodeBase64(serialized.substring(1).getBytes());
+    if (bytes.length < 2) {
+      throw new IOException("Serialized user preferences are truncated.");
+    }
+    if (bytes[0] != VERSION) {
+      throw new IOException("Unsupported version " + bytes[0] + " of serialized user preferences.");
+    }
+    InputStream in = new ByteArrayInputStream(bytes, 2, bytes.length - 2);
+    if ((bytes[1] & FLAG_DEFLATED) != 0) {
+      in = new InflaterInputStream(in);
+    }
+    try {
+      return new Reader(new DataInputStream(in)).readValue();
+    } catch (final ClassNotFoundException ex) {
+      throw new IOException("Unknown class in serialized user preferences: " + ex.getMessage());
+    } catch (final InstantiationException ex) {
+      throw new IOException("Can't instantiate object of serialized user preferences: " + ex.getMessage());
+    } catch (final IllegalAccessException ex) {
+      throw new IOException("Can't instantiate object of serialized user preferences: " + ex.getMessage());
+    }
+  }
+
+  private static byte[] deflate(final byte[] bytes)
+  {
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length);
+    try {
+      final DeflaterOutputStream out = new DeflaterOutputStream(bos);
+      out.write(bytes);
+      out.close();
+    } catch (final IOException ex) {
+      // Can't occur for ByteArrayOutputStream.
+      throw new RuntimeException(ex);
+    }
+    return bos.toByteArray();
+  }
+
+  private ClassSchema getSchema(final Class< ? > clazz)
+  {
+    ClassSchema schema = schemas.get(clazz);
+    if (schema == null) {
+      if (isReflectionSerializable(clazz) == false) {
+        throw new UnsupportedTypeException(clazz.getName());
+      }
+      schema = new ClassSchema(clazz);
+      schemas.putIfAbsent(clazz, schema);
+    }
+    return schema;
+  }
+
+  private boolean isReflectionSerializable(final Class< ? > clazz)
+  {
+    if (clazz.isInterface() == true || clazz.isArray() == true || clazz.isPrimitive() == true || clazz.isEnum() == true
+        || Modifier.isAbstract(clazz.getModifiers()) == true) {
+      return false;
+    }
+    if (clazz.getName().startsWith("java.") == true || clazz.getName().startsWith("javax.") == true) {
+      return false;
+    }
+    if (clazz.isAnonymousClass() == true
+        || clazz.isLocalClass() == true
+        || (clazz.isMemberClass() == true && Modifier.isStatic(clazz.getModifiers()) == false)) {
+      // Reference to the outer object isn't supported.
+      return false;
+    }
+    final Converter converter = xstream.getConverterLookup().lookupConverterForType(clazz);
+    return converter != null && converter.getClass() == ReflectionConverter.class;
+  }
+
+  private Class< ? > forName(final String className) throws ClassNotFoundException
+  {
+    final Class< ? > clazz = PRIMITIVE_CLASSES.get(className);
+    if (clazz != null) {
+      return clazz;
+    }
+    return Class.forName(className, true, xstream.getClassLoader());
+  }
+
+  /**
+   * The persistent fields of a class in the order of the class hierarchy (starting with the class itself). Fields hidden by a field with the
+   * same name of a sub class are named by their declaring class and name.
+   */
+  private class ClassSchema
+  {
+    final Field[] fields;
+
+    final String[] names;
+
+    final Map<String, Field> fieldsByName = new HashMap<String, Field>();
+
+    ClassSchema(final Class< ? > clazz)
+    {
+      final List<Field> list = new ArrayList<Field>();
+      final List<String> nameList = new ArrayList<String>();
+      for (Class< ? > cls = clazz; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+        for (final Field field : cls.getDeclaredFields()) {
+          final int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers) == true || Modifier.isTransient(modifiers) == true || field.isSynthetic() == true) {
+            continue;
+          }
+          if (xstream.getMapper().shouldSerializeMember(cls, field.getName()) == false) {
+            continue;
+          }
+          field.setAccessible(true);
+          final String name = fieldsByName.containsKey(field.getName()) == true ? cls.getName() + "#" + field.getName() : field.getName();
+          fieldsByName.put(name, field);
+          list.add(field);
+          nameList.add(name);
+        }
+      }
+      fields = list.toArray(new Field[list.size()]);
+      names = nameList.toArray(new String[nameList.size()]);
+    }
+  }
+
+  private class Writer
+  {
+    private final DataOutputStream out;
+
+    private final Map<Class< ? >, Integer> classIndexes = new HashMap<Class< ? >, Integer>();
+
+    private final Set<Class< ? >> writtenSchemas = new HashSet<Class< ? >>();
+
+    private final Map<Object, Object> writtenObjects = new IdentityHashMap<Object, Object>();
+
+    Writer(final DataOutputStream out)
+    {
+      this.out = out;
+    }
+
+    void writeValue(final Object value) throws IOException, IllegalAccessException
+    {
+      if (value == null) {
+        out.writeByte(NULL);
+        return;
+      }
+      final Class< ? > clazz = value.getClass();
+      if (clazz == String.class) {
+        out.writeByte(STRING);
+        writeString((String) value);
+      } else if (clazz == Integer.class) {
+        out.writeByte(INTEGER);
+        writeVarLong(out, (Integer) value);
+      } else if (clazz == Long.class) {
+        out.writeByte(LONG);
+        writeVarLong(out, (Long) value);
+      } else if (clazz == Boolean.class) {
+        out.writeByte((Boolean) value == true ? TRUE : FALSE);
+      } else if (clazz == Short.class) {
+        out.writeByte(SHORT);
+        writeVarLong(out, (Short) value);
+      } else if (clazz == Byte.class) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (clazz == Character.class) {
+        out.writeByte(CHARACTER);
+        out.writeChar((Character) value);
+      } else if (clazz == Float.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (clazz == Double.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (clazz == BigDecimal.class) {
+        out.writeByte(BIG_DECIMAL);
+        writeString(value.toString());
+      } else if (clazz == Date.class) {
+        out.writeByte(DATE);
+        writeVarLong(out, ((Date) value).getTime());
+      } else if (clazz == Timestamp.class) {
+        out.writeByte(TIMESTAMP);
+        writeVarLong(out, ((Timestamp) value).getTime());
+        writeVarLong(out, ((Timestamp) value).getNanos());
+      } else if (clazz == java.sql.Date.class) {
+        out.writeByte(SQL_DATE);
+        writeVarLong(out, ((Date) value).getTime());
+      } else if (value instanceof Enum< ? >) {
+        out.writeByte(ENUM);
+        writeClass(((Enum< ? >) value).getDeclaringClass());
+        writeString(((Enum< ? >) value).name());
+      } else if (value instanceof BaseDO< ? >) {
+        writeBaseDO((BaseDO< ? >) value);
+      } else if (clazz.isArray() == true) {
+        register(value);
+        out.writeByte(ARRAY);
+        writeClass(clazz.getComponentType());
+        final int length = Array.getLength(value);
+        writeVarLong(out, length);
+        for (int i = 0; i < length; i++) {
+          writeValue(Array.get(value, i));
+        }
+      } else if (COLLECTION_CLASSES.contains(clazz) == true) {
+        if (value instanceof TreeSet< ? > && ((TreeSet< ? >) value).comparator() != null) {
+          throw new UnsupportedTypeException("TreeSet with comparator");
+        }
+        register(value);
+        out.writeByte(COLLECTION);
+        writeClass(clazz);
+        final Collection< ? > collection = (Collection< ? >) value;
+        writeVarLong(out, collection.size());
+        for (final Object element : collection) {
+          writeValue(element);
+        }
+      } else if (MAP_CLASSES.contains(clazz) == true) {
+        if (value instanceof TreeMap< ? , ? > && ((TreeMap< ? , ? >) value).comparator() != null) {
+          throw new UnsupportedTypeException("TreeMap with comparator");
+        }
+        register(value);
+        out.writeByte(MAP);
+        writeClass(clazz);
+        final Map< ? , ? > map = (Map< ? , ? >) value;
+        writeVarLong(out, map.size());
+        for (final Map.Entry< ? , ? > entry : map.entrySet()) {
+          writeValue(entry.getKey());
+          writeValue(entry.getValue());
+        }
+      } else {
+        final ClassSchema schema = getSchema(clazz);
+        register(value);
+        out.writeByte(OBJECT);
+        writeClass(clazz);
+        if (writtenSchemas.add(clazz) == true) {
+          writeVarLong(out, schema.names.length);
+          for (final String name : schema.names) {
+            writeString(name);
+          }
+        }
+        for (final Field field : schema.fields) {
+          writeValue(field.get(value));
+        }
+      }
+    }
+
+    private void writeBaseDO(final BaseDO< ? > obj) throws IOException
+    {
+      for (Class< ? > clazz = obj.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+        if (daoClasses.containsKey(clazz) == true) {
+          final Object id = obj.getId();
+          if (id instanceof Integer == false) {
+            throw new UnsupportedTypeException(obj.getClass().getName() + " without integer id");
+          }
+          out.writeByte(BASE_DO);
+          writeClass(clazz);
+          writeVarLong(out, (Integer) id);
+          return;
+        }
+      }
+      throw new UnsupportedTypeException(obj.getClass().getName() + " without registered dao");
+    }
+
+    /**
+     * Objects referenced twice (or cycles) are written by XStream with references, so they aren't supported.
+     */
+    private void register(final Object value)
+    {
+      if (writtenObjects.put(value, value) != null) {
+        throw new UnsupportedTypeException("multiple references of " + value.getClass().getName());
+      }
+    }
+
+    private void writeClass(final Class< ? > clazz) throws IOException
+    {
+      final Integer index = classIndexes.get(clazz);
+      if (index != null) {
+        writeVarLong(out, index);
+        return;
+      }
+      final int newIndex = classIndexes.size();
+      classIndexes.put(clazz, newIndex);
+      writeVarLong(out, newIndex);
+      writeString(clazz.getName());
+    }
+
+    private void writeString(final String str) throws IOException
+    {
+      final byte[] bytes = str.getBytes("UTF-8");
+      writeVarLong(out, bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private class Reader
+  {
+    private final DataInputStream in;
+
+    private final List<Class< ? >> classes = new ArrayList<Class< ? >>();
+
+    /**
+     * The fields of the current classes in the order of the stream (null for fields not existing anymore).
+     */
+    private final Map<Class< ? >, Field[]> fieldsByClass = new HashMap<Class< ? >, Field[]>();
+
+    Reader(final DataInputStream in)
+    {
+      this.in = in;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes"})
+    Object readValue() throws IOException, ClassNotFoundException, InstantiationException, IllegalAccessException
+    {
+      final int tag = in.readUnsignedByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case STRING:
+          return readString();
+        case INTEGER:
+          return (int) readVarLong(in);
+        case LONG:
+          return readVarLong(in);
+        case TRUE:
+          return Boolean.TRUE;
+        case FALSE:
+          return Boolean.FALSE;
+        case SHORT:
+          return (short) readVarLong(in);
+        case BYTE:
+          return in.readByte();
+        case CHARACTER:
+          return in.readChar();
+        case FLOAT:
+          return in.readFloat();
+        case DOUBLE:
+          return in.readDouble();
+        case BIG_DECIMAL:
+          return new BigDecimal(readString());
+        case DATE:
+          return new Date(readVarLong(in));
+        case TIMESTAMP:
+          final Timestamp timestamp = new Timestamp(readVarLong(in));
+          timestamp.setNanos((int) readVarLong(in));
+          return timestamp;
+        case SQL_DATE:
+          return new java.sql.Date(readVarLong(in));
+        case ENUM:
+          final Class enumClass = readClass();
+          return Enum.valueOf(enumClass, readString());
+        case BASE_DO:
+          return readBaseDO();
+        case ARRAY:
+          final Class< ? > componentType = readClass();
+          final int length = (int) readVarLong(in);
+          final Object array = Array.newInstance(componentType, length);
+          for (int i = 0; i < length; i++) {
+            Array.set(array, i, readValue());
+          }
+          return array;
+        case COLLECTION:
+          final Class< ? > collectionClass = readClass();
+          if (COLLECTION_CLASSES.contains(collectionClass) == false) {
+            throw new IOException("Unsupported collection class " + collectionClass.getName() + ".");
+          }
+          final Collection<Object> collection = (Collection<Object>) collectionClass.newInstance();
+          for (int size = (int) readVarLong(in); size > 0; size--) {
+            collection.add(readValue());
+          }
+          return collection;
+        case MAP:
+          final Class< ? > mapClass = readClass();
+          if (MAP_CLASSES.contains(mapClass) == false) {
+            throw new IOException("Unsupported map class " + mapClass.getName() + ".");
+          }
+          final Map<Object, Object> map = (Map<Object, Object>) mapClass.newInstance();
+          for (int size = (int) readVarLong(in); size > 0; size--) {
+            final Object key = readValue();
+            map.put(key, readValue());
+          }
+          return map;
+        case OBJECT:
+          return readObject();
+        default:
+          throw new IOException("Unknown type " + tag + " in serialized user preferences.");
+      }
+    }
+
+    private Object readObject() throws IOException, ClassNotFoundException, InstantiationException, IllegalAccessException
+    {
+      final Class< ? > clazz = readClass();
+      Field[] fields = fieldsByClass.get(clazz);
+      if (fields == null) {
+        final ClassSchema schema;
+        try {
+          schema = getSchema(clazz);
+        } catch (final UnsupportedTypeException ex) {
+          throw new IOException("Class " + clazz.getName() + " isn't supported anymore.");
+        }
+        fields = new Field[(int) readVarLong(in)];
+        for (int i = 0; i < fields.length; i++) {
+          // Null for fields removed in the current version of the class.
+          fields[i] = schema.fieldsByName.get(readString());
+        }
+        fieldsByClass.put(clazz, fields);
+      }
+      final Object obj = xstream.getReflectionProvider().newInstance(clazz);
+      for (final Field field : fields) {
+        final Object value = readValue();
+        if (field == null) {
+          continue;
+        }
+        try {
+          field.set(obj, value);
+        } catch (final IllegalArgumentException ex) {
+          // Type of field changed, the field keeps its default value.
+          log.info("Ignoring field '" + field.getName() + "' of " + clazz.getName() + " in user preferences: " + ex.getMessage());
+        }
+      }
+      return obj;
+    }
+
+    private Object readBaseDO() throws IOException, ClassNotFoundException
+    {
+      final Class< ? > clazz = readClass();
+      final Integer id = (int) readVarLong(in);
+      final Class< ? extends BaseDao< ? >> daoClass = daoClasses.get(clazz);
+      if (daoClass == null) {
+        throw new IOException("No dao registered for " + clazz.getName() + ".");
+      }
+      final BaseDao< ? > dao = Registry.instance().getDao(daoClass);
+      if (dao == null) {
+        log.error("Could not get dao '" + daoClass + "'. It's not registerd in the Registry.");
+        return null;
+      }
+      return dao.getOrLoad(id);
+    }
+
+    private Class< ? > readClass() throws IOException, ClassNotFoundException
+    {
+      final int index = (int) readVarLong(in);
+      if (index < classes.size()) {
+        return classes.get(index);
+      }
+      if (index != classes.size()) {
+        throw new IOException("Corrupted class index " + index + " in serialized user preferences.");
+      }
+      final Class< ? > clazz = forName(readString());
+      classes.add(clazz);
+      return clazz;
+    }
+
+    private String readString() throws IOException
+    {
+      final int length = (int) readVarLong(in);
+      if (length < 0 || length > MAX_STRING_LENGTH) {
+        throw new IOException("Corrupted string length " + length + " in serialized user preferences.");
+      }
+      final byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, "UTF-8");
+    }
+  }
+
+  /**
+   * Writes the value zig-zag encoded as variable length integer (7 bits per byte), so small positive and negative numbers need only one
+   * byte.
+   */
+  private static void writeVarLong(final DataOutputStream out, final long value) throws IOException
+  {
+    long v = (value << 1) ^ (value >> 63);
+    while ((v & ~0x7FL) != 0) {
+      out.writeByte((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.writeByte((int) v);
+  }
+
+  private static long readVarLong(final DataInputStream in) throws IOException
+  {
+    long v = 0;
+    for (int shift = 0;; shift += 7) {
+      if (shift > 63) {
+        throw new IOException("Corrupted number in serialized user preferences.");
+      }
+      final int b = in.readUnsignedByte();
+      v |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private static class UnsupportedTypeException extends RuntimeException
+  {
+    private static final long serialVersionUID = 4416095405307658463L;
+
+    UnsupportedTypeException(final String message)
+    {
+      super(message);
+    }
+  }
+}
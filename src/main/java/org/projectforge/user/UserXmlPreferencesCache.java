@@ -23,15 +23,33 @@
 
 package org.projectforge.user;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.projectforge.access.AccessChecker;
 import org.projectforge.common.AbstractCache;
 
 /**
- * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.
+ * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.<br/>
+ * The preferences of a user are loaded on first access by the requesting thread, concurrent requests for the same user wait for this load
+ * (other users aren't blocked). Persistent entries set by {@link #putEntry(Integer, String, Object, boolean)} are written to the data base
+ * by a background write-behind thread after {@link #setWriteBehindDelayInSeconds(long) writeBehindDelay}, multiple modifications in between
+ * are coalesced. The expire mechanism flushes all modified entries (also entries marked as modified by {@link #getEntry(Integer, String)})
+ * in background and evicts the preferences of users inactive for longer than the retention time.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
@@ -40,7 +58,39 @@ public class UserXmlPreferencesCache extends AbstractCache
 {
   private static final org.apache.log4j.Logger log = org.apache.log4j.Logger.getLogger(UserXmlPreferencesCache.class);
 
-  private final Map<Integer, UserXmlPreferencesMap> allPreferences = new HashMap<Integer, UserXmlPreferencesMap>();
+  public static final long DEFAULT_WRITE_BEHIND_DELAY = 30 * TICKS_PER_SECOND;
+
+  public static final long DEFAULT_RETENTION_TIME = 8 * TICKS_PER_HOUR;
+
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private final ConcurrentMap<Integer, UserEntry> allPreferences = new ConcurrentHashMap<Integer, UserEntry>();
+
+  private final Set<Integer> dirtyUserIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+  private final AtomicBoolean writeBehindScheduled = new AtomicBoolean();
+
+  private ScheduledExecutorService writeBehindExecutor;
+
+  private long writeBehindDelay = DEFAULT_WRITE_BEHIND_DELAY;
+
+  private long retentionTime = DEFAULT_RETENTION_TIME;
+
+  private int maxSize = DEFAULT_MAX_SIZE;
+
+  private final AtomicLong loadCounter = new AtomicLong();
+
+  private final AtomicLong loadDuration = new AtomicLong();
+
+  private final AtomicLong maxLoadDuration = new AtomicLong();
+
+  private final AtomicLong flushCounter = new AtomicLong();
+
+  private final AtomicLong flushDuration = new AtomicLong();
+
+  private final AtomicLong maxFlushDuration = new AtomicLong();
+
+  private final AtomicLong evictionCounter = new AtomicLong();
 
   private UserXmlPreferencesDao userXmlPreferencesDao;
 
@@ -58,6 +108,12 @@ public class UserXmlPreferencesCache extends AbstractCache
     return instance;
   }
 
+  public UserXmlPreferencesCache()
+  {
+    // Flushing all users and eviction shouldn't block the request reaching the expire time:
+    setRefreshInBackground(true);
+  }
+
   public void setUserXmlPreferencesDao(final UserXmlPreferencesDao userXmlPreferencesDao)
   {
     this.userXmlPreferencesDao = userXmlPreferencesDao;
@@ -68,14 +124,52 @@ public class UserXmlPreferencesCache extends AbstractCache
     this.accessChecker = accessChecker;
   }
 
+  /**
+   * @param writeBehindDelay Delay between the modification of a persistent entry and the writing to the data base (default is 30s).
+   */
+  public void setWriteBehindDelayInSeconds(final long writeBehindDelay)
+  {
+    this.writeBehindDelay = writeBehindDelay * TICKS_PER_SECOND;
+  }
+
+  /**
+   * @param retentionTime The preferences of users without any access since this time are flushed and removed from the cache (default is 8
+   *          hours).
+   */
+  public void setRetentionTimeInHours(final long retentionTime)
+  {
+    this.retentionTime = retentionTime * TICKS_PER_HOUR;
+  }
+
+  /**
+   * @param maxSize Maximum number of users held in the cache. If exceeded the least recently used users are flushed and evicted on the next
+   *          refresh (default is 10,000).
+   */
+  public void setMaxSize(final int maxSize)
+  {
+    this.maxSize = maxSize;
+  }
+
   /**
    * Please use UserPreferenceHelper instead for correct handling of demo user's preferences!
    * @see org.projectforge.user.UserXmlPreferencesMap#putEntry(String, Object, boolean)
    */
   public void putEntry(final Integer userId, final String key, final Object value, final boolean persistent)
   {
-    final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
-    data.putEntry(key, value, persistent);
+    for (;;) {
+      final UserEntry entry = ensureAndGetUserEntry(userId);
+      final UserXmlPreferencesMap data = entry.getLoadedData();
+      synchronized (data) {
+        if (entry.evicted == true) {
+          continue;
+        }
+        data.putEntry(key, value, persistent);
+      }
+      break;
+    }
+    if (persistent == true) {
+      scheduleWriteBehind(userId);
+    }
     checkRefresh(); // Should be called at the end of this method for considering changes inside this method.
   }
 
@@ -85,9 +179,20 @@ public class UserXmlPreferencesCache extends AbstractCache
    */
   public Object getEntry(final Integer userId, final String key)
   {
-    final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
+    Object value;
+    for (;;) {
+      final UserEntry entry = ensureAndGetUserEntry(userId);
+      final UserXmlPreferencesMap data = entry.getLoadedData();
+      synchronized (data) {
+        if (entry.evicted == true) {
+          continue;
+        }
+        value = data.getEntry(key);
+      }
+      break;
+    }
     checkRefresh();
-    return data.getEntry(key);
+    return value;
   }
 
   /**
@@ -96,18 +201,33 @@ public class UserXmlPreferencesCache extends AbstractCache
    */
   public Object removeEntry(final Integer userId, final String key)
   {
-    final UserXmlPreferencesMap data = getUserPreferencesData(userId);
-    if (data == null) {
-      // Should only occur for the pseudo-first-login-user setting up the system.
-      return null;
-    }
-    if (data.getPersistentData().containsKey(key) == true) {
-      userXmlPreferencesDao.remove(userId, key);
-    } else if (data.getVolatileData().containsKey(key) == false) {
-      log.warn("Oups, user preferences object with key '" + key + "' is wether persistent nor volatile!");
+    Object value;
+    for (;;) {
+      final UserEntry entry = allPreferences.get(userId);
+      final UserXmlPreferencesMap data = entry != null ? entry.getLoadedData() : null;
+      if (data == null) {
+        // Should only occur for the pseudo-first-login-user setting up the system.
+        return null;
+      }
+      // Hold the flush lock, otherwise a running flush may restore the removed entry in the data base.
+      synchronized (entry.flushLock) {
+        synchronized (data) {
+          if (entry.evicted == true) {
+            continue;
+          }
+          if (data.getPersistentData().containsKey(key) == true) {
+            userXmlPreferencesDao.remove(userId, key);
+          } else if (data.getVolatileData().containsKey(key) == false) {
+            log.warn("Oups, user preferences object with key '" + key + "' is wether persistent nor volatile!");
+          }
+          data.setModified(key, false);
+          value = data.removeEntry(key);
+        }
+      }
+      break;
     }
     checkRefresh();
-    return data.removeEntry(key);
+    return value;
   }
 
   /**
@@ -115,30 +235,89 @@ public class UserXmlPreferencesCache extends AbstractCache
    * @param userId
    * @return
    */
-  public synchronized UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
+  public UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
   {
-    UserXmlPreferencesMap data = getUserPreferencesData(userId);
-    if (data == null) {
-      data = new UserXmlPreferencesMap();
-      data.setUserId(userId);
-      final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
-      for (final UserXmlPreferencesDO userPref : userPrefs) {
-        final Object value = userXmlPreferencesDao.deserialize(userPref, true);
-        data.putEntry(userPref.getKey(), value, true);
+    return ensureAndGetUserEntry(userId).getLoadedData();
+  }
+
+  /**
+   * Gets the entry of the given user and loads the user's preferences if not yet cached. Only the first thread requesting an uncached user
+   * loads the preferences (with its own access rights), all other threads requesting the same user wait for this load. If the load fails,
+   * the exception is thrown to the loading thread, waiting threads will try their own load.
+   */
+  private UserEntry ensureAndGetUserEntry(final Integer userId)
+  {
+    for (;;) {
+      UserEntry entry = allPreferences.get(userId);
+      boolean loadedByThisThread = false;
+      if (entry == null) {
+        final UserEntry newEntry = new UserEntry(userId);
+        entry = allPreferences.putIfAbsent(userId, newEntry);
+        if (entry == null) {
+          entry = newEntry;
+          entry.future.run();
+          loadedByThisThread = true;
+        }
+      }
+      try {
+        entry.future.get();
+        entry.lastAccess = System.currentTimeMillis();
+        return entry;
+      } catch (final ExecutionException ex) {
+        allPreferences.remove(userId, entry);
+        if (loadedByThisThread == true) {
+          final Throwable cause = ex.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for the user preferences of user '" + userId + "'.", ex);
       }
-      this.allPreferences.put(userId, data);
+    }
+  }
+
+  private UserXmlPreferencesMap loadUserPreferencesData(final Integer userId)
+  {
+    final long start = System.currentTimeMillis();
+    final UserXmlPreferencesMap data = new UserXmlPreferencesMap();
+    data.setUserId(userId);
+    final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
+    for (final UserXmlPreferencesDO userPref : userPrefs) {
+      final Object value = userXmlPreferencesDao.deserialize(userPref, true);
+      data.putEntry(userPref.getKey(), value, true);
+    }
+    final long duration = System.currentTimeMillis() - start;
+    loadCounter.incrementAndGet();
+    loadDuration.addAndGet(duration);
+    setMax(maxLoadDuration, duration);
+    if (log.isDebugEnabled() == true) {
+      log.debug("User preferences of user '" + userId + "' loaded in " + duration + "ms (" + userPrefs.size() + " entries).");
     }
     return data;
   }
 
+  /**
+   * @return The preferences of the given user if already loaded, otherwise null.
+   */
   UserXmlPreferencesMap getUserPreferencesData(final Integer userId)
   {
-    return this.allPreferences.get(userId);
+    final UserEntry entry = allPreferences.get(userId);
+    return entry != null ? entry.getLoadedData() : null;
   }
 
   void setUserPreferencesData(final Integer userId, final UserXmlPreferencesMap data)
   {
-    this.allPreferences.put(userId, data);
+    final UserEntry entry = new UserEntry(userId, data);
+    entry.lastAccess = System.currentTimeMillis();
+    final UserEntry oldEntry = allPreferences.put(userId, entry);
+    if (oldEntry != null) {
+      markAsEvicted(oldEntry);
+    }
   }
 
   /**
@@ -150,7 +329,7 @@ public class UserXmlPreferencesCache extends AbstractCache
     flushToDB(userId, true);
   }
 
-  private synchronized void flushToDB(final Integer userId, final boolean checkAccess)
+  private void flushToDB(final Integer userId, final boolean checkAccess)
   {
     if (checkAccess == true) {
       if (userId.equals(PFUserContext.getUserId()) == false) {
@@ -159,29 +338,174 @@ public class UserXmlPreferencesCache extends AbstractCache
         return;
       }
     }
+    final UserEntry entry = allPreferences.get(userId);
+    if (entry == null) {
+      return;
+    }
+    flushToDB(entry, checkAccess);
+  }
+
+  /**
+   * Writes all modified persistent entries of the given user. Only flushes of the same user are serialized, the entries to write are copied
+   * under the lock of the user's data, so the user isn't blocked by the data base access.
+   */
+  private void flushToDB(final UserEntry entry, final boolean checkAccess)
+  {
+    final Integer userId = entry.userId;
     if (accessChecker.isDemoUser(userId) == true) {
       // Do nothing for demo user.
       return;
     }
-    final UserXmlPreferencesMap data = allPreferences.get(userId);
-    if (data == null || data.isModified() == false) {
+    final UserXmlPreferencesMap data = entry.getLoadedData();
+    if (data == null) {
       return;
     }
-    userXmlPreferencesDao.saveOrUpdateUserEntries(userId, data, checkAccess);
+    synchronized (entry.flushLock) {
+      final UserXmlPreferencesMap modifiedData;
+      synchronized (data) {
+        if (data.isModified() == false) {
+          return;
+        }
+        modifiedData = new UserXmlPreferencesMap();
+        modifiedData.setUserId(userId);
+        for (final String key : data.getModifiedObjects()) {
+          final Object value = data.getPersistentData().get(key);
+          if (value != null) {
+            modifiedData.putEntry(key, value, true);
+          }
+        }
+        data.getModifiedObjects().clear();
+      }
+      final long start = System.currentTimeMillis();
+      userXmlPreferencesDao.saveOrUpdateUserEntries(userId, modifiedData, checkAccess);
+      final long duration = System.currentTimeMillis() - start;
+      flushCounter.incrementAndGet();
+      flushDuration.addAndGet(duration);
+      setMax(maxFlushDuration, duration);
+    }
+  }
+
+  private void scheduleWriteBehind(final Integer userId)
+  {
+    dirtyUserIds.add(userId);
+    if (writeBehindScheduled.compareAndSet(false, true) == false) {
+      // Already scheduled, the modifications of this user will be written by the next run.
+      return;
+    }
+    getWriteBehindExecutor().schedule(new Runnable() {
+      @Override
+      public void run()
+      {
+        writeBehindScheduled.set(false);
+        flushDirtyUsers();
+      }
+    }, writeBehindDelay, TimeUnit.MILLISECONDS);
+  }
+
+  private void flushDirtyUsers()
+  {
+    for (final Integer userId : dirtyUserIds) {
+      dirtyUserIds.remove(userId);
+      try {
+        flushToDB(userId, false);
+      } catch (final Throwable ex) {
+        log.error("Error while writing user preferences of user '" + userId + "': " + ex.getMessage(), ex);
+      }
+    }
+  }
+
+  private synchronized ScheduledExecutorService getWriteBehindExecutor()
+  {
+    if (writeBehindExecutor == null) {
+      writeBehindExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "UserXmlPreferencesCache-writeBehind");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return writeBehindExecutor;
   }
 
   /**
-   * Stores the PersistentUserObjects in the database or on start up restores the persistent user objects from the database.
+   * Stores the PersistentUserObjects in the database and evicts the preferences of inactive users.
    * @see org.projectforge.common.AbstractCache#refresh()
    */
   @Override
   protected void refresh()
   {
     log.info("Flushing all user preferences to data-base....");
-    for (final Integer userId : allPreferences.keySet()) {
-      flushToDB(userId, false);
+    for (final UserEntry entry : allPreferences.values()) {
+      try {
+        flushToDB(entry, false);
+      } catch (final Throwable ex) {
+        log.error("Error while writing user preferences of user '" + entry.userId + "': " + ex.getMessage(), ex);
+      }
+    }
+    evictInactiveUsers();
+    log.info("Flushing of user preferences to data-base done: " + this);
+  }
+
+  private void evictInactiveUsers()
+  {
+    final long now = System.currentTimeMillis();
+    final List<UserEntry> entries = new ArrayList<UserEntry>(allPreferences.values());
+    int size = entries.size();
+    Collections.sort(entries, new Comparator<UserEntry>() {
+      @Override
+      public int compare(final UserEntry o1, final UserEntry o2)
+      {
+        return o1.lastAccess < o2.lastAccess ? -1 : (o1.lastAccess == o2.lastAccess ? 0 : 1);
+      }
+    });
+    for (final UserEntry entry : entries) {
+      final long lastAccess = entry.lastAccess;
+      if (now - lastAccess <= retentionTime && size <= maxSize) {
+        // Entries are ordered by last access, all following entries are younger.
+        break;
+      }
+      if (evict(entry, lastAccess) == true) {
+        --size;
+      }
+    }
+  }
+
+  /**
+   * Flushes and removes the entry if it wasn't accessed since the given time (a concurrent request may use it in the meantime).
+   */
+  private boolean evict(final UserEntry entry, final long lastAccess)
+  {
+    final UserXmlPreferencesMap data = entry.getLoadedData();
+    if (data == null) {
+      // Loading in progress or failed.
+      return false;
+    }
+    flushToDB(entry, false);
+    synchronized (data) {
+      if (entry.lastAccess != lastAccess || (data.isModified() == true && accessChecker.isDemoUser(entry.userId) == false)) {
+        return false;
+      }
+      if (allPreferences.remove(entry.userId, entry) == false) {
+        return false;
+      }
+      entry.evicted = true;
+    }
+    evictionCounter.incrementAndGet();
+    return true;
+  }
+
+  private void markAsEvicted(final UserEntry entry)
+  {
+    final UserXmlPreferencesMap data = entry.getLoadedData();
+    if (data == null) {
+      return;
+    }
+    synchronized (data) {
+      entry.evicted = true;
     }
-    log.info("Flushing of user preferences to data-base done.");
   }
 
   /**
@@ -190,10 +514,165 @@ public class UserXmlPreferencesCache extends AbstractCache
    */
   public void clear(final Integer userId)
   {
-    final UserXmlPreferencesMap data = allPreferences.get(userId);
+    final UserXmlPreferencesMap data = getUserPreferencesData(userId);
     if (data == null) {
       return;
     }
-    data.clear();
+    synchronized (data) {
+      data.clear();
+    }
+  }
+
+  /**
+   * Stops the write-behind thread and flushes all user preferences to the data base. Should be called on shutdown.
+   */
+  public void shutdown()
+  {
+    synchronized (this) {
+      if (writeBehindExecutor != null) {
+        writeBehindExecutor.shutdownNow();
+        writeBehindExecutor = null;
+      }
+    }
+    dirtyUserIds.clear();
+    forceReload();
+  }
+
+  /**
+   * @return Number of users held by this cache.
+   */
+  public int getSize()
+  {
+    return allPreferences.size();
+  }
+
+  /**
+   * @return Number of loads of user preferences from the data base.
+   */
+  public long getLoadCounter()
+  {
+    return loadCounter.get();
+  }
+
+  /**
+   * @return Average duration of loading the preferences of one user in ms.
+   */
+  public long getAverageLoadDuration()
+  {
+    final long counter = loadCounter.get();
+    return counter > 0 ? loadDuration.get() / counter : 0;
+  }
+
+  public long getMaxLoadDuration()
+  {
+    return maxLoadDuration.get();
+  }
+
+  /**
+   * @return Number of flushes of modified user preferences to the data base.
+   */
+  public long getFlushCounter()
+  {
+    return flushCounter.get();
+  }
+
+  /**
+   * @return Average duration of flushing the modified preferences of one user in ms.
+   */
+  public long getAverageFlushDuration()
+  {
+    final long counter = flushCounter.get();
+    return counter > 0 ? flushDuration.get() / counter : 0;
+  }
+
+  public long getMaxFlushDuration()
+  {
+    return maxFlushDuration.get();
+  }
+
+  /**
+   * @return Number of users evicted because of inactivity or exceeded max size.
+   */
+  public long getEvictionCounter()
+  {
+    return evictionCounter.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "size=" + getSize() + ", loads=" + getLoadCounter() + " (avg=" + getAverageLoadDuration() + "ms, max=" + getMaxLoadDuration()
+        + "ms), flushes=" + getFlushCounter() + " (avg=" + getAverageFlushDuration() + "ms, max=" + getMaxFlushDuration() + "ms), evictions="
+        + getEvictionCounter();
+  }
+
+  private static void setMax(final AtomicLong max, final long value)
+  {
+    for (;;) {
+      final long current = max.get();
+      if (value <= current || max.compareAndSet(current, value) == true) {
+        return;
+      }
+    }
+  }
+
+  private class UserEntry
+  {
+    final Integer userId;
+
+    final FutureTask<UserXmlPreferencesMap> future;
+
+    /**
+     * Serializes the flushes (and removals) of this user.
+     */
+    final Object flushLock = new Object();
+
+    volatile long lastAccess;
+
+    /**
+     * Set under the lock of the user's data if this entry was removed from the cache. Modifications of evicted entries will be lost, so
+     * callers have to get a new entry.
+     */
+    boolean evicted;
+
+    UserEntry(final Integer userId)
+    {
+      this.userId = userId;
+      this.future = new FutureTask<UserXmlPreferencesMap>(new Callable<UserXmlPreferencesMap>() {
+        @Override
+        public UserXmlPreferencesMap call() throws Exception
+        {
+          return loadUserPreferencesData(userId);
+        }
+      });
+    }
+
+    UserEntry(final Integer userId, final UserXmlPreferencesMap data)
+    {
+      this.userId = userId;
+      this.future = new FutureTask<UserXmlPreferencesMap>(new Callable<UserXmlPreferencesMap>() {
+        @Override
+        public UserXmlPreferencesMap call() throws Exception
+        {
+          return data;
+        }
+      });
+      this.future.run();
+    }
+
+    /**
+     * @return The loaded data or null if the load isn't finished yet or failed.
+     */
+    UserXmlPreferencesMap getLoadedData()
+    {
+      if (future.isDone() == false) {
+        return null;
+      }
+      try {
+        return future.get();
+      } catch (final Exception ex) {
+        return null;
+      }
+    }
   }
 }
@@ -50,8 +50,9 @@ import org.springframework.transaction.annotation.Transactional;
 import com.thoughtworks.xstream.XStream;
 
 /**
- * Stores all user persistent objects such as filter settings, personal settings and persists them to the database as xml (compressed (gzip
- * and base64) for larger xml content).
+ * Stores all user persistent objects such as filter settings, personal settings and persists them to the database in a compact binary format
+ * (see {@link UserPreferencesBinaryFormat}). Values not supported by the binary format are stored as xml (compressed (gzip and base64) for
+ * larger xml content). Both formats are read, values of the legacy xml format are re-written in the binary format by the next update.
  * 
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
@@ -67,9 +68,12 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
 
   private final XStream xstream;
 
+  private final UserPreferencesBinaryFormat binaryFormat;
+
   public UserXmlPreferencesDao()
   {
     xstream = XStreamHelper.createXStream();
+    binaryFormat = new UserPreferencesBinaryFormat(xstream);
     xstream.processAnnotations(new Class< ? >[] { UserXmlPreferencesMap.class, TaskFilter.class, TimesheetPrefData.class,
         ScriptCallData.class, RecentScriptCalls.class});
     registerConverter(UserDao.class, PFUserDO.class, 20);
@@ -99,6 +103,7 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
       final int priority)
   {
     xstream.registerConverter(new UserXmlPreferencesBaseDOSingleValueConverter(daoClass, doClass), priority);
+    binaryFormat.registerBaseDO(daoClass, doClass);
   }
 
   public void setAccessChecker(final AccessChecker accessChecker)
@@ -174,6 +179,9 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
       if (xml == null || xml.length() == 0) {
         return null;
       }
+      if (UserPreferencesBinaryFormat.isBinary(xml) == true) {
+        return binaryFormat.deserialize(xml);
+      }
       if (xml.startsWith("!") == true) {
         // Uncompress value:
         final String uncompressed = GZIPHelper.uncompress(xml.substring(1));
@@ -196,8 +204,17 @@ public class UserXmlPreferencesDao extends HibernateDaoSupport
     }
   }
 
+  /**
+   * Stores the value in the binary format if supported, otherwise as xml.
+   * @return The serialized value (binary or xml).
+   */
   public String serialize(final UserXmlPreferencesDO userPrefs, final Object value)
   {
+    final String binary = value != null ? binaryFormat.serialize(value) : null;
+    if (binary != null && binary.length() <= UserXmlPreferencesDO.MAX_SERIALIZED_LENGTH) {
+      userPrefs.setSerializedSettings(binary);
+      return binary;
+    }
     final String xml = XStreamHelper.toXml(xstream, value);
     if (xml.length() > 1000) {
       // Compress value:
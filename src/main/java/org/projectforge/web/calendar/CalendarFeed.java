@@ -23,6 +23,7 @@
 
 package org.projectforge.web.calendar;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
@@ -53,6 +54,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.MDC;
 import org.joda.time.DateTime;
 import org.projectforge.access.AccessException;
+import org.projectforge.calendar.CalendarFeedCache;
 import org.projectforge.calendar.DayHolder;
 import org.projectforge.calendar.ICal4JUtils;
 import org.projectforge.common.NumberHelper;
@@ -184,7 +186,6 @@ public class CalendarFeed extends HttpServlet
         return;
       }
       final Map<String, String> params = StringHelper.getKeyValues(decryptedParams, "&");
-      final Calendar calendar = createCal(params, userId, params.get("token"), params.get(PARAM_NAME_TIMESHEET_USER));
       final StringBuffer buf = new StringBuffer();
       boolean first = true;
       for (final Map.Entry<String, String> entry : params.entrySet()) {
@@ -197,19 +198,48 @@ public class CalendarFeed extends HttpServlet
       logMessage = buf.toString();
       log.info("Getting calendar entries for: " + logMessage);
 
-      if (calendar == null) {
+      final PFUserDO loggedInUser = registry.getDao(UserDao.class).getUserByAuthenticationToken(userId, params.get("token"));
+      if (loggedInUser == null) {
         resp.sendError(HttpStatus.SC_BAD_REQUEST);
         log.error("Bad request, can't find calendar.");
         return;
       }
-
-      resp.setContentType("text/calendar");
-      final CalendarOutputter output = new CalendarOutputter(false);
-      try {
-        output.output(calendar, resp.getOutputStream());
-      } catch (final ValidationException ex) {
-        ex.printStackTrace();
+      final String timesheetUserParam = params.get(PARAM_NAME_TIMESHEET_USER);
+      final PFUserDO timesheetUser = getTimesheetUser(loggedInUser, timesheetUserParam);
+      if (timesheetUser == null && NumberHelper.parseInteger(timesheetUserParam) != null) {
+        resp.sendError(HttpStatus.SC_BAD_REQUEST);
+        log.error("Bad request, can't find calendar.");
+        return;
       }
+      final CalendarFeedCache cache = CalendarFeedCache.instance();
+      final String key = CalendarFeedCache.createKey(userId, params);
+      CalendarFeedCache.Entry entry = cache.get(key);
+      if (entry == null) {
+        final Calendar calendar = createCal(params, loggedInUser, timesheetUser);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final CalendarOutputter output = new CalendarOutputter(false);
+        try {
+          output.output(calendar, out);
+        } catch (final ValidationException ex) {
+          // Don't cache (and serve) an empty or partial calendar:
+          log.error("Can't render calendar (" + logMessage + "): " + ex.getMessage(), ex);
+          resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+          return;
+        }
+        entry = cache.put(key, out.toByteArray(), timesheetUser != null ? timesheetUser.getId() : null, isDependingOnTeamEvents(params));
+      } else {
+        log.info("Calendar served from cache: " + cache);
+      }
+      resp.setDateHeader("Last-Modified", entry.getLastModified());
+      resp.setHeader("ETag", entry.getETag());
+      if (entry.isNotModified(req.getHeader("If-None-Match"), getDateHeader(req, "If-Modified-Since")) == true) {
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      resp.setContentType("text/calendar");
+      final byte[] content = entry.getContent();
+      resp.setContentLength(content.length);
+      resp.getOutputStream().write(content);
     } finally {
       log.info("Finished request: " + logMessage);
       PFUserContext.setUser(null);
@@ -222,36 +252,68 @@ public class CalendarFeed extends HttpServlet
   }
 
   /**
-   * creates a calendar for the user, identified by his name and authentication key.
-   * @param params
-   * 
-   * @param userName
-   * @param userKey
-   * @return a calendar, null if authentication fails
+   * @param loggedInUser The user authenticated by the token.
+   * @param timesheetUserParam
+   * @return The user of the time sheets to export or null if no time sheets should be exported or the user isn't allowed.
    */
-  private Calendar createCal(final Map<String, String> params, final Integer userId, final String authKey, final String timesheetUserParam)
+  private PFUserDO getTimesheetUser(final PFUserDO loggedInUser, final String timesheetUserParam)
   {
-    final UserDao userDao = Registry.instance().getDao(UserDao.class);
-    final PFUserDO loggedInUser = userDao.getUserByAuthenticationToken(userId, authKey);
-
-    if (loggedInUser == null) {
+    if (StringUtils.isBlank(timesheetUserParam) == true) {
       return null;
     }
-    PFUserDO timesheetUser = null;
-    if (StringUtils.isNotBlank(timesheetUserParam) == true) {
-      final Integer timesheetUserId = NumberHelper.parseInteger(timesheetUserParam);
-      if (timesheetUserId != null) {
-        if (timesheetUserId.equals(loggedInUser.getId()) == false) {
-          log.error("Not yet allowed: all users are only allowed to download their own time-sheets.");
-          return null;
-        }
-        timesheetUser = userDao.getUserGroupCache().getUser(timesheetUserId);
-        if (timesheetUser == null) {
-          log.error("Time-sheet user with id '" + timesheetUserParam + "' not found.");
-          return null;
-        }
+    final Integer timesheetUserId = NumberHelper.parseInteger(timesheetUserParam);
+    if (timesheetUserId == null) {
+      return null;
+    }
+    if (timesheetUserId.equals(loggedInUser.getId()) == false) {
+      log.error("Not yet allowed: all users are only allowed to download their own time-sheets.");
+      return null;
+    }
+    final PFUserDO timesheetUser = Registry.instance().getUserGroupCache().getUser(timesheetUserId);
+    if (timesheetUser == null) {
+      log.error("Time-sheet user with id '" + timesheetUserParam + "' not found.");
+    }
+    return timesheetUser;
+  }
+
+  /**
+   * Any parameter not handled by this servlet itself may be used by a {@link CalendarFeedHook} (e. g. the team calendars).
+   */
+  private boolean isDependingOnTeamEvents(final Map<String, String> params)
+  {
+    for (final String param : params.keySet()) {
+      if ("token".equals(param) == false
+          && PARAM_NAME_TIMESHEET_USER.equals(param) == false
+          && PARAM_NAME_HOLIDAYS.equals(param) == false
+          && PARAM_NAME_WEEK_OF_YEARS.equals(param) == false) {
+        return true;
       }
     }
+    return false;
+  }
+
+  /**
+   * @return The value of the given date header or -1 if not given or not parseable.
+   */
+  private long getDateHeader(final HttpServletRequest req, final String name)
+  {
+    try {
+      return req.getDateHeader(name);
+    } catch (final IllegalArgumentException ex) {
+      log.info("Can't parse header " + name + ": " + req.getHeader(name));
+      return -1;
+    }
+  }
+
+  /**
+   * creates a calendar for the given (authenticated) user.
+   * @param params
+   * @param loggedInUser
+   * @param timesheetUser The user of the time sheets to export, may be null.
+   * @return a calendar
+   */
+  private Calendar createCal(final Map<String, String> params, final PFUserDO loggedInUser, final PFUserDO timesheetUser)
+  {
     // creating a new calendar
     final Calendar calendar = new Calendar();
     final Locale locale = PFUserContext.getLocale();
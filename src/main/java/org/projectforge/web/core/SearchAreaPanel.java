@@ -26,6 +26,8 @@ package org.projectforge.web.core;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
@@ -40,11 +42,13 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.projectforge.common.BeanHelper;
+import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.ExtendedBaseDO;
 import org.projectforge.core.NumberFormatter;
 import org.projectforge.core.SearchDao;
 import org.projectforge.core.SearchResultData;
+import org.projectforge.core.SearchService;
 import org.projectforge.database.StatisticsCache;
 import org.projectforge.task.TaskDependentFilter;
 import org.projectforge.web.registry.WebRegistryEntry;
@@ -63,30 +67,22 @@ public class SearchAreaPanel extends Panel
   @SpringBean(name = "searchDao")
   private SearchDao searchDao;
 
+  @SpringBean(name = "searchService")
+  private SearchService searchService;
+
   @SpringBean(name = "statisticsCache")
   private StatisticsCache statisticsCache;
 
   /**
-   * @param page Needed, because in constructor this panel is not yet added to a page.
-   * @param id
+   * @param statisticsCache
    * @param filter
-   * @param registryEntry the area to show.
+   * @param webRegistryEntry
+   * @return The filter for searching the given area or null if the area shouldn't be searched (too large table and too less filter
+   *         settings).
    */
-  @SuppressWarnings("serial")
-  public SearchAreaPanel(final WebPage page, final String id, final SearchPageFilter filter, final WebRegistryEntry webRegistryEntry)
+  static BaseSearchFilter createSearchFilter(final StatisticsCache statisticsCache, final SearchPageFilter filter,
+      final WebRegistryEntry webRegistryEntry)
   {
-    super(id);
-    final long millis = System.currentTimeMillis();
-    final Class< ? extends IListPageColumnsCreator< ? >> listPageColumnsCreatorClass = webRegistryEntry.getListPageColumnsCreatorClass();
-    final IListPageColumnsCreator< ? > listPageColumnsCreator = listPageColumnsCreatorClass == null ? null
-        : (IListPageColumnsCreator< ? >) BeanHelper.newInstance(listPageColumnsCreatorClass, PageParameters.class, new PageParameters());
-    if (listPageColumnsCreator == null) {
-      setVisible(false);
-      return;
-    }
-    if (listPageColumnsCreator instanceof AbstractListPage) {
-      ((AbstractListPage< ? , ? , ? >) listPageColumnsCreator).setCalledBySearchPage(true);
-    }
     final Integer number = statisticsCache.getNumberOfEntities(webRegistryEntry.getDOClass());
     final Class< ? extends BaseSearchFilter> registeredFilterClass = webRegistryEntry.getSearchFilterClass();
     final boolean isTaskDependentFilter = registeredFilterClass != null
@@ -97,8 +93,7 @@ public class SearchAreaPanel extends Panel
         && filter.getStartTimeOfModification() == null
         && filter.getStopTimeOfModification() == null) {
       // Don't search to large tables if to less filter settings are given.
-      setVisible(false);
-      return;
+      return null;
     }
     filter.updateUseModificationFilterFlag();
     final BaseSearchFilter baseSearchFilter;
@@ -108,10 +103,52 @@ public class SearchAreaPanel extends Panel
       ((TaskDependentFilter) baseSearchFilter).setTaskId(filter.getTaskId());
       baseSearchFilter.copyBaseSearchFieldsFrom(filter);
     } else {
-      baseSearchFilter = filter;
+      // Own copy, because the areas may be searched concurrently:
+      baseSearchFilter = new BaseSearchFilter(filter);
+    }
+    return baseSearchFilter;
+  }
+
+  /**
+   * @param page Needed, because in constructor this panel is not yet added to a page.
+   * @param id
+   * @param filter
+   * @param registryEntry the area to show.
+   * @param searchFuture The already started search of this area (see {@link SearchService#submit(BaseSearchFilter, Class, BaseDao)}). If
+   *          null, the area will be searched synchronously.
+   */
+  @SuppressWarnings("serial")
+  public SearchAreaPanel(final WebPage page, final String id, final SearchPageFilter filter, final WebRegistryEntry webRegistryEntry,
+      final Future<List<SearchResultData>> searchFuture)
+  {
+    super(id);
+    final long millis = System.currentTimeMillis();
+    final Class< ? extends IListPageColumnsCreator< ? >> listPageColumnsCreatorClass = webRegistryEntry.getListPageColumnsCreatorClass();
+    final IListPageColumnsCreator< ? > listPageColumnsCreator = listPageColumnsCreatorClass == null ? null
+        : (IListPageColumnsCreator< ? >) BeanHelper.newInstance(listPageColumnsCreatorClass, PageParameters.class, new PageParameters());
+    if (listPageColumnsCreator == null) {
+      setVisible(false);
+      return;
+    }
+    if (listPageColumnsCreator instanceof AbstractListPage) {
+      ((AbstractListPage< ? , ? , ? >) listPageColumnsCreator).setCalledBySearchPage(true);
+    }
+    List<SearchResultData> searchResult = null;
+    boolean timeout = false;
+    if (searchFuture != null) {
+      try {
+        searchResult = searchService.getResult(searchFuture);
+      } catch (final TimeoutException ex) {
+        timeout = true;
+      }
+    } else {
+      final BaseSearchFilter baseSearchFilter = createSearchFilter(statisticsCache, filter, webRegistryEntry);
+      if (baseSearchFilter == null) {
+        setVisible(false);
+        return;
+      }
+      searchResult = searchDao.getEntries(baseSearchFilter, webRegistryEntry.getDOClass(), webRegistryEntry.getDao());
     }
-    final List<SearchResultData> searchResult = searchDao.getEntries(baseSearchFilter, webRegistryEntry.getDOClass(),
-        webRegistryEntry.getDao());
     boolean hasError = false;
     if (searchResult == null) {
       // An error occured!
@@ -155,7 +192,7 @@ public class SearchAreaPanel extends Panel
     }
     final Label hasMoreEntries;
     if (hasError == true) {
-      hasMoreEntries = new Label("hasMoreEntries", page.getString("search.error") + " | ");
+      hasMoreEntries = new Label("hasMoreEntries", page.getString(timeout == true ? "search.timeout" : "search.error") + " | ");
     } else {
       hasMoreEntries = new Label("hasMoreEntries", page.getString("moreEntriesAvailable") + " | ");
       hasMoreEntries.setVisible(false);
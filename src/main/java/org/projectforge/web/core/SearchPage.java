@@ -23,6 +23,11 @@
 
 package org.projectforge.web.core;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.wicket.Component;
 import org.apache.wicket.extensions.ajax.markup.html.AjaxLazyLoadPanel;
@@ -32,6 +37,10 @@ import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.markup.repeater.RepeatingView;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.projectforge.core.BaseSearchFilter;
+import org.projectforge.core.SearchResultData;
+import org.projectforge.core.SearchService;
+import org.projectforge.database.StatisticsCache;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserGroupCache;
 import org.projectforge.web.fibu.ISelectCallerPage;
@@ -50,8 +59,20 @@ public class SearchPage extends AbstractStandardFormPage implements ISelectCalle
   @SpringBean(name = "userGroupCache")
   private UserGroupCache userGroupCache;
 
+  @SpringBean(name = "searchService")
+  private SearchService searchService;
+
+  @SpringBean(name = "statisticsCache")
+  private StatisticsCache statisticsCache;
+
   private final RepeatingView areaRepeater;
 
+  /**
+   * The searches of all areas are started concurrently by refresh(), the results are consumed by the lazy loaded area panels. If not
+   * available (e. g. after deserialization of this page) the area panels search synchronously.
+   */
+  private transient Map<String, Future<List<SearchResultData>>> searchFutures;
+
   // Do not execute the search on the first call (due to performance issues):
   private boolean refreshed = true;
 
@@ -120,6 +141,7 @@ public class SearchPage extends AbstractStandardFormPage implements ISelectCalle
     }
     refreshed = true;
     areaRepeater.removeAll();
+    searchFutures = new HashMap<String, Future<List<SearchResultData>>>();
     if (form.filter.isEmpty() == true) {
       return;
     }
@@ -141,12 +163,20 @@ public class SearchPage extends AbstractStandardFormPage implements ISelectCalle
 
   private void addArea(final WebRegistryEntry webRegistryEntry)
   {
+    final BaseSearchFilter searchFilter = SearchAreaPanel.createSearchFilter(statisticsCache, form.filter, webRegistryEntry);
+    if (searchFilter == null) {
+      // Area shouldn't be searched.
+      return;
+    }
+    searchFutures.put(webRegistryEntry.getId(),
+        searchService.submit(searchFilter, webRegistryEntry.getDOClass(), webRegistryEntry.getDao()));
     @SuppressWarnings("serial")
     final Panel panel = new AjaxLazyLoadPanel(areaRepeater.newChildId()) {
       @Override
       public final Component getLazyLoadComponent(final String id)
       {
-        final SearchAreaPanel searchAreaPanel = new SearchAreaPanel(SearchPage.this, id, form.filter, webRegistryEntry);
+        final Future<List<SearchResultData>> searchFuture = searchFutures != null ? searchFutures.remove(webRegistryEntry.getId()) : null;
+        final SearchAreaPanel searchAreaPanel = new SearchAreaPanel(SearchPage.this, id, form.filter, webRegistryEntry, searchFuture);
         return searchAreaPanel;
       }
     };
@@ -48,6 +48,7 @@ import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.projectforge.common.DateHelper;
 import org.projectforge.core.CurrencyFormatter;
 import org.projectforge.core.NumberFormatter;
+import org.projectforge.excel.ExportWorkbook;
 import org.projectforge.fibu.AuftragDO;
 import org.projectforge.fibu.AuftragDao;
 import org.projectforge.fibu.AuftragsPositionDO;
@@ -248,8 +249,8 @@ public class AuftragListPage extends AbstractListPage<AuftragListForm, AuftragDa
       public void onClick()
       {
         final List<AuftragDO> list = getList();
-        final byte[] xls = orderExport.export(list);
-        if (xls == null || xls.length == 0) {
+        final ExportWorkbook xls = orderExport.exportWorkbook(list);
+        if (xls == null) {
           form.addError("datatable.no-records-found");
           return;
         }
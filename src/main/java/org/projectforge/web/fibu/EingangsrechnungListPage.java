@@ -47,6 +47,7 @@ import org.projectforge.core.Configuration;
 import org.projectforge.core.CurrencyFormatter;
 import org.projectforge.excel.ContentProvider;
 import org.projectforge.excel.ExportColumn;
+import org.projectforge.excel.ExportWorkbook;
 import org.projectforge.excel.I18nExportColumn;
 import org.projectforge.excel.PropertyMapping;
 import org.projectforge.export.DOListExcelExporter;
@@ -296,12 +297,9 @@ IListPageColumnsCreator<EingangsrechnungDO>
         + "_"
         + DateHelper.getDateAsFilenameSuffix(new Date())
         + ".xls";
-    final byte[] xls = KostZuweisungExport.instance.exportRechnungen(rechnungen, getString("fibu.common.creditor"), kontoCache);
-    if (xls == null || xls.length == 0) {
-      log.error("Oups, xls has zero size. Filename: " + filename);
-      return;
-    }
-    DownloadUtils.setDownloadTarget(xls, filename);
+    final ExportWorkbook workbook = KostZuweisungExport.instance.exportRechnungen(rechnungen, getString("fibu.common.creditor"),
+        kontoCache);
+    DownloadUtils.setDownloadTarget(workbook, filename);
   }
 
   @Override
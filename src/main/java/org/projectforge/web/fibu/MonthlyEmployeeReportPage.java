@@ -445,8 +445,7 @@ public class MonthlyEmployeeReportPage extends AbstractStandardFormPage implemen
     data.put("signatureProjectLeaderLabel", getString("timesheet.signatureProjectLeader"));
     data.put("unbookedWorkingDaysLabel", getString("fibu.monthlyEmployeeReport.withoutTimesheets"));
     // render the PDF with fop
-    final byte[] ba = pdfRenderer.render(styleSheet, xmlData, data);
-    DownloadUtils.setDownloadTarget(ba, filename);
+    DownloadUtils.setDownloadTarget(filename, pdfRenderer.createResourceStreamWriter(styleSheet, xmlData, data));
   }
 
   @Override
@@ -48,6 +48,7 @@ import org.projectforge.core.Configuration;
 import org.projectforge.core.CurrencyFormatter;
 import org.projectforge.excel.ContentProvider;
 import org.projectforge.excel.ExportColumn;
+import org.projectforge.excel.ExportWorkbook;
 import org.projectforge.excel.I18nExportColumn;
 import org.projectforge.excel.PropertyMapping;
 import org.projectforge.export.DOListExcelExporter;
@@ -337,12 +338,9 @@ IListPageColumnsCreator<RechnungDO>
         + "_"
         + DateHelper.getDateAsFilenameSuffix(new Date())
         + ".xls";
-    final byte[] xls = KostZuweisungExport.instance.exportRechnungen(rechnungen, getString("fibu.common.debitor"), kontoCache);
-    if (xls == null || xls.length == 0) {
-      log.error("Oups, xls has zero size. Filename: " + filename);
-      return;
-    }
-    DownloadUtils.setDownloadTarget(xls, filename);
+    final ExportWorkbook workbook = KostZuweisungExport.instance.exportRechnungen(rechnungen, getString("fibu.common.debitor"),
+        kontoCache);
+    DownloadUtils.setDownloadTarget(workbook, filename);
   }
 
   @Override
@@ -490,6 +490,39 @@ IListPageColumnsCreator<TimesheetDO>
     return super.buildList();
   }
 
+  /**
+   * No time sheets are shown without start time, stop time or task (see {@link #buildList()}).
+   * @see org.projectforge.web.wicket.AbstractListPage#isPagedQuery()
+   */
+  @Override
+  protected boolean isPagedQuery()
+  {
+    final TimesheetFilter filter = form.getSearchFilter();
+    if (filter.getStartTime() == null && filter.getStopTime() == null && filter.getTaskId() == null) {
+      return false;
+    }
+    return super.isPagedQuery();
+  }
+
+  /**
+   * @return The total duration of all time sheets of the result list. In paged mode the duration is summed by the dao without building the
+   *         complete list.
+   */
+  long getTotalDuration()
+  {
+    if (isPagedQuery() == true) {
+      return timesheetDao.getTotalDuration(timesheetDao.createQueryFilter(form.getSearchFilter()));
+    }
+    long duration = 0;
+    final List<TimesheetDO> list = getList();
+    if (list != null) {
+      for (final TimesheetDO sheet : list) {
+        duration += sheet.getDuration();
+      }
+    }
+    return duration;
+  }
+
   void exportPDF()
   {
     refresh();
@@ -525,9 +558,7 @@ IListPageColumnsCreator<TimesheetDO>
     final Map<String, Object> data = formatter.getData(timeSheets, taskId, getRequest(), getResponse(), filter);
 
     // render the PDF with fop
-    final byte[] content = pdfRenderer.render(styleSheet, xmlData, data);
-
-    DownloadUtils.setDownloadTarget(content, filename);
+    DownloadUtils.setDownloadTarget(filename, pdfRenderer.createResourceStreamWriter(styleSheet, xmlData, data));
   }
 
   protected void exportExcel()
@@ -540,12 +571,7 @@ IListPageColumnsCreator<TimesheetDO>
       return;
     }
     final String filename = "ProjectForge-TimesheetExport_" + DateHelper.getDateAsFilenameSuffix(new Date()) + ".xls";
-    final byte[] xls = timesheetExport.export(timeSheets);
-    if (xls == null || xls.length == 0) {
-      log.error("Oups, xls has zero size. Filename: " + filename);
-      return;
-    }
-    DownloadUtils.setDownloadTarget(xls, filename);
+    DownloadUtils.setDownloadTarget(timesheetExport.exportWorkbook(timeSheets), filename);
   }
 
   /**
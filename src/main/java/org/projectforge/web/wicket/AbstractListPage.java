@@ -47,6 +47,7 @@ import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.hibernate.criterion.Order;
 import org.projectforge.common.RecentQueue;
 import org.projectforge.common.ReflectionHelper;
 import org.projectforge.common.StringHelper;
@@ -55,6 +56,7 @@ import org.projectforge.core.BaseDao;
 import org.projectforge.core.BaseSearchFilter;
 import org.projectforge.core.IdObject;
 import org.projectforge.core.PropertyInfo;
+import org.projectforge.core.QueryFilter;
 import org.projectforge.core.UserException;
 import org.projectforge.excel.ExportSheet;
 import org.projectforge.export.DOListExcelExporter;
@@ -532,6 +534,68 @@ extends AbstractSecuredPage implements ISelectCallerPage
     return (List<O>) getBaseDao().getList(form.getSearchFilter());
   }
 
+  /**
+   * If true, the data table fetches only the visible page from the data base (sorted by the data base) instead of building the complete
+   * list. Returns true at default if the dao supports paged queries for the current filter settings. Overload this method and return false
+   * if {@link #buildList()} is overloaded.
+   * @see BaseDao#isPagedQuerySupported(BaseSearchFilter)
+   */
+  protected boolean isPagedQuery()
+  {
+    final D baseDao = getBaseDao();
+    if (baseDao instanceof BaseDao == false) {
+      return false;
+    }
+    return ((BaseDao< ? >) baseDao).isPagedQuerySupported(form.getSearchFilter());
+  }
+
+  /**
+   * Only used in paged mode.
+   * @see BaseDao#isSortableInDataBase(String)
+   */
+  protected boolean isSortableInDataBase(final String property)
+  {
+    return ((BaseDao< ? >) getBaseDao()).isSortableInDataBase(property);
+  }
+
+  /**
+   * Only used in paged mode: fetches the given page from the data base.
+   * @param first
+   * @param count
+   * @param sortParam Sort parameter chosen by the user (or null).
+   * @param secondSortParam Previous sort parameter (or null).
+   * @see BaseDao#getPagedList(QueryFilter)
+   */
+  @SuppressWarnings("unchecked")
+  protected List<O> getPagedList(final long first, final long count, final SortParam<String> sortParam,
+      final SortParam<String> secondSortParam)
+  {
+    final BaseDao< ? > baseDao = (BaseDao< ? >) getBaseDao();
+    final QueryFilter queryFilter = baseDao.createQueryFilter(form.getSearchFilter());
+    for (final SortParam<String> sp : new SortParam[] { sortParam, secondSortParam}) {
+      if (sp != null) {
+        queryFilter.addSortOrder(sp.isAscending() == true ? Order.asc(sp.getProperty()) : Order.desc(sp.getProperty()));
+      }
+    }
+    queryFilter.setFirstResult((int) first).setMaxResults((int) count);
+    try {
+      return (List<O>) baseDao.getPagedList(queryFilter);
+    } catch (final UserException ex) {
+      error(getLocalizedMessage(ex.getI18nKey(), ex.getParams()));
+    }
+    return new ArrayList<O>();
+  }
+
+  /**
+   * Only used in paged mode: counts the entries by the data base.
+   * @see BaseDao#getListSize(QueryFilter)
+   */
+  protected long getListSize()
+  {
+    final BaseDao< ? > baseDao = (BaseDao< ? >) getBaseDao();
+    return baseDao.getListSize(baseDao.createQueryFilter(form.getSearchFilter()));
+  }
+
   /**
    * @see org.projectforge.web.wicket.AbstractUnsecureBasePage#onBeforeRender()
    */
@@ -539,7 +603,14 @@ extends AbstractSecuredPage implements ISelectCallerPage
   protected void onBeforeRender()
   {
     if (this.refreshResultList == true) {
-      getList();
+      if (isPagedQuery() == true) {
+        // The data table fetches the visible page only, the complete list is built on demand (e. g. for exports).
+        this.refreshResultList = false;
+        this.resultList = null;
+        listPageSortableDataProvider.detach(); // Forces a new count query.
+      } else {
+        getList();
+      }
     }
     super.onBeforeRender();
   }
@@ -23,14 +23,18 @@
 
 package org.projectforge.web.wicket;
 
+import java.io.OutputStream;
+
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.wicket.request.Response;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.handler.resource.ResourceStreamRequestHandler;
 import org.apache.wicket.request.resource.ContentDisposition;
+import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
 import org.apache.wicket.util.resource.IResourceStream;
 import org.projectforge.common.MimeType;
+import org.projectforge.excel.ExportWorkbook;
 
 public class DownloadUtils
 {
@@ -90,6 +94,32 @@ public class DownloadUtils
     log.info("Starting download for file. filename:" + filename + ", content-type:" + byteArrayResourceStream.getContentType());
   }
 
+  /**
+   * The workbook is written directly to the response (no byte array of the whole file is created).
+   * @param workbook The workbook to download.
+   * @param filename
+   */
+  public static void setDownloadTarget(final ExportWorkbook workbook, final String filename)
+  {
+    final String contentType = getContentType(filename);
+    final IResourceStream resourceStream = new AbstractResourceStreamWriter() {
+      private static final long serialVersionUID = -2398305616298437254L;
+
+      @Override
+      public String getContentType()
+      {
+        return contentType;
+      }
+
+      @Override
+      public void write(final OutputStream output)
+      {
+        workbook.write(output);
+      }
+    };
+    setDownloadTarget(filename, resourceStream);
+  }
+
   public static void setDownloadTarget(final String filename, final IResourceStream resourceStream)
   {
     final ResourceStreamRequestHandler handler = new ResourceStreamRequestHandler(resourceStream);
@@ -43,7 +43,9 @@ import org.projectforge.core.BaseDao;
 import org.projectforge.core.IdObject;
 
 /**
- * Stores list of result sets (id's) for pagination and provides iterator of data-base objects on demand.
+ * Stores list of result sets (id's) for pagination and provides iterator of data-base objects on demand.<br/>
+ * If the list page supports paged queries (see {@link AbstractListPage#isPagedQuery()}) only the visible page is fetched from the data
+ * base and the size is determined by a count query.
  * @author Kai Reinhard (k.reinhard@micromata.de)
  * 
  */
@@ -63,6 +65,11 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
 
   private Long first, count;
 
+  /**
+   * Size of the result set in paged mode (counted by the data base, reset on every detach).
+   */
+  private Long pagedSize;
+
   private SortParam<String> sortParam;
 
   private SortParam<String> secondSortParam;
@@ -101,6 +108,16 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
   @Override
   public Iterator<T> iterator(final long first, final long count)
   {
+    if (isPagedMode() == true) {
+      this.first = first;
+      this.count = count;
+      updateSortParams();
+      final List<T> list = listPage.getPagedList(first, count, getDataBaseSortParam(sortParam), getDataBaseSortParam(secondSortParam));
+      if (list == null) {
+        return null;
+      }
+      return list.iterator();
+    }
     if ((this.first != null && this.first != first) || (this.count != null && this.count != count)) {
       this.completeList = null; // Force to load all elements from data-base (avoid lazy initialization exceptions).
     }
@@ -168,6 +185,12 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
   @Override
   public long size()
   {
+    if (isPagedMode() == true) {
+      if (pagedSize == null) {
+        pagedSize = listPage.getListSize();
+      }
+      return pagedSize;
+    }
     if (idList == null) {
       reloadList();
     }
@@ -193,6 +216,42 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
     this.sortParam = sp;
   }
 
+  /**
+   * Same handling of the second sort parameter as in {@link #sortList(List)}, but without sorting (the data base sorts in paged mode).
+   */
+  private void updateSortParams()
+  {
+    final SortParam<String> sp = getSort();
+    if (sp != null && "NOSORT".equals(sp.getProperty()) == false) {
+      if (this.sortParam != null && StringUtils.equals(this.sortParam.getProperty(), sp.getProperty()) == false) {
+        this.secondSortParam = this.sortParam;
+      }
+    }
+    this.sortParam = sp;
+  }
+
+  /**
+   * The paged mode (fetching only the visible page with sorting by the data base) is used if the list page supports paged queries for the
+   * current filter settings and the current sort property is a persistent property. Otherwise the complete list is loaded and sorted in
+   * memory.
+   */
+  private boolean isPagedMode()
+  {
+    if (listPage.isPagedQuery() == false) {
+      return false;
+    }
+    final SortParam<String> sp = getSort();
+    return sp == null || "NOSORT".equals(sp.getProperty()) == true || listPage.isSortableInDataBase(sp.getProperty()) == true;
+  }
+
+  private SortParam<String> getDataBaseSortParam(final SortParam<String> sp)
+  {
+    if (sp == null || "NOSORT".equals(sp.getProperty()) == true || listPage.isSortableInDataBase(sp.getProperty()) == false) {
+      return null;
+    }
+    return sp;
+  }
+
   /**
    * @see org.apache.wicket.markup.repeater.data.IDataProvider#model(java.lang.Object)
    */
@@ -209,5 +268,6 @@ public class MyListPageSortableDataProvider<T extends IdObject< ? >> extends Sor
   public void detach()
   {
     this.completeList = null;
+    this.pagedSize = null;
   }
 }
@@ -209,6 +209,7 @@ public class WicketApplication extends WebApplication implements WicketApplicati
   @Override
   protected void init()
   {
+    final long start = System.currentTimeMillis();
     super.init();
     // CryptoMapper doesn't work with FullCalendar.
     // setRootRequestMapper(new CryptoMapper(getRootRequestMapper(), this));
@@ -333,6 +334,10 @@ public class WicketApplication extends WebApplication implements WicketApplicati
     } finally {
       PFUserContext.setUser(null);
     }
+    if (UserFilter.isUpdateRequiredFirst() == false) {
+      // Warm-up the caches concurrently to the following initialization (e. g. styles compiler):
+      projectForgeApp.startCacheWarmUp();
+    }
     LoginHandler loginHandler;
     if (StringUtils.isNotBlank(projectForgeApp.getConfigXml().getLoginHandlerClass()) == true) {
       loginHandler = (LoginHandler) BeanHelper.newInstance(projectForgeApp.getConfigXml().getLoginHandlerClass());
@@ -341,6 +346,7 @@ public class WicketApplication extends WebApplication implements WicketApplicati
     }
 
     // initialize styles compiler
+    final long lessStart = System.currentTimeMillis();
     try {
       final LessWicketApplicationInstantiator lessInstantiator = new LessWicketApplicationInstantiator(this, "styles", "projectforge.less",
           "projectforge.css");
@@ -348,6 +354,8 @@ public class WicketApplication extends WebApplication implements WicketApplicati
     } catch (final Exception e) {
       log.error("Unable to instantiate wicket less compiler", e);
     }
+    projectForgeApp.getStartupTimer().addPhase("lessCompilation", lessStart);
+    projectForgeApp.getStartupTimer().addPhase("wicketSetup", start);
 
     if (loginHandler == null) {
       log.error("Can't load login handler '" + projectForgeApp.getConfigXml().getLoginHandlerClass() + "'. No login will be possible!");
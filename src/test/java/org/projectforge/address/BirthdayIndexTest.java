@@ -0,0 +1,111 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.address;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.projectforge.common.DateHelper;
+
+public class BirthdayIndexTest
+{
+  @Test
+  public void testGetAddressIds()
+  {
+    final Random random = new Random(42);
+    final Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+    for (int id = 1; id <= 2000; id++) {
+      map.put(id, BirthdayIndex.getDayOfYear(random.nextInt(12), random.nextInt(31) + 1));
+    }
+    final BirthdayIndex index = new BirthdayIndex(map);
+    Assert.assertEquals(2000, index.size());
+    for (int i = 0; i < 500; i++) {
+      final int fromMonth = random.nextInt(12), fromDay = random.nextInt(31) + 1;
+      final int toMonth = i % 5 == 0 ? fromMonth : random.nextInt(12), toDay = random.nextInt(31) + 1;
+      assertIds(map, index, fromMonth, fromDay, toMonth, toDay);
+    }
+    // Wrap around the end of the year and whole months:
+    assertIds(map, index, 11, 20, 0, 10);
+    assertIds(map, index, 0, 1, 11, 31);
+    assertIds(map, index, 5, 10, 5, 9);
+  }
+
+  @Test
+  public void testModification()
+  {
+    final BirthdayIndex index = new BirthdayIndex(new HashMap<Integer, Integer>());
+    Assert.assertEquals(0, index.getAddressIds(0, 1, 11, 31).size());
+    index.put(1, 11, 24);
+    index.put(2, 11, 24);
+    index.put(3, 0, 1);
+    assertIds(index.getAddressIds(11, 24, 11, 24), 1, 2);
+    assertIds(index.getAddressIds(11, 20, 0, 5), 1, 2, 3);
+    index.put(1, 2, 15);
+    assertIds(index.getAddressIds(11, 24, 11, 24), 2);
+    assertIds(index.getAddressIds(2, 15, 2, 15), 1);
+    Assert.assertEquals(BirthdayIndex.getDayOfYear(2, 15), (int) index.getDayOfYear(1));
+    Assert.assertEquals(2, BirthdayIndex.getMonth(index.getDayOfYear(1)));
+    Assert.assertEquals(15, BirthdayIndex.getDayOfMonth(index.getDayOfYear(1)));
+    index.remove(2);
+    Assert.assertNull(index.getDayOfYear(2));
+    Assert.assertEquals(0, index.getAddressIds(11, 24, 11, 24).size());
+    final Set<Integer> favorites = new HashSet<Integer>();
+    favorites.add(1);
+    favorites.add(2);
+    favorites.add(4);
+    assertIds(index.getAddressIds(favorites, 0, 1, 11, 31), 1);
+    Assert.assertEquals(2, index.size());
+  }
+
+  private void assertIds(final Map<Integer, Integer> map, final BirthdayIndex index, final int fromMonth, final int fromDay,
+      final int toMonth, final int toDay)
+  {
+    final List<Integer> result = index.getAddressIds(fromMonth, fromDay, toMonth, toDay);
+    int expected = 0;
+    for (final Map.Entry<Integer, Integer> entry : map.entrySet()) {
+      final int month = BirthdayIndex.getMonth(entry.getValue()), day = BirthdayIndex.getDayOfMonth(entry.getValue());
+      if (DateHelper.dateOfYearBetween(month, day, fromMonth, fromDay, toMonth, toDay) == true) {
+        Assert.assertTrue(result.contains(entry.getKey()));
+        expected++;
+      }
+    }
+    Assert.assertEquals(expected, result.size());
+    Assert.assertEquals(expected, index.getAddressIds(map.keySet(), fromMonth, fromDay, toMonth, toDay).size());
+  }
+
+  private void assertIds(final List<Integer> result, final Integer... expected)
+  {
+    Assert.assertEquals(expected.length, result.size());
+    for (final Integer id : expected) {
+      Assert.assertTrue(result.contains(id));
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.calendar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CalendarFeedCacheTest
+{
+  @Test
+  public void testKey()
+  {
+    final Map<String, String> params1 = new HashMap<String, String>();
+    params1.put("token", "abc");
+    params1.put("timesheetUser", "42");
+    params1.put("holidays", "true");
+    final Map<String, String> params2 = new HashMap<String, String>();
+    params2.put("holidays", "true");
+    params2.put("timesheetUser", "42");
+    params2.put("token", "abc");
+    Assert.assertEquals(CalendarFeedCache.createKey(42, params1), CalendarFeedCache.createKey(42, params2));
+    Assert.assertFalse(CalendarFeedCache.createKey(42, params1).equals(CalendarFeedCache.createKey(43, params1)));
+  }
+
+  @Test
+  public void testInvalidation()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache(10, CalendarFeedCache.DEFAULT_MAX_AGE);
+    cache.put("1", new byte[] { 1}, 1, false);
+    cache.put("2", new byte[] { 2}, 2, true);
+    cache.put("3", new byte[] { 3}, null, false);
+    Assert.assertEquals(3, cache.size());
+    cache.invalidateTimesheets(1);
+    Assert.assertNull(cache.get("1"));
+    Assert.assertNotNull(cache.get("2"));
+    cache.invalidateTeamEvents();
+    Assert.assertNull(cache.get("2"));
+    Assert.assertNotNull(cache.get("3"));
+    Assert.assertEquals(2, cache.getHitCounter());
+    Assert.assertEquals(2, cache.getMissCounter());
+    for (int i = 0; i < 20; i++) {
+      cache.put("key" + i, new byte[0], null, false);
+    }
+    Assert.assertEquals(10, cache.size());
+  }
+
+  @Test
+  public void testMaxAge()
+  {
+    final CalendarFeedCache cache = new CalendarFeedCache(10, -1);
+    cache.put("1", new byte[] { 1}, 1, false);
+    Assert.assertNull(cache.get("1"));
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testNotModified()
+  {
+    final CalendarFeedCache.Entry entry = new CalendarFeedCache(10, CalendarFeedCache.DEFAULT_MAX_AGE).put("1", new byte[] { 1, 2}, 1,
+        false);
+    final String eTag = entry.getETag();
+    Assert.assertTrue(eTag.startsWith("\"") && eTag.endsWith("\""));
+    Assert.assertFalse(entry.isNotModified(null, -1));
+    Assert.assertTrue(entry.isNotModified(eTag, -1));
+    Assert.assertTrue(entry.isNotModified("\"other\", " + eTag, -1));
+    Assert.assertTrue(entry.isNotModified("*", -1));
+    Assert.assertFalse(entry.isNotModified("\"other\"", entry.getLastModified()));
+    Assert.assertTrue(entry.isNotModified(null, entry.getLastModified()));
+    Assert.assertFalse(entry.isNotModified(null, entry.getLastModified() - 1000));
+  }
+}
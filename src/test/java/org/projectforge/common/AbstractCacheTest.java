@@ -0,0 +1,162 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AbstractCacheTest
+{
+  private static class TestCache extends AbstractCache
+  {
+    final Map<Integer, String> dataBase = new HashMap<Integer, String>();
+
+    private volatile Map<Integer, String> data;
+
+    /** If given, the next refresh waits after reading the data base until released. */
+    volatile CountDownLatch released;
+
+    final CountDownLatch loaded = new CountDownLatch(1);
+
+    TestCache()
+    {
+      super(1);
+      setRefreshInBackground(true);
+    }
+
+    String get(final Integer id)
+    {
+      checkRefresh();
+      return data.get(id);
+    }
+
+    void update(final Integer id, final String value)
+    {
+      synchronized (this) {
+        checkRefresh();
+        final Map<Integer, String> map = new HashMap<Integer, String>(data);
+        map.put(id, value);
+        data = map;
+        recordUpdate(new Object[] { id, value});
+      }
+    }
+
+    @Override
+    protected void refresh()
+    {
+      final Map<Integer, String> map;
+      synchronized (dataBase) {
+        map = new HashMap<Integer, String>(dataBase);
+      }
+      final CountDownLatch latch = released;
+      if (latch != null) {
+        released = null;
+        loaded.countDown();
+        try {
+          latch.await(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      synchronized (this) {
+        for (final Object update : getUpdatesDuringRefresh()) {
+          map.put((Integer) ((Object[]) update)[0], (String) ((Object[]) update)[1]);
+        }
+        data = map;
+      }
+    }
+  }
+
+  @Test
+  public void updateDuringBackgroundRefresh() throws InterruptedException
+  {
+    final TestCache cache = new TestCache();
+    cache.dataBase.put(1, "a");
+    assertEquals("a", cache.get(1)); // Synchronous initialization.
+    final CountDownLatch released = new CountDownLatch(1);
+    cache.released = released;
+    Thread.sleep(10); // Expired.
+    assertEquals("a", cache.get(1)); // Starts the background refresh.
+    assertTrue(cache.loaded.await(10, TimeUnit.SECONDS));
+    // The background refresh has read the data base, but not yet published its data:
+    synchronized (cache.dataBase) {
+      cache.dataBase.put(2, "b");
+    }
+    cache.setExpireTimeInHours(1);
+    cache.update(2, "b");
+    assertEquals("b", cache.get(2));
+    released.countDown();
+    waitForRefresh(cache);
+    assertEquals("b", cache.get(2)); // Not lost by the background refresh.
+    assertEquals("a", cache.get(1));
+  }
+
+  @Test
+  public void expiryDuringBackgroundRefresh() throws InterruptedException
+  {
+    final TestCache cache = new TestCache();
+    assertNull(cache.get(1));
+    final CountDownLatch released = new CountDownLatch(1);
+    cache.released = released;
+    Thread.sleep(10);
+    cache.get(1);
+    assertTrue(cache.loaded.await(10, TimeUnit.SECONDS));
+    synchronized (cache.dataBase) {
+      cache.dataBase.put(1, "a");
+    }
+    cache.setExpireTimeInHours(1);
+    cache.setExpired();
+    new Thread() {
+      @Override
+      public void run()
+      {
+        try {
+          Thread.sleep(50);
+        } catch (final InterruptedException ex) {
+          // Ignore.
+        }
+        released.countDown();
+      }
+    }.start();
+    // Waits for the background refresh and refreshes synchronously, because the background refresh has read the data before the expiry:
+    assertEquals("a", cache.get(1));
+  }
+
+  private void waitForRefresh(final AbstractCache cache) throws InterruptedException
+  {
+    for (int i = 0; i < 1000 && cache.isRefreshInProgress() == true; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(cache.isRefreshInProgress() == false);
+  }
+}
@@ -0,0 +1,145 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class EntityCounterTest
+{
+  private static class TestCounter extends EntityCounter
+  {
+    Map<Integer, Integer> dataBase = new HashMap<Integer, Integer>();
+
+    Runnable duringLoad;
+
+    TestCounter()
+    {
+      super("test", AbstractCache.TICKS_PER_HOUR);
+    }
+
+    @Override
+    protected Map<Integer, Integer> load()
+    {
+      final Map<Integer, Integer> result = new HashMap<Integer, Integer>(dataBase);
+      if (duringLoad != null) {
+        duringLoad.run();
+      }
+      return result;
+    }
+  }
+
+  @Test
+  public void update()
+  {
+    final TestCounter counter = new TestCounter();
+    counter.resync();
+    assertEquals(0, counter.getCount(1));
+    counter.update(10, true, 1);
+    counter.update(11, true, 1);
+    counter.update(12, true, null);
+    assertEquals(2, counter.getCount(1));
+    assertEquals(1, counter.getCount(null));
+    counter.update(10, true, 1); // Unchanged.
+    assertEquals(2, counter.getCount(1));
+    counter.update(10, true, 2); // Assignee changed.
+    assertEquals(1, counter.getCount(1));
+    assertEquals(1, counter.getCount(2));
+    counter.update(11, false, 1); // Closed.
+    assertEquals(0, counter.getCount(1));
+    counter.remove(12);
+    counter.remove(13); // Unknown.
+    assertEquals(0, counter.getCount(null));
+    assertEquals(1, counter.getCount(2));
+  }
+
+  @Test
+  public void resync()
+  {
+    final TestCounter counter = new TestCounter();
+    counter.dataBase.put(1, 5);
+    counter.dataBase.put(2, 5);
+    counter.dataBase.put(3, null);
+    counter.resync();
+    assertEquals(2, counter.getCount(5));
+    assertEquals(1, counter.getCount(null));
+    // Modifications while loading are applied after the resync:
+    counter.duringLoad = new Runnable() {
+      public void run()
+      {
+        counter.update(4, true, 5);
+        counter.update(1, false, 5);
+      }
+    };
+    counter.resync();
+    assertEquals(2, counter.getCount(5));
+    counter.duringLoad = null;
+    counter.dataBase.remove(1);
+    counter.dataBase.put(4, 5);
+    counter.resync();
+    assertEquals(2, counter.getCount(5));
+    assertEquals(1, counter.getCount(null));
+  }
+
+  @Test
+  public void updateInsideTransaction()
+  {
+    final TestCounter counter = new TestCounter();
+    counter.resync();
+    counter.update(1, true, 5);
+    // Committed transaction:
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      counter.update(2, true, 5);
+      counter.update(1, false, 5);
+      assertEquals("Updates should be applied after commit.", 1, counter.getCount(5));
+      completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals(1, counter.getCount(5));
+    // Rolled back transaction:
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      counter.update(3, true, 5);
+      completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals("Rolled back updates shouldn't be counted.", 1, counter.getCount(5));
+  }
+
+  private void completeTransaction(final int status)
+  {
+    for (final TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+      synchronization.afterCompletion(status);
+    }
+  }
+}
@@ -24,7 +24,11 @@
 package org.projectforge.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
@@ -32,6 +36,7 @@ import org.projectforge.task.TaskDO;
 import org.projectforge.user.GroupDO;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserPrefDO;
+import org.springframework.orm.hibernate3.HibernateTemplate;
 
 public class HibernateSearchDependentObjectsReindexerTest
 {
@@ -55,6 +60,119 @@ public class HibernateSearchDependentObjectsReindexerTest
     assertEntry(list.get(2), UserPrefDO.class, "user");
   }
 
+  @Test
+  public void coalescing() throws InterruptedException
+  {
+    final TestReindexer reindexer = new TestReindexer(100, false);
+    final PFUserDO user1 = createUser(1);
+    final PFUserDO user1Modified = createUser(1);
+    reindexer.reindexDependents(new HibernateTemplate(), user1);
+    reindexer.reindexDependents(new HibernateTemplate(), createUser(2));
+    reindexer.reindexDependents(new HibernateTemplate(), user1Modified);
+    assertEquals(2, reindexer.getQueueSize());
+    assertEquals(1, reindexer.getCoalescedCounter());
+    assertTrue(reindexer.processNextBatch());
+    assertEquals(1, reindexer.batches.size());
+    final List<HibernateSearchDependentObjectsReindexer.Job> batch = reindexer.batches.get(0);
+    assertEquals(2, batch.size());
+    // The queue position of the first update is kept, but the newest object is re-indexed:
+    assertSame(user1Modified, batch.get(0).obj);
+    assertEquals(2, reindexer.getProcessedCounter());
+    assertEquals(0, reindexer.getQueueSize());
+  }
+
+  @Test
+  public void batching() throws InterruptedException
+  {
+    final TestReindexer reindexer = new TestReindexer(1000, false);
+    final int size = 2 * HibernateSearchDependentObjectsReindexer.BATCH_SIZE + 20;
+    for (int i = 0; i < size; i++) {
+      reindexer.reindexDependents(new HibernateTemplate(), createUser(i));
+    }
+    while (reindexer.getQueueSize() > 0) {
+      assertTrue(reindexer.processNextBatch());
+    }
+    assertEquals(3, reindexer.batches.size());
+    assertEquals(HibernateSearchDependentObjectsReindexer.BATCH_SIZE, reindexer.batches.get(0).size());
+    assertEquals(HibernateSearchDependentObjectsReindexer.BATCH_SIZE, reindexer.batches.get(1).size());
+    assertEquals(20, reindexer.batches.get(2).size());
+    assertEquals(size, reindexer.getProcessedCounter());
+  }
+
+  @Test
+  public void synchronousReindexingIfQueueIsFull()
+  {
+    final TestReindexer reindexer = new TestReindexer(10, false);
+    for (int i = 0; i < 12; i++) {
+      reindexer.reindexDependents(new HibernateTemplate(), createUser(i));
+    }
+    assertEquals(10, reindexer.getQueueSize());
+    assertEquals(2, reindexer.getSynchronousCounter());
+    assertEquals(2, reindexer.batches.size());
+    assertEquals(11, reindexer.batches.get(1).get(0).obj.getId());
+    assertSame(Thread.currentThread(), reindexer.threads.get(0));
+  }
+
+  @Test
+  public void shutdown()
+  {
+    final TestReindexer reindexer = new TestReindexer(100, true);
+    for (int i = 0; i < 5; i++) {
+      reindexer.reindexDependents(new HibernateTemplate(), createUser(i));
+    }
+    reindexer.shutdown();
+    // All queued jobs are processed before shutdown:
+    assertEquals(0, reindexer.getQueueSize());
+    assertEquals(5, reindexer.getProcessedCounter());
+    // Ignored after shutdown:
+    reindexer.reindexDependents(new HibernateTemplate(), createUser(42));
+    assertEquals(0, reindexer.getQueueSize());
+    assertEquals(5, reindexer.getProcessedCounter());
+  }
+
+  private PFUserDO createUser(final int id)
+  {
+    final PFUserDO user = new PFUserDO();
+    user.setId(id);
+    return user;
+  }
+
+  /**
+   * Records the batches instead of re-indexing (no data base needed). The workers are only started if wanted, otherwise the test processes
+   * the queue.
+   */
+  private static class TestReindexer extends HibernateSearchDependentObjectsReindexer
+  {
+    final List<List<Job>> batches = Collections.synchronizedList(new ArrayList<List<Job>>());
+
+    final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+    private final boolean startWorkers;
+
+    TestReindexer(final int maxQueueSize, final boolean startWorkers)
+    {
+      super(maxQueueSize);
+      this.startWorkers = startWorkers;
+      map.clear();
+      register(TaskDO.class); // Dependents of PFUserDO.
+    }
+
+    @Override
+    synchronized void startWorkers()
+    {
+      if (startWorkers == true) {
+        super.startWorkers();
+      }
+    }
+
+    @Override
+    void processJobs(final List<Job> jobs)
+    {
+      batches.add(new ArrayList<Job>(jobs));
+      threads.add(Thread.currentThread());
+    }
+  }
+
   private void assertEntry(final HibernateSearchDependentObjectsReindexer.Entry entry, final Class< ? > clazz, final String fieldName)
   {
     assertEquals(fieldName, entry.fieldName);
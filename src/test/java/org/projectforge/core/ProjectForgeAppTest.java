@@ -0,0 +1,132 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.projectforge.common.AbstractCache;
+
+public class ProjectForgeAppTest
+{
+  private static class BlockingCache extends AbstractCache
+  {
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private volatile String threadName;
+
+    @Override
+    public void warmUp()
+    {
+      threadName = Thread.currentThread().getName();
+      started.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (final InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    protected void refresh()
+    {
+    }
+  }
+
+  private static class FailingCache extends AbstractCache
+  {
+    private volatile String threadName;
+
+    @Override
+    public void warmUp()
+    {
+      threadName = Thread.currentThread().getName();
+      throw new IllegalStateException("Test exception: warm-up failed.");
+    }
+
+    @Override
+    protected void refresh()
+    {
+    }
+  }
+
+  @Test
+  public void upAndRunningAfterWarmUp() throws InterruptedException
+  {
+    final BlockingCache blockingCache = new BlockingCache();
+    final FailingCache failingCache = new FailingCache();
+    final ProjectForgeApp app = new ProjectForgeApp() {
+      @Override
+      AbstractCache[] getCachesToWarmUp()
+      {
+        return new AbstractCache[] { blockingCache, null, failingCache};
+      }
+    };
+    app.startCacheWarmUp();
+    final Thread thread = new Thread() {
+      @Override
+      public void run()
+      {
+        app.setUpAndRunningAfterWarmUp();
+      }
+    };
+    thread.start();
+    assertTrue(blockingCache.started.await(10, TimeUnit.SECONDS));
+    assertEquals(ProjectForgeApp.WARM_UP_THREAD_NAME_PREFIX + "BlockingCache", blockingCache.threadName);
+    thread.join(200);
+    assertTrue("Waiting for the warm-up of the blocking cache.", thread.isAlive() == true);
+    assertFalse(app.isUpAndRunning());
+    blockingCache.release.countDown();
+    thread.join(10000);
+    assertFalse(thread.isAlive());
+    // The failing cache doesn't block the start-up:
+    assertTrue(app.isUpAndRunning());
+    assertEquals(ProjectForgeApp.WARM_UP_THREAD_NAME_PREFIX + "FailingCache", failingCache.threadName);
+    final String report = app.getStartupTimer().getReport();
+    assertTrue(report, report.contains("warmUp.BlockingCache") == true);
+    assertTrue(report, report.contains("warmUp.FailingCache") == true);
+  }
+
+  @Test
+  public void upAndRunningWithoutCaches()
+  {
+    final ProjectForgeApp app = new ProjectForgeApp() {
+      @Override
+      AbstractCache[] getCachesToWarmUp()
+      {
+        return new AbstractCache[0];
+      }
+    };
+    assertFalse(app.isUpAndRunning());
+    app.setUpAndRunningAfterWarmUp();
+    assertTrue(app.isUpAndRunning());
+  }
+}
@@ -0,0 +1,210 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.hibernate.Session;
+import org.junit.Test;
+import org.projectforge.fibu.RechnungDO;
+import org.projectforge.fibu.RechnungDao;
+import org.projectforge.task.TaskDO;
+import org.projectforge.test.TestBase;
+import org.projectforge.timesheet.TimesheetDO;
+import org.projectforge.timesheet.TimesheetDao;
+import org.projectforge.user.PFUserContext;
+import org.projectforge.user.PFUserDO;
+import org.springframework.orm.hibernate3.SessionFactoryUtils;
+import org.springframework.orm.hibernate3.SessionHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class SearchServiceTest extends TestBase
+{
+  private static boolean initialized = false;
+
+  private SearchService searchService;
+
+  private TimesheetDao timesheetDao;
+
+  private RechnungDao rechnungDao;
+
+  public void setSearchService(final SearchService searchService)
+  {
+    this.searchService = searchService;
+  }
+
+  public void setTimesheetDao(final TimesheetDao timesheetDao)
+  {
+    this.timesheetDao = timesheetDao;
+  }
+
+  public void setRechnungDao(final RechnungDao rechnungDao)
+  {
+    this.rechnungDao = rechnungDao;
+  }
+
+  private synchronized void initialize() // @BeforeClass not possible because DAOs are needed.
+  {
+    if (initialized == true) {
+      return;
+    }
+    initialized = true;
+    logon(getUser(TEST_ADMIN_USER));
+    final TaskDO task = initTestDB.addTask("sst", "root");
+    final PFUserDO user1 = initTestDB.addUser("sst-user1");
+    final PFUserDO user2 = initTestDB.addUser("sst-user2");
+    final long start = 1000L * 3600 * 24 * 365; // 1971
+    for (int i = 0; i < 3; i++) {
+      final PFUserDO user = i < 2 ? user1 : user2;
+      initTestDB.addTimesheet(user, task, new Timestamp(start + i * 3600000L), new Timestamp(start + (i + 1) * 3600000L), "sst");
+    }
+  }
+
+  @Test
+  public void accessRestrictedResults() throws TimeoutException
+  {
+    initialize();
+    // The time sheets of the search page are the own time sheets of the user of the caller (not of the thread of the pool):
+    final PFUserDO user1 = logon("sst-user1");
+    List<SearchResultData> result = searchService.getResult(searchService.submit(createFilter(), TimesheetDO.class, timesheetDao));
+    assertEquals(2, result.size());
+    for (final SearchResultData data : result) {
+      assertEquals(user1.getId(), ((TimesheetDO) data.getDataObject()).getUserId());
+    }
+    assertSame("User of the caller expected.", user1, PFUserContext.getUser());
+    final PFUserDO user2 = logon("sst-user2");
+    result = searchService.getResult(searchService.submit(createFilter(), TimesheetDO.class, timesheetDao));
+    assertEquals(1, result.size());
+    assertEquals(user2.getId(), ((TimesheetDO) result.get(0).getDataObject()).getUserId());
+
+    // No select access to invoices at all:
+    logon(TEST_USER);
+    assertNull(searchService.getResult(searchService.submit(createFilter(), RechnungDO.class, rechnungDao)));
+    logon(TEST_FINANCE_USER);
+    assertNotNull(searchService.getResult(searchService.submit(createFilter(), RechnungDO.class, rechnungDao)));
+  }
+
+  @Test
+  public void reattachResults() throws TimeoutException
+  {
+    initialize();
+    logon("sst-user1");
+    final Session session = SessionFactoryUtils.getSession(hibernate.getSessionFactory(), true);
+    TransactionSynchronizationManager.bindResource(hibernate.getSessionFactory(), new SessionHolder(session));
+    try {
+      List<SearchResultData> result = searchService.getResult(searchService.submit(createFilter(), TimesheetDO.class, timesheetDao));
+      assertEquals(2, result.size());
+      for (final SearchResultData data : result) {
+        assertTrue("Result should be attached to the session of the caller.", session.contains(data.getDataObject()) == true);
+      }
+      // Objects already part of the caller's session are replaced by the persistent ones:
+      session.clear();
+      final Object persistentObj = session.get(TimesheetDO.class, result.get(0).getDataObject().getId());
+      result = searchService.getResult(searchService.submit(createFilter(), TimesheetDO.class, timesheetDao));
+      boolean found = false;
+      for (final SearchResultData data : result) {
+        assertTrue(session.contains(data.getDataObject()) == true);
+        if (data.getDataObject() == persistentObj) {
+          found = true;
+        }
+      }
+      assertTrue("Persistent object of the caller's session expected.", found);
+    } finally {
+      TransactionSynchronizationManager.unbindResource(hibernate.getSessionFactory());
+      SessionFactoryUtils.closeSession(session);
+    }
+  }
+
+  @Test
+  public void callerRunsIfPoolIsExhausted() throws Exception
+  {
+    final PFUserDO user = logon(TEST_USER);
+    final CountDownLatch latch = new CountDownLatch(1);
+    final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+    final List<PFUserDO> users = Collections.synchronizedList(new ArrayList<PFUserDO>());
+    final SearchService service = new SearchService();
+    service.setSessionFactory(hibernate.getSessionFactory());
+    service.setNumberOfThreads(1);
+    service.setMaxQueueSize(1);
+    service.setSearchDao(new SearchDao() {
+      @SuppressWarnings("rawtypes")
+      @Override
+      public List<SearchResultData> getEntries(final BaseSearchFilter filter, final Class clazz, final BaseDao baseDao)
+      {
+        threads.add(Thread.currentThread().getName());
+        users.add(PFUserContext.getUser());
+        if (Thread.currentThread().getName().startsWith("SearchService-") == true) {
+          try {
+            latch.await(10, TimeUnit.SECONDS);
+          } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return new ArrayList<SearchResultData>();
+      }
+    });
+    try {
+      final Future<List<SearchResultData>> running = service.submit(createFilter(), TimesheetDO.class, timesheetDao);
+      final Future<List<SearchResultData>> queued = service.submit(createFilter(), TimesheetDO.class, timesheetDao);
+      // Pool thread is busy and queue is full, so the search is done by the caller:
+      final Future<List<SearchResultData>> callerRun = service.submit(createFilter(), TimesheetDO.class, timesheetDao);
+      assertTrue(callerRun.isDone() == true);
+      assertFalse(queued.isDone() == true);
+      assertTrue(threads.contains(Thread.currentThread().getName()) == true);
+      assertSame("The caller should keep its user.", user, PFUserContext.getUser());
+      latch.countDown();
+      assertNotNull(service.getResult(running));
+      assertNotNull(service.getResult(queued));
+      assertNotNull(service.getResult(callerRun));
+      assertEquals(3, threads.size());
+      for (final PFUserDO searchUser : users) {
+        assertSame(user, searchUser);
+      }
+    } finally {
+      latch.countDown();
+      service.shutdown();
+    }
+  }
+
+  private BaseSearchFilter createFilter()
+  {
+    final BaseSearchFilter filter = new BaseSearchFilter();
+    filter.setMaxRows(10);
+    return filter;
+  }
+}
@@ -24,15 +24,27 @@
 package org.projectforge.database;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.zip.GZIPInputStream;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.projectforge.database.xstream.XStreamSavingConverter;
 import org.projectforge.plugins.teamcal.TeamCalTestHelper;
+import org.projectforge.scripting.ScriptDO;
 import org.projectforge.test.TestBase;
 import org.projectforge.user.PFUserDO;
 import org.projectforge.user.UserGroupCache;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 public class XmlDumpTestFork extends TestBase
 {
@@ -44,6 +56,8 @@ public class XmlDumpTestFork extends TestBase
 
   private XmlDump xmlDump;
 
+  private TransactionTemplate txTemplate;
+
   public void setInitDatabaseDao(final InitDatabaseDao initDatabaseDao)
   {
     this.initDatabaseDao = initDatabaseDao;
@@ -59,6 +73,11 @@ public class XmlDumpTestFork extends TestBase
     this.xmlDump = xmlDump;
   }
 
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
   @BeforeClass
   public static void setUp() throws Exception
   {
@@ -67,12 +86,14 @@ public class XmlDumpTestFork extends TestBase
   }
 
   @Test
-  public void verifyDump()
+  public void verifyDump() throws IOException
   {
+    clearDatabase();
     userGroupCache.setExpired(); // Force reload (because it's may be expired due to previous tests).
     assertTrue(initDatabaseDao.isEmpty());
-    final XStreamSavingConverter converter = xmlDump
-        .restoreDatabaseFromClasspathResource(InitDatabaseDao.TEST_DATA_BASE_DUMP_FILE, "utf-8");
+    // Small batches for testing the references to objects of previous batches:
+    final XStreamSavingConverter converter = xmlDump.restoreDatabase(new InputStreamReader(new GZIPInputStream(new ClassPathResource(
+        InitDatabaseDao.TEST_DATA_BASE_DUMP_FILE).getInputStream()), "utf-8"), 10, true);
     final int counter = xmlDump.verifyDump(converter);
     assertTrue("Import was not successful.", counter > 0);
     assertTrue("Minimum expected number of tested object to low: " + counter + " < 50.", counter >= 50);
@@ -82,5 +103,70 @@ public class XmlDumpTestFork extends TestBase
     log.info("****** { The following import error from XmlDump are OK.");
     assertEquals("Error should be detected.", -counter, xmlDump.verifyDump(converter));
     log.info("****** } The previous import error from XmlDump are OK.");
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    xmlDump.dumpDatabase("dump.xml", out);
+    final String xml = out.toString("utf-8");
+    assertTrue("Root element of the streamed dump expected.", xml.contains("<list id=\"1\" referenceScope=\"element\">") == true);
+    assertTrue("Modified user expected in dump.", xml.contains("<username>changed</username>") == true);
+    assertTrue(xml.trim().endsWith("</list>") == true);
+  }
+
+  /**
+   * Restores a streamed dump: the entities are referenced by their ids over the batches of the dump and of the restore.
+   */
+  @Test
+  public void restoreStreamedDump() throws IOException
+  {
+    clearDatabase();
+    userGroupCache.setExpired();
+    assertTrue(initDatabaseDao.isEmpty());
+    XStreamSavingConverter converter = xmlDump.restoreDatabase(new InputStreamReader(new GZIPInputStream(new ClassPathResource(
+        InitDatabaseDao.TEST_DATA_BASE_DUMP_FILE).getInputStream()), "utf-8"), 10, true);
+    final int counter = xmlDump.verifyDump(converter);
+    assertTrue("Minimum expected number of tested object to low: " + counter + " < 50.", counter >= 50);
+    final PFUserDO user = userDao.internalLoadAll().get(0);
+    user.setUsername("streamed");
+    userDao.internalUpdate(user);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    xmlDump.dumpDatabase("dump.xml", out);
+    final String xml = out.toString("utf-8");
+    assertTrue("Entities should be referenced by their ids.", xml.contains(" reference=\"e") == true);
+
+    clearDatabase();
+    userGroupCache.setExpired();
+    assertTrue(initDatabaseDao.isEmpty());
+    converter = xmlDump.restoreDatabase(new StringReader(xml), 10, true);
+    final int restored = xmlDump.verifyDump(converter);
+    // The streamed dump contains the history entries of the modified user, too:
+    assertTrue("All objects of the streamed dump should be restored: " + restored + " < " + counter + ".", restored >= counter);
+    assertNotNull("Modified user expected in restored data-base.", userDao.getInternalByName("streamed"));
+  }
+
+  /**
+   * The upload of the set-up page restores without retaining the restored objects.
+   */
+  @Test
+  public void verifyDumpWithoutRetainedObjects() throws IOException
+  {
+    clearDatabase();
+    userGroupCache.setExpired();
+    assertTrue(initDatabaseDao.isEmpty());
+    final XStreamSavingConverter converter = xmlDump.restoreDatabase(new InputStreamReader(new GZIPInputStream(new ClassPathResource(
+        InitDatabaseDao.TEST_DATA_BASE_DUMP_FILE).getInputStream()), "utf-8"));
+    assertTrue(converter.getAllObjects().isEmpty());
+    final int counter = xmlDump.verifyDump(converter);
+    assertTrue("Minimum expected number of tested object to low: " + counter + " < 50.", counter >= 50);
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        hibernate.bulkUpdate("delete from " + ScriptDO.class.getName());
+        return null;
+      }
+    });
+    log.info("****** { The following import error from XmlDump are OK.");
+    assertEquals("Missing objects should be detected.", -counter, xmlDump.verifyDump(converter));
+    log.info("****** } The previous import error from XmlDump are OK.");
   }
 }
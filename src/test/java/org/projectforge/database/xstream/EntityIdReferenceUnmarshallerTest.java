@@ -0,0 +1,126 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.database.xstream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+
+import org.hibernate.Session;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.common.XStreamHelper;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.GroupDO;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+public class EntityIdReferenceUnmarshallerTest extends TestBase
+{
+  private static final int ELEMENTS = 1000;
+
+  private static final int BATCH_SIZE = 100;
+
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    preInit();
+    init(false);
+  }
+
+  @Test
+  public void elementScopedReferences()
+  {
+    final EntityIdReferenceUnmarshaller unmarshaller = createUnmarshaller(true);
+    final Session session = hibernate.getSessionFactory().openSession();
+    try {
+      for (int i = 1; i <= ELEMENTS; i++) {
+        unmarshaller.nextListElement();
+        // Only the group entities stay in the id map, their time stamps and sets are dropped after each element:
+        assertEquals(i, unmarshaller.getSize());
+        if (i % BATCH_SIZE == 0) {
+          unmarshaller.compact(session);
+          assertEquals(i, unmarshaller.getSize());
+        }
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void legacyReferences()
+  {
+    final EntityIdReferenceUnmarshaller unmarshaller = createUnmarshaller(false);
+    final Session session = hibernate.getSessionFactory().openSession();
+    try {
+      GroupDO first = null;
+      for (int i = 1; i <= ELEMENTS; i++) {
+        final GroupDO group = (GroupDO) unmarshaller.nextListElement();
+        if (first == null) {
+          first = group;
+        } else {
+          // Time stamps may be referenced over all elements by lists written by XStream:
+          assertSame(first.getCreated(), group.getCreated());
+        }
+        if (i % BATCH_SIZE == 0) {
+          // The sets are dropped by compact, the group entities and the first time stamp are kept:
+          unmarshaller.compact(session);
+          assertEquals(i + 1, unmarshaller.getSize());
+        }
+      }
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Every element is a group with a time stamp and an empty set. In the legacy format all groups reference the time stamp of the first
+   * one.
+   */
+  private EntityIdReferenceUnmarshaller createUnmarshaller(final boolean elementScoped)
+  {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("<list id=\"1\"").append(elementScoped == true ? " referenceScope=\"element\"" : "").append(">");
+    int id = 2;
+    for (int i = 1; i <= ELEMENTS; i++) {
+      sb.append("<org.projectforge.user.GroupDO id=\"").append(id++).append("\">");
+      if (elementScoped == true || i == 1) {
+        sb.append("<created class=\"sql-timestamp\" id=\"").append(id++).append("\">2013-04-07 15:49:57.114</created>");
+      } else {
+        sb.append("<created class=\"sql-timestamp\" reference=\"3\"/>");
+      }
+      sb.append("<id>").append(i).append("</id><name>group ").append(i).append("</name>");
+      sb.append("<assignedUsers class=\"java.util.HashSet\" id=\"").append(id++).append("\"/>");
+      sb.append("</org.projectforge.user.GroupDO>");
+    }
+    sb.append("</list>");
+    final XStream xstream = XStreamHelper.createXStream();
+    return new EntityIdReferenceUnmarshaller(new XppDriver().createReader(new StringReader(sb.toString())), xstream.getConverterLookup(),
+        xstream.getMapper());
+  }
+}
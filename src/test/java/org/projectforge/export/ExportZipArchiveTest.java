@@ -0,0 +1,110 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.core.ConfigXmlTest;
+import org.projectforge.excel.ExportSheet;
+import org.projectforge.excel.ExportWorkbook;
+import org.projectforge.test.TestConfiguration;
+
+public class ExportZipArchiveTest
+{
+  @BeforeClass
+  public static void setUp()
+  {
+    ConfigXmlTest.createTestConfiguration();
+    TestConfiguration.initAsTestConfiguration();
+  }
+
+  @Test
+  public void writeArchive() throws IOException
+  {
+    final List<String> written = new ArrayList<String>();
+    final ExportWorkbook workbook = new ExportWorkbook();
+    final ExportSheet sheet = workbook.addSheet("Test");
+    sheet.addRow().setValues("Name", "Value");
+    sheet.addRow().setValues("one", 1);
+    final ExportZipArchive archive = new ExportZipArchive("test");
+    archive.add("workbook.xls", workbook);
+    archive.add("first.txt", new ExportWriter() {
+      @Override
+      public void write(final OutputStream out) throws IOException
+      {
+        written.add("first.txt");
+        out.write("First entry".getBytes("UTF-8"));
+        out.close(); // Must not close the zip stream.
+      }
+    });
+    archive.add("second.txt", new ExportWriter() {
+      @Override
+      public void write(final OutputStream out) throws IOException
+      {
+        written.add("second.txt");
+        for (int i = 0; i < 100000; i++) {
+          out.write("Second entry\n".getBytes("UTF-8"));
+        }
+      }
+    });
+    assertTrue("Writers should be called on demand.", written.isEmpty());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    archive.write(out);
+    assertEquals(2, written.size());
+    assertEquals("first.txt", written.get(0));
+    assertEquals("second.txt", written.get(1));
+
+    final ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+    try {
+      assertEquals("test/", zipIn.getNextEntry().getName());
+      ZipEntry entry = zipIn.getNextEntry();
+      assertEquals("test/workbook.xls", entry.getName());
+      final byte[] xls = IOUtils.toByteArray(zipIn);
+      assertTrue(xls.length > 0);
+      entry = zipIn.getNextEntry();
+      assertEquals("test/first.txt", entry.getName());
+      assertEquals("First entry", new String(IOUtils.toByteArray(zipIn), "UTF-8"));
+      entry = zipIn.getNextEntry();
+      assertEquals("test/second.txt", entry.getName());
+      assertEquals(100000 * "Second entry\n".length(), IOUtils.toByteArray(zipIn).length);
+      assertEquals(null, zipIn.getNextEntry());
+    } finally {
+      IOUtils.closeQuietly(zipIn);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import static org.junit.Assert.assertEquals;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.projectforge.fibu.KontoDO;
@@ -64,6 +65,57 @@ public class BusinessAssessmentTest
     assertEquals(new BigDecimal("0.68"), bwa.getRow("relativePerformance").getAmount()); // profit / revenue
   }
 
+  @Test
+  public void testAccountNumberIndex()
+  {
+    final BusinessAssessmentConfig bwaConfig = BusinessAssessmentConfigTest.getBusinessAssessmentConfig();
+    final AccountNumberIndex index = bwaConfig.getAccountNumberIndex();
+    final BusinessAssessment bwa = new BusinessAssessment(bwaConfig);
+    for (int accountNumber = 0; accountNumber < 10000; accountNumber++) {
+      int expected = -1;
+      for (int i = 0; i < bwa.getRows().size(); i++) {
+        if (bwa.getRows().get(i).doesMatch(accountNumber) == true) {
+          expected = i;
+          break;
+        }
+      }
+      assertEquals("Account number " + accountNumber, expected, index.getRowIndex(accountNumber));
+    }
+  }
+
+  @Test
+  public void testCalculator()
+  {
+    final BusinessAssessmentConfig bwaConfig = BusinessAssessmentConfigTest.getBusinessAssessmentConfig();
+    final List<BuchungssatzDO> records = new ArrayList<BuchungssatzDO>();
+    for (int i = 0; i < 5000; i++) {
+      final BuchungssatzDO record = createRecord(i % 2 == 0 ? 1.01 : -0.5, i % 2 == 0 ? 4000 + i % 800 : 6740);
+      record.setYear(2013 + i % 2);
+      record.setMonth(i % 12);
+      records.add(record);
+    }
+    final Map<Integer, BusinessAssessment> single = new BusinessAssessmentCalculator<Integer>(bwaConfig,
+        BusinessAssessmentCalculator.BY_MONTH).setNumberOfThreads(1).calculate(records.iterator());
+    final Map<Integer, BusinessAssessment> parallel = new BusinessAssessmentCalculator<Integer>(bwaConfig,
+        BusinessAssessmentCalculator.BY_MONTH).setNumberOfThreads(4).calculate(records.iterator());
+    assertEquals(12, single.size());
+    assertEquals(single.keySet(), parallel.keySet());
+    for (final Map.Entry<Integer, BusinessAssessment> entry : single.entrySet()) {
+      final BusinessAssessment other = parallel.get(entry.getKey());
+      assertEquals(entry.getValue().getCounter(), other.getCounter());
+      assertEquals(0, entry.getValue().getRow("umsatzErloese").getAmount().compareTo(other.getRow("umsatzErloese").getAmount()));
+      assertEquals(0, entry.getValue().getRow("1380").getAmount().compareTo(other.getRow("1380").getAmount()));
+    }
+    final List<BuchungssatzDO> list = new ArrayList<BuchungssatzDO>();
+    for (final BuchungssatzDO record : records) {
+      if (record.getYear() == 2014 && record.getMonth() == 1) {
+        list.add(record);
+      }
+    }
+    final BusinessAssessment bwa = new BusinessAssessment(bwaConfig, list);
+    assertEquals(0, bwa.getRow("1380").getAmount().compareTo(parallel.get(201401).getRow("1380").getAmount()));
+  }
+
   private BuchungssatzDO createRecord(final double amount, final int accountNumber)
   {
     final BuchungssatzDO record = new BuchungssatzDO();
@@ -0,0 +1,110 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.fibu.kost;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.projectforge.fibu.ProjektDO;
+
+public class Kost2IndexTest
+{
+  @Test
+  public void testIndexes()
+  {
+    final ProjektDO projekt1 = createProjekt(1);
+    final ProjektDO projekt2 = createProjekt(2);
+    final List<Kost2DO> list = new ArrayList<Kost2DO>();
+    list.add(createKost2(3, 5, 123, 1, 10, projekt1));
+    list.add(createKost2(1, 5, 123, 1, 11, projekt1));
+    list.add(createKost2(2, 5, 123, 2, 10, projekt2));
+    list.add(createKost2(4, 4, 123, 1, 10, null));
+    final Kost2Index index = new Kost2Index(list);
+    Assert.assertEquals(4, index.size());
+    Assert.assertEquals(Integer.valueOf(1), index.get(1).getId());
+    Assert.assertNull(index.get(42));
+    Assert.assertEquals(Integer.valueOf(3), index.get(5, 123, 1, 10).getId());
+    Assert.assertEquals(Integer.valueOf(4), index.get(4, 123, 1, 10).getId());
+    Assert.assertNull(index.get(5, 123, 1, 12));
+    assertIds(index.getByPrefix(5, 123, 1), 1, 3);
+    assertIds(index.getByPrefix(5, 124, 1));
+    assertIds(index.getByProjekt(1), 1, 3);
+    assertIds(index.getByProjekt(2), 2);
+    assertIds(index.getByProjekt(null));
+  }
+
+  @Test
+  public void testUpdate()
+  {
+    final ProjektDO projekt1 = createProjekt(1);
+    final ProjektDO projekt2 = createProjekt(2);
+    final List<Kost2DO> list = new ArrayList<Kost2DO>();
+    list.add(createKost2(1, 5, 123, 1, 10, projekt1));
+    list.add(createKost2(2, 5, 123, 1, 11, projekt1));
+    final Kost2Index index = new Kost2Index(list);
+    final List<Kost2DO> byPrefix = index.getByPrefix(5, 123, 1);
+    // Moved to another number and projekt:
+    index.update(createKost2(2, 5, 123, 2, 11, projekt2));
+    Assert.assertNull(index.get(5, 123, 1, 11));
+    Assert.assertEquals(Integer.valueOf(2), index.get(5, 123, 2, 11).getId());
+    assertIds(index.getByPrefix(5, 123, 1), 1);
+    assertIds(index.getByPrefix(5, 123, 2), 2);
+    assertIds(index.getByProjekt(1), 1);
+    assertIds(index.getByProjekt(2), 2);
+    assertIds(byPrefix, 1, 2); // Lists already returned aren't modified.
+    // New entry:
+    index.update(createKost2(0, 5, 123, 1, 12, projekt1));
+    Assert.assertEquals(3, index.size());
+    assertIds(index.getByPrefix(5, 123, 1), 0, 1);
+    assertIds(index.getByProjekt(1), 0, 1);
+  }
+
+  private void assertIds(final List<Kost2DO> list, final int... ids)
+  {
+    Assert.assertEquals(ids.length, list.size());
+    for (int i = 0; i < ids.length; i++) {
+      Assert.assertEquals(Integer.valueOf(ids[i]), list.get(i).getId());
+    }
+  }
+
+  private ProjektDO createProjekt(final int id)
+  {
+    final ProjektDO projekt = new ProjektDO();
+    projekt.setId(id);
+    return projekt;
+  }
+
+  private Kost2DO createKost2(final int id, final int nummernkreis, final int bereich, final int teilbereich, final int kost2ArtId,
+      final ProjektDO projekt)
+  {
+    final Kost2ArtDO kost2Art = new Kost2ArtDO();
+    kost2Art.setId(kost2ArtId);
+    final Kost2DO kost2 = new Kost2DO().setNummernkreis(nummernkreis).setBereich(bereich).setTeilbereich(teilbereich).setKost2Art(kost2Art)
+        .setProjekt(projekt);
+    kost2.setId(id);
+    return kost2;
+  }
+}
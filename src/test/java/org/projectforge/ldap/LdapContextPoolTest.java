@@ -0,0 +1,182 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.ldap.LdapContext;
+
+import org.junit.Test;
+
+public class LdapContextPoolTest
+{
+  /**
+   * In-process stand-in for a LDAP connection: counts the close calls and fails on validation if marked as broken.
+   */
+  private static class ContextStandIn implements InvocationHandler
+  {
+    boolean broken;
+
+    int closed;
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+    {
+      if ("close".equals(method.getName()) == true) {
+        closed++;
+        return null;
+      }
+      if ("getAttributes".equals(method.getName()) == true && broken == true) {
+        throw new CommunicationException("Connection closed by stand-in.");
+      }
+      if ("hashCode".equals(method.getName()) == true) {
+        return System.identityHashCode(proxy);
+      }
+      if ("equals".equals(method.getName()) == true) {
+        return proxy == args[0];
+      }
+      return null;
+    }
+  }
+
+  private static LdapContext getContext(final ContextStandIn standIn)
+  {
+    return (LdapContext) Proxy.newProxyInstance(LdapContextPoolTest.class.getClassLoader(), new Class< ? >[] { LdapContext.class},
+        standIn);
+  }
+
+  private static ContextStandIn getStandIn(final LdapContext ctx)
+  {
+    return (ContextStandIn) Proxy.getInvocationHandler(ctx);
+  }
+
+  private static class TestPool extends LdapContextPool
+  {
+    final AtomicInteger created = new AtomicInteger();
+
+    TestPool(final int maxSize, final long idleTimeout)
+    {
+      super(maxSize, idleTimeout);
+    }
+
+    @Override
+    protected LdapContext create()
+    {
+      created.incrementAndGet();
+      return getContext(new ContextStandIn());
+    }
+  }
+
+  @Test
+  public void reuse() throws Exception
+  {
+    final TestPool pool = new TestPool(2, 60000);
+    final LdapContext ctx1 = pool.borrow();
+    final LdapContext ctx2 = pool.borrow();
+    assertNotSame(ctx1, ctx2);
+    assertEquals(2, pool.getNumberOfActiveContexts());
+    pool.release(ctx1, false);
+    pool.release(ctx2, false);
+    assertEquals(0, pool.getNumberOfActiveContexts());
+    assertEquals(2, pool.getNumberOfIdleContexts());
+    for (int i = 0; i < 100; i++) {
+      final LdapContext ctx = pool.borrow();
+      assertSame("Most recently used context expected.", ctx2, ctx);
+      pool.release(ctx, false);
+    }
+    assertEquals(2, pool.created.get());
+    assertEquals(100, pool.getReusedCounter());
+  }
+
+  @Test
+  public void brokenContexts() throws Exception
+  {
+    final TestPool pool = new TestPool(2, 60000);
+    final LdapContext ctx1 = pool.borrow();
+    pool.release(ctx1, true);
+    assertEquals(1, getStandIn(ctx1).closed);
+    assertEquals(0, pool.getNumberOfIdleContexts());
+    final LdapContext ctx2 = pool.borrow();
+    assertNotSame(ctx1, ctx2);
+    pool.release(ctx2, false);
+    pool.close();
+    assertEquals(1, getStandIn(ctx2).closed);
+    assertEquals(0, pool.getNumberOfIdleContexts());
+  }
+
+  @Test
+  public void idleTimeout() throws Exception
+  {
+    final TestPool pool = new TestPool(2, 0);
+    final LdapContext ctx1 = pool.borrow();
+    pool.release(ctx1, false);
+    Thread.sleep(5);
+    final LdapContext ctx2 = pool.borrow();
+    assertNotSame("Idle context should be evicted.", ctx1, ctx2);
+    assertEquals(1, getStandIn(ctx1).closed);
+    pool.release(ctx2, false);
+  }
+
+  @Test
+  public void validation() throws Exception
+  {
+    final TestPool pool = new TestPool(2, 60000);
+    final LdapContext ctx = getContext(new ContextStandIn());
+    assertEquals(true, pool.validate(ctx));
+    getStandIn(ctx).broken = true;
+    assertEquals(false, pool.validate(ctx));
+  }
+
+  @Test
+  public void bounded() throws Exception
+  {
+    final TestPool pool = new TestPool(1, 60000);
+    final LdapContext ctx = pool.borrow();
+    final Thread thread = new Thread() {
+      @Override
+      public void run()
+      {
+        try {
+          Thread.sleep(50);
+        } catch (final InterruptedException ex) {
+          fail(ex.getMessage());
+        }
+        pool.release(ctx, false);
+      }
+    };
+    thread.start();
+    // Blocks until the other thread releases the context:
+    assertSame(ctx, pool.borrow());
+    assertEquals(1, pool.created.get());
+  }
+}
@@ -26,8 +26,15 @@ package org.projectforge.ldap;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.After;
@@ -118,6 +125,91 @@ public class LdapMasterLoginHandlerTest extends TestBase
     // Assert.assertEquals("successful", createdLdapUser.get());
   }
 
+  @Test
+  public void getLdapUserPrecedence()
+  {
+    final PFUserDO user = new PFUserDO().setUsername("kai");
+    user.setId(42);
+    final LdapUser other = createLdapUser("other", null);
+    final LdapUser byEmployeeNumber = createLdapUser("kai-old", PFUserDOConverter.buildEmployeeNumber(user));
+    final LdapUser byUid = createLdapUser("kai", null);
+    // The first matching entry wins, regardless of matching by uid or by employee number:
+    Assert.assertSame(byEmployeeNumber, getLdapUser(user, other, byEmployeeNumber, byUid));
+    Assert.assertSame(byUid, getLdapUser(user, other, byUid, byEmployeeNumber));
+    Assert.assertSame(byUid, getLdapUser(user, byUid));
+    Assert.assertSame(byEmployeeNumber, getLdapUser(user, byEmployeeNumber));
+    Assert.assertNull(getLdapUser(user, other));
+    // Duplicate uids: the first entry wins.
+    final LdapUser byUid2 = createLdapUser("kai", null);
+    Assert.assertSame(byUid, getLdapUser(user, other, byUid, byUid2));
+  }
+
+  @Test
+  public void deltaSynchronizationSelection()
+  {
+    final Date now = new Date();
+    final Date before = new Date(now.getTime() - 1000);
+    final Date after = new Date(now.getTime() + 1000);
+    // Full synchronization:
+    Assert.assertTrue(LdapMasterLoginHandler.isModifiedSince(before, null));
+    // Objects without time stamp and objects with the same time stamp are synchronized again:
+    Assert.assertTrue(LdapMasterLoginHandler.isModifiedSince(null, now));
+    Assert.assertTrue(LdapMasterLoginHandler.isModifiedSince(now, now));
+    Assert.assertTrue(LdapMasterLoginHandler.isModifiedSince(after, now));
+    Assert.assertFalse(LdapMasterLoginHandler.isModifiedSince(before, now));
+
+    final PFUserDO user1 = new PFUserDO();
+    user1.setId(1);
+    user1.setLastUpdate(before);
+    final PFUserDO user2 = new PFUserDO();
+    user2.setId(2);
+    user2.setLastUpdate(after);
+    final GroupDO group = new GroupDO();
+    group.setLastUpdate(now);
+    group.addUser(user1);
+    Assert.assertTrue(LdapMasterLoginHandler.containsUser(group, Collections.singleton(1)));
+    Assert.assertFalse(LdapMasterLoginHandler.containsUser(group, Collections.singleton(2)));
+    Assert.assertFalse(LdapMasterLoginHandler.containsUser(group, new HashSet<Integer>()));
+    Assert.assertFalse(LdapMasterLoginHandler.containsUser(new GroupDO(), Collections.singleton(1)));
+
+    final List<PFUserDO> users = new ArrayList<PFUserDO>();
+    users.add(user1);
+    users.add(user2);
+    Assert.assertEquals(after, LdapMasterLoginHandler.getMaxLastUpdate(users, Collections.singleton(group)));
+    Assert.assertEquals(now, LdapMasterLoginHandler.getMaxLastUpdate(new ArrayList<PFUserDO>(), Collections.singleton(group)));
+  }
+
+  @Test
+  public void refreshInProgressResetAfterFailures()
+  {
+    // No LDAP connector is configured, so every synchronization fails:
+    final LdapMasterLoginHandler loginHandler = new LdapMasterLoginHandler();
+    final List<PFUserDO> failingUsers = new AbstractList<PFUserDO>() {
+      @Override
+      public PFUserDO get(final int index)
+      {
+        throw new AssertionError("Simulated error.");
+      }
+
+      @Override
+      public int size()
+      {
+        return 1;
+      }
+    };
+    loginHandler.afterUserGroupCacheRefresh(failingUsers, new ArrayList<GroupDO>());
+    waitForLdapSync(loginHandler);
+    // An Error must not block further synchronizations:
+    loginHandler.afterUserGroupCacheRefresh(new ArrayList<PFUserDO>(), new ArrayList<GroupDO>());
+    Assert.assertTrue(loginHandler.isRefreshInProgress());
+    waitForLdapSync(loginHandler);
+    // A RuntimeException neither:
+    loginHandler.afterUserGroupCacheRefresh(new ArrayList<PFUserDO>(), new ArrayList<GroupDO>());
+    Assert.assertTrue(loginHandler.isRefreshInProgress());
+    waitForLdapSync(loginHandler);
+    Assert.assertEquals(0, loginHandler.getSyncCounter());
+  }
+
   @Test
   public void realTest()
   {
@@ -275,6 +367,36 @@ public class LdapMasterLoginHandlerTest extends TestBase
     }
   }
 
+  private void waitForLdapSync(final LdapMasterLoginHandler loginHandler)
+  {
+    final long timeout = System.currentTimeMillis() + 10000;
+    while (loginHandler.isRefreshInProgress() == true) {
+      Assert.assertTrue("LDAP synchronization doesn't terminate.", System.currentTimeMillis() < timeout);
+      try {
+        Thread.sleep(50);
+      } catch (final InterruptedException ex) {
+      }
+    }
+  }
+
+  private LdapUser createLdapUser(final String uid, final String employeeNumber)
+  {
+    final LdapUser ldapUser = new LdapUser();
+    ldapUser.setUid(uid);
+    ldapUser.setEmployeeNumber(employeeNumber);
+    return ldapUser;
+  }
+
+  private LdapUser getLdapUser(final PFUserDO user, final LdapUser... ldapUsers)
+  {
+    final List<LdapUser> list = new ArrayList<LdapUser>();
+    Collections.addAll(list, ldapUsers);
+    final Map<String, Integer> byUid = new HashMap<String, Integer>();
+    final Map<String, Integer> byEmployeeNumber = new HashMap<String, Integer>();
+    LdapMasterLoginHandler.buildLdapUserIndexes(list, byUid, byEmployeeNumber);
+    return LdapMasterLoginHandler.getLdapUser(list, byUid, byEmployeeNumber, user);
+  }
+
   /**
    * @param groupDao the groupDao to set
    * @return this for chaining.
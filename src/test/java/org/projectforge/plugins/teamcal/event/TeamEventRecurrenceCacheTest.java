@@ -0,0 +1,143 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.event;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.projectforge.common.DateHelper;
+import org.projectforge.core.Configuration;
+import org.projectforge.core.ConfigurationParam;
+import org.projectforge.test.AbstractTestBase;
+
+public class TeamEventRecurrenceCacheTest extends AbstractTestBase
+{
+  private static final TimeZone timeZone = DateHelper.EUROPE_BERLIN;
+
+  @BeforeClass
+  public static void setUp() throws Exception
+  {
+    preInit();
+    init(true);
+    Configuration.getInstance().forceReload();
+    Configuration.init4TestMode().put(ConfigurationParam.CALENDAR_DOMAIN, "projectforge.org");
+  }
+
+  @Test
+  public void hitsAndMisses()
+  {
+    final TeamEventRecurrenceCache cache = new TeamEventRecurrenceCache(100);
+    final TeamEventDO event = createEvent(1, "2013-10-01 11:00");
+    final Collection<TeamEvent> col = cache.getRecurrenceEvents(getDate("2013-10-20"), getDate("2013-10-29"), event, timeZone);
+    Assert.assertEquals(1, cache.getMissCounter());
+    final Collection<TeamEvent> cached = cache.getRecurrenceEvents(getDate("2013-10-20"), getDate("2013-10-29"), event, timeZone);
+    Assert.assertEquals(1, cache.getHitCounter());
+    Assert.assertFalse(col.isEmpty());
+    assertStartDates(col, cached);
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void invalidateOnlyRemovesEntriesOfGivenEvent()
+  {
+    final TeamEventRecurrenceCache cache = new TeamEventRecurrenceCache(100);
+    final TeamEventDO event1 = createEvent(1, "2013-10-01 11:00");
+    final TeamEventDO event2 = createEvent(2, "2013-10-01 14:00");
+    for (final TeamEventDO event : new TeamEventDO[] { event1, event2 }) {
+      cache.getRecurrenceEvents(getDate("2013-10-01"), getDate("2013-10-08"), event, timeZone);
+      cache.getRecurrenceEvents(getDate("2013-10-08"), getDate("2013-10-15"), event, timeZone);
+    }
+    // Modified event: the entries of the former version are still in the cache.
+    event1.setLastUpdate(new Date(event1.getLastUpdate().getTime() + 1000));
+    cache.getRecurrenceEvents(getDate("2013-10-01"), getDate("2013-10-08"), event1, timeZone);
+    Assert.assertEquals(5, cache.size());
+    Assert.assertEquals(2, cache.getIndexedEventCount());
+
+    cache.invalidate(1);
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(1, cache.getIndexedEventCount());
+    cache.invalidate(1);
+    cache.invalidate(42);
+    cache.invalidate(null);
+    Assert.assertEquals(2, cache.size());
+
+    final long hits = cache.getHitCounter();
+    cache.getRecurrenceEvents(getDate("2013-10-08"), getDate("2013-10-15"), event2, timeZone);
+    Assert.assertEquals(hits + 1, cache.getHitCounter());
+    final long misses = cache.getMissCounter();
+    cache.getRecurrenceEvents(getDate("2013-10-08"), getDate("2013-10-15"), event1, timeZone);
+    Assert.assertEquals(misses + 1, cache.getMissCounter());
+  }
+
+  @Test
+  public void evictionUpdatesIndex()
+  {
+    final TeamEventRecurrenceCache cache = new TeamEventRecurrenceCache(3);
+    for (int id = 1; id <= 5; id++) {
+      cache.getRecurrenceEvents(getDate("2013-10-01"), getDate("2013-10-08"), createEvent(id, "2013-10-01 11:00"), timeZone);
+    }
+    Assert.assertEquals(3, cache.size());
+    Assert.assertEquals(3, cache.getIndexedEventCount());
+    cache.invalidate(1); // Already evicted.
+    Assert.assertEquals(3, cache.size());
+    cache.invalidate(5);
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(2, cache.getIndexedEventCount());
+
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertEquals(0, cache.getIndexedEventCount());
+  }
+
+  private void assertStartDates(final Collection<TeamEvent> expected, final Collection<TeamEvent> actual)
+  {
+    Assert.assertEquals(expected.size(), actual.size());
+    final Iterator<TeamEvent> it = actual.iterator();
+    for (final TeamEvent event : expected) {
+      Assert.assertEquals(event.getStartDate(), it.next().getStartDate());
+    }
+  }
+
+  private TeamEventDO createEvent(final Integer id, final String startDate)
+  {
+    final Date start = DateHelper.parseIsoTimestamp(startDate + ":00.0", timeZone);
+    final TeamEventDO event = new TeamEventDO();
+    event.setId(id);
+    event.setStartDate(new Timestamp(start.getTime())).setEndDate(new Timestamp(start.getTime() + 3600000));
+    event.setRecurrenceRule("FREQ=DAILY;INTERVAL=1");
+    event.setLastUpdate(new Date(1380000000000L));
+    return event;
+  }
+
+  private Date getDate(final String date)
+  {
+    return DateHelper.parseIsoDate(date, timeZone);
+  }
+}
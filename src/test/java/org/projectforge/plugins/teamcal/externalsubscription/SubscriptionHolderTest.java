@@ -0,0 +1,83 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.plugins.teamcal.externalsubscription;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.projectforge.plugins.teamcal.event.TeamEventDO;
+
+public class SubscriptionHolderTest
+{
+  private static final long ONE_DAY = 86400000L;
+
+  @Test
+  public void testResultList()
+  {
+    final Random random = new Random(42);
+    final SubscriptionHolder holder = new SubscriptionHolder();
+    final List<TeamEventDO> all = new ArrayList<TeamEventDO>();
+    for (int i = 0; i < 500; i++) {
+      final long start = random.nextInt(1000) * ONE_DAY / 4;
+      final long end = start + random.nextInt(i % 10 == 0 ? 400 : 8) * ONE_DAY / 4;
+      final TeamEventDO event = new TeamEventDO().setStartDate(new Timestamp(start)).setEndDate(new Timestamp(end));
+      holder.add(event);
+      all.add(event);
+    }
+    holder.sort();
+    Assert.assertEquals(500, holder.size());
+    for (int i = 0; i < 100; i++) {
+      final long start = random.nextInt(1000) * ONE_DAY / 4;
+      final long end = start + random.nextInt(40) * ONE_DAY / 4;
+      final List<TeamEventDO> result = holder.getResultList(start, end, false);
+      // The holder extends the period by one day in both directions:
+      final long s = start - ONE_DAY, e = end + ONE_DAY;
+      int expected = 0;
+      for (final TeamEventDO event : all) {
+        final long es = event.getStartDate().getTime(), ee = event.getEndDate().getTime();
+        if ((es >= s && es <= e) || (ee >= s && ee <= e) || (es <= s && ee >= e)) {
+          Assert.assertTrue(result.contains(event));
+          expected++;
+        }
+      }
+      Assert.assertEquals(expected, result.size());
+    }
+  }
+
+  @Test
+  public void testModification()
+  {
+    final SubscriptionHolder holder = new SubscriptionHolder();
+    Assert.assertEquals(0, holder.getResultList(0L, ONE_DAY, false).size());
+    holder.add(new TeamEventDO().setStartDate(new Timestamp(10 * ONE_DAY)).setEndDate(new Timestamp(11 * ONE_DAY)));
+    Assert.assertEquals(1, holder.getResultList(9 * ONE_DAY, 12 * ONE_DAY, false).size());
+    Assert.assertEquals(0, holder.getResultList(20 * ONE_DAY, 21 * ONE_DAY, false).size());
+    holder.clear();
+    Assert.assertEquals(0, holder.getResultList(9 * ONE_DAY, 12 * ONE_DAY, false).size());
+  }
+}
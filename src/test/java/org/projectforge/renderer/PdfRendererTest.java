@@ -0,0 +1,95 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wicket.util.resource.AbstractResourceStreamWriter;
+import org.apache.wicket.util.resource.IResourceStream;
+import org.junit.Test;
+import org.projectforge.test.TestBase;
+
+public class PdfRendererTest extends TestBase
+{
+  private static final String STYLESHEET = "fo-styles/monthlyEmployeeReport-template-fo.xsl";
+
+  private static final String GROOVY_XML = "renderer/pdfRendererTest.xml";
+
+  private PdfRenderer pdfRenderer;
+
+  public void setPdfRenderer(final PdfRenderer pdfRenderer)
+  {
+    this.pdfRenderer = pdfRenderer;
+  }
+
+  @Test
+  public void renderPdf()
+  {
+    logon(TEST_USER);
+    final byte[] pdf = pdfRenderer.render(STYLESHEET, GROOVY_XML, createData());
+    assertPdf(pdf);
+
+    final IResourceStream resourceStream = pdfRenderer.createResourceStreamWriter(STYLESHEET, GROOVY_XML, createData());
+    assertEquals("application/pdf", resourceStream.getContentType());
+    final long length = resourceStream.length().bytes();
+    assertTrue(length > 0);
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ((AbstractResourceStreamWriter) resourceStream).write(baos);
+    assertEquals(length, baos.size());
+    assertPdf(baos.toByteArray());
+  }
+
+  @Test
+  public void renderingErrorBeforeResponse()
+  {
+    logon(TEST_USER);
+    try {
+      // The stylesheet doesn't exist, so the rendering has to fail before the resource stream is handed to the response.
+      pdfRenderer.createResourceStreamWriter("fo-styles/unknown-template-fo.xsl", GROOVY_XML, createData());
+      fail("RuntimeException expected.");
+    } catch (final RuntimeException ex) {
+      // OK
+    }
+  }
+
+  private Map<String, Object> createData()
+  {
+    final Map<String, Object> data = new HashMap<String, Object>();
+    data.put("systemDate", "2013-07-01 10:00");
+    data.put("title", "PdfRendererTest");
+    return data;
+  }
+
+  private void assertPdf(final byte[] pdf)
+  {
+    assertTrue(pdf.length > 0);
+    assertEquals("%PDF", new String(pdf, 0, 4));
+  }
+}
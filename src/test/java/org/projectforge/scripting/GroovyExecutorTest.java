@@ -0,0 +1,106 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.scripting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import groovy.text.SimpleTemplateEngine;
+import groovy.text.Template;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GroovyExecutorTest
+{
+  @Test
+  public void cachedScripts()
+  {
+    final GroovyExecutor executor = new GroovyExecutor();
+    final GroovyScriptCache cache = GroovyScriptCache.instance();
+    final String script = "return a * 2 // GroovyExecutorTest.cachedScripts";
+    final Map<String, Object> variables = new HashMap<String, Object>();
+    variables.put("a", 21);
+    assertEquals(42, executor.execute(script, variables).getResult());
+    final long hits = cache.getHitCounter();
+    variables.put("a", 5);
+    assertEquals(10, executor.execute(script, variables).getResult());
+    assertEquals(hits + 1, cache.getHitCounter());
+    final Script script1 = executor.compileGroovy(script, false);
+    final Script script2 = executor.compileGroovy(script, false);
+    assertNotSame("Every call should return a new script object.", script1, script2);
+    assertEquals(script1.getClass(), script2.getClass());
+    assertTrue(cache.getExecuteCounter() >= 2);
+  }
+
+  @Test
+  public void cachedTemplates()
+  {
+    final GroovyExecutor executor = new GroovyExecutor();
+    final GroovyScriptCache cache = GroovyScriptCache.instance();
+    final String template = "Hello $name! (GroovyExecutorTest)";
+    final Map<String, Object> variables = new HashMap<String, Object>();
+    variables.put("name", "Kai");
+    assertEquals("Hello Kai! (GroovyExecutorTest)", executor.executeTemplate(template, variables));
+    final long hits = cache.getHitCounter();
+    variables.put("name", "Horst");
+    assertEquals("Hello Horst! (GroovyExecutorTest)", executor.executeTemplate(template, variables));
+    assertEquals(hits + 1, cache.getHitCounter());
+  }
+
+  @Test
+  public void evictedClassLoadersCleared() throws Exception
+  {
+    final GroovyScriptCache cache = GroovyScriptCache.instance();
+    final Class< ? > scriptClass = cache.getScriptClass("return 1 // GroovyExecutorTest.evictedClassLoadersCleared");
+    final GroovyClassLoader scriptClassLoader = (GroovyClassLoader) scriptClass.getClassLoader().getParent();
+    assertTrue(scriptClassLoader.getLoadedClasses().length > 0);
+    final String template = "Hello $name! (GroovyExecutorTest.evictedClassLoadersCleared)";
+    final GroovyShell shell = cache.createTemplateShell();
+    final Template templateObject = new SimpleTemplateEngine(shell).createTemplate(template);
+    cache.putTemplate(template, templateObject, shell);
+    assertTrue(shell.getClassLoader().getLoadedClasses().length > 0);
+    // The cache key is the digest of the source, not the string instance:
+    assertNotNull(cache.getTemplate(new String(template)));
+    final long evictions = cache.getEvictionCounter();
+    for (int i = 0; i <= GroovyScriptCache.MAX_SIZE; i++) {
+      cache.getScriptClass("return " + i + " // GroovyExecutorTest.evictedClassLoadersCleared, eviction");
+      final String otherTemplate = "Hello " + i + " (GroovyExecutorTest.evictedClassLoadersCleared)";
+      final GroovyShell otherShell = cache.createTemplateShell();
+      cache.putTemplate(otherTemplate, new SimpleTemplateEngine(otherShell).createTemplate(otherTemplate), otherShell);
+    }
+    assertTrue(cache.getEvictionCounter() >= evictions + 2);
+    assertNull(cache.getTemplate(template));
+    assertEquals(0, scriptClassLoader.getLoadedClasses().length);
+    assertEquals(0, shell.getClassLoader().getLoadedClasses().length);
+  }
+}
@@ -0,0 +1,151 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.task;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.projectforge.access.AccessType;
+import org.projectforge.access.GroupTaskAccessDO;
+import org.projectforge.access.OperationType;
+import org.projectforge.user.GroupDO;
+
+/**
+ * Compares the effective permissions (bit masks) of the task nodes with the recursive permission check along the path to the root node.
+ */
+public class TaskNodePermissionIndexTest
+{
+  private static final int NUMBER_OF_GROUPS = 3;
+
+  private final Random random = new Random(42);
+
+  private final List<TaskNode> nodes = new ArrayList<TaskNode>();
+
+  @Test
+  public void compareWithRecursivePermissionCheck()
+  {
+    final TaskNode root = createNode(null);
+    for (int i = 1; i < 50; i++) {
+      createNode(nodes.get(random.nextInt(nodes.size())));
+    }
+    for (int i = 0; i < 40; i++) {
+      setRandomAccess(nodes.get(random.nextInt(nodes.size())));
+    }
+    root.updatePermissionIndex();
+    assertPermissions();
+    // Modify single nodes and update only the sub trees of the modified nodes (as done by the TaskTree):
+    for (int i = 0; i < 200; i++) {
+      final TaskNode node = nodes.get(random.nextInt(nodes.size()));
+      final int action = random.nextInt(3);
+      if (action == 0) {
+        node.removeGroupTaskAccess(random.nextInt(NUMBER_OF_GROUPS));
+      } else if (action == 1) {
+        setRandomAccess(node);
+      } else if (move(node) == false) {
+        continue;
+      }
+      node.updatePermissionIndex();
+      assertPermissions();
+    }
+  }
+
+  private TaskNode createNode(final TaskNode parent)
+  {
+    final TaskDO task = new TaskDO();
+    task.setId(nodes.size());
+    task.setTitle("task" + nodes.size());
+    final TaskNode node = new TaskNode();
+    node.setTask(task);
+    if (parent != null) {
+      node.setParent(parent);
+      parent.addChild(node);
+    }
+    nodes.add(node);
+    return node;
+  }
+
+  private void setRandomAccess(final TaskNode node)
+  {
+    final GroupDO group = new GroupDO();
+    group.setId(random.nextInt(NUMBER_OF_GROUPS));
+    final GroupTaskAccessDO access = new GroupTaskAccessDO().setGroup(group).setTask(node.getTask());
+    access.setRecursive(random.nextBoolean());
+    for (final AccessType accessType : AccessType.values()) {
+      if (random.nextInt(3) > 0) {
+        access.ensureAndGetAccessEntry(accessType).setAccess(random.nextBoolean(), random.nextBoolean(), random.nextBoolean(),
+            random.nextBoolean());
+      }
+    }
+    node.setGroupTaskAccess(access);
+  }
+
+  /**
+   * Moves the given node to a random new parent (not to its own sub tree).
+   * @return false if the node can't be moved.
+   */
+  private boolean move(final TaskNode node)
+  {
+    final TaskNode newParent = nodes.get(random.nextInt(nodes.size()));
+    if (node.getParent() == null || newParent == node || node.isParentOf(newParent) == true) {
+      return false;
+    }
+    node.getParent().removeChild(node);
+    node.setParent(newParent);
+    newParent.addChild(node);
+    return true;
+  }
+
+  private void assertPermissions()
+  {
+    for (final TaskNode node : nodes) {
+      for (int groupId = 0; groupId < NUMBER_OF_GROUPS; groupId++) {
+        for (final AccessType accessType : AccessType.values()) {
+          for (final OperationType opType : OperationType.values()) {
+            assertEquals("task=" + node.getId() + ", group=" + groupId + ", " + accessType + ", " + opType,
+                hasPermissionRecursive(node, groupId, accessType, opType), node.hasPermission(groupId, accessType, opType));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The permission check without effective permissions: the explicit access of the node or the inherited access of the parent node (if
+   * the parent's access is recursive).
+   */
+  private boolean hasPermissionRecursive(final TaskNode node, final Integer groupId, final AccessType accessType,
+      final OperationType opType)
+  {
+    final GroupTaskAccessDO access = node.getGroupTaskAccess(groupId);
+    if (access != null) {
+      return access.hasPermission(accessType, opType);
+    }
+    final TaskNode parent = node.getParent();
+    return parent != null && parent.isPermissionRecursive(groupId) == true && hasPermissionRecursive(parent, groupId, accessType, opType);
+  }
+}
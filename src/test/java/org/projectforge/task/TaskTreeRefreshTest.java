@@ -0,0 +1,286 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.projectforge.access.AccessDao;
+import org.projectforge.access.AccessType;
+import org.projectforge.access.GroupTaskAccessDO;
+import org.projectforge.access.OperationType;
+import org.projectforge.fibu.ProjektDO;
+import org.projectforge.fibu.ProjektDao;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.GroupDO;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Modifies the data base without the daos (the task tree isn't informed), so the modifications are only visible in the tree after an
+ * incremental refresh or a rebuild.
+ */
+public class TaskTreeRefreshTest extends TestBase
+{
+  private TaskTree taskTree;
+
+  private TaskDao taskDao;
+
+  private AccessDao accessDao;
+
+  private ProjektDao projektDao;
+
+  private TransactionTemplate txTemplate;
+
+  public void setTaskTree(final TaskTree taskTree)
+  {
+    this.taskTree = taskTree;
+  }
+
+  public void setTaskDao(final TaskDao taskDao)
+  {
+    this.taskDao = taskDao;
+  }
+
+  public void setAccessDao(final AccessDao accessDao)
+  {
+    this.accessDao = accessDao;
+  }
+
+  public void setProjektDao(final ProjektDao projektDao)
+  {
+    this.projektDao = projektDao;
+  }
+
+  public void setTxTemplate(final TransactionTemplate txTemplate)
+  {
+    this.txTemplate = txTemplate;
+  }
+
+  @Test
+  public void reparenting()
+  {
+    initTestDB.addTask("ttr-reparent", "root");
+    initTestDB.addTask("ttr-reparent.1", "ttr-reparent");
+    initTestDB.addTask("ttr-reparent.2", "ttr-reparent");
+    initTestDB.addTask("ttr-reparent.1.1", "ttr-reparent.1");
+    initTestDB.addTask("ttr-reparent.1.1.1", "ttr-reparent.1.1");
+    setParentInDB("ttr-reparent.1.1", "ttr-reparent.2");
+    assertParent("ttr-reparent.1", "ttr-reparent.1.1"); // Not yet refreshed.
+    final int fullRefreshCounter = taskTree.getFullRefreshCounter();
+    taskTree.refresh();
+    assertEquals("Incremental refresh expected.", fullRefreshCounter, taskTree.getFullRefreshCounter());
+    assertParent("ttr-reparent.2", "ttr-reparent.1.1");
+    assertFalse(getNode("ttr-reparent.1").hasChilds());
+    assertPath("ttr-reparent.1.1.1", "ttr-reparent", "ttr-reparent.2", "ttr-reparent.1.1", "ttr-reparent.1.1.1");
+  }
+
+  @Test
+  public void newSubtreeInAnyOrder()
+  {
+    initTestDB.addTask("ttr-new", "root");
+    // The children are saved before their parents (lower ids):
+    saveTaskInDB("ttr-new.1.1.1", "ttr-new");
+    saveTaskInDB("ttr-new.1.1", "ttr-new");
+    saveTaskInDB("ttr-new.1", "ttr-new");
+    setParentInDB("ttr-new.1.1.1", "ttr-new.1.1");
+    setParentInDB("ttr-new.1.1", "ttr-new.1");
+    assertNull(taskTree.getTaskNodeById(getTask("ttr-new.1").getId())); // Not yet refreshed.
+    taskTree.refresh();
+    assertPath("ttr-new.1.1.1", "ttr-new", "ttr-new.1", "ttr-new.1.1", "ttr-new.1.1.1");
+    assertEquals(1, getNode("ttr-new").getChilds().size());
+  }
+
+  @Test
+  public void accessEntryChanges()
+  {
+    initTestDB.addTask("ttr-access", "root");
+    initTestDB.addTask("ttr-access.1", "ttr-access");
+    initTestDB.addUser("ttr-access-user");
+    final GroupDO group = initTestDB.addGroup("ttr-access-group", "ttr-access-user");
+    final TaskNode node = getNode("ttr-access.1");
+    assertFalse(node.hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT));
+
+    final Integer accessId = (Integer) txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final GroupTaskAccessDO access = new GroupTaskAccessDO();
+        access.setGroup(group);
+        access.setTask(getTask("ttr-access"));
+        access.ensureAndGetAccessEntry(AccessType.TASKS).setAccess(true, false, false, false);
+        access.setCreated();
+        access.setLastUpdate();
+        return hibernate.save(access);
+      }
+    });
+    assertFalse(node.hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT)); // Not yet refreshed.
+    taskTree.refresh();
+    assertTrue("Inherited permission expected.", getNode("ttr-access.1").hasPermission(group.getId(), AccessType.TASKS,
+        OperationType.SELECT));
+
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final GroupTaskAccessDO access = (GroupTaskAccessDO) hibernate.get(GroupTaskAccessDO.class, accessId);
+        access.setDeleted(true);
+        access.setLastUpdate();
+        return null;
+      }
+    });
+    taskTree.refresh();
+    assertFalse(getNode("ttr-access.1").hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT));
+  }
+
+  @Test
+  public void projectMove()
+  {
+    logon(TEST_FINANCE_USER);
+    initTestDB.addTask("ttr-project", "root");
+    initTestDB.addTask("ttr-project.1", "ttr-project");
+    initTestDB.addTask("ttr-project.2", "ttr-project");
+    initTestDB.addTask("ttr-project.2.1", "ttr-project.2");
+    final ProjektDO projekt = new ProjektDO().setName("ttr-project").setInternKost2_4(765).setNummer(2)
+        .setTask(getTask("ttr-project.1"));
+    final Integer projektId = (Integer) projektDao.internalSave(projekt);
+    assertEquals(projektId, taskTree.getProjekt(getTask("ttr-project.1").getId()).getId());
+
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final ProjektDO dbProjekt = (ProjektDO) hibernate.get(ProjektDO.class, projektId);
+        dbProjekt.setTask((TaskDO) hibernate.get(TaskDO.class, getTask("ttr-project.2").getId()));
+        dbProjekt.setLastUpdate();
+        return null;
+      }
+    });
+    taskTree.refresh();
+    assertNull(taskTree.getProjekt(getTask("ttr-project.1").getId()));
+    assertEquals(projektId, taskTree.getProjekt(getTask("ttr-project.2").getId()).getId());
+    assertEquals(projektId, taskTree.getProjekt(getTask("ttr-project.2.1").getId()).getId());
+  }
+
+  @Test
+  public void modificationsDuringBackgroundRebuild() throws InterruptedException
+  {
+    initTestDB.addTask("ttr-rebuild", "root");
+    initTestDB.addTask("ttr-rebuild.1", "ttr-rebuild");
+    initTestDB.addTask("ttr-rebuild.2", "ttr-rebuild");
+    final Runnable[] duringRebuild = new Runnable[1];
+    // Modifies the data base after the new tree has read all tasks:
+    final TaskDao rebuildTaskDao = new TaskDao() {
+      @Override
+      public List<TaskDO> internalLoadAll()
+      {
+        final List<TaskDO> list = super.internalLoadAll();
+        if (duringRebuild[0] != null) {
+          duringRebuild[0].run();
+        }
+        return list;
+      }
+    };
+    rebuildTaskDao.setHibernateTemplate(hibernate);
+    final TaskTree tree = new TaskTree();
+    tree.setTaskDao(rebuildTaskDao);
+    tree.setGroupTaskAccessdao(accessDao);
+    tree.setProjektDao(projektDao);
+    assertEquals(getTask("ttr-rebuild").getId(), tree.getTaskNodeById(getTask("ttr-rebuild.2").getId()).getParent().getId());
+    duringRebuild[0] = new Runnable() {
+      @Override
+      public void run()
+      {
+        setParentInDB("ttr-rebuild.2", "ttr-rebuild.1");
+      }
+    };
+    tree.rebuildInBackground();
+    for (int i = 0; i < 100 && tree.getFullRefreshCounter() < 2; i++) {
+      Thread.sleep(100);
+    }
+    assertEquals("Background rebuild expected.", 2, tree.getFullRefreshCounter());
+    final TaskNode node = tree.getTaskNodeById(getTask("ttr-rebuild.2").getId());
+    assertEquals("Modification during rebuild should be patched.", getTask("ttr-rebuild.1").getId(), node.getParent().getId());
+    assertTrue(tree.getTaskNodeById(getTask("ttr-rebuild.1").getId()).getChilds().contains(node));
+    tree.shutdown();
+  }
+
+  /**
+   * Saves the task without the task dao (without updating the task tree).
+   */
+  private void saveTaskInDB(final String title, final String parentTitle)
+  {
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final TaskDO task = new TaskDO().setTitle(title).setParentTask(getTask(parentTitle));
+        task.setCreated();
+        task.setLastUpdate();
+        hibernate.save(task);
+        initTestDB.putTask(task);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Moves the task without the task dao (without updating the task tree).
+   */
+  private void setParentInDB(final String title, final String parentTitle)
+  {
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        final TaskDO task = (TaskDO) hibernate.get(TaskDO.class, getTask(title).getId());
+        task.setParentTask((TaskDO) hibernate.get(TaskDO.class, getTask(parentTitle).getId()));
+        task.setLastUpdate();
+        return null;
+      }
+    });
+  }
+
+  private TaskNode getNode(final String title)
+  {
+    return taskTree.getTaskNodeById(getTask(title).getId());
+  }
+
+  private void assertParent(final String parentTitle, final String title)
+  {
+    final TaskNode node = getNode(title);
+    assertEquals(getTask(parentTitle).getId(), node.getParent().getId());
+    assertTrue(getNode(parentTitle).getChilds().contains(node));
+  }
+
+  private void assertPath(final String title, final String... pathTitles)
+  {
+    final List<TaskNode> path = getNode(title).getPathToRoot();
+    assertEquals(pathTitles.length, path.size());
+    for (int i = 0; i < pathTitles.length; i++) {
+      assertEquals(getTask(pathTitles[i]).getId(), path.get(i).getId());
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.timesheet;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimesheetOverlapIndexTest
+{
+  @Test
+  public void testOverlaps()
+  {
+    final TimesheetOverlapIndex index = new TimesheetOverlapIndex();
+    index.put(1, 0, 10);
+    index.put(2, 10, 20);
+    Assert.assertTrue(index.getOverlaps().isEmpty());
+    index.put(3, 5, 15);
+    assertSet(index.getOverlaps(), 1, 2, 3);
+    Assert.assertEquals(Integer.valueOf(1), index.getOverlappingTimesheetId(0, 3, null));
+    Assert.assertNull(index.getOverlappingTimesheetId(0, 3, 1));
+    Assert.assertNull(index.getOverlappingTimesheetId(20, 30, null));
+    index.put(3, 30, 40); // Update
+    Assert.assertTrue(index.getOverlaps().isEmpty());
+    index.put(4, 0, 100);
+    assertSet(index.getOverlaps(), 1, 2, 3, 4);
+    index.remove(4);
+    Assert.assertTrue(index.getOverlaps().isEmpty());
+    Assert.assertEquals(3, index.size());
+  }
+
+  @Test
+  public void testRandom()
+  {
+    final Random random = new Random(42);
+    final TimesheetOverlapIndex index = new TimesheetOverlapIndex();
+    final Map<Integer, long[]> periods = new HashMap<Integer, long[]>();
+    for (int i = 0; i < 2000; i++) {
+      final Integer id = random.nextInt(200);
+      if (random.nextInt(4) == 0) {
+        index.remove(id);
+        periods.remove(id);
+      } else {
+        final long start = random.nextInt(10000);
+        final long stop = start + 1 + random.nextInt(i % 50 == 0 ? 1000 : 40);
+        index.put(id, start, stop);
+        periods.put(id, new long[] { start, stop});
+      }
+      if (i % 100 == 0) {
+        final Set<Integer> expected = new HashSet<Integer>();
+        for (final Map.Entry<Integer, long[]> entry : periods.entrySet()) {
+          for (final Map.Entry<Integer, long[]> other : periods.entrySet()) {
+            if (entry.getKey().equals(other.getKey()) == false
+                && entry.getValue()[0] < other.getValue()[1]
+                && entry.getValue()[1] > other.getValue()[0]) {
+              expected.add(entry.getKey());
+            }
+          }
+        }
+        Assert.assertEquals(expected, index.getOverlaps());
+      }
+    }
+  }
+
+  private void assertSet(final Set<Integer> set, final Integer... ids)
+  {
+    Assert.assertEquals(ids.length, set.size());
+    for (final Integer id : ids) {
+      Assert.assertTrue(set.contains(id));
+    }
+  }
+}
@@ -0,0 +1,218 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.timesheet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import org.hibernate.criterion.Order;
+import org.junit.Test;
+import org.projectforge.access.AccessType;
+import org.projectforge.common.DateHolder;
+import org.projectforge.common.DatePrecision;
+import org.projectforge.core.QueryFilter;
+import org.projectforge.task.TaskDO;
+import org.projectforge.task.TaskDao;
+import org.projectforge.test.TestBase;
+import org.projectforge.user.GroupDO;
+import org.projectforge.user.PFUserDO;
+
+public class TimesheetPagedQueryTest extends TestBase
+{
+  private static final int PAGE_SIZE = 4;
+
+  private static boolean initialized = false;
+
+  private TimesheetDao timesheetDao;
+
+  private TaskDao taskDao;
+
+  public void setTimesheetDao(final TimesheetDao timesheetDao)
+  {
+    this.timesheetDao = timesheetDao;
+  }
+
+  public void setTaskDao(final TaskDao taskDao)
+  {
+    this.taskDao = taskDao;
+  }
+
+  private synchronized void initialize() // @BeforeClass not possible because DAOs are needed.
+  {
+    if (initialized == true) {
+      return;
+    }
+    initialized = true;
+    logon(getUser(TEST_ADMIN_USER));
+    initTestDB.addTask("tpq", "root");
+    final TaskDO task1 = initTestDB.addTask("tpq.1", "tpq");
+    final TaskDO task2 = initTestDB.addTask("tpq.2", "tpq");
+    task2.setProtectionOfPrivacy(true);
+    taskDao.internalUpdate(task2);
+    final PFUserDO user = initTestDB.addUser("tpq-user");
+    final PFUserDO viewer = initTestDB.addUser("tpq-viewer");
+    initTestDB.createGroupTaskAccess(initTestDB.addGroup("tpq-group", "tpq-viewer"), task1, AccessType.TIMESHEETS, true, false, false,
+        false);
+    for (int day = 1; day <= 6; day++) {
+      addTimesheet(user, task1, day, day % 3 + 1);
+    }
+    for (int day = 7; day <= 9; day++) {
+      addTimesheet(user, task2, day, 2);
+    }
+    for (int day = 10; day <= 11; day++) {
+      addTimesheet(viewer, task2, day, 1);
+    }
+  }
+
+  @Test
+  public void pageSlicingAndSortOrder()
+  {
+    initialize();
+    logon(TEST_FINANCE_USER);
+    final List<Integer> ids = getIds(timesheetDao.getList(createFilter()));
+    assertEquals(11, ids.size());
+    assertPagedList(ids);
+    assertEquals(11, timesheetDao.getListSize(timesheetDao.createQueryFilter(createFilter())));
+    // The sort order of the user dominates the default order (descending start time):
+    final List<Integer> pagedIds = new ArrayList<Integer>();
+    for (int first = 0; first < ids.size(); first += PAGE_SIZE) {
+      final QueryFilter queryFilter = timesheetDao.createQueryFilter(createFilter());
+      queryFilter.addSortOrder(Order.asc("startTime"));
+      queryFilter.setFirstResult(first).setMaxResults(PAGE_SIZE);
+      pagedIds.addAll(getIds(timesheetDao.getPagedList(queryFilter)));
+    }
+    Collections.reverse(ids);
+    assertEquals(ids, pagedIds);
+  }
+
+  @Test
+  public void selectAccessRestrictions()
+  {
+    initialize();
+    // Time sheets of tpq.1 (select access) and the own time sheets of tpq.2:
+    logon("tpq-viewer");
+    assertPagedList(getIds(timesheetDao.getList(createFilter())), 8);
+    // Project managers don't see the foreign time sheets of tpq.2 (protection of privacy):
+    logon(TEST_PROJECT_MANAGER_USER);
+    assertPagedList(getIds(timesheetDao.getList(createFilter())), 6);
+    // No access to foreign time sheets at all:
+    logon(TEST_USER);
+    assertPagedList(getIds(timesheetDao.getList(createFilter())), 0);
+    logon("tpq-user");
+    assertPagedList(getIds(timesheetDao.getList(createFilter())), 9);
+  }
+
+  @Test
+  public void selectAccessRestrictionsAfterAccessModification()
+  {
+    initialize();
+    logon(getUser(TEST_ADMIN_USER));
+    initTestDB.addUser("tpq-viewer2");
+    final GroupDO group = initTestDB.addGroup("tpq-group2", "tpq-viewer2");
+    logon("tpq-viewer2");
+    assertPagedList(getIds(timesheetDao.getList(createFilter())), 0);
+    // The cached task ids with select access have to be re-calculated after the modification of the access entries:
+    logon(getUser(TEST_ADMIN_USER));
+    initTestDB.createGroupTaskAccess(group, getTask("tpq.2"), AccessType.TIMESHEETS, true, false, false, false);
+    logon("tpq-viewer2");
+    assertPagedList(getIds(timesheetDao.getList(createFilter())), 5);
+  }
+
+  @Test
+  public void pagedQuerySupported()
+  {
+    initialize();
+    final TimesheetFilter filter = createFilter();
+    assertTrue(timesheetDao.isPagedQuerySupported(filter));
+    filter.setMarked(true); // Filtered in memory.
+    assertFalse(timesheetDao.isPagedQuerySupported(filter));
+    filter.setMarked(false);
+    filter.setSearchString("tpq");
+    assertFalse(timesheetDao.isPagedQuerySupported(filter));
+  }
+
+  private void assertPagedList(final List<Integer> expectedIds, final int expectedSize)
+  {
+    assertEquals(expectedSize, expectedIds.size());
+    assertPagedList(expectedIds);
+  }
+
+  /**
+   * Compares the concatenated pages, the count and the total duration with the result of {@link TimesheetDao#getList(TimesheetFilter)}.
+   */
+  private void assertPagedList(final List<Integer> expectedIds)
+  {
+    assertEquals(expectedIds.size(), timesheetDao.getListSize(timesheetDao.createQueryFilter(createFilter())));
+    final List<Integer> pagedIds = new ArrayList<Integer>();
+    for (int first = 0; first < expectedIds.size() + PAGE_SIZE; first += PAGE_SIZE) {
+      final QueryFilter queryFilter = timesheetDao.createQueryFilter(createFilter());
+      queryFilter.setFirstResult(first).setMaxResults(PAGE_SIZE);
+      final List<TimesheetDO> page = timesheetDao.getPagedList(queryFilter);
+      assertEquals(Math.max(0, Math.min(PAGE_SIZE, expectedIds.size() - first)), page.size());
+      pagedIds.addAll(getIds(page));
+    }
+    assertEquals(expectedIds, pagedIds);
+    long duration = 0;
+    for (final TimesheetDO timesheet : timesheetDao.getList(createFilter())) {
+      duration += timesheet.getDuration();
+    }
+    assertEquals(duration, timesheetDao.getTotalDuration(timesheetDao.createQueryFilter(createFilter())));
+  }
+
+  private TimesheetFilter createFilter()
+  {
+    final TimesheetFilter filter = new TimesheetFilter();
+    filter.setTaskId(getTask("tpq").getId());
+    final DateHolder date = new DateHolder(DatePrecision.DAY);
+    date.setDate(1971, Calendar.JANUARY, 1, 0, 0, 0);
+    filter.setStartTime(date.getDate());
+    date.setDate(1971, Calendar.JANUARY, 31, 0, 0, 0);
+    filter.setStopTime(date.getDate());
+    return filter;
+  }
+
+  private void addTimesheet(final PFUserDO user, final TaskDO task, final int day, final int hours)
+  {
+    final DateHolder date = new DateHolder(DatePrecision.MINUTE_15);
+    date.setDate(1971, Calendar.JANUARY, day, 8, 0, 0);
+    final DateHolder stopDate = new DateHolder(date.getDate(), DatePrecision.MINUTE_15);
+    stopDate.add(Calendar.HOUR_OF_DAY, hours);
+    initTestDB.addTimesheet(user, task, date.getTimestamp(), stopDate.getTimestamp(), "tpq");
+  }
+
+  private List<Integer> getIds(final List<TimesheetDO> list)
+  {
+    final List<Integer> ids = new ArrayList<Integer>();
+    for (final TimesheetDO timesheet : list) {
+      ids.add(timesheet.getId());
+    }
+    return ids;
+  }
+}
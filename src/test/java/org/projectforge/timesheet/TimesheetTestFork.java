@@ -200,6 +200,34 @@ public class TimesheetTestFork extends TestBase
     }
   }
 
+  @Test
+  public void testOverlapAfterRollback()
+  {
+    logon(ADMIN);
+    getInitTestDB().addTask("timesheet-rollback", "root");
+    getInitTestDB().addUser("timesheet-rollback-user");
+    final TimesheetDO ts1 = new TimesheetDO().setTask(getTask("timesheet-rollback")).setUser(getUser("timesheet-rollback-user"));
+    setTimeperiod(ts1, 22, 8, 0, 22, 16, 0); // 11/22 from 8:00 to 16:00
+    final Serializable id1 = timesheetDao.save(ts1);
+    timesheetDao.getTimesheetsWithTimeoverlap(getUser("timesheet-rollback-user").getId()); // Builds the overlap index.
+    txTemplate.execute(new TransactionCallback() {
+      public Object doInTransaction(final TransactionStatus status)
+      {
+        timesheetDao.markAsDeleted(timesheetDao.internalGetById(id1));
+        status.setRollbackOnly(); // The time sheet isn't deleted.
+        return null;
+      }
+    });
+    final TimesheetDO ts2 = new TimesheetDO().setTask(getTask("timesheet-rollback")).setUser(getUser("timesheet-rollback-user"));
+    setTimeperiod(ts2, 22, 9, 0, 22, 10, 0); // 11/22 from 9:00 to 10:00
+    try {
+      timesheetDao.save(ts2); // Overlap with ts1!
+      fail("Rolled back deletion shouldn't be part of the overlap index.");
+    } catch (final UserException ex) {
+      assertEquals("timesheet.error.timeperiodOverlapDetection", ex.getI18nKey());
+    }
+  }
+
   @Test
   public void testTimesheetProtection()
   {
@@ -0,0 +1,108 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.user;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LoginProtectionMapTest
+{
+  private static final long DURATION_48_HOURS = 48 * 60 * 60 * 1000;
+
+  @Test
+  public void testMaxSize()
+  {
+    final LoginProtectionMap map = new LoginProtectionMap().setNumberOfFailedLoginsBeforeIncrementing(1).setMaxSize(100);
+    final long current = System.currentTimeMillis();
+    for (int i = 0; i < 50; i++) {
+      map.setEntry("old" + i, 5, current - 10 * 60 * 60 * 1000); // 10 hours ago, not expired.
+    }
+    for (int i = 0; i < 100; i++) {
+      map.incrementFailedLoginTimeOffset("new" + i);
+    }
+    Assert.assertEquals(100, map.getSize());
+    Assert.assertEquals(50, map.getEvictionCounter());
+    Assert.assertEquals("Oldest entries should be evicted first.", 0, map.getNumberOfFailedLoginAttempts("old0"));
+    Assert.assertEquals(1, map.getNumberOfFailedLoginAttempts("new0"));
+    Assert.assertEquals(1, map.getNumberOfFailedLoginAttempts("new99"));
+  }
+
+  @Test
+  public void testExpiredBuckets()
+  {
+    final LoginProtectionMap map = new LoginProtectionMap().setNumberOfFailedLoginsBeforeIncrementing(1);
+    final long current = System.currentTimeMillis();
+    for (int i = 0; i < 10; i++) {
+      map.setEntry("expired" + i, 5, current - DURATION_48_HOURS);
+    }
+    map.setEntry("active", 5, current - 1000);
+    Assert.assertEquals(11, map.getSize());
+    map.incrementFailedLoginTimeOffset("active");
+    Assert.assertEquals(1, map.getSize());
+    Assert.assertEquals(10, map.getExpiredCounter());
+    Assert.assertEquals(6, map.getNumberOfFailedLoginAttempts("active"));
+  }
+
+  @Test
+  public void testConcurrentAccess() throws InterruptedException
+  {
+    final LoginProtectionMap map = new LoginProtectionMap().setNumberOfFailedLoginsBeforeIncrementing(1000);
+    final int numberOfThreads = 8;
+    final int numberOfAttempts = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < numberOfThreads; t++) {
+      final Thread thread = new Thread() {
+        @Override
+        public void run()
+        {
+          try {
+            start.await();
+          } catch (final InterruptedException ex) {
+            return;
+          }
+          for (int i = 0; i < numberOfAttempts; i++) {
+            map.getFailedLoginTimeOffsetIfExists("192.168.0." + (i % 10));
+            map.incrementFailedLoginTimeOffset("192.168.0." + (i % 10));
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(10, map.getSize());
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(numberOfThreads * numberOfAttempts / 10, map.getNumberOfFailedLoginAttempts("192.168.0." + i));
+    }
+  }
+}
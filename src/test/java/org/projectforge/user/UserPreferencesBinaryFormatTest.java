@@ -0,0 +1,122 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.user;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.projectforge.calendar.TimePeriod;
+import org.projectforge.common.RecentQueue;
+import org.projectforge.common.XStreamHelper;
+import org.projectforge.core.OrderDirection;
+import org.projectforge.timesheet.TimesheetFilter;
+
+import com.thoughtworks.xstream.XStream;
+
+public class UserPreferencesBinaryFormatTest
+{
+  private final XStream xstream = XStreamHelper.createXStream();
+
+  private final UserPreferencesBinaryFormat format = new UserPreferencesBinaryFormat(xstream);
+
+  @Test
+  public void testFilter() throws Exception
+  {
+    final TimesheetFilter filter = new TimesheetFilter();
+    filter.setSearchString("ProjectForge \u00e4\u00f6\u00fc");
+    filter.setModifiedSince(new Date(1388534400000L));
+    filter.setMaxRows(50);
+    filter.setTimePeriod(new TimePeriod(new Date(1388534400000L), new Date(1391212800000L)));
+    filter.setUserId(42);
+    filter.setTaskId(-7);
+    filter.setMarked(true);
+    filter.setOrderType(OrderDirection.ASC);
+    final String serialized = format.serialize(filter);
+    Assert.assertTrue(UserPreferencesBinaryFormat.isBinary(serialized));
+    final Object restored = format.deserialize(serialized);
+    Assert.assertEquals(TimesheetFilter.class, restored.getClass());
+    Assert.assertEquals(XStreamHelper.toXml(xstream, filter), XStreamHelper.toXml(xstream, restored));
+    Assert.assertTrue("Binary format should be more compact than xml.",
+        serialized.length() < XStreamHelper.toXml(xstream, filter).length() / 2);
+  }
+
+  @Test
+  public void testCollections() throws Exception
+  {
+    final RecentQueue<String> recents = new RecentQueue<String>(10);
+    for (int i = 0; i < 20; i++) {
+      recents.append("entry " + i);
+    }
+    final TreeSet<Integer> ids = new TreeSet<Integer>();
+    for (int i = 0; i < 200; i++) {
+      ids.add(i * 1000);
+    }
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put("recents", recents);
+    map.put("ids", ids);
+    map.put("long", Long.MIN_VALUE);
+    map.put("amount", new BigDecimal("-1234.56"));
+    map.put("flag", Boolean.FALSE);
+    map.put("array", new int[] { 1, -1, Integer.MAX_VALUE});
+    map.put("null", null);
+    final Object restored = format.deserialize(format.serialize(map));
+    Assert.assertEquals(XStreamHelper.toXml(xstream, map), XStreamHelper.toXml(xstream, restored));
+  }
+
+  @Test
+  public void testUnsupported() throws Exception
+  {
+    Assert.assertNull("Types without reflection converter aren't supported.", format.serialize(Locale.GERMAN));
+    final List<Object> list = new ArrayList<Object>();
+    final TimePeriod period = new TimePeriod();
+    list.add(period);
+    list.add(period);
+    Assert.assertNull("Multiple references aren't supported.", format.serialize(list));
+    list.remove(1);
+    Assert.assertNotNull(format.serialize(list));
+  }
+
+  @Test
+  public void testCorrupted() throws Exception
+  {
+    final String serialized = format.serialize("Hurzel");
+    try {
+      format.deserialize(serialized.substring(0, 3));
+      Assert.fail("IOException expected.");
+    } catch (final IOException ex) {
+      // OK
+    }
+    Assert.assertFalse(UserPreferencesBinaryFormat.isBinary("<null/>"));
+    Assert.assertFalse(UserPreferencesBinaryFormat.isBinary("!H4sIAAAAAAAAA"));
+  }
+}
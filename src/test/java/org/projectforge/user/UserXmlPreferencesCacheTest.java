@@ -0,0 +1,277 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.user;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectforge.access.AccessChecker;
+
+public class UserXmlPreferencesCacheTest
+{
+  private static final Integer USER1 = 1;
+
+  private static final Integer USER2 = 2;
+
+  private TestUserXmlPreferencesDao dao;
+
+  private UserXmlPreferencesCache cache;
+
+  /**
+   * Holds the preferences in memory and counts the loads and writes.
+   */
+  private static class TestUserXmlPreferencesDao extends UserXmlPreferencesDao
+  {
+    final Map<Integer, Map<String, Object>> dataBase = new HashMap<Integer, Map<String, Object>>();
+
+    final List<Integer> writes = new ArrayList<Integer>();
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    /** If given, the loads wait until released. */
+    volatile CountDownLatch loadLatch;
+
+    volatile boolean failNextLoad;
+
+    @Override
+    public List<UserXmlPreferencesDO> getUserPreferencesByUserId(final Integer userId)
+    {
+      loads.incrementAndGet();
+      final CountDownLatch latch = loadLatch;
+      if (latch != null) {
+        try {
+          latch.await();
+        } catch (final InterruptedException ex) {
+          throw new RuntimeException(ex);
+        }
+      }
+      if (failNextLoad == true) {
+        failNextLoad = false;
+        throw new RuntimeException("Data base not available (test).");
+      }
+      final List<UserXmlPreferencesDO> list = new ArrayList<UserXmlPreferencesDO>();
+      synchronized (dataBase) {
+        final Map<String, Object> map = dataBase.get(userId);
+        if (map != null) {
+          for (final Map.Entry<String, Object> entry : map.entrySet()) {
+            list.add(new UserXmlPreferencesDO().setKey(entry.getKey()).setSerializedSettings((String) entry.getValue()));
+          }
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public Object deserialize(final UserXmlPreferencesDO userPrefs, final boolean logError)
+    {
+      return userPrefs.getSerializedSettings();
+    }
+
+    @Override
+    public void saveOrUpdateUserEntries(final Integer userId, final UserXmlPreferencesMap data, final boolean checkAccess)
+    {
+      synchronized (dataBase) {
+        writes.add(userId);
+        Map<String, Object> map = dataBase.get(userId);
+        if (map == null) {
+          map = new HashMap<String, Object>();
+          dataBase.put(userId, map);
+        }
+        map.putAll(data.getPersistentData());
+      }
+    }
+
+    @Override
+    public void remove(final Integer userId, final String key)
+    {
+      synchronized (dataBase) {
+        final Map<String, Object> map = dataBase.get(userId);
+        if (map != null) {
+          map.remove(key);
+        }
+      }
+    }
+
+    Object getValue(final Integer userId, final String key)
+    {
+      synchronized (dataBase) {
+        final Map<String, Object> map = dataBase.get(userId);
+        return map != null ? map.get(key) : null;
+      }
+    }
+
+    int getWrites(final Integer userId)
+    {
+      int counter = 0;
+      synchronized (dataBase) {
+        for (final Integer id : writes) {
+          if (id.equals(userId) == true) {
+            ++counter;
+          }
+        }
+      }
+      return counter;
+    }
+  }
+
+  @Before
+  public void setUp()
+  {
+    dao = new TestUserXmlPreferencesDao();
+    cache = new UserXmlPreferencesCache();
+    cache.setUserXmlPreferencesDao(dao);
+    cache.setAccessChecker(new AccessChecker() {
+      @Override
+      public boolean isDemoUser(final Integer userId)
+      {
+        return false;
+      }
+    });
+    cache.setWriteBehindDelayInSeconds(3600); // No write-behind during the tests, if not set.
+    cache.warmUp(); // Otherwise the first access refreshes (flushes) the cache.
+  }
+
+  @Test
+  public void concurrentLoadsOfSameUser() throws InterruptedException
+  {
+    saveValue(USER1, "key", "value");
+    dao.loadLatch = new CountDownLatch(1);
+    final Object[] results = new Object[5];
+    final Thread[] threads = new Thread[results.length];
+    for (int i = 0; i < threads.length; i++) {
+      final int index = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run()
+        {
+          results[index] = cache.getEntry(USER1, "key");
+        }
+      };
+      threads[i].start();
+    }
+    waitFor(dao.loads, 1);
+    Thread.sleep(200); // Give the other threads the chance to start a load of their own.
+    dao.loadLatch.countDown();
+    for (final Thread thread : threads) {
+      thread.join(10000);
+    }
+    for (final Object result : results) {
+      assertEquals("value", result);
+    }
+    assertEquals(1, dao.loads.get());
+    assertEquals(1, cache.getLoadCounter());
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  public void failedLoadIsNotCached()
+  {
+    saveValue(USER1, "key", "value");
+    dao.failNextLoad = true;
+    try {
+      cache.getEntry(USER1, "key");
+      fail("RuntimeException of the failed load expected.");
+    } catch (final RuntimeException ex) {
+      // OK
+    }
+    assertEquals(0, cache.getSize());
+    assertEquals("value", cache.getEntry(USER1, "key"));
+    assertEquals(2, dao.loads.get());
+    assertEquals(1, cache.getLoadCounter());
+  }
+
+  @Test
+  public void writeBehind() throws InterruptedException
+  {
+    cache.setWriteBehindDelayInSeconds(1);
+    cache.putEntry(USER1, "a", "1", true);
+    cache.putEntry(USER1, "b", "2", true);
+    cache.putEntry(USER1, "a", "3", true);
+    cache.putEntry(USER1, "volatile", "4", false);
+    assertEquals(0, dao.getWrites(USER1));
+    for (int i = 0; i < 100 && dao.getWrites(USER1) == 0; i++) {
+      Thread.sleep(100);
+    }
+    Thread.sleep(1500); // No further writes expected.
+    assertEquals("Modifications should be coalesced.", 1, dao.getWrites(USER1));
+    assertEquals(1, cache.getFlushCounter());
+    assertEquals("3", dao.getValue(USER1, "a"));
+    assertEquals("2", dao.getValue(USER1, "b"));
+    assertEquals(null, dao.getValue(USER1, "volatile"));
+  }
+
+  @Test
+  public void evictionFlushesModifiedUser()
+  {
+    cache.putEntry(USER1, "a", "1", true);
+    cache.setMaxSize(0); // Evict all users on next refresh.
+    cache.forceReload();
+    assertEquals(0, cache.getSize());
+    assertEquals(1, cache.getEvictionCounter());
+    assertEquals(1, dao.getWrites(USER1));
+    assertEquals("1", dao.getValue(USER1, "a"));
+    cache.setMaxSize(UserXmlPreferencesCache.DEFAULT_MAX_SIZE);
+    assertEquals("1", cache.getEntry(USER1, "a")); // Reloaded from the data base.
+    assertEquals(2, dao.loads.get());
+  }
+
+  @Test
+  public void shutdownFlushesDirtyUsers()
+  {
+    cache.putEntry(USER1, "a", "1", true);
+    cache.putEntry(USER2, "a", "2", true);
+    cache.shutdown();
+    assertEquals(1, dao.getWrites(USER1));
+    assertEquals(1, dao.getWrites(USER2));
+    assertEquals("1", dao.getValue(USER1, "a"));
+    assertEquals("2", dao.getValue(USER2, "a"));
+  }
+
+  private void saveValue(final Integer userId, final String key, final String value)
+  {
+    final Map<String, Object> map = new HashMap<String, Object>();
+    map.put(key, value);
+    synchronized (dao.dataBase) {
+      dao.dataBase.put(userId, map);
+    }
+  }
+
+  private void waitFor(final AtomicInteger counter, final int value) throws InterruptedException
+  {
+    for (int i = 0; i < 100 && counter.get() < value; i++) {
+      Thread.sleep(100);
+    }
+    assertTrue(counter.get() >= value);
+  }
+}
@@ -0,0 +1,95 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2014 Kai Reinhard (k.reinhard@micromata.de)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.web.wicket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
+import org.junit.Test;
+import org.projectforge.core.BaseSearchFilter;
+import org.projectforge.fibu.KontoDO;
+import org.projectforge.fibu.KontoDao;
+import org.projectforge.test.TestBase;
+import org.projectforge.web.fibu.KontoListPage;
+
+public class MyListPageSortableDataProviderTest extends WicketPageTestBase
+{
+  private static final int PAGE_SIZE = 3;
+
+  private KontoDao kontoDao;
+
+  public void setKontoDao(final KontoDao kontoDao)
+  {
+    this.kontoDao = kontoDao;
+  }
+
+  @Test
+  public void pagedMode()
+  {
+    logon(TestBase.TEST_FULL_ACCESS_USER);
+    for (int i = 0; i < 8; i++) {
+      final KontoDO konto = new KontoDO();
+      konto.setNummer(987650 + (i * 7) % 8); // Not saved in order of the numbers.
+      konto.setBezeichnung("Paged mode " + i);
+      kontoDao.internalSave(konto);
+    }
+    final List<Integer> expected = new ArrayList<Integer>();
+    for (final KontoDO konto : kontoDao.getList(new BaseSearchFilter())) {
+      expected.add(konto.getNummer());
+    }
+    Collections.sort(expected);
+
+    login(TestBase.TEST_FULL_ACCESS_USER, TestBase.TEST_FULL_ACCESS_USER_PASSWORD);
+    tester.startPage(KontoListPage.class);
+    tester.assertRenderedPage(KontoListPage.class);
+    final KontoListPage page = (KontoListPage) tester.getLastRenderedPage();
+    assertTrue(page.isPagedQuery());
+    final MyListPageSortableDataProvider<KontoDO> provider = page.listPageSortableDataProvider;
+    assertEquals(expected.size(), provider.size());
+    assertEquals(expected, getNummern(provider));
+
+    // Descending order of the data base:
+    provider.setSort("nummer", SortOrder.DESCENDING);
+    Collections.reverse(expected);
+    assertEquals(expected, getNummern(provider));
+  }
+
+  private List<Integer> getNummern(final MyListPageSortableDataProvider<KontoDO> provider)
+  {
+    final List<Integer> result = new ArrayList<Integer>();
+    for (long first = 0; first < provider.size(); first += PAGE_SIZE) {
+      final Iterator<KontoDO> it = provider.iterator(first, PAGE_SIZE);
+      while (it.hasNext() == true) {
+        result.add(it.next().getNummer());
+      }
+    }
+    return result;
+  }
+}